@@ -0,0 +1,96 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.models.CaixaDeEntrada;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.function.Supplier;
+
+/**
+ * Compara a {@link CaixaDeEntrada} com a {@link LinkedList} usada antes nas filas de recados e
+ * mensagens: vazo de insero e retirada (enchendo e esvaziando a fila, e em regime, com a fila
+ * sempre com poucos elementos) e bytes de heap por elemento em muitas filas pequenas, como as
+ * caixas de entrada dos usurios. Os elementos so compartilhados entre as filas, para que s o
+ * custo da estrutura entre na conta.
+ *
+ * <p>Cada medio  repetida depois de rodadas de aquecimento; rode com um heap fixo para que o
+ * uso de memria medido seja estvel.</p>
+ *
+ * <pre>java -Xms2g -Xmx2g -cp out br.ufal.ic.p2.jackut.bench.BenchmarkCaixaDeEntrada [elementos] [filas] [porFila]</pre>
+ */
+public class BenchmarkCaixaDeEntrada {
+    private static final Object ELEMENTO = new Object();
+
+    public static void main(String[] args) {
+        int elementos = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int filas = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int porFila = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        for (int rodada = 0; rodada < 3; rodada++) { // Aquecimento
+            encherEsvaziar(LinkedList::new, elementos / 10);
+            encherEsvaziar(CaixaDeEntrada::new, elementos / 10);
+            regime(LinkedList::new, elementos / 10);
+            regime(CaixaDeEntrada::new, elementos / 10);
+        }
+        System.out.printf("encher e esvaziar: LinkedList %6.1f Mops/s | CaixaDeEntrada %6.1f Mops/s%n",
+                encherEsvaziar(LinkedList::new, elementos), encherEsvaziar(CaixaDeEntrada::new, elementos));
+        System.out.printf("em regime:         LinkedList %6.1f Mops/s | CaixaDeEntrada %6.1f Mops/s%n",
+                regime(LinkedList::new, elementos), regime(CaixaDeEntrada::new, elementos));
+        System.out.printf("heap por elemento (%,d filas de %d): LinkedList %5.1f bytes | CaixaDeEntrada %5.1f bytes%n",
+                filas, porFila, bytesPorElemento(LinkedList::new, filas, porFila),
+                bytesPorElemento(CaixaDeEntrada::new, filas, porFila));
+    }
+
+    /** @return Milhes de operaes (insero ou retirada) por segundo. */
+    private static double encherEsvaziar(Supplier<Queue<Object>> fabrica, int elementos) {
+        Queue<Object> fila = fabrica.get();
+        long inicio = System.nanoTime();
+        for (int i = 0; i < elementos; i++) {
+            fila.add(ELEMENTO);
+        }
+        while (fila.poll() != null) {
+            // Esvazia a fila
+        }
+        return 2.0 * elementos / ((System.nanoTime() - inicio) / 1e3);
+    }
+
+    /** @return Milhes de operaes por segundo com a fila oscilando entre 0 e 32 elementos. */
+    private static double regime(Supplier<Queue<Object>> fabrica, int elementos) {
+        Queue<Object> fila = fabrica.get();
+        long inicio = System.nanoTime();
+        for (int i = 0; i < elementos; i += 32) {
+            for (int j = 0; j < 32; j++) {
+                fila.add(ELEMENTO);
+            }
+            for (int j = 0; j < 32; j++) {
+                fila.poll();
+            }
+        }
+        return 2.0 * elementos / ((System.nanoTime() - inicio) / 1e3);
+    }
+
+    private static double bytesPorElemento(Supplier<Queue<Object>> fabrica, int filas, int porFila) {
+        long antes = heapUsado();
+        Object[] vivas = new Object[filas];
+        long referencias = heapUsado() - antes; // O array que mantm as filas vivas no entra na conta
+        for (int i = 0; i < filas; i++) {
+            Queue<Object> fila = fabrica.get();
+            for (int j = 0; j < porFila; j++) {
+                fila.add(ELEMENTO);
+            }
+            vivas[i] = fila;
+        }
+        long depois = heapUsado();
+        if (vivas[filas - 1] == null) {
+            throw new IllegalStateException();
+        }
+        return (double) (depois - antes - referencias) / ((long) filas * porFila);
+    }
+
+    private static long heapUsado() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
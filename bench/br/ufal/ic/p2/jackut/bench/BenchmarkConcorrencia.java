@@ -0,0 +1,99 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.Facade;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mede a vazo da {@link Facade} sob uma carga mista de leituras e escritas com 1, 2, 4, ...
+ * threads, comparando as travas por usurio com uma nica trava global em volta de cada chamada
+ * (como a fachada precisava ser usada antes).
+ *
+ * <p>Grava arquivos de dados no diretrio atual; rode em um diretrio vazio.</p>
+ *
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.BenchmarkConcorrencia [usuarios] [segundos] [% escritas]</pre>
+ */
+public class BenchmarkConcorrencia {
+
+    public static void main(String[] args) throws Exception {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int segundos = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int escritas = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        if (System.getProperty("jackut.diario.fsync") == null) {
+            System.setProperty("jackut.diario.fsync", "false");
+        }
+
+        Facade facade = new Facade();
+        facade.zerarSistema();
+        String[] sessoes = new String[usuarios];
+        for (int i = 0; i < usuarios; i++) {
+            facade.criarUsuario("usuario" + i, "senha", "Usurio " + i);
+            sessoes[i] = facade.abrirSessao("usuario" + i, "senha");
+        }
+
+        int processadores = Runtime.getRuntime().availableProcessors();
+        for (String modo : new String[]{"global", "travas"}) {
+            for (int threads = 1; threads <= processadores * 2; threads *= 2) {
+                long operacoes = medir(facade, sessoes, modo.equals("global"), threads, segundos, escritas);
+                System.out.printf("%-6s %3d threads: %,12d ops/s%n", modo, threads, operacoes / segundos);
+            }
+        }
+        facade.encerrarSistema();
+    }
+
+    private static long medir(Facade facade, String[] sessoes, boolean travaGlobal, int threads,
+                              int segundos, int escritas) throws Exception {
+        Object trava = new Object();
+        LongAdder operacoes = new LongAdder();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long fim = System.nanoTime() + TimeUnit.SECONDS.toNanos(segundos);
+        List<Future<?>> tarefas = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tarefas.add(executor.submit(() -> {
+                ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                while (System.nanoTime() < fim) {
+                    int i = aleatorio.nextInt(sessoes.length);
+                    int j = aleatorio.nextInt(sessoes.length);
+                    boolean escrita = aleatorio.nextInt(100) < escritas;
+                    if (travaGlobal) {
+                        synchronized (trava) {
+                            executar(facade, sessoes, i, j, escrita, aleatorio);
+                        }
+                    } else {
+                        executar(facade, sessoes, i, j, escrita, aleatorio);
+                    }
+                    operacoes.increment();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> tarefa : tarefas) {
+            tarefa.get();
+        }
+        executor.shutdown();
+        return operacoes.sum();
+    }
+
+    private static void executar(Facade facade, String[] sessoes, int i, int j, boolean escrita,
+                                 ThreadLocalRandom aleatorio) {
+        try {
+            if (!escrita) {
+                switch (aleatorio.nextInt(3)) {
+                    case 0 -> facade.getAmigos("usuario" + i);
+                    case 1 -> facade.getAtributoUsuario("usuario" + i, "nome");
+                    default -> facade.ehAmigo("usuario" + i, "usuario" + j);
+                }
+            } else {
+                switch (aleatorio.nextInt(3)) {
+                    case 0 -> facade.adicionarAmigo(sessoes[i], "usuario" + j);
+                    case 1 -> facade.enviarRecado(sessoes[i], "usuario" + j, "recado");
+                    default -> facade.editarPerfil(sessoes[i], "cidade", "Macei");
+                }
+            }
+        } catch (RuntimeException e) {
+            // Amizade repetida, recado para si mesmo etc.: a chamada conta como operao.
+        }
+    }
+}
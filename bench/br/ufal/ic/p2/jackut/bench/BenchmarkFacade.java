@@ -0,0 +1,281 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.Facade;
+import br.ufal.ic.p2.jackut.model.FacadeAdministrativa;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Mede cada operao pblica da {@link Facade} sobre bases de vrios tamanhos e formatos de grafo
+ * de amizades, informando o tempo e os bytes alocados por operao.
+ *
+ * <p>Para cada combinao de tamanho e formato, a base  recriada do zero com as operaes em
+ * lote da {@link FacadeAdministrativa}; cada operao roda {@code jackut.bench.aquecimento} vezes
+ * sem medir e {@code jackut.bench.iteracoes} vezes medindo (menos nas que percorrem a base
+ * inteira). Os bytes alocados so os da thread que chama a fachada, lidos do
+ * {@code ThreadMXBean}. Formatos:</p>
+ * <ul>
+ *   <li>{@code anel}: cada usurio  amigo dos {@code grau / 2} seguintes e anteriores;</li>
+ *   <li>{@code estrela}: todos so amigos do primeiro usurio, e s dele;</li>
+ *   <li>{@code aleatorio}: cada usurio pede amizade a {@code grau / 2} usurios sorteados.</li>
+ * </ul>
+ *
+ * <p>Com {@code -Djackut.bench.saida=arquivo} os resultados so gravados em TSV; com
+ * {@code -Djackut.bench.base=arquivo} so comparados com um TSV anterior, e o programa termina com
+ * cdigo 1 se alguma operao ficou mais lenta que a tolerncia ({@code jackut.bench.tolerancia},
+ * padro 0.25). O {@code fsync} do dirio fica desligado, a menos que seja ligado explicitamente.</p>
+ *
+ * <p>Grava arquivos de dados no diretrio atual; rode em um diretrio vazio.</p>
+ *
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.BenchmarkFacade [tamanhos] [formatos] [grau]</pre>
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.BenchmarkFacade 1000,10000,100000 anel,estrela,aleatorio 8</pre>
+ */
+public class BenchmarkFacade {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    /** Quantidade mxima de sesses abertas para as operaes que precisam de uma. */
+    private static final int SESSOES = 10_000;
+    private static final int LOTE = 10_000;
+
+    private final int aquecimento = Integer.getInteger("jackut.bench.aquecimento", 5_000);
+    private final int iteracoes = Integer.getInteger("jackut.bench.iteracoes", 20_000);
+    private final List<Resultado> resultados = new ArrayList<>();
+
+    private FacadeAdministrativa facade;
+    private int tamanho;
+    private String formato;
+    private int grau;
+    private String[] sessoes;
+
+    public static void main(String[] args) throws IOException {
+        int[] tamanhos = Arrays.stream((args.length > 0 ? args[0] : "1000,10000,100000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        String[] formatos = (args.length > 1 ? args[1] : "anel,estrela,aleatorio").split(",");
+        int grau = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        if (System.getProperty("jackut.diario.fsync") == null) {
+            System.setProperty("jackut.diario.fsync", "false");
+        }
+
+        BenchmarkFacade benchmark = new BenchmarkFacade();
+        benchmark.facade = new FacadeAdministrativa();
+        System.out.printf("%8s %-10s %-28s %14s %14s %8s%n", "usuarios", "formato", "operacao", "ns/op", "B/op", "erros");
+        for (int tamanho : tamanhos) {
+            for (String formato : formatos) {
+                benchmark.medirTodas(tamanho, formato, grau);
+            }
+        }
+        benchmark.facade.encerrarSistema();
+
+        String saida = System.getProperty("jackut.bench.saida");
+        if (saida != null) {
+            benchmark.gravar(new File(saida));
+        }
+        String base = System.getProperty("jackut.bench.base");
+        if (base != null && !benchmark.comparar(new File(base), Double.parseDouble(System.getProperty("jackut.bench.tolerancia", "0.25")))) {
+            System.exit(1);
+        }
+    }
+
+    private void medirTodas(int tamanho, String formato, int grau) {
+        this.tamanho = tamanho;
+        this.formato = formato;
+        this.grau = grau;
+        montarBase();
+        Random aleatorio = new Random(7);
+        int s = sessoes.length;
+        int porBase = Math.max(50, (int) ((long) iteracoes * 1_000 / tamanho)); // Operaes que percorrem a base
+
+        medir("criarUsuario", iteracoes, i -> facade.criarUsuario("novo" + i, "senha", "Novo " + i));
+        medir("abrirSessao", iteracoes, i -> facade.abrirSessao("u" + aleatorio.nextInt(tamanho), "senha"));
+        medir("adicionarAmigo", iteracoes, i -> facade.adicionarAmigo(sessoes[i % s], "u" + (i % s + grau + 1 + i / s) % tamanho));
+        // Recados e mensagens so lidos na mesma ordem em que foram enviados
+        medir("enviarRecado", iteracoes, i -> facade.enviarRecado(sessoes[i % s], "u" + (i + 1) % s, "recado"));
+        medir("lerRecado", iteracoes, i -> facade.lerRecado(sessoes[(i + 1) % s]));
+        medir("enviarMensagem (todos)", iteracoes, i -> facade.enviarMensagem(sessoes[i % s], "todos", "mensagem"));
+        medir("lerMensagem", iteracoes, i -> facade.lerMensagem(sessoes[i % s]));
+        medir("getAmigos", iteracoes, i -> facade.getAmigos("u" + aleatorio.nextInt(tamanho)));
+        medir("getAmigos (maior grau)", porBase, i -> facade.getAmigos("u0"));
+        medir("getMembrosComunidade (" + grau + ")", iteracoes, i -> facade.getMembrosComunidade("vizinhos"));
+        medir("getMembrosComunidade (todos)", porBase, i -> facade.getMembrosComunidade("todos"));
+
+        String[] removidos = new String[aquecimento + iteracoes];
+        String[][] novos = new String[removidos.length][];
+        for (int i = 0; i < removidos.length; i++) {
+            novos[i] = new String[]{"removido" + i, "senha", "Removido " + i};
+        }
+        facade.criarUsuarios(novos);
+        String[][] pares = new String[removidos.length * 2][];
+        for (int i = 0; i < removidos.length; i++) {
+            String amigo = "u" + aleatorio.nextInt(tamanho);
+            pares[2 * i] = new String[]{"removido" + i, amigo};
+            pares[2 * i + 1] = new String[]{amigo, "removido" + i};
+            removidos[i] = facade.abrirSessao("removido" + i, "senha");
+        }
+        facade.adicionarAmigos(pares);
+        medir("removerUsuario", iteracoes, i -> facade.removerUsuario(removidos[i]));
+
+        for (int rodada = 0; rodada < 3; rodada++) {
+            boolean medindo = rodada > 0; // A primeira rodada  aquecimento
+            medirUmaVez("encerrarSistema", medindo, () -> facade.encerrarSistema());
+            medirUmaVez("iniciar (new Facade)", medindo, () -> facade = new FacadeAdministrativa());
+        }
+    }
+
+    /**
+     * Recria a base: usurios, amizades no formato pedido, uma comunidade com todos os usurios e
+     * outra com {@code grau} membros, e as sesses usadas pelas operaes.
+     */
+    private void montarBase() {
+        facade.zerarSistema();
+        for (int inicio = 0; inicio < tamanho; inicio += LOTE) {
+            String[][] usuarios = new String[Math.min(LOTE, tamanho - inicio)][];
+            for (int i = 0; i < usuarios.length; i++) {
+                usuarios[i] = new String[]{"u" + (inicio + i), "senha", "Usurio " + (inicio + i)};
+            }
+            facade.criarUsuarios(usuarios);
+        }
+        Random aleatorio = new Random(42);
+        List<String[]> pares = new ArrayList<>();
+        for (int i = 0; i < tamanho; i++) {
+            if (formato.equals("estrela")) {
+                if (i > 0) {
+                    amizade(pares, 0, i);
+                }
+            } else {
+                for (int k = 1; k <= grau / 2; k++) {
+                    amizade(pares, i, formato.equals("anel") ? (i + k) % tamanho : aleatorio.nextInt(tamanho));
+                }
+            }
+            if (pares.size() >= LOTE) {
+                facade.adicionarAmigos(pares.toArray(new String[0][]));
+                pares.clear();
+            }
+        }
+        facade.adicionarAmigos(pares.toArray(new String[0][]));
+
+        String dono = facade.abrirSessao("u0", "senha");
+        facade.criarComunidade(dono, "todos", "Todos os usurios");
+        facade.criarComunidade(dono, "vizinhos", "Poucos membros");
+        List<String[]> membros = new ArrayList<>();
+        for (int i = 1; i < tamanho; i++) {
+            membros.add(new String[]{"u" + i, "todos"});
+            if (i < grau) {
+                membros.add(new String[]{"u" + i, "vizinhos"});
+            }
+        }
+        facade.adicionarComunidades(membros.toArray(new String[0][]));
+
+        sessoes = new String[Math.min(SESSOES, tamanho)];
+        for (int i = 0; i < sessoes.length; i++) {
+            sessoes[i] = facade.abrirSessao("u" + i, "senha");
+        }
+    }
+
+    private static void amizade(List<String[]> pares, int a, int b) {
+        pares.add(new String[]{"u" + a, "u" + b});
+        pares.add(new String[]{"u" + b, "u" + a});
+    }
+
+    /** Operao medida; recebe o nmero da iterao, contando o aquecimento. */
+    private interface Operacao {
+        void executar(int iteracao);
+    }
+
+    private void medir(String nome, int quantidade, Operacao operacao) {
+        int erros = 0;
+        int limite = Math.min(aquecimento, quantidade);
+        for (int i = 0; i < limite; i++) {
+            try {
+                operacao.executar(i);
+            } catch (RuntimeException e) {
+                // Conta s os erros da medio
+            }
+        }
+        long bytes = THREADS.getCurrentThreadAllocatedBytes();
+        long inicio = System.nanoTime();
+        for (int i = limite; i < limite + quantidade; i++) {
+            try {
+                operacao.executar(i);
+            } catch (RuntimeException e) {
+                erros++;
+            }
+        }
+        long tempo = System.nanoTime() - inicio;
+        bytes = THREADS.getCurrentThreadAllocatedBytes() - bytes;
+        registrar(nome, (double) tempo / quantidade, (double) bytes / quantidade, erros);
+    }
+
+    private void medirUmaVez(String nome, boolean registrar, Runnable operacao) {
+        long bytes = THREADS.getCurrentThreadAllocatedBytes();
+        long inicio = System.nanoTime();
+        operacao.run();
+        long tempo = System.nanoTime() - inicio;
+        bytes = THREADS.getCurrentThreadAllocatedBytes() - bytes;
+        if (registrar) {
+            registrar(nome, tempo, bytes, 0);
+        }
+    }
+
+    private void registrar(String nome, double nanos, double bytes, int erros) {
+        Resultado resultado = new Resultado(tamanho, formato, nome, nanos, bytes, erros);
+        resultados.add(resultado);
+        System.out.printf("%8d %-10s %-28s %,14.0f %,14.0f %8d%n", tamanho, formato, nome, nanos, bytes, erros);
+    }
+
+    private void gravar(File arquivo) throws IOException {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(arquivo), StandardCharsets.UTF_8))) {
+            for (Resultado resultado : resultados) {
+                out.println(resultado.chave() + "\t" + resultado.nanos + "\t" + resultado.bytes + "\t" + resultado.erros);
+            }
+        }
+    }
+
+    /**
+     * Compara o tempo por operao com o de uma execuo anterior.
+     *
+     * @return {@code false} se alguma operao ficou mais lenta que a tolerncia.
+     */
+    private boolean comparar(File arquivo, double tolerancia) throws IOException {
+        Map<String, Double> anteriores = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(arquivo), StandardCharsets.UTF_8))) {
+            String linha;
+            while ((linha = in.readLine()) != null) {
+                String[] campos = linha.split("\t");
+                anteriores.put(campos[0] + "\t" + campos[1] + "\t" + campos[2], Double.parseDouble(campos[3]));
+            }
+        }
+        boolean dentro = true;
+        for (Resultado resultado : resultados) {
+            Double anterior = anteriores.get(resultado.chave());
+            if (anterior != null && resultado.nanos > anterior * (1 + tolerancia)) {
+                System.out.printf("REGRESSO %s: %,.0f -> %,.0f ns/op%n", resultado.chave().replace('\t', ' '), anterior, resultado.nanos);
+                dentro = false;
+            }
+        }
+        return dentro;
+    }
+
+    private static final class Resultado {
+        private final int tamanho;
+        private final String formato;
+        private final String operacao;
+        private final double nanos;
+        private final double bytes;
+        private final int erros;
+
+        private Resultado(int tamanho, String formato, String operacao, double nanos, double bytes, int erros) {
+            this.tamanho = tamanho;
+            this.formato = formato;
+            this.operacao = operacao;
+            this.nanos = nanos;
+            this.bytes = bytes;
+            this.erros = erros;
+        }
+
+        private String chave() {
+            return tamanho + "\t" + formato + "\t" + operacao;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.FacadeAdministrativa;
+import br.ufal.ic.p2.jackut.model.persistencia.ImportadorDeDados;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Gera arquivos de importao sintticos (usurios, perfis, amizades pedidas nos dois sentidos,
+ * dolos, paqueras, inimigos e comunidades) e mede a importao pela
+ * {@link FacadeAdministrativa}, incluindo a gravao do snapshot.
+ *
+ * <p>Grava arquivos de dados no diretrio atual; rode em um diretrio vazio. A quantidade de
+ * threads de anlise pode ser alterada com {@code -Djackut.importacao.threads}.</p>
+ *
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.BenchmarkImportacao [usuarios] [amigos por usurio]</pre>
+ */
+public class BenchmarkImportacao {
+
+    public static void main(String[] args) throws IOException {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int amigos = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        File diretorio = new File("importacao");
+        diretorio.mkdirs();
+        long linhas = gerar(diretorio, usuarios, amigos, new Random(42));
+
+        FacadeAdministrativa facade = new FacadeAdministrativa();
+        for (int rodada = 0; rodada < 3; rodada++) {
+            long inicio = System.nanoTime();
+            ImportadorDeDados importador = facade.importarDados(diretorio.getPath());
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            long rejeitadas = 0;
+            for (ImportadorDeDados.Arquivo arquivo : ImportadorDeDados.Arquivo.values()) {
+                rejeitadas += importador.getRejeitadas(arquivo);
+            }
+            System.out.printf("%,d linhas (%,d rejeitadas) em %.2f s: %,.0f linhas/s%n",
+                    linhas, rejeitadas, segundos, linhas / segundos);
+        }
+        System.out.println(facade.getAmigos("usuario0"));
+        facade.encerrarSistema();
+    }
+
+    private static long gerar(File diretorio, int usuarios, int amigos, Random aleatorio) throws IOException {
+        long linhas = 0;
+        try (PrintWriter u = abrir(diretorio, ImportadorDeDados.Arquivo.USUARIOS);
+             PrintWriter p = abrir(diretorio, ImportadorDeDados.Arquivo.PERFIS);
+             PrintWriter a = abrir(diretorio, ImportadorDeDados.Arquivo.AMIZADES);
+             PrintWriter i = abrir(diretorio, ImportadorDeDados.Arquivo.IDOLOS);
+             PrintWriter q = abrir(diretorio, ImportadorDeDados.Arquivo.PAQUERAS);
+             PrintWriter n = abrir(diretorio, ImportadorDeDados.Arquivo.INIMIGOS);
+             PrintWriter c = abrir(diretorio, ImportadorDeDados.Arquivo.COMUNIDADES);
+             PrintWriter m = abrir(diretorio, ImportadorDeDados.Arquivo.MEMBROS)) {
+            int comunidades = Math.max(1, usuarios / 100);
+            for (int k = 0; k < usuarios; k++) {
+                u.println("usuario" + k + "\tsenha\tUsurio " + k);
+                p.println("usuario" + k + "\tcidade\tMacei");
+                linhas += 2;
+            }
+            for (int k = 0; k < comunidades; k++) {
+                c.println("comunidade" + k + "\tusuario" + k + "\tComunidade " + k);
+                linhas++;
+            }
+            for (int k = 0; k < usuarios; k++) {
+                for (int j = 1; j <= amigos; j++) {
+                    // Cada amizade aparece nos dois sentidos, como pedidos das duas contas
+                    a.println("usuario" + k + "\tusuario" + (k + j) % usuarios);
+                    a.println("usuario" + (k + j) % usuarios + "\tusuario" + k);
+                }
+                i.println("usuario" + k + "\tusuario" + aleatorio.nextInt(usuarios));
+                q.println("usuario" + k + "\tusuario" + aleatorio.nextInt(usuarios));
+                n.println("usuario" + k + "\tusuario" + (k + amigos + 1) % usuarios);
+                m.println("comunidade" + aleatorio.nextInt(comunidades) + "\tusuario" + k);
+                linhas += 2L * amigos + 4;
+            }
+        }
+        return linhas;
+    }
+
+    private static PrintWriter abrir(File diretorio, ImportadorDeDados.Arquivo arquivo) throws IOException {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(diretorio, arquivo.getNome())), StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,81 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.Facade;
+import br.ufal.ic.p2.jackut.model.FacadeAdministrativa;
+import br.ufal.ic.p2.jackut.model.models.ResultadoLote;
+
+/**
+ * Compara a vazo da criao de usurios, amizades e participaes em comunidades chamada item a
+ * item pela {@link Facade} com a das operaes em lote da {@link FacadeAdministrativa}, para um
+ * mesmo volume de dados.
+ *
+ * <p>Grava arquivos de dados no diretrio atual; rode em um diretrio vazio. O {@code fsync} do
+ * dirio fica ligado, a menos que {@code -Djackut.diario.fsync=false} seja informado.</p>
+ *
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.BenchmarkLote [usuarios] [amigos por usurio] [tamanho do lote]</pre>
+ */
+public class BenchmarkLote {
+
+    public static void main(String[] args) {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int amigos = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int tamanhoLote = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+
+        FacadeAdministrativa facade = new FacadeAdministrativa();
+        for (boolean lote : new boolean[]{false, true, false, true}) {
+            facade.zerarSistema();
+            facade.criarUsuario("dono", "senha", "Dono");
+            facade.criarComunidade(facade.abrirSessao("dono", "senha"), "migrados", "Contas migradas");
+            long inicio = System.nanoTime();
+            long operacoes = lote ? emLote(facade, usuarios, amigos, tamanhoLote) : individual(facade, usuarios, amigos);
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            System.out.printf("%-10s %,10d ops em %6.2f s: %,12.0f ops/s%n",
+                    lote ? "lote" : "individual", operacoes, segundos, operacoes / segundos);
+        }
+        facade.encerrarSistema();
+    }
+
+    private static long individual(Facade facade, int usuarios, int amigos) {
+        String[] sessoes = new String[usuarios];
+        for (int i = 0; i < usuarios; i++) {
+            facade.criarUsuario("usuario" + i, "senha", "Usurio " + i);
+            sessoes[i] = facade.abrirSessao("usuario" + i, "senha");
+        }
+        for (int i = 0; i < usuarios; i++) {
+            for (int k = 1; k <= amigos; k++) {
+                facade.adicionarAmigo(sessoes[i], "usuario" + (i + k) % usuarios);
+            }
+            facade.adicionarComunidade(sessoes[i], "migrados");
+        }
+        return (long) usuarios * (2 + amigos);
+    }
+
+    private static long emLote(FacadeAdministrativa facade, int usuarios, int amigos, int tamanhoLote) {
+        long falhas = 0;
+        for (int inicio = 0; inicio < usuarios; inicio += tamanhoLote) {
+            int fim = Math.min(usuarios, inicio + tamanhoLote);
+            String[][] novos = new String[fim - inicio][];
+            for (int i = inicio; i < fim; i++) {
+                novos[i - inicio] = new String[]{"usuario" + i, "senha", "Usurio " + i};
+            }
+            falhas += facade.criarUsuarios(novos).getFalhas();
+        }
+        for (int inicio = 0; inicio < usuarios; inicio += tamanhoLote) {
+            int fim = Math.min(usuarios, inicio + tamanhoLote);
+            String[][] pares = new String[(fim - inicio) * amigos][];
+            String[][] membros = new String[fim - inicio][];
+            for (int i = inicio; i < fim; i++) {
+                for (int k = 1; k <= amigos; k++) {
+                    pares[(i - inicio) * amigos + k - 1] = new String[]{"usuario" + i, "usuario" + (i + k) % usuarios};
+                }
+                membros[i - inicio] = new String[]{"usuario" + i, "migrados"};
+            }
+            ResultadoLote resultado = facade.adicionarAmigos(pares);
+            falhas += resultado.getFalhas() + facade.adicionarComunidades(membros).getFalhas();
+        }
+        if (falhas > 0) {
+            throw new IllegalStateException(falhas + " itens falharam");
+        }
+        return (long) usuarios * (2 + amigos);
+    }
+}
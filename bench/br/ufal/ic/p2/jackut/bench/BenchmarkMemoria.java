@@ -0,0 +1,86 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.models.Comunidade;
+import br.ufal.ic.p2.jackut.model.models.TabelaDeLogins;
+import br.ufal.ic.p2.jackut.model.models.Usuario;
+
+/**
+ * Mede a memria ocupada pelas relaes entre usurios: cria os usurios, inclui amizades (que
+ * mantm a ordem de incluso), pares dolo/f (sem ordem) e por fim todos os usurios em uma
+ * comunidade, e informa os bytes de heap por elemento includo em cada fase, depois de coletar o
+ * lixo.
+ *
+ * <p>Cada usurio recebe {@code grau} amigos e {@code grau} dolos ou fs, nos usurios seguintes e
+ * anteriores. Com {@code carregado=true}, cada relao recebe uma cpia prpria do login, como
+ * acontece ao ler os textos de um snapshot; caso contrrio, todas compartilham o login do
+ * usurio.</p>
+ *
+ * <p>Use um heap grande o bastante para os valores escolhidos (ex.: {@code -Xmx8g}).</p>
+ *
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.BenchmarkMemoria [usuarios] [grau] [carregado]</pre>
+ */
+public class BenchmarkMemoria {
+
+    public static void main(String[] args) {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int grau = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        boolean carregado = args.length > 2 && Boolean.parseBoolean(args[2]);
+
+        String[] logins = new String[quantidade];
+        Usuario[] usuarios = new Usuario[quantidade];
+        TabelaDeLogins tabela = new TabelaDeLogins();
+        for (int k = 0; k < quantidade; k++) {
+            logins[k] = "usuario" + k;
+            usuarios[k] = new Usuario(logins[k], "senha", "Usurio " + k, tabela);
+        }
+        long base = usado();
+
+        for (int k = 0; k < quantidade; k++) {
+            for (int j = 1; j <= grau / 2; j++) {
+                int outro = (k + j) % quantidade;
+                usuarios[k].adicionarAmigo(login(logins, outro, carregado));
+                usuarios[outro].adicionarAmigo(login(logins, k, carregado));
+            }
+        }
+        long amizades = usado();
+        long elementos = (long) quantidade * (grau / 2) * 2;
+        System.out.printf("amizades:   %,d elementos, %,.1f MB, %.1f bytes/elemento%n",
+                elementos, (amizades - base) / 1e6, (double) (amizades - base) / elementos);
+
+        for (int k = 0; k < quantidade; k++) {
+            for (int j = 1; j <= grau / 2; j++) {
+                int outro = (k + j) % quantidade;
+                usuarios[k].adicionarIdolo(login(logins, outro, carregado));
+                usuarios[outro].adicionarFa(login(logins, k, carregado));
+            }
+        }
+        long fas = usado();
+        System.out.printf("idolos/fas: %,d elementos, %,.1f MB, %.1f bytes/elemento%n",
+                elementos, (fas - amizades) / 1e6, (double) (fas - amizades) / elementos);
+        System.out.printf("total:      %,d elementos, %,.1f MB, %.1f bytes/elemento%n",
+                2 * elementos, (fas - base) / 1e6, (double) (fas - base) / (2 * elementos));
+
+        Comunidade comunidade = new Comunidade("todos", "Todos os usurios", logins[0], tabela);
+        for (int k = 1; k < quantidade; k++) {
+            comunidade.adicionarMembro(login(logins, k, carregado));
+        }
+        long membros = usado();
+        System.out.printf("comunidade: %,d membros, %,.1f MB, %.1f bytes/membro%n",
+                quantidade, (membros - fas) / 1e6, (double) (membros - fas) / quantidade);
+        // Mantm os usurios e a comunidade alcanveis at a ltima medio
+        System.out.println(usuarios[0].getAmigosString().length() + usuarios[quantidade - 1].getFas().size()
+                + comunidade.getMembros().size());
+    }
+
+    private static String login(String[] logins, int k, boolean carregado) {
+        return carregado ? new String(logins[k]) : logins[k];
+    }
+
+    private static long usado() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,55 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.Facade;
+
+/**
+ * Mede o envio de mensagens a uma comunidade grande (100.000 membros por padro). Como cada
+ * mensagem  apenas acrescentada ao registro da comunidade, o custo do envio no deve depender
+ * da quantidade de membros; a leitura  medida em seguida, com cada membro lendo uma mensagem.
+ *
+ * <p>Grava arquivos de dados no diretrio atual; rode em um diretrio vazio.</p>
+ *
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.BenchmarkMensagensComunidade [membros] [mensagens]</pre>
+ */
+public class BenchmarkMensagensComunidade {
+
+    public static void main(String[] args) {
+        int membros = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int mensagens = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        if (System.getProperty("jackut.diario.fsync") == null) {
+            System.setProperty("jackut.diario.fsync", "false");
+        }
+
+        Facade facade = new Facade();
+        facade.zerarSistema();
+        String[] sessoes = new String[membros];
+        for (int i = 0; i < membros; i++) {
+            facade.criarUsuario("usuario" + i, "senha", "Usurio " + i);
+            sessoes[i] = facade.abrirSessao("usuario" + i, "senha");
+        }
+        facade.criarComunidade(sessoes[0], "grande", "comunidade com todos os usurios");
+        for (int i = 1; i < membros; i++) {
+            facade.adicionarComunidade(sessoes[i], "grande");
+        }
+        System.out.printf("comunidade com %,d membros montada%n", membros);
+
+        long inicio = System.nanoTime();
+        for (int m = 0; m < mensagens; m++) {
+            facade.enviarMensagem(sessoes[m % membros], "grande", "mensagem " + m);
+        }
+        long envio = System.nanoTime() - inicio;
+
+        inicio = System.nanoTime();
+        for (int i = 0; i < membros; i++) {
+            String mensagem = facade.lerMensagem(sessoes[i]);
+            if (!mensagem.equals("mensagem 0")) {
+                throw new IllegalStateException("Mensagem inesperada para usuario" + i + ": " + mensagem);
+            }
+        }
+        long leitura = System.nanoTime() - inicio;
+
+        System.out.printf("envio:   %,10.0f ns por mensagem%n", (double) envio / mensagens);
+        System.out.printf("leitura: %,10.0f ns por leitura%n", (double) leitura / membros);
+        facade.encerrarSistema();
+    }
+}
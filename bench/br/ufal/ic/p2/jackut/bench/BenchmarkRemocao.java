@@ -0,0 +1,117 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.Facade;
+import br.ufal.ic.p2.jackut.model.models.TabelaDeLogins;
+import br.ufal.ic.p2.jackut.model.models.Usuario;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Mede o tempo de {@link Facade#removerUsuario(String)} em uma rede grande (1.000.000 de usurios
+ * por padro), em que cada usurio tem alguns amigos, dolos, paqueras, inimigos e recados.
+ *
+ * <p>Para comparao, mede tambm a remoo como era feita antes dos ndices reversos: uma
+ * varredura de todos os usurios retirando o removido de cada relao, executada sobre uma cpia
+ * da mesma rede montada diretamente com objetos {@link Usuario}.</p>
+ *
+ * <p>Grava arquivos de dados no diretrio atual; rode em um diretrio vazio.</p>
+ *
+ * <pre>java -Xmx4g -cp out br.ufal.ic.p2.jackut.bench.BenchmarkRemocao [usuarios] [remocoes] [grau]</pre>
+ */
+public class BenchmarkRemocao {
+
+    public static void main(String[] args) {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int remocoes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int grau = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        if (System.getProperty("jackut.diario.fsync") == null) {
+            System.setProperty("jackut.diario.fsync", "false");
+        }
+
+        Facade facade = new Facade();
+        facade.zerarSistema();
+        String[] sessoes = new String[usuarios];
+        for (int i = 0; i < usuarios; i++) {
+            facade.criarUsuario("usuario" + i, "senha", "Usurio " + i);
+            sessoes[i] = facade.abrirSessao("usuario" + i, "senha");
+        }
+        Map<String, Usuario> copia = new HashMap<>();
+        TabelaDeLogins tabela = new TabelaDeLogins();
+        for (int i = 0; i < usuarios; i++) {
+            copia.put("usuario" + i, new Usuario("usuario" + i, "senha", "Usurio " + i, tabela));
+        }
+
+        Random aleatorio = new Random(42);
+        for (int i = 0; i < usuarios; i++) {
+            for (int k = 0; k < grau; k++) {
+                int j = aleatorio.nextInt(usuarios);
+                if (j == i) {
+                    continue;
+                }
+                relacionar(facade, sessoes, copia, i, j, k);
+            }
+        }
+        System.out.printf("rede com %,d usurios montada%n", usuarios);
+
+        long inicio = System.nanoTime();
+        for (int r = 0; r < remocoes; r++) {
+            facade.removerUsuario(sessoes[r]);
+        }
+        long indices = System.nanoTime() - inicio;
+
+        inicio = System.nanoTime();
+        for (int r = 0; r < remocoes; r++) {
+            removerPorVarredura(copia, "usuario" + r);
+        }
+        long varredura = System.nanoTime() - inicio;
+
+        System.out.printf("ndices reversos: %,10.3f ms por remoo%n", indices / 1e6 / remocoes);
+        System.out.printf("varredura total:  %,10.3f ms por remoo%n", varredura / 1e6 / remocoes);
+        facade.encerrarSistema();
+    }
+
+    private static void relacionar(Facade facade, String[] sessoes, Map<String, Usuario> copia,
+                                   int i, int j, int tipo) {
+        String login = "usuario" + i;
+        String outro = "usuario" + j;
+        Usuario usuario = copia.get(login);
+        Usuario outroUsuario = copia.get(outro);
+        try {
+            switch (tipo % 4) {
+                case 0 -> {
+                    facade.adicionarAmigo(sessoes[i], outro);
+                    usuario.enviarConvite(outro);
+                    outroUsuario.receberConvite(login);
+                }
+                case 1 -> {
+                    facade.adicionarIdolo(sessoes[i], outro);
+                    usuario.adicionarIdolo(outro);
+                    outroUsuario.adicionarFa(login);
+                }
+                case 2 -> {
+                    facade.adicionarPaquera(sessoes[i], outro);
+                    usuario.adicionarPaquera(outro);
+                }
+                default -> {
+                    facade.enviarRecado(sessoes[i], outro, "recado");
+                    outroUsuario.receberRecado(login, "recado");
+                }
+            }
+        } catch (RuntimeException e) {
+            // Relao repetida: ignorada nas duas redes.
+        }
+    }
+
+    private static void removerPorVarredura(Map<String, Usuario> usuarios, String login) {
+        usuarios.remove(login);
+        for (Usuario usuario : usuarios.values()) {
+            usuario.removerAmigo(login);
+            usuario.removerIdolo(login);
+            usuario.removerFa(login);
+            usuario.removerPaquera(login);
+            usuario.removerInimigo(login);
+            usuario.removerRecadosDe(login);
+        }
+    }
+}
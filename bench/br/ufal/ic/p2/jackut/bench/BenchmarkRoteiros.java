@@ -0,0 +1,419 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.Facade;
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Gera carga repetindo os roteiros de aceitao do EasyAccept ({@code tests/us*.txt}) em milhares
+ * de cpias independentes, executadas em paralelo sobre uma mesma {@link Facade}.
+ *
+ * <p>Cada cpia troca os logins e nomes de comunidades criados pelos roteiros por nomes prprios
+ * (com o prefixo {@code rN_}), e cada {@code zerarSistema} do roteiro passa a usar um prefixo novo
+ * em vez de apagar os dados das outras cpias; {@code encerrarSistema} e {@code quit} so
+ * ignorados. Variveis ({@code id1=abrirSessao ...}) valem s dentro da cpia. Ao final, informa a
+ * vazo, a latncia de cada comando (p50, p99, p999 e mxima) e os {@code expect} e
+ * {@code expectError} que no se confirmaram sob carga.</p>
+ *
+ * <p>As listagens montadas a partir de um {@code HashSet} de logins ({@code getFas},
+ * {@code getPaqueras} e {@code getInimigos}) saem na ordem dos hashes dos logins, que muda com os
+ * nomes da cpia; o resultado delas  comparado como conjunto.</p>
+ *
+ * <p>Grava arquivos de dados no diretrio atual; rode em um diretrio vazio. O {@code fsync} do
+ * dirio fica desligado, a menos que seja ligado explicitamente.</p>
+ *
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.BenchmarkRoteiros [copias] [threads] [roteiros...]</pre>
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.BenchmarkRoteiros 5000 16 tests/us1_1.txt tests/us1_2.txt</pre>
+ */
+public class BenchmarkRoteiros {
+    /** Quantidade de divergncias mostradas como exemplo ao final. */
+    private static final int EXEMPLOS = 10;
+    private static final Pattern VARIAVEL = Pattern.compile("\\$\\{([^}]*)}");
+    /** Comandos cuja listagem no tem ordem definida. */
+    private static final Set<String> SEM_ORDEM = Set.of("getFas", "getPaqueras", "getInimigos");
+
+    private final Facade facade;
+    private final List<Comando> comandos;
+    private final Pattern nomes;
+    private final Map<String, Method> metodos = new HashMap<>();
+    private final Map<String, Estatistica> estatisticas = new ConcurrentHashMap<>();
+    private final Queue<String> exemplos = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger divergencias = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        int copias = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        List<File> roteiros = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            roteiros.add(new File(args[i]));
+        }
+        if (roteiros.isEmpty()) {
+            File[] arquivos = new File("tests").listFiles((diretorio, nome) -> nome.matches("us.*\\.txt"));
+            if (arquivos == null || arquivos.length == 0) {
+                throw new FileNotFoundException("Nenhum roteiro em tests/");
+            }
+            Arrays.sort(arquivos);
+            roteiros.addAll(Arrays.asList(arquivos));
+        }
+        if (System.getProperty("jackut.diario.fsync") == null) {
+            System.setProperty("jackut.diario.fsync", "false");
+        }
+
+        Facade facade = new Facade();
+        facade.zerarSistema();
+        BenchmarkRoteiros benchmark = new BenchmarkRoteiros(facade, roteiros);
+        benchmark.executar(Math.min(copias, threads * 10), threads); // Aquecimento
+        benchmark.estatisticas.clear();
+        benchmark.exemplos.clear();
+        benchmark.divergencias.set(0);
+        facade.zerarSistema();
+
+        long inicio = System.nanoTime();
+        long executados = benchmark.executar(copias, threads);
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        benchmark.relatar(copias, threads, executados, segundos);
+        facade.encerrarSistema();
+    }
+
+    private BenchmarkRoteiros(Facade facade, List<File> roteiros) throws IOException {
+        this.facade = facade;
+        this.comandos = new ArrayList<>();
+        for (File roteiro : roteiros) {
+            ler(roteiro);
+        }
+        // Logins e comunidades criados pelos roteiros; os mais longos primeiro, para que
+        // "jpsauve2" no seja trocado como "jpsauve" seguido de "2"
+        Set<String> criados = new TreeSet<>(Comparator.comparingInt(String::length).reversed().thenComparing(Comparator.naturalOrder()));
+        for (Comando comando : comandos) {
+            String nome = comando.nome.equals("criarUsuario") ? comando.argumentos[0]
+                    : comando.nome.equals("criarComunidade") ? comando.argumentos[1] : "";
+            if (!nome.isEmpty()) {
+                criados.add(nome);
+            }
+        }
+        StringJoiner alternativas = new StringJoiner("|");
+        for (String nome : criados) {
+            alternativas.add(Pattern.quote(nome));
+        }
+        this.nomes = Pattern.compile("(?<![\\w$])(" + alternativas + ")(?!\\w)");
+        for (Method metodo : Facade.class.getMethods()) {
+            metodos.put(metodo.getName() + "/" + metodo.getParameterCount(), metodo);
+        }
+    }
+
+    /** Comando de um roteiro, j separado em partes. */
+    private static final class Comando {
+        private final String origem;
+        private final String variavel;
+        private final String nome;
+        private final String[] argumentos;
+        /** Texto do {@code expect} ou do {@code expectError}, ou {@code null} se no houver. */
+        private final String esperado;
+        private final boolean erroEsperado;
+
+        private Comando(String origem, String variavel, String nome, String[] argumentos, String esperado, boolean erroEsperado) {
+            this.origem = origem;
+            this.variavel = variavel;
+            this.nome = nome;
+            this.argumentos = argumentos;
+            this.esperado = esperado;
+            this.erroEsperado = erroEsperado;
+        }
+    }
+
+    private void ler(File roteiro) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(roteiro), StandardCharsets.ISO_8859_1))) {
+            String linha;
+            int numero = 0;
+            while ((linha = in.readLine()) != null) {
+                numero++;
+                List<String> partes = separar(linha.trim());
+                if (partes.isEmpty() || partes.get(0).startsWith("#")) {
+                    continue;
+                }
+                String origem = roteiro.getName() + ":" + numero;
+                String esperado = null;
+                boolean erroEsperado = false;
+                String variavel = null;
+                int indice = 0;
+                if (partes.get(0).equals("expect") || partes.get(0).equals("expectError")) {
+                    erroEsperado = partes.get(0).equals("expectError");
+                    esperado = partes.get(1);
+                    indice = 2;
+                } else if (partes.get(0).contains("=")) {
+                    String[] atribuicao = partes.get(0).split("=", 2);
+                    variavel = atribuicao[0];
+                    partes.set(0, atribuicao[1]);
+                }
+                String nome = partes.get(indice);
+                String[] argumentos = new String[partes.size() - indice - 1];
+                for (int i = 0; i < argumentos.length; i++) {
+                    String parte = partes.get(indice + 1 + i);
+                    argumentos[i] = parte.substring(parte.indexOf('=') + 1);
+                }
+                comandos.add(new Comando(origem, variavel, nome, argumentos, esperado, erroEsperado));
+            }
+        }
+    }
+
+    /** Separa uma linha nos espaos, respeitando as aspas (que so removidas). */
+    private static List<String> separar(String linha) {
+        List<String> partes = new ArrayList<>();
+        StringBuilder atual = new StringBuilder();
+        boolean aspas = false;
+        boolean vazia = true;
+        for (int i = 0; i < linha.length(); i++) {
+            char c = linha.charAt(i);
+            if (c == '"') {
+                aspas = !aspas;
+                vazia = false;
+            } else if (Character.isWhitespace(c) && !aspas) {
+                if (!vazia) {
+                    partes.add(atual.toString());
+                    atual.setLength(0);
+                    vazia = true;
+                }
+            } else {
+                atual.append(c);
+                vazia = false;
+            }
+        }
+        if (!vazia) {
+            partes.add(atual.toString());
+        }
+        return partes;
+    }
+
+    private long executar(int copias, int threads) throws Exception {
+        AtomicInteger proxima = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> tarefas = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                tarefas.add(executor.submit(() -> {
+                    Map<String, Histograma> locais = new HashMap<>();
+                    long executados = 0;
+                    for (int copia; (copia = proxima.getAndIncrement()) < copias; ) {
+                        executados += executarCopia(copia, locais);
+                    }
+                    for (Map.Entry<String, Histograma> entrada : locais.entrySet()) {
+                        estatisticas.computeIfAbsent(entrada.getKey(), nome -> new Estatistica()).somar(entrada.getValue());
+                    }
+                    return executados;
+                }));
+            }
+            long executados = 0;
+            for (Future<Long> tarefa : tarefas) {
+                executados += tarefa.get();
+            }
+            return executados;
+        } finally {
+            executor.shutdown(); // Tambm se uma cpia falhar, para que a JVM possa terminar
+        }
+    }
+
+    private long executarCopia(int copia, Map<String, Histograma> histogramas) {
+        Map<String, String> variaveis = new HashMap<>();
+        int rodada = 0;
+        String prefixo = "r" + copia + "_";
+        long executados = 0;
+        for (Comando comando : comandos) {
+            switch (comando.nome) {
+                case "zerarSistema":
+                    prefixo = "r" + copia + "z" + ++rodada + "_";
+                    continue;
+                case "encerrarSistema":
+                case "quit":
+                    continue;
+                default:
+            }
+            Method metodo = metodos.get(comando.nome + "/" + comando.argumentos.length);
+            Object[] argumentos = new Object[comando.argumentos.length];
+            for (int i = 0; i < argumentos.length; i++) {
+                String valor = instanciar(comando.argumentos[i], prefixo, variaveis);
+                argumentos[i] = metodo == null ? valor : converter(valor, metodo.getParameterTypes()[i]);
+            }
+
+            Object resultado = null;
+            Throwable erro = null;
+            long inicio = System.nanoTime();
+            try {
+                if (metodo == null) {
+                    throw new NoSuchMethodException(comando.nome);
+                }
+                resultado = metodo.invoke(facade, argumentos);
+            } catch (InvocationTargetException e) {
+                erro = e.getCause();
+            } catch (ReflectiveOperationException | IllegalArgumentException e) {
+                erro = e; // Mtodo inexistente ou argumento que no pde ser convertido
+            }
+            histogramas.computeIfAbsent(comando.nome, nome -> new Histograma()).registrar(System.nanoTime() - inicio);
+            executados++;
+
+            String obtido = erro != null ? "erro: " + erro.getMessage() : String.valueOf(resultado);
+            if (comando.esperado == null) {
+                if (erro != null) {
+                    divergir(comando, copia, "sem erro", obtido);
+                } else if (comando.variavel != null) {
+                    variaveis.put(comando.variavel, obtido);
+                }
+            } else {
+                String esperado = instanciar(comando.esperado, prefixo, variaveis);
+                String comparado = comando.erroEsperado ? (erro != null ? erro.getMessage() : null) : (erro != null ? null : obtido);
+                boolean igual = esperado.equals(comparado) || comparado != null && !comando.erroEsperado
+                        && SEM_ORDEM.contains(comando.nome) && elementos(esperado).equals(elementos(comparado));
+                if (!igual) {
+                    divergir(comando, copia, (comando.erroEsperado ? "erro: " : "") + esperado, obtido);
+                }
+            }
+        }
+        return executados;
+    }
+
+    /** Troca as variveis pelos seus valores e os nomes criados pelos da cpia. */
+    private String instanciar(String texto, String prefixo, Map<String, String> variaveis) {
+        Matcher matcher = nomes.matcher(texto);
+        if (matcher.find()) {
+            texto = matcher.replaceAll(Matcher.quoteReplacement(prefixo) + "$1");
+        }
+        if (texto.indexOf('$') >= 0) {
+            Matcher variavel = VARIAVEL.matcher(texto);
+            StringBuilder sb = new StringBuilder();
+            while (variavel.find()) {
+                variavel.appendReplacement(sb, Matcher.quoteReplacement(variaveis.getOrDefault(variavel.group(1), "")));
+            }
+            variavel.appendTail(sb);
+            texto = sb.toString();
+        }
+        return texto;
+    }
+
+    /** @return Os elementos de uma listagem no formato {a,b,...}, ou o prprio texto se no for uma. */
+    private static Set<String> elementos(String listagem) {
+        if (listagem.length() < 2 || listagem.charAt(0) != '{' || listagem.charAt(listagem.length() - 1) != '}') {
+            return Set.of(listagem);
+        }
+        String conteudo = listagem.substring(1, listagem.length() - 1);
+        return conteudo.isEmpty() ? Set.of() : new HashSet<>(Arrays.asList(conteudo.split(",", -1)));
+    }
+
+    /**
+     * Converte um argumento do roteiro para o tipo do parmetro, como o EasyAccept faz com
+     * {@code int} e {@code boolean}; se no for possvel, mantm o texto, e a chamada falha.
+     */
+    private static Object converter(String valor, Class<?> tipo) {
+        try {
+            if (tipo == int.class) {
+                return Integer.valueOf(valor);
+            }
+            if (tipo == boolean.class) {
+                return Boolean.valueOf(valor);
+            }
+        } catch (NumberFormatException e) {
+            // Tratado na chamada
+        }
+        return valor;
+    }
+
+    private void divergir(Comando comando, int copia, String esperado, String obtido) {
+        estatisticas.computeIfAbsent(comando.nome, nome -> new Estatistica()).divergencias.incrementAndGet();
+        if (divergencias.getAndIncrement() < EXEMPLOS) {
+            exemplos.add(String.format("%s (cpia %d) %s: esperado <%s>, obtido <%s>", comando.origem, copia, comando.nome, esperado, obtido));
+        }
+    }
+
+    private void relatar(int copias, int threads, long executados, double segundos) {
+        System.out.printf("%,d cpias de %d comandos em %d threads: %,d comandos em %.2f s, %,.0f comandos/s%n",
+                copias, comandos.size(), threads, executados, segundos, executados / segundos);
+        System.out.printf("%-26s %12s %10s %10s %10s %10s %12s%n", "comando", "execucoes", "p50 us", "p99 us", "p999 us", "max us", "divergencias");
+        for (Map.Entry<String, Estatistica> entrada : new TreeMap<>(estatisticas).entrySet()) {
+            Histograma h = entrada.getValue().histograma;
+            System.out.printf("%-26s %,12d %10.1f %10.1f %10.1f %10.1f %,12d%n", entrada.getKey(), h.getQuantidade(),
+                    h.percentil(0.50) / 1e3, h.percentil(0.99) / 1e3, h.percentil(0.999) / 1e3, h.getMaximo() / 1e3,
+                    entrada.getValue().divergencias.get());
+        }
+        System.out.printf("%,d divergncias%n", divergencias.get());
+        for (String exemplo : exemplos) {
+            System.out.println("  " + exemplo);
+        }
+    }
+
+    /** Histograma e divergncias acumulados de um comando, somando os de todas as threads. */
+    private static final class Estatistica {
+        private final Histograma histograma = new Histograma();
+        private final AtomicInteger divergencias = new AtomicInteger();
+
+        private synchronized void somar(Histograma outro) {
+            histograma.somar(outro);
+        }
+    }
+
+    /**
+     * Histograma de latncias em faixas logartmicas: cada potncia de dois  dividida em
+     * {@value #SUBFAIXAS} faixas, o que d um erro relativo de no mximo 1/{@value #SUBFAIXAS}. No
+     *  seguro para vrias threads; cada thread usa o seu e eles so somados ao final.
+     */
+    private static final class Histograma {
+        private static final int BITS = 5;
+        private static final int SUBFAIXAS = 1 << BITS;
+
+        private final long[] contagens = new long[(64 - BITS + 1) * SUBFAIXAS];
+        private long quantidade;
+        private long maximo;
+
+        private static int faixa(long valor) {
+            if (valor < SUBFAIXAS) {
+                return (int) valor;
+            }
+            int expoente = 63 - Long.numberOfLeadingZeros(valor);
+            return (expoente - BITS + 1) * SUBFAIXAS + (int) ((valor >>> (expoente - BITS)) & (SUBFAIXAS - 1));
+        }
+
+        /** @return O maior valor que cai na faixa. */
+        private static long limite(int faixa) {
+            if (faixa < SUBFAIXAS) {
+                return faixa;
+            }
+            int expoente = faixa / SUBFAIXAS + BITS - 1;
+            long base = (long) (SUBFAIXAS + faixa % SUBFAIXAS) << (expoente - BITS);
+            return base + (1L << (expoente - BITS)) - 1;
+        }
+
+        private void registrar(long valor) {
+            contagens[faixa(Math.max(0, valor))]++;
+            quantidade++;
+            maximo = Math.max(maximo, valor);
+        }
+
+        private void somar(Histograma outro) {
+            for (int i = 0; i < contagens.length; i++) {
+                contagens[i] += outro.contagens[i];
+            }
+            quantidade += outro.quantidade;
+            maximo = Math.max(maximo, outro.maximo);
+        }
+
+        private long percentil(double fracao) {
+            long alvo = (long) Math.ceil(quantidade * fracao);
+            long acumulado = 0;
+            for (int i = 0; i < contagens.length; i++) {
+                acumulado += contagens[i];
+                if (acumulado >= alvo && acumulado > 0) {
+                    return Math.min(limite(i), maximo);
+                }
+            }
+            return maximo;
+        }
+
+        private long getQuantidade() { return quantidade; }
+
+        private long getMaximo() { return maximo; }
+    }
+}
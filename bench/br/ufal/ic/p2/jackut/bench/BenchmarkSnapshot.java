@@ -0,0 +1,115 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.models.Sistema;
+import br.ufal.ic.p2.jackut.model.persistencia.EscritorBinario;
+import br.ufal.ic.p2.jackut.model.persistencia.FormatoSnapshot;
+import br.ufal.ic.p2.jackut.model.persistencia.Segmento;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compara o tempo de partida a frio ao carregar o mesmo estado gravado com serializao Java
+ * (formato antigo de {@code dados.ser}) e com o formato binrio de {@link FormatoSnapshot}, este
+ * lido por completo e com carga preguiosa (at a primeira consulta a um usurio). Cada carga roda
+ * em uma JVM nova, para medir de fato a partida a frio.
+ *
+ * <pre>java -Xmx8g -cp out br.ufal.ic.p2.jackut.bench.BenchmarkSnapshot [usuarios] [repeticoes]</pre>
+ */
+public class BenchmarkSnapshot {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("carregar")) {
+            carregar(args[1], new File(args[2]));
+            return;
+        }
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repeticoes = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        File diretorio = new File(System.getProperty("java.io.tmpdir"), "jackut-bench");
+        diretorio.mkdirs();
+        File java = new File(diretorio, "dados.ser");
+        File binario = new File(diretorio, "dados.jkt");
+
+        System.out.printf("Gerando %,d usurios...%n", usuarios);
+        Segmento estado = gerar(usuarios).capturarCompleto();
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(java), 1 << 16))) {
+            out.writeObject(estado);
+        }
+        EscritorBinario bytes = FormatoSnapshot.escrever(estado);
+        try (FileOutputStream out = new FileOutputStream(binario)) {
+            out.write(bytes.getDados(), 0, bytes.getTamanho());
+        }
+        estado = null;
+        bytes = null;
+        System.out.printf("Serializao Java: %,d bytes | binrio: %,d bytes%n", java.length(), binario.length());
+
+        for (int i = 0; i < repeticoes; i++) {
+            long tempoJava = medirEmNovaJvm("java", java);
+            long tempoBinario = medirEmNovaJvm("binario", binario);
+            long tempoPreguicoso = medirEmNovaJvm("preguicoso", binario);
+            System.out.printf("rodada %d: serializao Java %,d ms | binrio %,d ms | preguioso %,d ms%n",
+                    i + 1, tempoJava, tempoBinario, tempoPreguicoso);
+        }
+    }
+
+    /**
+     * Monta um sistema sinttico: cada usurio convida os 5 seguintes (as amizades se confirmam
+     * quando o convite  retribudo), recebe um recado e participa de uma comunidade a cada mil.
+     */
+    static Sistema gerar(int quantidade) {
+        Sistema sistema = new Sistema();
+        List<String> sessoes = new ArrayList<>(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            sistema.criarUsuario("usuario" + i, "senha" + i, "Usurio " + i);
+            sessoes.add(sistema.abrirSessao("usuario" + i, "senha" + i));
+        }
+        for (int i = 0; i < quantidade; i++) {
+            for (int j = 1; j <= 5; j++) {
+                int outro = (i + j) % quantidade;
+                if (outro != i && !sistema.getUsuario("usuario" + i).ehAmigo("usuario" + outro)) {
+                    sistema.adicionarAmigo(sessoes.get(i), "usuario" + outro);
+                }
+            }
+            sistema.enviarRecado(sessoes.get(i), "usuario" + ((i + 1) % quantidade), "Ol do usurio " + i);
+        }
+        for (int i = 0; i < quantidade; i += 1000) {
+            sistema.criarComunidade("comunidade" + i, "Comunidade nmero " + i, "usuario" + i);
+            for (int j = i + 1; j < Math.min(quantidade, i + 1000); j++) {
+                sistema.adicionarMembroComunidade("comunidade" + i, "usuario" + j);
+            }
+        }
+        return sistema;
+    }
+
+    private static long medirEmNovaJvm(String formato, File arquivo) throws Exception {
+        Process processo = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-Xmx" + (Runtime.getRuntime().maxMemory() >> 20) + "m",
+                "-cp", System.getProperty("java.class.path"),
+                BenchmarkSnapshot.class.getName(), "carregar", formato, arquivo.getPath())
+                .redirectErrorStream(true).start();
+        String saida;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(processo.getInputStream()))) {
+            saida = in.readLine();
+        }
+        if (processo.waitFor() != 0 || saida == null) {
+            throw new IllegalStateException("Carga " + formato + " falhou: " + saida);
+        }
+        return Long.parseLong(saida.trim());
+    }
+
+    private static void carregar(String formato, File arquivo) throws IOException {
+        long inicio = System.nanoTime();
+        Segmento estado = switch (formato) {
+            case "java" -> FormatoSnapshot.lerLegado(arquivo);
+            case "preguicoso" -> FormatoSnapshot.abrir(arquivo);
+            default -> FormatoSnapshot.ler(arquivo);
+        };
+        if (estado.getUsuarios().get("usuario0") == null) {
+            throw new IllegalStateException("Snapshot sem o usurio usuario0.");
+        }
+        long fim = System.nanoTime();
+        System.out.println((fim - inicio) / 1_000_000);
+    }
+}
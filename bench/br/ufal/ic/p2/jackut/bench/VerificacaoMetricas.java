@@ -0,0 +1,59 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.metricas.Metricas;
+
+/**
+ * Confere as faixas extremas do histograma de latncia de {@link Metricas}: latncias nas
+ * potncias de dois em torno da maior faixa precisam ser contadas como chamadas, e no somadas a
+ * outra posio dos vetores. Confere tambm que as chamadas de threads j encerradas continuam
+ * contadas depois que os vetores delas so recolhidos. Termina com cdigo 1 se alguma conferncia
+ * falhar.
+ *
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.VerificacaoMetricas</pre>
+ */
+public class VerificacaoMetricas {
+    private enum Operacao { MEDIDA }
+
+    public static void main(String[] args) throws InterruptedException {
+        int falhas = 0;
+        for (int expoente = 36; expoente <= 62; expoente++) {
+            Metricas<Operacao> metricas = new Metricas<>(Operacao.class, "verificacao");
+            // O incio fica no passado, de modo que a latncia medida  pelo menos 2^expoente ns
+            metricas.registrar(Operacao.MEDIDA, System.nanoTime() - (1L << expoente), 7);
+            long chamadas = metricas.getChamadas(Operacao.MEDIDA);
+            long tamanho = metricas.getTamanho(Operacao.MEDIDA);
+            long percentil = metricas.getPercentil(Operacao.MEDIDA, 1.0);
+            boolean ok = chamadas == 1 && tamanho == 7 && percentil > 0;
+            System.out.printf("2^%d ns: chamadas=%d tamanho=%d p100=%d %s%n",
+                    expoente, chamadas, tamanho, percentil, ok ? "ok" : "FALHOU");
+            if (!ok) {
+                falhas++;
+            }
+        }
+        falhas += verificarThreadsEncerradas(2_000, 3);
+        if (falhas > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int verificarThreadsEncerradas(int threads, int chamadasPorThread) throws InterruptedException {
+        Metricas<Operacao> metricas = new Metricas<>(Operacao.class, "verificacao");
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < chamadasPorThread; j++) {
+                    metricas.registrar(Operacao.MEDIDA, metricas.iniciar(), 1);
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+        long esperado = (long) threads * chamadasPorThread;
+        // Duas leituras: a primeira recolhe os vetores das threads, a segunda l s os totais
+        long primeira = metricas.getChamadas(Operacao.MEDIDA);
+        long segunda = metricas.getChamadas(Operacao.MEDIDA);
+        boolean ok = primeira == esperado && segunda == esperado && metricas.getTamanho(Operacao.MEDIDA) == esperado;
+        System.out.printf("%d threads encerradas: chamadas=%d/%d esperado=%d %s%n",
+                threads, primeira, segunda, esperado, ok ? "ok" : "FALHOU");
+        return ok ? 0 : 1;
+    }
+}
@@ -0,0 +1,83 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.Facade;
+
+/**
+ * Confere, de ponta a ponta pela {@link Facade}, a tabela de comunidades semelhantes, que os
+ * roteiros de aceitao no conseguem conferir por ser preenchida em segundo plano: cada consulta
+ *  repetida at dar o resultado esperado ou at o prazo acabar. Monta quatro comunidades (B
+ * divide 50 dos 60 membros de A, C divide 30, e D no divide nenhum), confere a ordem das
+ * semelhantes de A e a lista vazia de D, e repete a conferncia depois de reiniciar o sistema,
+ * quando a tabela  refeita a partir do zero. Termina com cdigo 1 se alguma conferncia falhar.
+ *
+ * <p>Grava arquivos de dados no diretrio atual; rode em um diretrio vazio.</p>
+ *
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.VerificacaoSemelhantes</pre>
+ */
+public class VerificacaoSemelhantes {
+    private static final long PRAZO_MS = 10_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (System.getProperty("jackut.diario.fsync") == null) {
+            System.setProperty("jackut.diario.fsync", "false");
+        }
+        Facade facade = new Facade();
+        facade.zerarSistema();
+        criarComunidade(facade, "A", "u", 0, 60);
+        criarComunidade(facade, "B", "u", 0, 50);
+        incluir(facade, "B", "v", 0, 10);
+        criarComunidade(facade, "C", "u", 0, 30);
+        incluir(facade, "C", "w", 0, 10);
+        criarComunidade(facade, "D", "x", 0, 30);
+
+        int falhas = 0;
+        falhas += conferir(facade, "A", "{B,C}", "antes de reiniciar");
+        falhas += conferir(facade, "D", "{}", "antes de reiniciar");
+        facade.encerrarSistema();
+        facade = new Facade();
+        falhas += conferir(facade, "A", "{B,C}", "depois de reiniciar");
+        falhas += conferir(facade, "B", "{A,C}", "depois de reiniciar");
+        falhas += conferir(facade, "D", "{}", "depois de reiniciar");
+        facade.encerrarSistema();
+        if (falhas > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** Cria uma comunidade com o primeiro login do intervalo como dono e os demais como membros. */
+    private static void criarComunidade(Facade facade, String nome, String prefixo, int inicio, int fim) {
+        String dono = prefixo + inicio;
+        criarUsuario(facade, dono);
+        facade.criarComunidade(facade.abrirSessao(dono, "senha"), nome, "Comunidade " + nome);
+        incluir(facade, nome, prefixo, inicio + 1, fim);
+    }
+
+    private static void incluir(Facade facade, String nome, String prefixo, int inicio, int fim) {
+        for (int i = inicio; i < fim; i++) {
+            criarUsuario(facade, prefixo + i);
+            facade.adicionarComunidade(facade.abrirSessao(prefixo + i, "senha"), nome);
+        }
+    }
+
+    private static void criarUsuario(Facade facade, String login) {
+        try {
+            facade.criarUsuario(login, "senha", login);
+        } catch (RuntimeException e) {
+            // J criado para outra comunidade
+        }
+    }
+
+    /** Repete a consulta at que ela d o resultado esperado ou at o prazo acabar. */
+    private static int conferir(Facade facade, String comunidade, String esperado, String fase)
+            throws InterruptedException {
+        long limite = System.currentTimeMillis() + PRAZO_MS;
+        String obtido = facade.getComunidadesSemelhantes(comunidade);
+        while (!obtido.equals(esperado) && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+            obtido = facade.getComunidadesSemelhantes(comunidade);
+        }
+        boolean ok = obtido.equals(esperado);
+        System.out.printf("%s, %s: %s (esperado %s) %s%n", fase, comunidade, obtido, esperado, ok ? "ok" : "FALHOU");
+        return ok ? 0 : 1;
+    }
+}
@@ -0,0 +1,74 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.Facade;
+
+/**
+ * Confere, pela {@link Facade}, que um ID de sesso s vale escrito exatamente como foi entregue,
+ * o que os roteiros de aceitao no conseguem conferir com um ID de verdade: o ID em maisculas
+ * ou com dgitos de outro alfabeto (que {@link Character#digit(char, int)} aceitaria) no edita
+ * o perfil nem remove a conta, a sesso original continua valendo, e deixa de valer depois que a
+ * conta  removida por ela. Termina com cdigo 1 se alguma conferncia falhar.
+ *
+ * <p>Grava arquivos de dados no diretrio atual; rode em um diretrio vazio.</p>
+ *
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.VerificacaoSessoes</pre>
+ */
+public class VerificacaoSessoes {
+
+    public static void main(String[] args) {
+        if (System.getProperty("jackut.diario.fsync") == null) {
+            System.setProperty("jackut.diario.fsync", "false");
+        }
+        Facade facade = new Facade();
+        facade.zerarSistema();
+        facade.criarUsuario("ana", "senha", "Ana");
+        String aberta = facade.abrirSessao("ana", "senha");
+        while (aberta.toUpperCase().equals(aberta)) { // Precisa de ao menos uma letra para mudar de caixa
+            aberta = facade.abrirSessao("ana", "senha");
+        }
+        String id = aberta;
+        String maiusculas = id.toUpperCase();
+        String outrosDigitos = trocarDigito(id);
+
+        int falhas = 0;
+        falhas += conferir("editar o perfil com o ID em maisculas", false,
+                () -> facade.editarPerfil(maiusculas, "descricao", "maiusculas"));
+        falhas += conferir("editar o perfil com dgitos de outro alfabeto", false,
+                () -> facade.editarPerfil(outrosDigitos, "descricao", "outros digitos"));
+        falhas += conferir("remover a conta com o ID em maisculas", false, () -> facade.removerUsuario(maiusculas));
+        falhas += conferir("editar o perfil com o ID original", true,
+                () -> facade.editarPerfil(id, "descricao", "original"));
+        falhas += conferir("remover a conta com o ID original", true, () -> facade.removerUsuario(id));
+        falhas += conferir("editar o perfil depois da remoo", false,
+                () -> facade.editarPerfil(id, "descricao", "removida"));
+        facade.encerrarSistema();
+        if (falhas > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** Troca o primeiro dgito decimal do segredo pelo mesmo dgito rabe-ndico (U+0660 a U+0669). */
+    private static String trocarDigito(String id) {
+        char[] texto = id.toCharArray();
+        for (int i = texto.length - 1; i > 8; i--) {
+            if (texto[i] >= '0' && texto[i] <= '9') {
+                texto[i] = (char) ('\u0660' + texto[i] - '0');
+                break;
+            }
+        }
+        return new String(texto);
+    }
+
+    private static int conferir(String operacao, boolean aceita, Runnable comando) {
+        String obtido;
+        try {
+            comando.run();
+            obtido = "aceita";
+        } catch (RuntimeException e) {
+            obtido = "recusada (" + e.getMessage() + ")";
+        }
+        boolean ok = obtido.equals("aceita") == aceita;
+        System.out.printf("%s: %s %s%n", operacao, obtido, ok ? "ok" : "FALHOU");
+        return ok ? 0 : 1;
+    }
+}
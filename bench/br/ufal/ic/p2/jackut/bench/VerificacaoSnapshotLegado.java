@@ -0,0 +1,88 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.model.Facade;
+import br.ufal.ic.p2.jackut.model.models.Usuario;
+import br.ufal.ic.p2.jackut.model.persistencia.FormatoSnapshot;
+import br.ufal.ic.p2.jackut.model.persistencia.Segmento;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Confere a converso de um {@code dados.ser} gravado com serializao Java (por padro, o que
+ * acompanha o repositrio): copia o arquivo para o diretrio atual, inicia o sistema, que o
+ * converte na carga, e confere pela {@link Facade} o nome, os amigos e as comunidades de cada
+ * usurio e as sesses gravadas nele. Repete a conferncia depois de reiniciar o sistema, quando
+ * os dados j vm do formato novo. Termina com cdigo 1 se alguma conferncia falhar.
+ *
+ * <p>Grava arquivos de dados no diretrio atual; rode em um diretrio vazio.</p>
+ *
+ * <pre>java -cp out br.ufal.ic.p2.jackut.bench.VerificacaoSnapshotLegado [caminho/do/dados.ser]</pre>
+ */
+public class VerificacaoSnapshotLegado {
+
+    public static void main(String[] args) throws IOException {
+        if (System.getProperty("jackut.diario.fsync") == null) {
+            System.setProperty("jackut.diario.fsync", "false");
+        }
+        File original = new File(args.length > 0 ? args[0] : "dados.ser");
+        File copia = new File("dados.ser");
+        if (!original.getCanonicalFile().equals(copia.getCanonicalFile())) {
+            Files.copy(original.toPath(), copia.toPath());
+        }
+        Segmento esperado = FormatoSnapshot.lerLegado(copia);
+
+        int falhas = 0;
+        Facade facade = new Facade();
+        if (copia.exists() || !new File("dados.ser.convertido").exists()) {
+            System.out.println("dados.ser no foi convertido FALHOU");
+            falhas++;
+        }
+        falhas += conferir(facade, esperado, "depois de converter");
+        facade.encerrarSistema();
+        facade = new Facade();
+        falhas += conferir(facade, esperado, "depois de reiniciar");
+        facade.encerrarSistema();
+        if (falhas > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int conferir(Facade facade, Segmento esperado, String fase) {
+        int falhas = 0;
+        for (Usuario usuario : esperado.getUsuarios().values()) {
+            String login = usuario.getLogin();
+            falhas += comparar(fase, login + ", nome", usuario.getNome(), () -> facade.getAtributoUsuario(login, "nome"));
+            falhas += comparar(fase, login + ", amigos", formatar(usuario.getAmigos()), () -> facade.getAmigos(login));
+            falhas += comparar(fase, login + ", comunidades", formatar(usuario.getComunidades()),
+                    () -> facade.getComunidades(login));
+        }
+        for (Map.Entry<String, String> sessao : esperado.getSessoes().entrySet()) {
+            // Editar o nome com o prprio nome s passa se a sesso ainda levar ao usurio
+            String nome = esperado.getUsuarios().get(sessao.getValue()).getNome();
+            falhas += comparar(fase, "sesso " + sessao.getKey(), "ok", () -> {
+                facade.editarPerfil(sessao.getKey(), "nome", nome);
+                return "ok";
+            });
+        }
+        return falhas;
+    }
+
+    private static int comparar(String fase, String item, String esperado, Supplier<String> consulta) {
+        String obtido;
+        try {
+            obtido = consulta.get();
+        } catch (RuntimeException e) {
+            obtido = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+        boolean ok = obtido.equals(esperado);
+        System.out.printf("%s, %s: %s (esperado %s) %s%n", fase, item, obtido, esperado, ok ? "ok" : "FALHOU");
+        return ok ? 0 : 1;
+    }
+
+    private static String formatar(Iterable<String> logins) {
+        return "{" + String.join(",", logins) + "}";
+    }
+}
@@ -2,14 +2,28 @@ package br.ufal.ic.p2.jackut.model;
 
 import br.ufal.ic.p2.jackut.model.exceptions.*;
 import br.ufal.ic.p2.jackut.model.models.*;
+import br.ufal.ic.p2.jackut.model.metricas.Metricas;
 import java.io.Serializable;
 import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Fachada principal do sistema Jackut. Fornece uma interface simplificada para todas as operaes do sistema,
  * encapsulando a complexidade da lgica de negcio e servindo como ponto nico de integrao para interfaces externas.
  *
- * <p>Gerencia persistncia de dados automaticamente ao inicializar e encerrar o sistema.</p>
+ * <p>Gerencia persistncia de dados automaticamente ao inicializar e encerrar o sistema. Uma
+ * fachada usada depois de {@link #encerrarSistema()} carrega os dados do disco de novo, como uma
+ * nova execuo;  assim que os roteiros de aceitao, que usam a mesma fachada do incio ao fim,
+ * verificam o que sobrevive ao encerramento.</p>
+ *
+ * <p>Pode ser chamada por vrias threads ao mesmo tempo: cada operao trava apenas os usurios e
+ * comunidades envolvidos (ver {@link Sistema}).</p>
+ *
+ * <p>Cada chamada  medida: latncia, erros por tipo de exceo e tamanho dos dados lidos ou
+ * gravados (ver {@link #getEstatisticas()}).</p>
+ *
+ * <p>As operaes que agem em nome de qualquer usurio sem sesso (cargas em lote e importao
+ * de dados) ficam em {@link FacadeAdministrativa}.</p>
  *
  * @see Sistema
  */
@@ -17,12 +31,61 @@ public class Facade implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /**
-     * Instncia do sistema que contm a lgica de negcio
+     * Instncia do sistema que contm a lgica de negcio (usada tambm pela
+     * {@link FacadeAdministrativa})
+     */
+    Sistema sistema;
+
+    /**
+     * Indica que o sistema foi encerrado e deve ser carregado de novo na prxima chamada
      */
-    private Sistema sistema;
+    private transient volatile boolean encerrada;
+
+    /**
+     * Medies das chamadas desta fachada
+     */
+    private final transient Metricas<Operacao> metricas = new Metricas<>(Operacao.class, "jackut_facade");
+
+    /**
+     * Operaes medidas, com o nome exportado nas estatsticas.
+     */
+    enum Operacao {
+        ZERAR_SISTEMA("zerarSistema"), CRIAR_USUARIO("criarUsuario"), ABRIR_SESSAO("abrirSessao"),
+        GET_ATRIBUTO_USUARIO("getAtributoUsuario"), EDITAR_PERFIL("editarPerfil"), ADICIONAR_AMIGO("adicionarAmigo"),
+        EH_AMIGO("ehAmigo"), GET_AMIGOS("getAmigos"), ENVIAR_RECADO("enviarRecado"), LER_RECADO("lerRecado"),
+        ENCERRAR_SISTEMA("encerrarSistema"), CRIAR_COMUNIDADE("criarComunidade"), REMOVER_USUARIO("removerUsuario"),
+        GET_DESCRICAO_COMUNIDADE("getDescricaoComunidade"), GET_DONO_COMUNIDADE("getDonoComunidade"),
+        GET_MEMBROS_COMUNIDADE("getMembrosComunidade"), GET_MEMBROS_EM_COMUM("getMembrosEmComum"),
+        GET_QUANTIDADE_MEMBROS_EM_COMUM("getQuantidadeMembrosEmComum"), GET_AMIGOS_NA_COMUNIDADE("getAmigosNaComunidade"),
+        GET_AMIGOS_EM_COMUM("getAmigosEmComum"), GET_QUANTIDADE_AMIGOS_EM_COMUM("getQuantidadeAmigosEmComum"),
+        GET_COMUNIDADES_EM_COMUM("getComunidadesEmComum"),
+        GET_QUANTIDADE_COMUNIDADES_EM_COMUM("getQuantidadeComunidadesEmComum"),
+        GET_SUGESTOES_DE_AMIGOS("getSugestoesDeAmigos"), GET_COMUNIDADES_SEMELHANTES("getComunidadesSemelhantes"),
+        GET_COMUNIDADES("getComunidades"),
+        ADICIONAR_COMUNIDADE("adicionarComunidade"), ENVIAR_MENSAGEM("enviarMensagem"), LER_MENSAGEM("lerMensagem"),
+        ADICIONAR_IDOLO("adicionarIdolo"), EH_FA("ehFa"), GET_FAS("getFas"), ADICIONAR_PAQUERA("adicionarPaquera"),
+        EH_PAQUERA("ehPaquera"), GET_PAQUERAS("getPaqueras"), ADICIONAR_INIMIGO("adicionarInimigo"),
+        GET_INIMIGOS("getInimigos"), GET_AMIGOS_PAGINADOS("getAmigosPaginados"), GET_FAS_PAGINADOS("getFasPaginados"),
+        GET_IDOLOS_PAGINADOS("getIdolosPaginados"), GET_PAQUERAS_PAGINADAS("getPaquerasPaginadas"),
+        GET_INIMIGOS_PAGINADOS("getInimigosPaginados"), GET_COMUNIDADES_PAGINADAS("getComunidadesPaginadas"),
+        GET_MEMBROS_COMUNIDADE_PAGINADOS("getMembrosComunidadePaginados"), CRIAR_USUARIOS("criarUsuarios"), ADICIONAR_AMIGOS("adicionarAmigos"),
+        ADICIONAR_COMUNIDADES("adicionarComunidades"), IMPORTAR_DADOS("importarDados");
+
+        private final String nome;
+
+        Operacao(String nome) {
+            this.nome = nome;
+        }
+
+        @Override
+        public String toString() {
+            return nome;
+        }
+    }
 
     /**
-     * Inicializa a fachada carregando dados persistentes do arquivo "dados.ser".
+     * Inicializa a fachada carregando dados persistentes do arquivo "dados.ser" e reproduzindo
+     * as operaes gravadas em "dados.diario" desde ento.
      * Se o arquivo no existir, cria um novo sistema vazio.
      */
     public Facade() {
@@ -33,7 +96,7 @@ public class Facade implements Serializable {
      * Reinicia completamente o sistema, removendo todos os usurios, sesses e comunidades.
      */
     public void zerarSistema() {
-        sistema.zerarSistema();
+        executar(Operacao.ZERAR_SISTEMA, 0, () -> sistema.zerarSistema());
     }
 
     /**
@@ -44,18 +107,18 @@ public class Facade implements Serializable {
      * @throws IllegalArgumentException Se login/senha forem vazios ou login j existir
      */
     public void criarUsuario(String login, String senha, String nome) {
-        sistema.criarUsuario(login, senha, nome);
+        executar(Operacao.CRIAR_USUARIO, tamanho(nome), () -> sistema.criarUsuario(login, senha, nome));
     }
 
     /**
      * Autentica um usurio e inicia uma nova sesso.
      * @param login Login do usurio
      * @param senha Senha correspondente
-     * @return ID nico da sesso no formato UUID
+     * @return ID nico da sesso
      * @throws IllegalArgumentException Se credenciais forem invlidas
      */
     public String abrirSessao(String login, String senha) {
-        return sistema.abrirSessao(login, senha);
+        return medir(Operacao.ABRIR_SESSAO, 0, () -> sistema.abrirSessao(login, senha));
     }
 
     /**
@@ -67,7 +130,7 @@ public class Facade implements Serializable {
      * @throws AtributoNaoPreenchidoException Se o atributo no estiver definido
      */
     public String getAtributoUsuario(String login, String atributo) {
-        return sistema.getAtributoUsuario(login, atributo);
+        return medir(Operacao.GET_ATRIBUTO_USUARIO, 0, () -> sistema.getAtributoUsuario(login, atributo));
     }
 
     /**
@@ -78,7 +141,7 @@ public class Facade implements Serializable {
      * @throws IllegalArgumentException Se a sesso for invlida
      */
     public void editarPerfil(String idSessao, String atributo, String valor) {
-        sistema.editarPerfil(idSessao, atributo, valor);
+        executar(Operacao.EDITAR_PERFIL, tamanho(valor), () -> sistema.editarPerfil(idSessao, atributo, valor));
     }
 
     /**
@@ -89,7 +152,7 @@ public class Facade implements Serializable {
      * @throws AmizadeExistenteException Se j existir amizade ou convite pendente
      */
     public void adicionarAmigo(String idSessao, String amigo) {
-        sistema.adicionarAmigo(idSessao, amigo);
+        executar(Operacao.ADICIONAR_AMIGO, 0, () -> sistema.adicionarAmigo(idSessao, amigo));
     }
 
     /**
@@ -100,7 +163,7 @@ public class Facade implements Serializable {
      * @throws IllegalArgumentException Se algum dos usurios no existir
      */
     public boolean ehAmigo(String login, String amigo) {
-        return sistema.ehAmigo(login, amigo);
+        return medir(Operacao.EH_AMIGO, 0, () -> sistema.ehAmigo(login, amigo));
     }
 
     /**
@@ -110,7 +173,7 @@ public class Facade implements Serializable {
      * @throws IllegalArgumentException Se o usurio no existir
      */
     public String getAmigos(String login) {
-        return sistema.getAmigos(login);
+        return medir(Operacao.GET_AMIGOS, 0, () -> sistema.getAmigos(login));
     }
 
     /**
@@ -121,7 +184,7 @@ public class Facade implements Serializable {
      * @throws IllegalArgumentException Se a sesso for invlida, destinatrio no existir ou for o mesmo que o remetente
      */
     public void enviarRecado(String idSessao, String destinatario, String mensagem) {
-        sistema.enviarRecado(idSessao, destinatario, mensagem);
+        executar(Operacao.ENVIAR_RECADO, tamanho(mensagem), () -> sistema.enviarRecado(idSessao, destinatario, mensagem));
     }
 
     /**
@@ -132,14 +195,15 @@ public class Facade implements Serializable {
      * @throws IllegalStateException Se no houver recados
      */
     public String lerRecado(String idSessao) {
-        return sistema.lerRecado(idSessao);
+        return medir(Operacao.LER_RECADO, 0, () -> sistema.lerRecado(idSessao));
     }
 
     /**
-     * Encerra o sistema, salvando os dados persistentes.
+     * Encerra o sistema, salvando os dados persistentes e fechando o dirio de operaes.
      */
     public void encerrarSistema() {
-        sistema.salvarDados();
+        executar(Operacao.ENCERRAR_SISTEMA, 0, () -> sistema.encerrar());
+        encerrada = true;
     }
     /**
      * Gerencia comunidades: cria uma nova comunidade.
@@ -149,8 +213,10 @@ public class Facade implements Serializable {
      * @throws ComunidadeExistenteException Se o nome j estiver em uso
      */
     public void criarComunidade(String sessaoId, String nome, String descricao) {
-        Sessao sessao = sistema.getSessao(sessaoId);
-        sistema.criarComunidade(nome, descricao, sessao.getUsuario().getLogin());
+        executar(Operacao.CRIAR_COMUNIDADE, tamanho(descricao), () -> {
+            Sessao sessao = sistema.getSessao(sessaoId);
+            sistema.criarComunidade(nome, descricao, sessao.getUsuario().getLogin());
+        });
     }
     /**
      * Remove um usurio do sistema com base no identificador da sesso.
@@ -158,7 +224,7 @@ public class Facade implements Serializable {
      * @param idSessao O identificador da sesso do usurio a ser removido.
      */
     public void removerUsuario(String idSessao) {
-        sistema.removerUsuario(idSessao);
+        executar(Operacao.REMOVER_USUARIO, 0, () -> sistema.removerUsuario(idSessao));
     }
 
     /**
@@ -168,7 +234,7 @@ public class Facade implements Serializable {
      * @return A descrio da comunidade.
      */
     public String getDescricaoComunidade(String nome) {
-        return sistema.getDescricaoComunidade(nome);
+        return medir(Operacao.GET_DESCRICAO_COMUNIDADE, 0, () -> sistema.getDescricaoComunidade(nome));
     }
 
     /**
@@ -178,7 +244,7 @@ public class Facade implements Serializable {
      * @return O nome do dono da comunidade.
      */
     public String getDonoComunidade(String nome) {
-        return sistema.getDonoComunidade(nome); // Note o "m" em "Comunidade"
+        return medir(Operacao.GET_DONO_COMUNIDADE, 0, () -> sistema.getDonoComunidade(nome)); // Note o "m" em "Comunidade"
     }
     /**
      * Retorna os membros da comunidade com base no nome fornecido.
@@ -187,7 +253,111 @@ public class Facade implements Serializable {
      * @return Uma lista formatada dos membros da comunidade.
      */
     public String getMembrosComunidade(String nome) {
-        return sistema.getMembrosComunidade(nome);
+        return medir(Operacao.GET_MEMBROS_COMUNIDADE, 0, () -> sistema.getMembrosComunidade(nome));
+    }
+    /**
+     * Retorna os usurios que so membros de duas comunidades.
+     *
+     * @param comunidade1 Nome da primeira comunidade
+     * @param comunidade2 Nome da segunda comunidade
+     * @return Uma lista formatada dos membros em comum, na ordem de entrada na primeira comunidade
+     * @throws ComunidadeNaoExisteException Se alguma das comunidades no existir
+     */
+    public String getMembrosEmComum(String comunidade1, String comunidade2) {
+        return medir(Operacao.GET_MEMBROS_EM_COMUM, 0, () -> sistema.getMembrosEmComum(comunidade1, comunidade2));
+    }
+    /**
+     * Conta os usurios que so membros de duas comunidades.
+     *
+     * @param comunidade1 Nome da primeira comunidade
+     * @param comunidade2 Nome da segunda comunidade
+     * @return Quantidade de membros em comum
+     * @throws ComunidadeNaoExisteException Se alguma das comunidades no existir
+     */
+    public int getQuantidadeMembrosEmComum(String comunidade1, String comunidade2) {
+        return medir(Operacao.GET_QUANTIDADE_MEMBROS_EM_COMUM, 0,
+                () -> sistema.getQuantidadeMembrosEmComum(comunidade1, comunidade2));
+    }
+    /**
+     * Retorna as comunidades cujos membros mais se sobrepem aos de uma comunidade. A tabela 
+     * atualizada em segundo plano e pode no refletir as ltimas entradas.
+     *
+     * @param comunidade Nome da comunidade
+     * @return Uma lista formatada das comunidades, da mais semelhante para a menos
+     * @throws ComunidadeNaoExisteException Se a comunidade no existir
+     */
+    public String getComunidadesSemelhantes(String comunidade) {
+        return medir(Operacao.GET_COMUNIDADES_SEMELHANTES, 0, () -> sistema.getComunidadesSemelhantes(comunidade));
+    }
+    /**
+     * Retorna os amigos de um usurio que so membros de uma comunidade.
+     *
+     * @param login Login do usurio
+     * @param comunidade Nome da comunidade
+     * @return Uma lista formatada dos amigos membros, na ordem dos amigos
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir
+     * @throws ComunidadeNaoExisteException Se a comunidade no existir
+     */
+    public String getAmigosNaComunidade(String login, String comunidade) {
+        return medir(Operacao.GET_AMIGOS_NA_COMUNIDADE, 0, () -> sistema.getAmigosNaComunidade(login, comunidade));
+    }
+    /**
+     * Retorna os amigos que dois usurios tm em comum.
+     *
+     * @param login1 Login do primeiro usurio
+     * @param login2 Login do segundo usurio
+     * @return Uma lista formatada dos amigos em comum, na ordem de amizade do primeiro
+     * @throws UsuarioNaoCadastradoException Se algum dos usurios no existir
+     */
+    public String getAmigosEmComum(String login1, String login2) {
+        return medir(Operacao.GET_AMIGOS_EM_COMUM, 0, () -> sistema.getAmigosEmComum(login1, login2));
+    }
+    /**
+     * Conta os amigos que dois usurios tm em comum, sem list-los.
+     *
+     * @param login1 Login do primeiro usurio
+     * @param login2 Login do segundo usurio
+     * @return Quantidade de amigos em comum
+     * @throws UsuarioNaoCadastradoException Se algum dos usurios no existir
+     */
+    public int getQuantidadeAmigosEmComum(String login1, String login2) {
+        return medir(Operacao.GET_QUANTIDADE_AMIGOS_EM_COMUM, 0,
+                () -> sistema.getQuantidadeAmigosEmComum(login1, login2));
+    }
+    /**
+     * Retorna as comunidades de que dois usurios participam.
+     *
+     * @param login1 Login do primeiro usurio
+     * @param login2 Login do segundo usurio
+     * @return Uma lista formatada das comunidades em comum, na ordem de entrada do primeiro
+     * @throws UsuarioNaoCadastradoException Se algum dos usurios no existir
+     */
+    public String getComunidadesEmComum(String login1, String login2) {
+        return medir(Operacao.GET_COMUNIDADES_EM_COMUM, 0, () -> sistema.getComunidadesEmComum(login1, login2));
+    }
+    /**
+     * Conta as comunidades de que dois usurios participam, sem list-las.
+     *
+     * @param login1 Login do primeiro usurio
+     * @param login2 Login do segundo usurio
+     * @return Quantidade de comunidades em comum
+     * @throws UsuarioNaoCadastradoException Se algum dos usurios no existir
+     */
+    public int getQuantidadeComunidadesEmComum(String login1, String login2) {
+        return medir(Operacao.GET_QUANTIDADE_COMUNIDADES_EM_COMUM, 0,
+                () -> sistema.getQuantidadeComunidadesEmComum(login1, login2));
+    }
+    /**
+     * Sugere amigos para um usurio: amigos dos amigos dele, ordenados pela quantidade de amigos em
+     * comum, sem amigos, convites pendentes e inimigos.
+     *
+     * @param login Login do usurio
+     * @param quantidade Quantidade mxima de sugestes
+     * @return Uma lista formatada das sugestes, da que tem mais amigos em comum para a que tem menos
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir
+     */
+    public String getSugestoesDeAmigos(String login, int quantidade) {
+        return medir(Operacao.GET_SUGESTOES_DE_AMIGOS, 0, () -> sistema.getSugestoesDeAmigos(login, quantidade));
     }
     /**
      * Formata um conjunto de membros em uma string no formato {membro1,membro2,...}.
@@ -205,7 +375,7 @@ public class Facade implements Serializable {
      * @return Uma lista formatada das comunidades do usurio.
      */
     public String getComunidades(String login) {
-        return sistema.getComunidadesDoUsuarioFormatado(login);
+        return medir(Operacao.GET_COMUNIDADES, 0, () -> sistema.getComunidadesDoUsuarioFormatado(login));
     }
     /**
      * Adiciona um usurio  comunidade com base no ID da sesso e nome da comunidade.
@@ -214,10 +384,10 @@ public class Facade implements Serializable {
      * @param nomeComunidade O nome da comunidade  qual o usurio ser adicionado.
      */
     public void adicionarComunidade(String sessaoId, String nomeComunidade) {
-        sistema.adicionarMembroComunidade(
+        executar(Operacao.ADICIONAR_COMUNIDADE, 0, () -> sistema.adicionarMembroComunidade(
                 nomeComunidade,
                 sistema.getSessao(sessaoId).getUsuario().getLogin()
-        );
+        ));
     }
     /**
      * Formata um conjunto de comunidades em uma string no formato {comunidade1,comunidade2,...}.
@@ -238,7 +408,7 @@ public class Facade implements Serializable {
      * @throws UsuarioNaoCadastradoException Se a sesso for invlida
      */
     public void enviarMensagem(String idSessao, String comunidade, String mensagem) {
-        sistema.enviarMensagemComunidade(idSessao, comunidade, mensagem);
+        executar(Operacao.ENVIAR_MENSAGEM, tamanho(mensagem), () -> sistema.enviarMensagemComunidade(idSessao, comunidade, mensagem));
     }
     /**
      * L uma mensagem do usurio associado  sesso.
@@ -248,8 +418,7 @@ public class Facade implements Serializable {
      * @throws IllegalStateException Se no houver mensagens na fila de mensagens do usurio.
      */
     public String lerMensagem(String idSessao) {
-        Sessao sessao = sistema.getSessao(idSessao);
-        return sessao.getUsuario().lerMensagem(); // Chama o novo mtodo
+        return medir(Operacao.LER_MENSAGEM, 0, () -> sistema.lerMensagem(idSessao));
     }
     /**
      * Gerencia relacionamentos: adiciona um dolo.
@@ -259,7 +428,7 @@ public class Facade implements Serializable {
      * @throws BloqueioAutoIdolException Se tentar adicionar a si mesmo
      */
     public void adicionarIdolo(String idSessao, String idolo) {
-        sistema.adicionarIdolo(idSessao, idolo);
+        executar(Operacao.ADICIONAR_IDOLO, 0, () -> sistema.adicionarIdolo(idSessao, idolo));
     }
 
     /**
@@ -270,7 +439,7 @@ public class Facade implements Serializable {
      * @return {@code true} se o usurio for f do dolo, {@code false} caso contrrio.
      */
     public boolean ehFa(String login, String idolo) {
-        return sistema.ehFa(login, idolo);
+        return medir(Operacao.EH_FA, 0, () -> sistema.ehFa(login, idolo));
     }
 
     /**
@@ -280,7 +449,7 @@ public class Facade implements Serializable {
      * @return Uma lista formatada dos fs do usurio.
      */
     public String getFas(String login) {
-        return sistema.getFas(login);
+        return medir(Operacao.GET_FAS, 0, () -> sistema.getFas(login));
     }
 
     /**
@@ -290,7 +459,7 @@ public class Facade implements Serializable {
      * @param paquera O identificador da pessoa a ser adicionada como paquera.
      */
     public void adicionarPaquera(String idSessao, String paquera) {
-        sistema.adicionarPaquera(idSessao, paquera);
+        executar(Operacao.ADICIONAR_PAQUERA, 0, () -> sistema.adicionarPaquera(idSessao, paquera));
     }
 
     /**
@@ -301,8 +470,10 @@ public class Facade implements Serializable {
      * @return {@code true} se o usurio estiver paquerando a pessoa, {@code false} caso contrrio.
      */
     public boolean ehPaquera(String idSessao, String paquera) {
-        Sessao sessao = sistema.getSessao(idSessao);
-        return sistema.ehPaquera(sessao.getUsuario().getLogin(), paquera);
+        return medir(Operacao.EH_PAQUERA, 0, () -> {
+            Sessao sessao = sistema.getSessao(idSessao);
+            return sistema.ehPaquera(sessao.getUsuario().getLogin(), paquera);
+        });
     }
 
     /**
@@ -312,8 +483,10 @@ public class Facade implements Serializable {
      * @return Uma lista formatada das paqueras do usurio.
      */
     public String getPaqueras(String idSessao) {
-        Sessao sessao = sistema.getSessao(idSessao);
-        return sistema.getPaqueras(sessao.getUsuario().getLogin());
+        return medir(Operacao.GET_PAQUERAS, 0, () -> {
+            Sessao sessao = sistema.getSessao(idSessao);
+            return sistema.getPaqueras(sessao.getUsuario().getLogin());
+        });
     }
 
     /**
@@ -323,7 +496,7 @@ public class Facade implements Serializable {
      * @param inimigo O identificador do inimigo a ser adicionado.
      */
     public void adicionarInimigo(String idSessao, String inimigo) {
-        sistema.adicionarInimigo(idSessao, inimigo);
+        executar(Operacao.ADICIONAR_INIMIGO, 0, () -> sistema.adicionarInimigo(idSessao, inimigo));
     }
 
     /**
@@ -333,7 +506,190 @@ public class Facade implements Serializable {
      * @return Uma lista formatada dos inimigos do usurio.
      */
     public String getInimigos(String login) {
-        return sistema.getInimigos(login);
+        return medir(Operacao.GET_INIMIGOS, 0, () -> sistema.getInimigos(login));
+    }
+
+    /**
+     * Retorna uma pgina dos amigos de um usurio. As pginas seguem a ordem dos IDs dos logins,
+     * no a de {@link #getAmigos}.
+     *
+     * @param login Login do usurio
+     * @param cursor Cursor devolvido pela pgina anterior, ou {@code null} para a primeira
+     * @param limite Quantidade mxima de amigos da pgina
+     * @return A pgina, com o cursor da seguinte ({@code null} na ltima)
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido
+     * @see Pagina
+     */
+    public Pagina getAmigosPaginados(String login, String cursor, int limite) {
+        return medir(Operacao.GET_AMIGOS_PAGINADOS, 0, () -> sistema.getAmigosPaginados(login, cursor, limite));
+    }
+
+    /**
+     * Retorna uma pgina dos fs de um usurio.
+     *
+     * @param login Login do usurio
+     * @param cursor Cursor devolvido pela pgina anterior, ou {@code null} para a primeira
+     * @param limite Quantidade mxima de fs da pgina
+     * @return A pgina, com o cursor da seguinte ({@code null} na ltima)
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido
+     * @see Pagina
+     */
+    public Pagina getFasPaginados(String login, String cursor, int limite) {
+        return medir(Operacao.GET_FAS_PAGINADOS, 0, () -> sistema.getFasPaginados(login, cursor, limite));
+    }
+
+    /**
+     * Retorna uma pgina dos dolos de um usurio.
+     *
+     * @param login Login do usurio
+     * @param cursor Cursor devolvido pela pgina anterior, ou {@code null} para a primeira
+     * @param limite Quantidade mxima de dolos da pgina
+     * @return A pgina, com o cursor da seguinte ({@code null} na ltima)
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido
+     * @see Pagina
+     */
+    public Pagina getIdolosPaginados(String login, String cursor, int limite) {
+        return medir(Operacao.GET_IDOLOS_PAGINADOS, 0, () -> sistema.getIdolosPaginados(login, cursor, limite));
+    }
+
+    /**
+     * Retorna uma pgina das paqueras do usurio associado  sesso.
+     *
+     * @param idSessao O identificador da sesso do usurio
+     * @param cursor Cursor devolvido pela pgina anterior, ou {@code null} para a primeira
+     * @param limite Quantidade mxima de paqueras da pgina
+     * @return A pgina, com o cursor da seguinte ({@code null} na ltima)
+     * @throws IllegalArgumentException Se a sesso for invlida, o limite no for positivo ou o
+     *                                  cursor for invlido
+     * @see Pagina
+     */
+    public Pagina getPaquerasPaginadas(String idSessao, String cursor, int limite) {
+        return medir(Operacao.GET_PAQUERAS_PAGINADAS, 0, () -> {
+            Sessao sessao = sistema.getSessao(idSessao);
+            return sistema.getPaquerasPaginadas(sessao.getUsuario().getLogin(), cursor, limite);
+        });
+    }
+
+    /**
+     * Retorna uma pgina dos inimigos de um usurio.
+     *
+     * @param login Login do usurio
+     * @param cursor Cursor devolvido pela pgina anterior, ou {@code null} para a primeira
+     * @param limite Quantidade mxima de inimigos da pgina
+     * @return A pgina, com o cursor da seguinte ({@code null} na ltima)
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido
+     * @see Pagina
+     */
+    public Pagina getInimigosPaginados(String login, String cursor, int limite) {
+        return medir(Operacao.GET_INIMIGOS_PAGINADOS, 0, () -> sistema.getInimigosPaginados(login, cursor, limite));
+    }
+
+    /**
+     * Retorna uma pgina das comunidades de um usurio.
+     *
+     * @param login Login do usurio
+     * @param cursor Cursor devolvido pela pgina anterior, ou {@code null} para a primeira
+     * @param limite Quantidade mxima de comunidades da pgina
+     * @return A pgina, com o cursor da seguinte ({@code null} na ltima)
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido
+     * @see Pagina
+     */
+    public Pagina getComunidadesPaginadas(String login, String cursor, int limite) {
+        return medir(Operacao.GET_COMUNIDADES_PAGINADAS, 0,
+                () -> sistema.getComunidadesPaginadas(login, cursor, limite));
+    }
+
+    /**
+     * Retorna uma pgina dos membros de uma comunidade. As pginas seguem a ordem dos IDs dos
+     * logins, no a ordem de entrada de {@link #getMembrosComunidade}.
+     *
+     * @param comunidade Nome da comunidade
+     * @param cursor Cursor devolvido pela pgina anterior, ou {@code null} para a primeira
+     * @param limite Quantidade mxima de membros da pgina
+     * @return A pgina, com o cursor da seguinte ({@code null} na ltima)
+     * @throws ComunidadeNaoExisteException Se a comunidade no existir
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido
+     * @see Pagina
+     */
+    public Pagina getMembrosComunidadePaginados(String comunidade, String cursor, int limite) {
+        return medir(Operacao.GET_MEMBROS_COMUNIDADE_PAGINADOS, 0,
+                () -> sistema.getMembrosComunidadePaginados(comunidade, cursor, limite));
+    }
+
+    /**
+     * Retorna as estatsticas das chamadas desta fachada no formato de texto do Prometheus:
+     * histograma de latncia, erros por tipo de exceo e tamanho dos dados de cada operao.
+     * O tamanho  a quantidade de caracteres dos textos devolvidos ou gravados (mensagens,
+     * descries, valores de perfil), ou de itens nas operaes em lote.
+     *
+     * @return Texto no formato de exposio do Prometheus
+     */
+    public String getEstatisticas() {
+        return metricas.exportarPrometheus();
+    }
+
+    /**
+     * Executa e mede uma chamada que devolve um valor. Quando o valor  um texto, o seu tamanho 
+     * somado ao dos dados da chamada.
+     *
+     * @param operacao Operao medida
+     * @param tamanho Tamanho dos dados gravados pela chamada
+     * @param chamada Chamada ao sistema
+     * @return O valor devolvido pela chamada
+     */
+    <T> T medir(Operacao operacao, long tamanho, Supplier<T> chamada) {
+        reabrirSeEncerrada();
+        long inicio = metricas.iniciar();
+        T resultado;
+        try {
+            resultado = chamada.get();
+        } catch (RuntimeException e) {
+            throw metricas.registrarErro(operacao, inicio, e);
+        }
+        metricas.registrar(operacao, inicio, resultado instanceof String texto ? tamanho + texto.length() : tamanho);
+        return resultado;
+    }
+
+    /**
+     * Executa e mede uma chamada sem valor de retorno.
+     *
+     * @param operacao Operao medida
+     * @param tamanho Tamanho dos dados gravados pela chamada
+     * @param chamada Chamada ao sistema
+     */
+    private void executar(Operacao operacao, long tamanho, Runnable chamada) {
+        reabrirSeEncerrada();
+        long inicio = metricas.iniciar();
+        try {
+            chamada.run();
+        } catch (RuntimeException e) {
+            throw metricas.registrarErro(operacao, inicio, e);
+        }
+        metricas.registrar(operacao, inicio, tamanho);
+    }
+
+    /**
+     * Carrega o sistema do disco, fora das medies, se ele tiver sido encerrado. S a primeira
+     * chamada depois do encerramento o carrega; o sistema encerrado no volta a ser usado.
+     */
+    private void reabrirSeEncerrada() {
+        if (encerrada) {
+            synchronized (this) {
+                if (encerrada) {
+                    sistema = Sistema.carregarDados();
+                    encerrada = false;
+                }
+            }
+        }
+    }
+
+    private static long tamanho(String texto) {
+        return texto == null ? 0 : texto.length();
     }
 
 }
\ No newline at end of file
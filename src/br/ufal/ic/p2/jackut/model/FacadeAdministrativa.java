@@ -0,0 +1,66 @@
+package br.ufal.ic.p2.jackut.model;
+
+import br.ufal.ic.p2.jackut.model.models.*;
+import br.ufal.ic.p2.jackut.model.persistencia.ImportadorDeDados;
+import java.io.File;
+
+/**
+ * Fachada das operaes administrativas do Jackut: as cargas em lote e a importao de dados, que
+ * agem em nome de qualquer usurio sem sesso e por isso no ficam na {@link Facade} exposta aos
+ * usurios.
+ *
+ * <p>Oferece tambm todas as operaes da {@link Facade}, sobre o mesmo sistema e com as mesmas
+ * medies. Deve ser usada no lugar dela, e no junto, j que cada fachada carrega o sistema dos
+ * arquivos de dados.</p>
+ *
+ * @see Facade
+ */
+public class FacadeAdministrativa extends Facade {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Cria vrios usurios em uma nica operao (ex.: migrao de outra rede). Os erros de cada
+     * item so devolvidos no resultado, em vez de lanados.
+     *
+     * @param usuarios Itens no formato {@code {login, senha, nome}}
+     * @return Resultado de cada item, na ordem informada
+     * @see Sistema#criarUsuarios(String[][])
+     */
+    public ResultadoLote criarUsuarios(String[][] usuarios) {
+        return medir(Operacao.CRIAR_USUARIOS, usuarios.length, () -> sistema.criarUsuarios(usuarios));
+    }
+
+    /**
+     * Pede vrias amizades em uma nica operao, pelo login de quem pede (sem sesso).
+     *
+     * @param pares Itens no formato {@code {login, amigo}}
+     * @return Resultado de cada item, na ordem informada
+     * @see Sistema#adicionarAmigos(String[][])
+     */
+    public ResultadoLote adicionarAmigos(String[][] pares) {
+        return medir(Operacao.ADICIONAR_AMIGOS, pares.length, () -> sistema.adicionarAmigos(pares));
+    }
+
+    /**
+     * Adiciona vrios usurios a comunidades em uma nica operao, pelo login (sem sesso).
+     *
+     * @param membros Itens no formato {@code {login, comunidade}}
+     * @return Resultado de cada item, na ordem informada
+     * @see Sistema#adicionarMembrosComunidades(String[][])
+     */
+    public ResultadoLote adicionarComunidades(String[][] membros) {
+        return medir(Operacao.ADICIONAR_COMUNIDADES, membros.length, () -> sistema.adicionarMembrosComunidades(membros));
+    }
+
+    /**
+     * Substitui todos os dados do sistema pelos arquivos de importao de um diretrio e grava
+     * um snapshot completo.
+     *
+     * @param diretorio Caminho do diretrio com os arquivos de importao
+     * @return O importador, com a contagem de linhas importadas e rejeitadas de cada arquivo
+     * @see Sistema#importarDados(File)
+     */
+    public ImportadorDeDados importarDados(String diretorio) {
+        return medir(Operacao.IMPORTAR_DADOS, 0, () -> sistema.importarDados(new File(diretorio)));
+    }
+}
@@ -0,0 +1,335 @@
+package br.ufal.ic.p2.jackut.model.concorrencia;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Entrega de mensagens a muitos destinatrios em segundo plano, para o modo em que as mensagens
+ * de comunidades so copiadas para a fila de cada membro no envio (propriedade
+ * {@value #PROPRIEDADE_MODO} igual a {@code envio}).
+ *
+ * <p>Os destinatrios so distribudos, por hash do login, entre faixas; cada faixa  uma fila de
+ * lotes executada por no mximo uma thread do pool de cada vez. Como um destinatrio cai sempre na
+ * mesma faixa e as mensagens entram nas faixas na ordem em que so publicadas, cada um as recebe
+ * nessa ordem. Faixas diferentes so entregues em paralelo.</p>
+ *
+ * <p>O envio reserva uma vaga antes de comear; com todas as vagas ocupadas por envios ainda no
+ * entregues, quem envia espera (contrapresso). Envios com poucos destinatrios (at o limite
+ * de {@value #PROPRIEDADE_LIMIAR}) so aguardados por quem envia, como se fossem sncronos; os
+ * maiores retornam assim que a mensagem  aceita.</p>
+ *
+ * <p>Cada lote  reservado por quem o executa ({@link Lote#entregar(BiConsumer)}), de modo que quem
+ * segura o sistema inteiro travado pode concluir os lotes pendentes
+ * ({@link #concluirPendentes(BiConsumer)}) sem esperar pelas threads de entrega.</p>
+ *
+ * @param <M> Tipo da mensagem.
+ */
+public class EntregadorDeMensagens<M> {
+    /** Como as mensagens de comunidades chegam aos membros: {@code leitura} (padro) ou {@code envio}. */
+    public static final String PROPRIEDADE_MODO = "jackut.mensagens.entrega";
+    /** Quantidade de destinatrios at a qual o envio aguarda a entrega. */
+    public static final String PROPRIEDADE_LIMIAR = "jackut.entrega.limiar";
+    /** Quantidade mxima de destinatrios por lote. */
+    public static final String PROPRIEDADE_LOTE = "jackut.entrega.lote";
+    /** Quantidade mxima de envios aceitos e ainda no entregues. */
+    public static final String PROPRIEDADE_PENDENTES = "jackut.entrega.pendentes";
+    /** Quantidade de threads de entrega. */
+    public static final String PROPRIEDADE_THREADS = "jackut.entrega.threads";
+
+    private final Consumer<Lote<M>> executarLote;
+    private final int limiar;
+    private final int tamanhoLote;
+    private final int maximoPendentes;
+    private final Semaphore vagas;
+    private final Faixa<M>[] faixas;
+    private final int mascara;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder envios = new LongAdder();
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder entregas = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+
+    /**
+     * @return {@code true} se o sistema estiver configurado para entregar as mensagens de
+     *         comunidades no envio.
+     */
+    public static boolean isAtivado() {
+        return "envio".equalsIgnoreCase(System.getProperty(PROPRIEDADE_MODO, "leitura"));
+    }
+
+    /**
+     * Cria o entregador.
+     *
+     * @param executarLote Executa um lote nas threads de entrega: trava os destinatrios e chama
+     *                     {@link Lote#entregar(BiConsumer)}.
+     */
+    public EntregadorDeMensagens(Consumer<Lote<M>> executarLote) {
+        int processadores = Runtime.getRuntime().availableProcessors();
+        int threads = Math.max(1, Integer.getInteger(PROPRIEDADE_THREADS, processadores));
+        this.executarLote = executarLote;
+        this.limiar = Integer.getInteger(PROPRIEDADE_LIMIAR, 1024);
+        this.tamanhoLote = Math.max(1, Integer.getInteger(PROPRIEDADE_LOTE, 256));
+        this.maximoPendentes = Math.max(1, Integer.getInteger(PROPRIEDADE_PENDENTES, 64));
+        this.vagas = new Semaphore(maximoPendentes);
+        int quantidade = Integer.highestOneBit(Math.max(1, 4 * threads - 1)) << 1;
+        @SuppressWarnings("unchecked")
+        Faixa<M>[] faixas = (Faixa<M>[]) new Faixa<?>[quantidade];
+        this.faixas = faixas;
+        for (int i = 0; i < quantidade; i++) {
+            faixas[i] = new Faixa<>();
+        }
+        this.mascara = quantidade - 1;
+        AtomicInteger numero = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), tarefa -> {
+            Thread thread = new Thread(tarefa, "jackut-entrega-" + numero.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // As threads terminam depois de um tempo sem lotes; o sistema pode continuar em uso mesmo
+        // depois de encerrado, ento o pool nunca  desligado.
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Reserva uma vaga para um envio, esperando se todas estiverem ocupadas. Deve ser chamado
+     * antes de adquirir qualquer trava, j que a vaga s  liberada pelas threads de entrega.
+     *
+     * @return Envio a ser publicado com {@link #publicar} e encerrado com {@link Envio#close()}.
+     * @throws IllegalStateException Se a thread for interrompida durante a espera.
+     */
+    public Envio<M> reservar() {
+        try {
+            vagas.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrompido aguardando a fila de entrega.", e);
+        }
+        return new Envio<>(this);
+    }
+
+    /**
+     * Divide os destinatrios em lotes por faixa, cria a mensagem e pe os lotes nas faixas. A
+     * mensagem  criada dentro da mesma seo crtica em que entra nas faixas, para que elas a
+     * recebam na ordem das sequncias.
+     *
+     * @param envio Envio reservado.
+     * @param destinatarios Logins dos destinatrios.
+     * @param criarMensagem Cria a mensagem (e d a ela sua sequncia).
+     * @return A mensagem publicada.
+     */
+    public M publicar(Envio<M> envio, Collection<String> destinatarios, Supplier<M> criarMensagem) {
+        List<List<String>> porFaixa = new ArrayList<>(faixas.length);
+        for (int i = 0; i < faixas.length; i++) {
+            porFaixa.add(new ArrayList<>());
+        }
+        for (String destinatario : destinatarios) {
+            porFaixa.get(faixa(destinatario)).add(destinatario);
+        }
+        List<Lote<M>> criados = new ArrayList<>();
+        for (int i = 0; i < faixas.length; i++) {
+            List<String> membros = porFaixa.get(i);
+            for (int inicio = 0; inicio < membros.size(); inicio += tamanhoLote) {
+                int fim = Math.min(membros.size(), inicio + tamanhoLote);
+                criados.add(new Lote<>(envio, i, membros.subList(inicio, fim).toArray(new String[0])));
+            }
+        }
+        envio.sincrono = destinatarios.size() <= limiar;
+        envio.restantes.set(criados.size() + 1);
+
+        M mensagem;
+        synchronized (this) {
+            mensagem = criarMensagem.get();
+            envio.mensagem = mensagem;
+            envio.publicado = true;
+            for (Lote<M> lote : criados) {
+                faixas[lote.faixa].fila.add(lote);
+            }
+        }
+        envios.increment();
+        for (Lote<M> lote : criados) {
+            agendar(faixas[lote.faixa]);
+        }
+        envio.concluirLote(); // A parcela da prpria publicao
+        return mensagem;
+    }
+
+    /**
+     * Entrega, na thread atual, todos os lotes ainda no entregues, faixa por faixa e em ordem.
+     * S deve ser chamado com o sistema inteiro travado: nenhuma thread de entrega pode estar no
+     * meio de um lote.
+     *
+     * @param entregar Entrega a mensagem a um destinatrio.
+     */
+    public void concluirPendentes(BiConsumer<String, M> entregar) {
+        for (Faixa<M> faixa : faixas) {
+            for (Lote<M> lote : faixa.fila) {
+                lote.entregar(entregar);
+            }
+        }
+    }
+
+    /** @return Quantidade de envios publicados. */
+    public long getEnvios() { return envios.sum(); }
+
+    /** @return Quantidade de lotes entregues. */
+    public long getLotesEntregues() { return lotes.sum(); }
+
+    /** @return Quantidade de mensagens entregues a destinatrios. */
+    public long getEntregas() { return entregas.sum(); }
+
+    /** @return Quantidade de lotes que terminaram em erro. */
+    public long getFalhas() { return falhas.sum(); }
+
+    /** @return Quantidade de envios aceitos e ainda no entregues por completo. */
+    public int getEnviosPendentes() {
+        return maximoPendentes - vagas.availablePermits();
+    }
+
+    private void agendar(Faixa<M> faixa) {
+        if (faixa.agendada.compareAndSet(false, true)) {
+            executor.execute(() -> executar(faixa));
+        }
+    }
+
+    private void executar(Faixa<M> faixa) {
+        while (true) {
+            Lote<M> lote;
+            while ((lote = faixa.fila.peek()) != null) {
+                try {
+                    executarLote.accept(lote);
+                } catch (RuntimeException e) {
+                    falhas.increment();
+                    System.err.println("Aviso: falha na entrega de mensagens: " + e);
+                    lote.abandonar();
+                }
+                faixa.fila.poll();
+            }
+            faixa.agendada.set(false);
+            // Um lote pode ter entrado depois da ltima consulta e antes de a faixa ser liberada
+            if (faixa.fila.isEmpty() || !faixa.agendada.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private int faixa(String destinatario) {
+        int h = destinatario.hashCode();
+        return (h ^ (h >>> 16)) & mascara;
+    }
+
+    private static final class Faixa<M> {
+        private final Queue<Lote<M>> fila = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean agendada = new AtomicBoolean();
+    }
+
+    /**
+     * Um envio: a vaga reservada, a mensagem e a contagem de lotes ainda no entregues.
+     *
+     * @param <M> Tipo da mensagem.
+     */
+    public static final class Envio<M> implements AutoCloseable {
+        private final EntregadorDeMensagens<M> entregador;
+        private final AtomicInteger restantes = new AtomicInteger();
+        private final CountDownLatch entregue = new CountDownLatch(1);
+        private volatile M mensagem;
+        private boolean publicado;
+        private boolean sincrono;
+
+        private Envio(EntregadorDeMensagens<M> entregador) {
+            this.entregador = entregador;
+        }
+
+        /** @return A mensagem, ou {@code null} se ainda no foi publicada. */
+        public M getMensagem() { return mensagem; }
+
+        /**
+         * Encerra o envio. Se ele no chegou a ser publicado (por exemplo, porque a operao
+         * falhou), devolve a vaga; se foi publicado para poucos destinatrios, aguarda a entrega.
+         * Deve ser chamado depois de liberar as travas, que as threads de entrega precisam.
+         */
+        @Override
+        public void close() {
+            if (!publicado) {
+                entregador.vagas.release();
+                return;
+            }
+            if (sincrono) {
+                try {
+                    entregue.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void concluirLote() {
+            if (restantes.decrementAndGet() == 0) {
+                entregador.vagas.release();
+                entregue.countDown();
+            }
+        }
+    }
+
+    /**
+     * Parte dos destinatrios de um envio, todos da mesma faixa.
+     *
+     * @param <M> Tipo da mensagem.
+     */
+    public static final class Lote<M> {
+        private final Envio<M> envio;
+        private final int faixa;
+        private final String[] destinatarios;
+        private final AtomicBoolean reservado = new AtomicBoolean();
+
+        private Lote(Envio<M> envio, int faixa, String[] destinatarios) {
+            this.envio = envio;
+            this.faixa = faixa;
+            this.destinatarios = destinatarios;
+        }
+
+        /** @return Logins dos destinatrios do lote (as chaves que a entrega precisa travar). */
+        public String[] getDestinatarios() { return destinatarios; }
+
+        /**
+         * Entrega a mensagem a todos os destinatrios, se o lote ainda no tiver sido entregue por
+         * outra thread. Deve ser chamado com os destinatrios travados.
+         *
+         * @param entregar Entrega a mensagem a um destinatrio.
+         */
+        public void entregar(BiConsumer<String, M> entregar) {
+            if (!reservado.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                for (String destinatario : destinatarios) {
+                    entregar.accept(destinatario, envio.mensagem);
+                }
+                envio.entregador.lotes.increment();
+                envio.entregador.entregas.add(destinatarios.length);
+            } finally {
+                envio.concluirLote();
+            }
+        }
+
+        private void abandonar() {
+            if (reservado.compareAndSet(false, true)) {
+                envio.concluirLote();
+            }
+        }
+    }
+}
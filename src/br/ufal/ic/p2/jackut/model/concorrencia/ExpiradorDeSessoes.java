@@ -0,0 +1,139 @@
+package br.ufal.ic.p2.jackut.model.concorrencia;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread de fundo que encerra as sesses ociosas ou abertas h tempo demais. Cada sesso  agendada
+ * em uma {@link RodaDeTempo} para o seu prazo; a cada tique, as sesses vencidas so verificadas
+ * por uma funo do sistema, que as encerra ou devolve um novo prazo.
+ *
+ * <p>Usar uma sesso no mexe na roda: s a hora do ltimo uso  atualizada. Quando o prazo
+ * agendado chega e a sesso foi usada nesse meio tempo, ela  reagendada para o prazo novo. Assim
+ * cada sesso custa O(1) para agendar e para expirar, e o uso no custa nada alm de uma escrita.</p>
+ *
+ * <p>Prazos configurveis, em milissegundos ({@code 0} desativa o limite):
+ * {@value #PROPRIEDADE_OCIOSIDADE} (padro 30 minutos sem uso) e {@value #PROPRIEDADE_DURACAO}
+ * (padro 24 horas desde a abertura).</p>
+ */
+public class ExpiradorDeSessoes implements Closeable {
+    /** Tempo mximo sem uso, em milissegundos. */
+    public static final String PROPRIEDADE_OCIOSIDADE = "jackut.sessao.ociosidade";
+    /** Tempo mximo desde a abertura, em milissegundos. */
+    public static final String PROPRIEDADE_DURACAO = "jackut.sessao.duracao";
+    /** Durao de um tique da roda, em milissegundos. */
+    public static final String PROPRIEDADE_RESOLUCAO = "jackut.sessao.resolucao";
+
+    private final long ociosidade;
+    private final long duracao;
+    private final ToLongFunction<String> verificar;
+    private final RodaDeTempo<String> roda;
+    private final ScheduledExecutorService executor;
+
+    private final LongAdder expiradas = new LongAdder();
+
+    /**
+     * Cria o expirador e inicia a thread de fundo.
+     *
+     * @param verificar Recebe o ID de uma sesso cujo prazo agendado chegou e devolve o novo
+     *                  prazo se ela foi usada nesse meio tempo, {@code 0} se ela expirou e foi
+     *                  encerrada, ou um valor negativo se ela j no existia.
+     */
+    public ExpiradorDeSessoes(ToLongFunction<String> verificar) {
+        this.ociosidade = Long.getLong(PROPRIEDADE_OCIOSIDADE, TimeUnit.MINUTES.toMillis(30));
+        this.duracao = Long.getLong(PROPRIEDADE_DURACAO, TimeUnit.HOURS.toMillis(24));
+        long resolucao = Math.max(1, Long.getLong(PROPRIEDADE_RESOLUCAO, 1000));
+        this.verificar = verificar;
+        this.roda = new RodaDeTempo<>(resolucao, System.currentTimeMillis());
+        this.executor = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "jackut-sessoes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (isAtivado()) {
+            executor.scheduleWithFixedDelay(this::executar, resolucao, resolucao, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** @return {@code true} se algum dos prazos estiver configurado. */
+    public boolean isAtivado() {
+        return ociosidade > 0 || duracao > 0;
+    }
+
+    /**
+     * Calcula o prazo de uma sesso.
+     *
+     * @param abertura Instante de abertura da sesso, em milissegundos.
+     * @param ultimoUso Instante do ltimo uso, em milissegundos.
+     * @return Instante em que a sesso expira, ou {@link Long#MAX_VALUE} se nunca expirar.
+     */
+    public long prazo(long abertura, long ultimoUso) {
+        long prazo = Long.MAX_VALUE;
+        if (ociosidade > 0) {
+            prazo = Math.min(prazo, ultimoUso + ociosidade);
+        }
+        if (duracao > 0) {
+            prazo = Math.min(prazo, abertura + duracao);
+        }
+        return prazo;
+    }
+
+    /**
+     * Agenda a verificao de uma sesso para o seu prazo.
+     *
+     * @param idSessao ID da sesso.
+     * @param prazo Instante, em milissegundos, em que ela expira.
+     */
+    public void agendar(String idSessao, long prazo) {
+        if (prazo == Long.MAX_VALUE) {
+            return;
+        }
+        synchronized (roda) {
+            roda.agendar(idSessao, prazo);
+        }
+    }
+
+    /** @return Quantidade de sesses encerradas por expirao desde a criao do expirador. */
+    public long getSessoesExpiradas() { return expiradas.sum(); }
+
+    /** @return Quantidade de sesses agendadas na roda (inclui as j encerradas de outra forma). */
+    public int getSessoesAgendadas() {
+        synchronized (roda) {
+            return roda.getTamanho();
+        }
+    }
+
+    /**
+     * Interrompe a thread de fundo. As sesses continuam sendo recusadas depois do prazo, mas no
+     * so mais retiradas do sistema.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void executar() {
+        List<String> vencidas = new ArrayList<>();
+        synchronized (roda) {
+            roda.avancar(System.currentTimeMillis(), vencidas::add);
+        }
+        for (String idSessao : vencidas) {
+            try {
+                long prazo = verificar.applyAsLong(idSessao);
+                if (prazo == 0) {
+                    expiradas.increment();
+                } else if (prazo > 0) {
+                    agendar(idSessao, prazo);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Aviso: falha ao expirar a sesso " + idSessao + ": " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package br.ufal.ic.p2.jackut.model.concorrencia;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Thread de fundo que desfaz, em lotes de tamanho limitado, as relaes das contas removidas
+ * (ver {@code Lapide}). Cada lote  executado por uma funo do sistema, que trava o que precisar
+ * e devolve quantas relaes desfez; entre um lote e outro as travas ficam livres, de modo que
+ * expurgar uma conta com milhes de fs no bloqueia as demais operaes por muito tempo.
+ *
+ * <p>Mantm contadores de progresso: lotes executados, relaes desfeitas e falhas.</p>
+ */
+public class ExpurgadorDeContas implements Closeable {
+    /** Quantidade mxima de relaes desfeitas por lote. */
+    public static final String PROPRIEDADE_LOTE = "jackut.expurgo.lote";
+
+    private final IntUnaryOperator executarLote;
+    private final int tamanhoLote;
+    private final ExecutorService executor;
+    private final AtomicBoolean agendado = new AtomicBoolean();
+    private volatile boolean fechado;
+
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder relacoesDesfeitas = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+
+    /**
+     * Cria o expurgador.
+     *
+     * @param executarLote Recebe o tamanho mximo do lote e devolve quantas relaes desfez, ou
+     *                     um valor negativo se no houver contas pendentes.
+     */
+    public ExpurgadorDeContas(IntUnaryOperator executarLote) {
+        this.executarLote = executarLote;
+        this.tamanhoLote = Math.max(1, Integer.getInteger(PROPRIEDADE_LOTE, 1024));
+        this.executor = Executors.newSingleThreadExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "jackut-expurgo");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Pede que o expurgo rode at no haver contas pendentes. Chamadas enquanto ele j est
+     * agendado no tm efeito.
+     */
+    public void agendar() {
+        if (!fechado && agendado.compareAndSet(false, true)) {
+            executor.execute(this::executar);
+        }
+    }
+
+    private void executar() {
+        agendado.set(false);
+        while (!fechado) {
+            int desfeitas;
+            try {
+                desfeitas = executarLote.applyAsInt(tamanhoLote);
+            } catch (RuntimeException e) {
+                // As lpides continuam gravadas; o expurgo  retomado no prximo agendamento.
+                falhas.increment();
+                System.err.println("Aviso: falha no expurgo de contas removidas: " + e);
+                return;
+            }
+            if (desfeitas < 0) {
+                return;
+            }
+            lotes.increment();
+            relacoesDesfeitas.add(desfeitas);
+        }
+    }
+
+    /** @return Quantidade de lotes executados. */
+    public long getLotesExecutados() { return lotes.sum(); }
+
+    /** @return Quantidade de relaes desfeitas desde a criao do expurgador. */
+    public long getRelacoesDesfeitas() { return relacoesDesfeitas.sum(); }
+
+    /** @return Quantidade de lotes que terminaram em erro. */
+    public long getFalhas() { return falhas.sum(); }
+
+    /**
+     * Interrompe o expurgo depois do lote em andamento e encerra a thread de fundo. O que faltar
+     * continua registrado nas lpides.
+     */
+    @Override
+    public void close() {
+        fechado = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
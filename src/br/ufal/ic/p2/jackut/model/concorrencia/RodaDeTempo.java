@@ -0,0 +1,136 @@
+package br.ufal.ic.p2.jackut.model.concorrencia;
+
+import java.util.function.Consumer;
+
+/**
+ * Roda de tempo hierrquica (<i>hierarchical timing wheel</i>): agenda itens para um instante e
+ * os devolve quando o tempo avana at ele. Agendar custa O(1), e cada item  movido entre os
+ * nveis no mximo uma vez por nvel, independentemente de quantos itens estejam agendados.
+ *
+ * <p>O tempo  dividido em tiques de {@code resolucao} milissegundos. O primeiro nvel tem uma
+ * posio por tique para os prximos 64 tiques; cada nvel seguinte cobre 64 posies do
+ * anterior. Quando o tique atual completa uma volta de um nvel, a posio correspondente do
+ * nvel acima  redistribuda nos nveis abaixo. Prazos alm do ltimo nvel so guardados nele e
+ * reagendados ao chegar a vez deles.</p>
+ *
+ * <p>No  segura para uso por vrias threads; quem a usa sincroniza os acessos.</p>
+ *
+ * @param <T> Tipo dos itens agendados.
+ */
+public class RodaDeTempo<T> {
+    private static final int BITS = 6;
+    private static final int POSICOES = 1 << BITS;
+    private static final int MASCARA = POSICOES - 1;
+    private static final int NIVEIS = 4;
+
+    private final long resolucao;
+    private final Entrada<T>[][] niveis;
+    private long tiqueAtual;
+    private int tamanho;
+
+    /**
+     * Cria a roda.
+     *
+     * @param resolucao Durao de um tique, em milissegundos.
+     * @param agora Instante atual, em milissegundos.
+     */
+    public RodaDeTempo(long resolucao, long agora) {
+        this.resolucao = Math.max(1, resolucao);
+        @SuppressWarnings("unchecked")
+        Entrada<T>[][] niveis = (Entrada<T>[][]) new Entrada<?>[NIVEIS][POSICOES];
+        this.niveis = niveis;
+        this.tiqueAtual = agora / this.resolucao;
+    }
+
+    /**
+     * Agenda um item. Prazos j vencidos so devolvidos no prximo tique.
+     *
+     * @param item Item a agendar.
+     * @param prazo Instante, em milissegundos, a partir do qual o item vence.
+     */
+    public void agendar(T item, long prazo) {
+        long tique = Math.max(tiqueAtual + 1, (prazo + resolucao - 1) / resolucao);
+        inserir(new Entrada<>(item, tique));
+        tamanho++;
+    }
+
+    /**
+     * Avana o tempo at o instante informado, entregando os itens vencidos em ordem de tique.
+     *
+     * @param agora Instante atual, em milissegundos.
+     * @param vencidos Recebe cada item vencido, que deixa a roda.
+     */
+    public void avancar(long agora, Consumer<T> vencidos) {
+        long alvo = agora / resolucao;
+        while (tiqueAtual < alvo) {
+            if (tamanho == 0) {
+                tiqueAtual = alvo;
+                return;
+            }
+            tiqueAtual++;
+            redistribuir(1);
+            int posicao = (int) (tiqueAtual & MASCARA);
+            Entrada<T> entrada = niveis[0][posicao];
+            niveis[0][posicao] = null;
+            while (entrada != null) {
+                Entrada<T> proxima = entrada.proxima;
+                entrada.proxima = null;
+                if (entrada.tique <= tiqueAtual) {
+                    tamanho--;
+                    vencidos.accept(entrada.item);
+                } else {
+                    inserir(entrada); // Prazo alm do ltimo nvel
+                }
+                entrada = proxima;
+            }
+        }
+    }
+
+    /** @return Quantidade de itens agendados. */
+    public int getTamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Se o tique atual completou uma volta do nvel abaixo, move os itens da posio atual deste
+     * nvel (e, em cascata, dos nveis acima) para os nveis inferiores.
+     */
+    private void redistribuir(int nivel) {
+        if (nivel >= NIVEIS || (tiqueAtual & ((1L << (BITS * nivel)) - 1)) != 0) {
+            return;
+        }
+        redistribuir(nivel + 1);
+        int posicao = (int) ((tiqueAtual >>> (BITS * nivel)) & MASCARA);
+        Entrada<T> entrada = niveis[nivel][posicao];
+        niveis[nivel][posicao] = null;
+        while (entrada != null) {
+            Entrada<T> proxima = entrada.proxima;
+            entrada.proxima = null;
+            inserir(entrada);
+            entrada = proxima;
+        }
+    }
+
+    private void inserir(Entrada<T> entrada) {
+        long distancia = entrada.tique - tiqueAtual;
+        int nivel = 0;
+        while (nivel < NIVEIS - 1 && distancia >= 1L << (BITS * (nivel + 1))) {
+            nivel++;
+        }
+        long tique = Math.min(entrada.tique, tiqueAtual + (1L << (BITS * NIVEIS)) - 1);
+        int posicao = (int) ((tique >>> (BITS * nivel)) & MASCARA);
+        entrada.proxima = niveis[nivel][posicao];
+        niveis[nivel][posicao] = entrada;
+    }
+
+    private static final class Entrada<T> {
+        private final T item;
+        private final long tique;
+        private Entrada<T> proxima;
+
+        private Entrada(T item, long tique) {
+            this.item = item;
+            this.tique = tique;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package br.ufal.ic.p2.jackut.model.concorrencia;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Travas em faixas (<i>lock striping</i>) para os objetos do sistema. Cada chave (o login de um
+ * usurio ou o nome de uma comunidade)  associada, por hash, a uma entre um nmero fixo de
+ * travas; operaes sobre objetos diferentes s disputam a mesma trava quando suas chaves caem
+ * na mesma faixa.
+ *
+ * <p>{@link #travar(String...)} adquire as faixas de todas as chaves de uma vez, sempre em ordem
+ * crescente de ndice, de modo que operaes entre dois ou mais objetos (amizade, dolo, paquera)
+ * nunca entram em impasse. Todas as operaes tambm seguram, em modo compartilhado, uma trava
+ * global de leitura e escrita; {@link #travarTudo()} a adquire em modo exclusivo para as
+ * operaes que alteram o sistema inteiro (remover usurio, zerar, capturar um checkpoint).</p>
+ */
+public class TravasPorChave {
+    /** Quantidade de faixas (arredondada para potncia de dois). */
+    public static final String PROPRIEDADE_FAIXAS = "jackut.travas.faixas";
+
+    private final ReentrantReadWriteLock global = new ReentrantReadWriteLock();
+    private final ReentrantLock[] faixas;
+    private final int mascara;
+    private final Runnable aposLiberar;
+
+    /**
+     * Cria as travas.
+     *
+     * @param aposLiberar Ao executada quando uma thread libera sua ltima trava (ex.: aguardar
+     *                    a durabilidade do dirio ou iniciar um checkpoint pendente).
+     */
+    public TravasPorChave(Runnable aposLiberar) {
+        int quantidade = Integer.getInteger(PROPRIEDADE_FAIXAS, 16 * Runtime.getRuntime().availableProcessors());
+        int potencia = Integer.highestOneBit(Math.max(1, quantidade - 1)) << 1;
+        this.faixas = new ReentrantLock[potencia];
+        for (int i = 0; i < potencia; i++) {
+            faixas[i] = new ReentrantLock();
+        }
+        this.mascara = potencia - 1;
+        this.aposLiberar = aposLiberar;
+    }
+
+    /**
+     * Adquire a trava global em modo compartilhado e as faixas das chaves informadas.
+     *
+     * @param chaves Chaves dos objetos que a operao l ou altera (nulas so ignoradas).
+     * @return Trava a ser liberada com {@link Trava#close()}.
+     */
+    public Trava travar(String... chaves) {
+        int[] indices = new int[chaves.length];
+        int quantidade = 0;
+        for (String chave : chaves) {
+            if (chave != null) {
+                indices[quantidade++] = faixa(chave);
+            }
+        }
+        Arrays.sort(indices, 0, quantidade);
+        int distintos = 0;
+        for (int i = 0; i < quantidade; i++) {
+            if (distintos == 0 || indices[distintos - 1] != indices[i]) {
+                indices[distintos++] = indices[i];
+            }
+        }
+        global.readLock().lock();
+        int adquiridas = 0;
+        try {
+            for (; adquiridas < distintos; adquiridas++) {
+                faixas[indices[adquiridas]].lock();
+            }
+        } catch (RuntimeException | Error e) {
+            while (adquiridas > 0) {
+                faixas[indices[--adquiridas]].unlock();
+            }
+            global.readLock().unlock();
+            throw e;
+        }
+        return new Trava(indices, distintos, false);
+    }
+
+    /**
+     * Adquire a trava global em modo exclusivo, aguardando todas as operaes em andamento.
+     *
+     * @return Trava a ser liberada com {@link Trava#close()}.
+     */
+    public Trava travarTudo() {
+        global.writeLock().lock();
+        return new Trava(null, 0, true);
+    }
+
+    private int faixa(String chave) {
+        int h = chave.hashCode();
+        return (h ^ (h >>> 16)) & mascara;
+    }
+
+    /**
+     * Conjunto de travas adquiridas por uma operao.
+     */
+    public final class Trava implements AutoCloseable {
+        private final int[] indices;
+        private final int quantidade;
+        private final boolean exclusiva;
+
+        private Trava(int[] indices, int quantidade, boolean exclusiva) {
+            this.indices = indices;
+            this.quantidade = quantidade;
+            this.exclusiva = exclusiva;
+        }
+
+        /**
+         * Libera as travas em ordem inversa  aquisio. Se a thread no segurar mais nenhuma
+         * trava, executa a ao configurada para depois da liberao.
+         */
+        @Override
+        public void close() {
+            for (int i = quantidade - 1; i >= 0; i--) {
+                faixas[indices[i]].unlock();
+            }
+            if (exclusiva) {
+                global.writeLock().unlock();
+            } else {
+                global.readLock().unlock();
+            }
+            if (global.getReadHoldCount() == 0 && !global.isWriteLockedByCurrentThread()) {
+                aposLiberar.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package br.ufal.ic.p2.jackut.model.metricas;
+
+import jdk.jfr.*;
+
+/**
+ * Eventos do JDK Flight Recorder emitidos pelo {@code Sistema}: resoluo de sesses, mudanas de
+ * relacionamento, distribuio de mensagens de comunidade, filas de recados e mensagens e fases da
+ * gravao e da carga dos dados.
+ *
+ * <p>Sem uma gravao em andamento, cada evento custa uma verificao de {@code shouldCommit()}.
+ * Os eventos dos caminhos mais frequentes no guardam a pilha de chamadas; para reduzir o volume
+ * de uma gravao longa, defina um limite de durao ({@code threshold}) para eles em um arquivo
+ * de configurao {@code .jfc}.</p>
+ *
+ * <pre>java -XX:StartFlightRecording=filename=jackut.jfr ...</pre>
+ * <pre>jfr print --events jackut.FasePersistencia jackut.jfr</pre>
+ */
+public final class EventosJfr {
+
+    private EventosJfr() {
+    }
+
+    /** Busca de uma sesso pelo ID, no ndice por posio ou no mapa de sesses. */
+    @Name("jackut.ResolucaoSessao")
+    @Label("Resoluo de sesso")
+    @Category({"Jackut", "Sesses"})
+    @StackTrace(false)
+    public static class ResolucaoSessao extends Event {
+        @Label("Origem")
+        @Description("tabela, mapa ou ausente")
+        private String origem;
+
+        /** @return Evento com a durao j iniciada. */
+        public static ResolucaoSessao iniciar() {
+            ResolucaoSessao evento = new ResolucaoSessao();
+            evento.begin();
+            return evento;
+        }
+
+        /** @param origem Onde a sesso foi encontrada: {@code tabela}, {@code mapa} ou {@code ausente}. */
+        public void concluir(String origem) {
+            if (shouldCommit()) {
+                this.origem = origem;
+                commit();
+            }
+        }
+    }
+
+    /** Incluso de uma relao entre dois usurios. */
+    @Name("jackut.MudancaRelacionamento")
+    @Label("Mudana de relacionamento")
+    @Category({"Jackut", "Relacionamentos"})
+    @StackTrace(false)
+    public static class MudancaRelacionamento extends Event {
+        @Label("Tipo")
+        @Description("convite, amizade, idolo, paquera ou inimigo")
+        private String tipo;
+        @Label("Usurio")
+        private String usuario;
+        @Label("Outro usurio")
+        private String outro;
+
+        /** @return Evento com a durao j iniciada. */
+        public static MudancaRelacionamento iniciar() {
+            MudancaRelacionamento evento = new MudancaRelacionamento();
+            evento.begin();
+            return evento;
+        }
+
+        /**
+         * @param tipo    Relao includa.
+         * @param usuario Login de quem incluiu a relao.
+         * @param outro   Login do outro usurio.
+         */
+        public void concluir(String tipo, String usuario, String outro) {
+            if (shouldCommit()) {
+                this.tipo = tipo;
+                this.usuario = usuario;
+                this.outro = outro;
+                commit();
+            }
+        }
+    }
+
+    /** Envio de uma mensagem de comunidade, ou entrega de um lote dela aos membros. */
+    @Name("jackut.DistribuicaoComunidade")
+    @Label("Distribuio de mensagem de comunidade")
+    @Category({"Jackut", "Comunidades"})
+    public static class DistribuicaoComunidade extends Event {
+        @Label("Comunidade")
+        private String comunidade;
+        @Label("Membros")
+        @Description("Membros da comunidade, ou destinatrios do lote")
+        private int membros;
+        @Label("Modo")
+        @Description("registro (lida pelos membros), entrega (copiada para cada membro), lote ou reproducao")
+        private String modo;
+
+        /** @return Evento com a durao j iniciada. */
+        public static DistribuicaoComunidade iniciar() {
+            DistribuicaoComunidade evento = new DistribuicaoComunidade();
+            evento.begin();
+            return evento;
+        }
+
+        /**
+         * @param comunidade Nome da comunidade ({@code null} nos lotes de entrega).
+         * @param membros    Membros alcanados.
+         * @param modo       Forma de distribuio.
+         */
+        public void concluir(String comunidade, int membros, String modo) {
+            if (shouldCommit()) {
+                this.comunidade = comunidade;
+                this.membros = membros;
+                this.modo = modo;
+                commit();
+            }
+        }
+    }
+
+    /** Incluso ou retirada de um recado ou mensagem na fila de um usurio. */
+    @Name("jackut.CaixaDeEntrada")
+    @Label("Caixa de entrada")
+    @Category({"Jackut", "Recados e mensagens"})
+    @StackTrace(false)
+    public static class CaixaDeEntrada extends Event {
+        @Label("Operao")
+        @Description("enfileirar ou retirar")
+        private String operacao;
+        @Label("Tipo")
+        @Description("recado ou mensagem")
+        private String tipo;
+        @Label("Usurio")
+        private String usuario;
+        @Label("Tamanho da fila")
+        @Description("Itens na fila depois da operao (mensagens j entregues, no caso das de comunidade)")
+        private int fila;
+
+        /** @return Evento com a durao j iniciada. */
+        public static CaixaDeEntrada iniciar() {
+            CaixaDeEntrada evento = new CaixaDeEntrada();
+            evento.begin();
+            return evento;
+        }
+
+        /**
+         * @param operacao {@code enfileirar} ou {@code retirar}.
+         * @param tipo     {@code recado} ou {@code mensagem}.
+         * @param usuario  Dono da fila.
+         * @param fila     Itens na fila depois da operao.
+         */
+        public void concluir(String operacao, String tipo, String usuario, int fila) {
+            if (shouldCommit()) {
+                this.operacao = operacao;
+                this.tipo = tipo;
+                this.usuario = usuario;
+                this.fila = fila;
+                commit();
+            }
+        }
+    }
+
+    /** Uma fase da gravao ({@code salvarDados}) ou da carga ({@code carregarDados}) dos dados. */
+    @Name("jackut.FasePersistencia")
+    @Label("Fase de persistncia")
+    @Category({"Jackut", "Persistncia"})
+    public static class FasePersistencia extends Event {
+        @Label("Operao")
+        private String operacao;
+        @Label("Fase")
+        private String fase;
+        @Label("Bytes")
+        @DataAmount
+        private long bytes;
+        @Label("Objetos")
+        @Description("Usurios, comunidades, sesses e lpides, ou registros do dirio reproduzidos")
+        private long objetos;
+
+        /**
+         * @param operacao {@code salvarDados} ou {@code carregarDados}.
+         * @param fase     Nome da fase.
+         * @return Evento com a durao j iniciada.
+         */
+        public static FasePersistencia iniciar(String operacao, String fase) {
+            FasePersistencia evento = new FasePersistencia();
+            evento.operacao = operacao;
+            evento.fase = fase;
+            evento.begin();
+            return evento;
+        }
+
+        /** Conclui uma fase sem bytes nem objetos a informar. */
+        public void concluir() {
+            concluir(0, 0);
+        }
+
+        /**
+         * @param bytes   Bytes lidos ou gravados na fase.
+         * @param objetos Objetos lidos, capturados ou gravados na fase.
+         */
+        public void concluir(long bytes, long objetos) {
+            if (shouldCommit()) {
+                this.bytes = bytes;
+                this.objetos = objetos;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package br.ufal.ic.p2.jackut.model.metricas;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores e histogramas de latncia por operao, com exportao no formato de texto do
+ * Prometheus.
+ *
+ * <p>Cada thread grava em seus prprios vetores, sem travas nem CAS (s ela escreve neles); a
+ * leitura soma os vetores de todas as threads. Os vetores de uma thread que terminou so somados a
+ * totais compartilhados e descartados na prxima leitura ou na chegada de outra thread, de modo que
+ * threads de vida curta no acumulam vetores. Os histogramas dividem cada potncia de dois em
+ * {@value #SUBFAIXAS} faixas, como o HdrHistogram, o que d um erro relativo de no mximo
+ * 1/{@value #SUBFAIXAS} nos percentis. Os erros, mais raros, so contados por tipo de exceo em
+ * contadores compartilhados.</p>
+ *
+ * @param <E> Enumerao das operaes medidas; o {@code toString()} de cada constante  o nome
+ *            exportado.
+ */
+public class Metricas<E extends Enum<E>> {
+    private static final int BITS = 4;
+    private static final int SUBFAIXAS = 1 << BITS;
+    /** Latncias a partir de 2^40 ns (cerca de 18 minutos) caem na ltima faixa. */
+    private static final int MAIOR_EXPOENTE = 40;
+    private static final int FAIXAS = (MAIOR_EXPOENTE - BITS + 1) * SUBFAIXAS;
+    /** Posies, depois das faixas, da soma das latncias e da soma dos tamanhos. */
+    private static final int SOMA_LATENCIAS = FAIXAS;
+    private static final int SOMA_TAMANHOS = FAIXAS + 1;
+    /** Limites, em segundos, das faixas exportadas para o Prometheus. */
+    private static final double[] LIMITES_EXPORTADOS = {
+            1e-6, 2.5e-6, 5e-6, 1e-5, 2.5e-5, 5e-5, 1e-4, 2.5e-4, 5e-4,
+            1e-3, 2.5e-3, 5e-3, 1e-2, 2.5e-2, 5e-2, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final E[] operacoes;
+    private final String prefixo;
+    private final Queue<RegistroDaThread> registros = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<RegistroDaThread> registro;
+    /**
+     * Somas dos vetores das threads encerradas, por operao ({@code null} enquanto no houver);
+     * protegidas pelo prprio array, que tambm serializa a retirada de registros da fila.
+     */
+    private final long[][] encerradas;
+    private final List<Map<String, LongAdder>> erros = new ArrayList<>();
+
+    /**
+     * Vetores de uma thread, um por operao, criados na primeira chamada da operao por ela.
+     * S a prpria thread grava; os valores so publicados com {@code lazySet} para que a
+     * leitura por outras threads veja cada posio inteira.
+     */
+    private static final class RegistroDaThread {
+        private final AtomicLongArray[] operacoes;
+        /** Thread dona dos vetores; fraca, para no manter viva uma thread j encerrada. */
+        private final WeakReference<Thread> dona = new WeakReference<>(Thread.currentThread());
+
+        private RegistroDaThread(int quantidade) {
+            this.operacoes = new AtomicLongArray[quantidade];
+        }
+
+        /** @return {@code true} se a thread dona terminou e no grava mais nos vetores. */
+        private boolean isEncerrada() {
+            Thread thread = dona.get();
+            return thread == null || !thread.isAlive();
+        }
+
+        private AtomicLongArray da(int operacao) {
+            AtomicLongArray vetor = operacoes[operacao];
+            if (vetor == null) {
+                vetor = new AtomicLongArray(FAIXAS + 2);
+                operacoes[operacao] = vetor;
+            }
+            return vetor;
+        }
+    }
+
+    /**
+     * Cria as mtricas de um conjunto de operaes.
+     *
+     * @param tipo    Enumerao das operaes.
+     * @param prefixo Prefixo dos nomes exportados (ex.: {@code "jackut_facade"}).
+     */
+    public Metricas(Class<E> tipo, String prefixo) {
+        this.operacoes = tipo.getEnumConstants();
+        this.prefixo = prefixo;
+        for (int i = 0; i < operacoes.length; i++) {
+            erros.add(new ConcurrentHashMap<>());
+        }
+        this.encerradas = new long[operacoes.length][];
+        this.registro = ThreadLocal.withInitial(() -> {
+            RegistroDaThread novo = new RegistroDaThread(operacoes.length);
+            synchronized (encerradas) {
+                recolherEncerradas();
+                registros.add(novo);
+            }
+            return novo;
+        });
+    }
+
+    /** @return O instante de incio de uma chamada, a ser informado ao registr-la. */
+    public long iniciar() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Registra uma chamada concluda.
+     *
+     * @param operacao Operao chamada.
+     * @param inicio   Valor devolvido por {@link #iniciar()} antes da chamada.
+     * @param tamanho  Tamanho dos dados lidos ou gravados pela chamada.
+     */
+    public void registrar(E operacao, long inicio, long tamanho) {
+        long latencia = Math.max(0, System.nanoTime() - inicio);
+        AtomicLongArray vetor = registro.get().da(operacao.ordinal());
+        int faixa = faixa(latencia);
+        vetor.lazySet(faixa, vetor.get(faixa) + 1);
+        vetor.lazySet(SOMA_LATENCIAS, vetor.get(SOMA_LATENCIAS) + latencia);
+        vetor.lazySet(SOMA_TAMANHOS, vetor.get(SOMA_TAMANHOS) + tamanho);
+    }
+
+    /**
+     * Registra uma chamada que terminou com uma exceo: conta a latncia e o erro, pelo nome
+     * simples da classe da exceo.
+     *
+     * @param operacao Operao chamada.
+     * @param inicio   Valor devolvido por {@link #iniciar()} antes da chamada.
+     * @param erro     Exceo lanada pela chamada.
+     * @return A prpria exceo, para ser relanada.
+     */
+    public <X extends Throwable> X registrarErro(E operacao, long inicio, X erro) {
+        registrar(operacao, inicio, 0);
+        erros.get(operacao.ordinal()).computeIfAbsent(erro.getClass().getSimpleName(), tipo -> new LongAdder()).increment();
+        return erro;
+    }
+
+    private static int faixa(long valor) {
+        if (valor < SUBFAIXAS) {
+            return (int) valor;
+        }
+        int expoente = 63 - Long.numberOfLeadingZeros(valor);
+        if (expoente >= MAIOR_EXPOENTE) { // A faixa seguinte  ltima  SOMA_LATENCIAS
+            return FAIXAS - 1;
+        }
+        return (expoente - BITS + 1) * SUBFAIXAS + (int) ((valor >>> (expoente - BITS)) & (SUBFAIXAS - 1));
+    }
+
+    /** @return O maior valor, em nanossegundos, que cai na faixa. */
+    private static long limite(int faixa) {
+        if (faixa < SUBFAIXAS) {
+            return faixa;
+        }
+        int expoente = faixa / SUBFAIXAS + BITS - 1;
+        long base = (long) (SUBFAIXAS + faixa % SUBFAIXAS) << (expoente - BITS);
+        return base + (1L << (expoente - BITS)) - 1;
+    }
+
+    /**
+     * Soma aos totais das threads encerradas os vetores das threads que terminaram e retira-os da
+     * fila. Chamado com {@link #encerradas} travado; a leitura dos vetores  segura porque uma
+     * thread encerrada no grava mais.
+     */
+    private void recolherEncerradas() {
+        for (Iterator<RegistroDaThread> iterador = registros.iterator(); iterador.hasNext(); ) {
+            RegistroDaThread r = iterador.next();
+            if (!r.isEncerrada()) {
+                continue;
+            }
+            for (int operacao = 0; operacao < r.operacoes.length; operacao++) {
+                AtomicLongArray vetor = r.operacoes[operacao];
+                if (vetor != null) {
+                    if (encerradas[operacao] == null) {
+                        encerradas[operacao] = new long[FAIXAS + 2];
+                    }
+                    for (int i = 0; i < vetor.length(); i++) {
+                        encerradas[operacao][i] += vetor.get(i);
+                    }
+                }
+            }
+            iterador.remove();
+        }
+    }
+
+    /** Soma os vetores de todas as threads, encerradas ou no, para uma operao. */
+    private long[] somar(E operacao) {
+        long[] soma = new long[FAIXAS + 2];
+        synchronized (encerradas) {
+            recolherEncerradas();
+            if (encerradas[operacao.ordinal()] != null) {
+                System.arraycopy(encerradas[operacao.ordinal()], 0, soma, 0, soma.length);
+            }
+            for (RegistroDaThread r : registros) {
+                AtomicLongArray vetor = r.operacoes[operacao.ordinal()];
+                if (vetor != null) {
+                    for (int i = 0; i < soma.length; i++) {
+                        soma[i] += vetor.get(i);
+                    }
+                }
+            }
+        }
+        return soma;
+    }
+
+    private static long chamadas(long[] soma) {
+        long total = 0;
+        for (int i = 0; i < FAIXAS; i++) {
+            total += soma[i];
+        }
+        return total;
+    }
+
+    /** @return Quantidade de chamadas da operao, com ou sem erro. */
+    public long getChamadas(E operacao) {
+        return chamadas(somar(operacao));
+    }
+
+    /** @return Quantidade de chamadas da operao que terminaram com exceo, por tipo. */
+    public Map<String, Long> getErros(E operacao) {
+        Map<String, Long> contagens = new TreeMap<>();
+        erros.get(operacao.ordinal()).forEach((tipo, contador) -> contagens.put(tipo, contador.sum()));
+        return contagens;
+    }
+
+    /** @return Soma dos tamanhos dos dados lidos ou gravados pela operao. */
+    public long getTamanho(E operacao) {
+        return somar(operacao)[SOMA_TAMANHOS];
+    }
+
+    /**
+     * Retorna um percentil da latncia da operao.
+     *
+     * @param operacao Operao consultada.
+     * @param fracao   Percentil entre 0 e 1 (ex.: 0.99).
+     * @return A latncia em nanossegundos, ou 0 se a operao no foi chamada.
+     */
+    public long getPercentil(E operacao, double fracao) {
+        long[] soma = somar(operacao);
+        long alvo = Math.max(1, (long) Math.ceil(chamadas(soma) * fracao));
+        long acumulado = 0;
+        for (int i = 0; i < FAIXAS; i++) {
+            acumulado += soma[i];
+            if (acumulado >= alvo) {
+                return limite(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Exporta as mtricas no formato de texto do Prometheus (verso 0.0.4): um histograma de
+     * latncia, um contador de erros por tipo de exceo e um contador de tamanho por operao.
+     * Operaes nunca chamadas so omitidas.
+     *
+     * @return O texto exportado.
+     */
+    public String exportarPrometheus() {
+        StringBuilder latencias = new StringBuilder();
+        StringBuilder contagemErros = new StringBuilder();
+        StringBuilder tamanhos = new StringBuilder();
+        for (E operacao : operacoes) {
+            long[] soma = somar(operacao);
+            long total = chamadas(soma);
+            if (total == 0) {
+                continue;
+            }
+            String rotulo = "operacao=\"" + operacao + "\"";
+            int faixa = 0;
+            long acumulado = 0;
+            for (double limite : LIMITES_EXPORTADOS) {
+                // Faixas finas que terminam antes do limite; as que o atravessam ficam na prxima
+                while (faixa < FAIXAS && limite(faixa) <= limite * 1e9) {
+                    acumulado += soma[faixa++];
+                }
+                latencias.append(prefixo).append("_latencia_segundos_bucket{").append(rotulo)
+                        .append(",le=\"").append(limite).append("\"} ").append(acumulado).append('\n');
+            }
+            latencias.append(prefixo).append("_latencia_segundos_bucket{").append(rotulo).append(",le=\"+Inf\"} ").append(total).append('\n');
+            latencias.append(prefixo).append("_latencia_segundos_sum{").append(rotulo).append("} ").append(soma[SOMA_LATENCIAS] / 1e9).append('\n');
+            latencias.append(prefixo).append("_latencia_segundos_count{").append(rotulo).append("} ").append(total).append('\n');
+            getErros(operacao).forEach((tipo, contagem) -> contagemErros.append(prefixo).append("_erros_total{").append(rotulo)
+                    .append(",tipo=\"").append(tipo).append("\"} ").append(contagem).append('\n'));
+            tamanhos.append(prefixo).append("_tamanho_total{").append(rotulo).append("} ").append(soma[SOMA_TAMANHOS]).append('\n');
+        }
+        return "# HELP " + prefixo + "_latencia_segundos Latencia das chamadas, com ou sem erro.\n"
+                + "# TYPE " + prefixo + "_latencia_segundos histogram\n" + latencias
+                + "# HELP " + prefixo + "_erros_total Chamadas que terminaram com excecao, por tipo.\n"
+                + "# TYPE " + prefixo + "_erros_total counter\n" + contagemErros
+                + "# HELP " + prefixo + "_tamanho_total Tamanho dos dados lidos ou gravados pelas chamadas.\n"
+                + "# TYPE " + prefixo + "_tamanho_total counter\n" + tamanhos;
+    }
+}
@@ -0,0 +1,244 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Fila FIFO de recados ou mensagens guardada em blocos de arrays encadeados, em vez de um n por
+ * elemento como na {@link java.util.LinkedList}. Cada elemento ocupa uma posio de array (uma
+ * referncia), e os blocos so alocados s quando a fila recebe o primeiro elemento.
+ *
+ * <p>Quando o bloco do incio  esvaziado, ele  guardado para ser reutilizado no fim da fila; uma
+ * caixa que recebe e entrega mensagens no mesmo ritmo no aloca blocos novos. O tamanho  mantido
+ * em um contador.</p>
+ *
+ * <p>No aceita elementos nulos. O iterador no remove elementos; para isso h
+ * {@link #removeIf(Predicate)}, que compacta a fila de uma vez.</p>
+ *
+ * @param <E> Tipo dos elementos.
+ */
+public class CaixaDeEntrada<E> extends AbstractQueue<E> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /** Elementos por bloco. */
+    private static final int TAMANHO_BLOCO = 16;
+
+    private transient Bloco inicio;
+    private transient int posicaoInicio;
+    private transient Bloco fim;
+    private transient int posicaoFim;
+    private transient Bloco livre;
+    private transient int tamanho;
+    private transient int modificacoes;
+
+    /**
+     * Cria uma caixa vazia.
+     */
+    public CaixaDeEntrada() {
+    }
+
+    /**
+     * Cria uma caixa com os elementos de uma coleo, na ordem de iterao.
+     * @param elementos Elementos iniciais.
+     */
+    public CaixaDeEntrada(Collection<? extends E> elementos) {
+        addAll(elementos);
+    }
+
+    @Override
+    public boolean offer(E elemento) {
+        if (elemento == null) {
+            throw new NullPointerException();
+        }
+        if (fim == null) {
+            inicio = fim = novoBloco();
+            posicaoInicio = posicaoFim = 0;
+        } else if (posicaoFim == TAMANHO_BLOCO) {
+            Bloco proximo = novoBloco();
+            fim.proximo = proximo;
+            fim = proximo;
+            posicaoFim = 0;
+        }
+        fim.itens[posicaoFim++] = elemento;
+        tamanho++;
+        modificacoes++;
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        if (tamanho == 0) {
+            return null;
+        }
+        Object elemento = inicio.itens[posicaoInicio];
+        inicio.itens[posicaoInicio++] = null;
+        tamanho--;
+        modificacoes++;
+        if (tamanho == 0) {
+            // Fila vazia: o nico bloco volta ao comeo para ser reaproveitado
+            posicaoInicio = posicaoFim = 0;
+        } else if (posicaoInicio == TAMANHO_BLOCO) {
+            Bloco esvaziado = inicio;
+            inicio = inicio.proximo;
+            posicaoInicio = 0;
+            esvaziado.proximo = null;
+            livre = esvaziado;
+        }
+        return (E) elemento;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        return tamanho == 0 ? null : (E) inicio.itens[posicaoInicio];
+    }
+
+    @Override
+    public int size() {
+        return tamanho;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tamanho == 0;
+    }
+
+    @Override
+    public void clear() {
+        inicio = fim = livre = null;
+        posicaoInicio = posicaoFim = 0;
+        tamanho = 0;
+        modificacoes++;
+    }
+
+    /**
+     * Remove todos os elementos que satisfazem o filtro, preservando a ordem dos demais. A fila 
+     * compactada em uma nica passagem.
+     *
+     * @param filtro Filtro dos elementos a remover.
+     * @return {@code true} se algum elemento foi removido.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super E> filtro) {
+        if (tamanho == 0) {
+            return false;
+        }
+        Bloco leitura = inicio;
+        int posicaoLeitura = posicaoInicio;
+        Bloco escrita = inicio;
+        int posicaoEscrita = posicaoInicio;
+        int mantidos = 0;
+        for (int i = 0; i < tamanho; i++) {
+            if (posicaoLeitura == TAMANHO_BLOCO) {
+                leitura = leitura.proximo;
+                posicaoLeitura = 0;
+            }
+            E elemento = (E) leitura.itens[posicaoLeitura];
+            leitura.itens[posicaoLeitura++] = null;
+            if (!filtro.test(elemento)) {
+                if (posicaoEscrita == TAMANHO_BLOCO) {
+                    escrita = escrita.proximo;
+                    posicaoEscrita = 0;
+                }
+                escrita.itens[posicaoEscrita++] = elemento;
+                mantidos++;
+            }
+        }
+        if (mantidos == tamanho) {
+            return false;
+        }
+        tamanho = mantidos;
+        modificacoes++;
+        if (mantidos == 0) {
+            inicio.proximo = null;
+            fim = inicio;
+            posicaoInicio = posicaoFim = 0;
+        } else {
+            escrita.proximo = null; // Blocos que ficaram vazios no fim so descartados
+            fim = escrita;
+            posicaoFim = posicaoEscrita;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object elemento) {
+        boolean[] removido = new boolean[1];
+        return removeIf(item -> !removido[0] && (removido[0] = item.equals(elemento)));
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private Bloco bloco = inicio;
+            private int posicao = posicaoInicio;
+            private int restantes = tamanho;
+            private final int esperadas = modificacoes;
+
+            @Override
+            public boolean hasNext() {
+                return restantes > 0;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (esperadas != modificacoes) {
+                    throw new ConcurrentModificationException();
+                }
+                if (restantes == 0) {
+                    throw new NoSuchElementException();
+                }
+                if (posicao == TAMANHO_BLOCO) {
+                    bloco = bloco.proximo;
+                    posicao = 0;
+                }
+                restantes--;
+                return (E) bloco.itens[posicao++];
+            }
+        };
+    }
+
+    private Bloco novoBloco() {
+        Bloco bloco = livre;
+        if (bloco == null) {
+            return new Bloco();
+        }
+        livre = null;
+        return bloco;
+    }
+
+    /**
+     * Grava a quantidade de elementos seguida dos elementos, sem a estrutura dos blocos.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(tamanho);
+        for (E elemento : this) {
+            out.writeObject(elemento);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int quantidade = in.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            offer((E) in.readObject());
+        }
+    }
+
+    private static final class Bloco {
+        private final Object[] itens = new Object[TAMANHO_BLOCO];
+        private Bloco proximo;
+    }
+}
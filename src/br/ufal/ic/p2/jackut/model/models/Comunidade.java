@@ -1,7 +1,13 @@
 package br.ufal.ic.p2.jackut.model.models;
 
 import br.ufal.ic.p2.jackut.model.exceptions.*;
+import br.ufal.ic.p2.jackut.model.persistencia.EscritorBinario;
+import br.ufal.ic.p2.jackut.model.persistencia.LeitorBinario;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.LinkedHashSet;
 
@@ -9,13 +15,39 @@ import java.util.LinkedHashSet;
  * Classe que representa uma comunidade no sistema Jackut.
  * Gerencia informaes como nome, descrio, dono e membros da comunidade.
  * Permite adicionar/remover membros e garante a integridade dos dados.
+ *
+ * <p>As mensagens enviadas  comunidade ficam em um nico registro; cada membro guarda apenas at
+ * onde j leu (ver {@link Usuario#lerMensagem}). As posies de leitura so absolutas, contadas
+ * desde a primeira mensagem da comunidade, e o registro guarda s as mensagens a partir de
+ * {@link #getPrimeiraPosicao()}: as que todos os membros j leram so descartadas por
+ * {@link #descartarMensagensAntes(int)}.</p>
+ *
+ * <p>Os membros ficam em um {@link MembrosDeComunidade}, indexado por um mapa de bits dos IDs
+ * dos usurios, de modo que cruzar a comunidade com outra ou com os amigos de um usurio no copia
+ * nenhum dos dois conjuntos.</p>
  */
 
 public class Comunidade implements Serializable {
+    /** Mesmo valor calculado pela JVM para a classe original, para ler os {@code dados.ser} antigos */
+    private static final long serialVersionUID = 7431607124439067429L;
+    /** Menor registro de mensagens em que se procura o que descartar */
+    private static final int DESCARTE_MINIMO = 64;
+
     private String nome;
     private String descricao;
     private String dono;
-    private Set<String> membros = new LinkedHashSet<>();
+    private Set<String> membros;
+    /** Mensagens enviadas  comunidade e ainda no lidas por todos os membros, em ordem de envio */
+    private List<MensagemComunidade> mensagens = new ArrayList<>();
+    /** Posio absoluta da primeira mensagem de {@link #mensagens} */
+    private int base;
+    /** Tamanho do registro a partir do qual vale a pena procurar mensagens j lidas por todos */
+    private transient int limiteDescarte = DESCARTE_MINIMO;
+    /** Muda a cada entrada ou sada de membro */
+    private transient int versao;
+    /** Listagem formatada dos membros e a verso em que foi formatada */
+    private transient String membrosFormatados;
+    private transient int versaoFormatada;
 
     /**
      * Constri uma nova comunidade com nome, descrio e dono especificados.
@@ -24,15 +56,76 @@ public class Comunidade implements Serializable {
      * @param nome Nome nico da comunidade.
      * @param descricao Descrio da comunidade.
      * @param dono Login do usurio criador da comunidade.
+     * @param tabelaLogins Tabela de logins do sistema a que a comunidade pertence.
      */
-    public Comunidade(String nome, String descricao, String dono) {
+    public Comunidade(String nome, String descricao, String dono, TabelaDeLogins tabelaLogins) {
         this.nome = nome;
         this.descricao = descricao;
         this.dono = dono;
+        this.membros = new MembrosDeComunidade(tabelaLogins);
         this.membros.add(dono); // Adiciona o dono como membro
     }
 
 
+    /**
+     * Grava os dados da comunidade (exceto o nome, gravado pelo snapshot como chave) no formato
+     * binrio de snapshot.
+     *
+     * @param out Escritor de destino.
+     */
+    public void escrever(EscritorBinario out) {
+        out.escreverTexto(descricao);
+        out.escreverTexto(dono);
+        out.escreverTextos(membros);
+        out.escreverVarint(mensagens.size());
+        for (MensagemComunidade mensagem : mensagens) {
+            out.escreverLong(mensagem.getSequencia());
+            out.escreverTexto(mensagem.getTexto());
+        }
+        out.escreverVarint(base);
+    }
+
+    /**
+     * L uma comunidade gravada por {@link #escrever(EscritorBinario)}.
+     *
+     * @param nome Nome da comunidade (chave do registro no snapshot).
+     * @param in Leitor posicionado no incio dos dados da comunidade.
+     * @param versao Verso do formato do snapshot (antes da 5 no havia registro de mensagens, e
+     *               antes da 6 ele nunca era descartado, comeando sempre na posio 0).
+     * @param tabelaLogins Tabela de logins do sistema em que a comunidade  carregada.
+     * @return A comunidade reconstruda, com os membros na ordem original.
+     */
+    public static Comunidade ler(String nome, LeitorBinario in, int versao, TabelaDeLogins tabelaLogins) {
+        Comunidade comunidade = new Comunidade(nome, in.lerTexto(), in.lerTexto(), tabelaLogins);
+        comunidade.membros.clear();
+        in.lerTextos(comunidade.membros);
+        if (versao >= 5) {
+            int quantidade = in.lerVarint();
+            for (int i = 0; i < quantidade; i++) {
+                comunidade.mensagens.add(new MensagemComunidade(in.lerLong(), in.lerTexto()));
+            }
+        }
+        if (versao >= 6) {
+            comunidade.base = in.lerVarint();
+        }
+        return comunidade;
+    }
+
+    /**
+     * Completa uma comunidade lida de um {@code dados.ser} antigo, que no tinha registro de
+     * mensagens e guardava os membros em um conjunto de logins comum.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        Set<String> lidos = membros;
+        membros = new MembrosDeComunidade(TabelaDeLogins.daDesserializacao());
+        membros.addAll(lidos);
+        if (mensagens == null) {
+            mensagens = new ArrayList<>();
+        }
+        limiteDescarte = DESCARTE_MINIMO;
+    }
+
     // Getters
 
     /**
@@ -57,12 +150,150 @@ public class Comunidade implements Serializable {
     public Set<String> getMembros() {
         return new LinkedHashSet<>(membros); // Garante imutabilidade
     }
+    /**
+     * Retorna o prprio conjunto de membros, sem cpia; usado para percorrer os membros e pelo
+     * expurgo das comunidades de uma conta removida, que o consome aos poucos.
+     * @return Conjunto de logins dos membros.
+     */
+    MembrosDeComunidade membros() {
+        return (MembrosDeComunidade) membros; // Sempre um MembrosDeComunidade; ver readObject
+    }
+    /**
+     * Retorna a quantidade de membros, sem copiar o conjunto.
+     * @return Quantidade de membros.
+     */
+    public int getQuantidadeMembros() {
+        return membros.size();
+    }
+    /**
+     * Verifica se um usurio  membro da comunidade.
+     * @param login Login do usurio.
+     * @return true se o usurio for membro.
+     */
+    public boolean ehMembro(String login) {
+        return membros.contains(login);
+    }
+    /**
+     * Conta os usurios que so membros desta comunidade e de outra.
+     * @param outra Outra comunidade.
+     * @return Tamanho da interseo dos membros.
+     */
+    public int contarMembrosEmComum(Comunidade outra) {
+        return membros().mapa().cardinalidadeE(outra.membros().mapa());
+    }
+    /**
+     * Conta os usurios que so membros desta comunidade, de outra ou das duas.
+     * @param outra Outra comunidade.
+     * @return Tamanho da unio dos membros.
+     */
+    public int contarMembrosNaUniao(Comunidade outra) {
+        return membros().mapa().cardinalidadeOu(outra.membros().mapa());
+    }
+    /**
+     * Retorna os membros desta comunidade que tambm so membros de outra.
+     * @param outra Outra comunidade.
+     * @return Logins dos membros em comum, na ordem de entrada nesta comunidade.
+     */
+    public List<String> getMembrosEmComum(Comunidade outra) {
+        return membros().filtrar(outra.membros().mapa()::contem);
+    }
+    /**
+     * Conta os usurios de um conjunto que so membros da comunidade, percorrendo o menor dos dois.
+     * @param logins Conjunto de usurios (por exemplo, os amigos de algum).
+     * @return Quantidade de usurios do conjunto que so membros.
+     */
+    public int contarMembrosEntre(ConjuntoDeLogins logins) {
+        MapaDeBits mapa = membros().mapa();
+        if (logins.size() <= mapa.cardinalidade()) {
+            return logins.contarIds(mapa::contem);
+        }
+        int[] total = new int[1];
+        mapa.paraCada(id -> {
+            if (logins.contemId(id)) {
+                total[0]++;
+            }
+        });
+        return total[0];
+    }
+    /**
+     * Retorna os usurios de um conjunto que so membros da comunidade.
+     * @param logins Conjunto de usurios (por exemplo, os amigos de algum).
+     * @return Logins dos membros, na ordem do conjunto.
+     */
+    public List<String> getMembrosEntre(ConjuntoDeLogins logins) {
+        return logins.filtrar(membros().mapa()::contem);
+    }
+    /**
+     * Acrescenta uma mensagem ao registro da comunidade, sem tocar nos membros.
+     *
+     * @param sequencia Posio da mensagem na ordem global de envio.
+     * @param texto Contedo da mensagem.
+     * @return {@code true} se o registro cresceu o bastante para valer a pena procurar mensagens
+     *         j lidas por todos os membros ({@link #descartarMensagensAntes(int)}).
+     */
+    public boolean publicarMensagem(long sequencia, String texto) {
+        mensagens.add(new MensagemComunidade(sequencia, texto));
+        return mensagens.size() >= limiteDescarte;
+    }
+
+    /**
+     * Retorna a quantidade de mensagens j enviadas, incluindo as descartadas;  a posio de
+     * leitura de quem entra agora.
+     * @return Posio absoluta do fim do registro de mensagens.
+     */
+    public int getQuantidadeMensagens() {
+        return base + mensagens.size();
+    }
+
+    /**
+     * Retorna a posio da mensagem mais antiga ainda guardada; as anteriores j foram lidas por
+     * todos os membros.
+     * @return Posio absoluta da primeira mensagem do registro.
+     */
+    public int getPrimeiraPosicao() {
+        return base;
+    }
+
+    /**
+     * Retorna uma mensagem do registro.
+     * @param posicao Posio absoluta (0  a primeira mensagem enviada); no pode ser anterior a
+     *                {@link #getPrimeiraPosicao()}.
+     * @return A mensagem.
+     */
+    public MensagemComunidade getMensagem(int posicao) {
+        if (posicao < base) {
+            throw new IndexOutOfBoundsException("Mensagem " + posicao + " j descartada (incio em " + base + ").");
+        }
+        return mensagens.get(posicao - base);
+    }
+
+    /**
+     * Descarta as mensagens anteriores a uma posio, que todos os membros j leram. O registro
+     * s volta a pedir um descarte quando dobrar de tamanho, de modo que o custo de calcular a
+     * menor posio de leitura dos membros se dilui entre as mensagens publicadas.
+     *
+     * @param posicao Menor posio de leitura entre os membros.
+     * @return {@code true} se alguma mensagem foi descartada.
+     */
+    public boolean descartarMensagensAntes(int posicao) {
+        int descartadas = Math.max(0, Math.min(posicao, getQuantidadeMensagens()) - base);
+        if (descartadas > 0) {
+            // Copia o que resta, liberando o array que chegou a guardar as descartadas
+            mensagens = new ArrayList<>(mensagens.subList(descartadas, mensagens.size()));
+            base += descartadas;
+        }
+        limiteDescarte = Math.max(DESCARTE_MINIMO, 2 * mensagens.size());
+        return descartadas > 0;
+    }
+
     /**
      * Remove um membro da comunidade.
      * @param login Login do usurio a ser removido.
      */
     public void removerMembro(String login) {
-        membros.remove(login);
+        if (membros.remove(login)) {
+            versao++;
+        }
     }
 
     /**
@@ -75,6 +306,25 @@ public class Comunidade implements Serializable {
             throw new UsuarioJaMembroException();
         }
         membros.add(login);
+        versao++;
+    }
+
+    /**
+     * Retorna a listagem dos membros guardada por {@link #guardarMembrosFormatados}, se nenhum
+     * membro entrou ou saiu desde ento.
+     * @return O texto guardado, ou {@code null} se no houver um vlido.
+     */
+    String buscarMembrosFormatados() {
+        return versaoFormatada == versao ? membrosFormatados : null;
+    }
+
+    /**
+     * Guarda a listagem formatada dos membros atuais.
+     * @param texto Listagem formatada.
+     */
+    void guardarMembrosFormatados(String texto) {
+        membrosFormatados = texto;
+        versaoFormatada = versao;
     }
 
 }
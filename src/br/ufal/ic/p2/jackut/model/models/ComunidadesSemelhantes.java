@@ -0,0 +1,434 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Tabela em memria das comunidades semelhantes a cada comunidade ("quem participa de X tambm
+ * participa de Y"), mantida por uma thread de fundo  medida que os membros mudam.
+ *
+ * <p>A semelhana de duas comunidades  o ndice de Jaccard dos membros (membros em comum sobre
+ * membros de qualquer das duas), estimado por assinaturas MinHash: para cada uma de
+ * {@value #PERMUTACOES} funes de hash, a assinatura guarda o menor hash entre os IDs dos membros,
+ * e a frao de posies iguais em duas assinaturas estima o Jaccard. Incluir um membro s pode
+ * baixar os mnimos e custa O({@value #PERMUTACOES}); em uma comunidade com n membros, s cerca de
+ * {@value #PERMUTACOES}/n das incluses mudam a assinatura e geram trabalho para a thread. A sada de
+ * um membro, que pode subir um mnimo, obriga a recalcular a assinatura a partir de todos os
+ * membros.</p>
+ *
+ * <p>Para no comparar todos os pares, as assinaturas so divididas em {@value #FAIXAS} faixas de
+ * {@value #LINHAS} posies (LSH), e s so comparadas comunidades com alguma faixa idntica, o que
+ * encontra quase todos os pares com Jaccard acima de 0,2 e poucos abaixo de 0,05. Quando a
+ * assinatura de uma comunidade muda, a thread refaz a lista dela e acerta as listas das
+ * comunidades que dividiam ou passam a dividir alguma faixa com ela.</p>
+ *
+ * <p>Cada lista guarda as {@value #PROPRIEDADE_QUANTIDADE} (padro 10) comunidades mais
+ * semelhantes. As consultas leem a ltima lista publicada, sem trava, e podem estar atrasadas em
+ * relao s ltimas mudanas de membros.</p>
+ */
+public class ComunidadesSemelhantes implements Closeable {
+    /** Quantidade de comunidades semelhantes guardadas para cada comunidade. */
+    public static final String PROPRIEDADE_QUANTIDADE = "jackut.semelhantes.quantidade";
+
+    private static final int FAIXAS = 32;
+    private static final int LINHAS = 2;
+    private static final int PERMUTACOES = FAIXAS * LINHAS;
+    /** Posio da assinatura de uma comunidade sem membros. */
+    private static final int VAZIA = Integer.MAX_VALUE;
+    /** Sementes das funes de hash, fixas para que as assinaturas no dependam da execuo. */
+    private static final long[] SEMENTES = new SplittableRandom(0x4A61636B7574L).longs(PERMUTACOES).toArray();
+
+    private static final Comparator<Semelhante> MAIS_SEMELHANTE = Comparator
+            .comparingInt((Semelhante semelhante) -> -semelhante.iguais)
+            .thenComparing(Semelhante::nome);
+
+    private final Consumer<String> recalcular;
+    private final int quantidade;
+    private final ExecutorService executor;
+    private final AtomicBoolean agendado = new AtomicBoolean();
+    private volatile boolean fechado;
+
+    private final Map<String, Assinatura> assinaturas = new ConcurrentHashMap<>();
+    /** Comunidades a atualizar, com {@code true} se a assinatura precisar ser recalculada. */
+    private final Map<String, Boolean> pendentes = new ConcurrentHashMap<>();
+    /** Listas publicadas; cada array  substitudo inteiro, nunca alterado. */
+    private final Map<String, Semelhante[]> resultados = new ConcurrentHashMap<>();
+
+    // ndice LSH, usado s sob a trava deste objeto
+    /** Comunidades por chave de faixa (a chave j inclui o nmero da faixa). */
+    private final Map<Long, Set<String>> faixas = new HashMap<>();
+    /** Chaves das faixas em que cada comunidade est. */
+    private final Map<String, long[]> faixasDe = new HashMap<>();
+
+    private final LongAdder atualizacoes = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+
+    /**
+     * Cria a tabela e a thread de fundo.
+     *
+     * @param recalcular Recebe o nome de uma comunidade cuja assinatura precisa ser recalculada;
+     *                   deve travar a comunidade e chamar {@link #recalcularAssinatura} ou, se ela
+     *                   no existir mais, {@link #descartarAssinatura}.
+     */
+    public ComunidadesSemelhantes(Consumer<String> recalcular) {
+        this.recalcular = recalcular;
+        this.quantidade = Math.max(1, Integer.getInteger(PROPRIEDADE_QUANTIDADE, 10));
+        this.executor = Executors.newSingleThreadExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "jackut-semelhantes");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registra a entrada de um membro, atualizando a assinatura da comunidade. Deve ser chamado
+     * com a comunidade travada.
+     *
+     * @param comunidade Nome da comunidade.
+     * @param id ID do login do novo membro.
+     */
+    public void adicionarMembro(String comunidade, int id) {
+        if (assinaturas.computeIfAbsent(comunidade, nome -> new Assinatura()).incluir(id)) {
+            marcar(comunidade, false);
+        }
+    }
+
+    /**
+     * Pede que a assinatura de uma comunidade seja recalculada a partir dos membros, depois da
+     * criao, da sada de membros ou da remoo da comunidade.
+     *
+     * @param comunidade Nome da comunidade.
+     */
+    public void recalcular(String comunidade) {
+        marcar(comunidade, true);
+    }
+
+    /**
+     * Pede que todas as comunidades informadas sejam recalculadas, como ao carregar os dados.
+     *
+     * @param nomes Nomes das comunidades.
+     */
+    public void recalcularTodas(Iterable<String> nomes) {
+        for (String nome : nomes) {
+            pendentes.put(nome, true);
+        }
+        agendar();
+    }
+
+    /**
+     * Recalcula a assinatura de uma comunidade a partir de todos os membros. Deve ser chamado
+     * com a comunidade travada.
+     *
+     * @param comunidade A comunidade.
+     */
+    public void recalcularAssinatura(Comunidade comunidade) {
+        int[] minimos = new int[PERMUTACOES];
+        Arrays.fill(minimos, VAZIA);
+        comunidade.membros().mapa().paraCada(id -> baixar(minimos, id));
+        assinaturas.computeIfAbsent(comunidade.getNome(), nome -> new Assinatura()).substituir(minimos);
+    }
+
+    /**
+     * Descarta a assinatura de uma comunidade que no existe mais; a thread a retira das listas.
+     *
+     * @param comunidade Nome da comunidade.
+     */
+    public void descartarAssinatura(String comunidade) {
+        assinaturas.remove(comunidade);
+    }
+
+    /**
+     * Esvazia a tabela, como ao zerar o sistema.
+     */
+    public synchronized void limpar() {
+        pendentes.clear();
+        assinaturas.clear();
+        resultados.clear();
+        faixas.clear();
+        faixasDe.clear();
+    }
+
+    /**
+     * Retorna as comunidades mais semelhantes a uma comunidade, segundo a ltima lista calculada.
+     *
+     * @param comunidade Nome da comunidade.
+     * @return Nomes das comunidades, da mais semelhante para a menos; vazia se a lista ainda no
+     *         foi calculada ou se nenhuma comunidade divide membros com ela.
+     */
+    public List<String> getSemelhantes(String comunidade) {
+        Semelhante[] lista = resultados.get(comunidade);
+        List<String> nomes = new ArrayList<>(lista == null ? 0 : lista.length);
+        if (lista != null) {
+            for (Semelhante semelhante : lista) {
+                nomes.add(semelhante.nome);
+            }
+        }
+        return nomes;
+    }
+
+    /** @return Quantidade de comunidades aguardando a thread de fundo. */
+    public int getPendentes() { return pendentes.size(); }
+
+    /** @return Quantidade de comunidades atualizadas pela thread de fundo. */
+    public long getAtualizacoes() { return atualizacoes.sum(); }
+
+    /** @return Quantidade de atualizaes que terminaram em erro. */
+    public long getFalhas() { return falhas.sum(); }
+
+    /**
+     * Encerra a thread de fundo depois da comunidade em andamento.
+     */
+    @Override
+    public void close() {
+        fechado = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void marcar(String comunidade, boolean recalcularAssinatura) {
+        pendentes.merge(comunidade, recalcularAssinatura, Boolean::logicalOr);
+        agendar();
+    }
+
+    private void agendar() {
+        if (!fechado && agendado.compareAndSet(false, true)) {
+            executor.execute(this::executar);
+        }
+    }
+
+    private void executar() {
+        agendado.set(false);
+        while (!fechado && !pendentes.isEmpty()) {
+            for (String nome : pendentes.keySet()) {
+                Boolean recalcularAssinatura = pendentes.remove(nome);
+                if (fechado) {
+                    return;
+                }
+                if (recalcularAssinatura == null) {
+                    continue;
+                }
+                try {
+                    if (recalcularAssinatura) {
+                        recalcular.accept(nome); // Trava a comunidade; no pode estar sob a trava deste objeto
+                    }
+                    atualizar(nome);
+                    atualizacoes.increment();
+                } catch (RuntimeException e) {
+                    falhas.increment();
+                    System.err.println("Aviso: falha ao atualizar as comunidades semelhantes a " + nome + ": " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pe a comunidade nas faixas da assinatura atual, refaz a lista dela e acerta as listas das
+     * comunidades que dividiam ou passam a dividir alguma faixa com ela.
+     */
+    private synchronized void atualizar(String nome) {
+        Assinatura assinatura = assinaturas.get(nome);
+        int[] minimos = assinatura == null ? null : assinatura.copiar();
+        long[] chaves = minimos == null ? null : chaves(minimos);
+        long[] anteriores = faixasDe.get(nome);
+        if (Arrays.equals(chaves, anteriores) && resultados.containsKey(nome)) {
+            return; // As faixas no mudaram e a assinatura mudou fora delas: nada a refazer
+        }
+
+        Set<String> afetadas = new LinkedHashSet<>();
+        if (anteriores != null) {
+            for (long chave : anteriores) {
+                Set<String> faixa = faixas.get(chave);
+                faixa.remove(nome);
+                if (faixa.isEmpty()) {
+                    faixas.remove(chave);
+                } else {
+                    afetadas.addAll(faixa);
+                }
+            }
+            faixasDe.remove(nome);
+        }
+        if (minimos == null) {
+            resultados.remove(nome);
+            for (String outra : afetadas) {
+                revisar(outra, nome, 0);
+            }
+            return;
+        }
+
+        Set<String> candidatas = new HashSet<>();
+        for (long chave : chaves) {
+            Set<String> faixa = faixas.computeIfAbsent(chave, c -> new HashSet<>());
+            candidatas.addAll(faixa);
+            faixa.add(nome);
+        }
+        faixasDe.put(nome, chaves);
+        afetadas.addAll(candidatas);
+
+        List<Semelhante> lista = new ArrayList<>();
+        for (String outra : afetadas) {
+            int iguais = candidatas.contains(outra) ? iguais(minimos, outra) : 0;
+            if (iguais > 0) {
+                lista.add(new Semelhante(outra, iguais));
+            }
+            revisar(outra, nome, iguais);
+        }
+        publicar(nome, lista);
+    }
+
+    /**
+     * Acerta a posio de uma comunidade na lista de outra, depois que a semelhana entre as duas
+     * mudou. Se ela saiu de uma lista cheia, a lista  refeita com as candidatas da outra.
+     */
+    private void revisar(String dona, String nome, int iguais) {
+        Semelhante[] atual = resultados.get(dona);
+        if (atual == null) {
+            return;
+        }
+        List<Semelhante> lista = new ArrayList<>(atual.length + 1);
+        boolean estava = false;
+        for (Semelhante semelhante : atual) {
+            if (semelhante.nome.equals(nome)) {
+                estava = true;
+            } else {
+                lista.add(semelhante);
+            }
+        }
+        Semelhante nova = new Semelhante(nome, iguais);
+        boolean cheia = atual.length == quantidade;
+        boolean entra = iguais > 0
+                && (lista.size() < quantidade || MAIS_SEMELHANTE.compare(nova, lista.get(lista.size() - 1)) < 0);
+        if (estava && cheia && !entra) {
+            refazer(dona); // Alguma candidata fora da lista pode ocupar a vaga
+            return;
+        }
+        if (!estava && !entra) {
+            return;
+        }
+        if (entra) {
+            lista.add(nova);
+        }
+        publicar(dona, lista);
+    }
+
+    /** Refaz a lista de uma comunidade comparando-a com todas as que dividem faixas com ela. */
+    private void refazer(String nome) {
+        Assinatura assinatura = assinaturas.get(nome);
+        long[] chaves = faixasDe.get(nome);
+        if (assinatura == null || chaves == null) {
+            return;
+        }
+        int[] minimos = assinatura.copiar();
+        Set<String> candidatas = new HashSet<>();
+        for (long chave : chaves) {
+            candidatas.addAll(faixas.get(chave));
+        }
+        candidatas.remove(nome);
+        List<Semelhante> lista = new ArrayList<>();
+        for (String outra : candidatas) {
+            int iguais = iguais(minimos, outra);
+            if (iguais > 0) {
+                lista.add(new Semelhante(outra, iguais));
+            }
+        }
+        publicar(nome, lista);
+    }
+
+    private void publicar(String nome, List<Semelhante> lista) {
+        lista.sort(MAIS_SEMELHANTE);
+        resultados.put(nome, lista.subList(0, Math.min(quantidade, lista.size())).toArray(new Semelhante[0]));
+    }
+
+    /** @return Posies iguais entre uma assinatura e a de outra comunidade (0 se ela no existir). */
+    private int iguais(int[] minimos, String outra) {
+        Assinatura assinatura = assinaturas.get(outra);
+        if (assinatura == null) {
+            return 0;
+        }
+        int[] deles = assinatura.copiar();
+        int total = 0;
+        for (int i = 0; i < PERMUTACOES; i++) {
+            if (minimos[i] == deles[i] && minimos[i] != VAZIA) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /** @return Chave de cada faixa da assinatura, combinando o nmero da faixa e as posies dela. */
+    private static long[] chaves(int[] minimos) {
+        long[] chaves = new long[FAIXAS];
+        for (int faixa = 0; faixa < FAIXAS; faixa++) {
+            long chave = faixa;
+            for (int linha = 0; linha < LINHAS; linha++) {
+                chave = chave * 0x9E3779B97F4A7C15L + minimos[faixa * LINHAS + linha];
+            }
+            chaves[faixa] = chave;
+        }
+        return chaves;
+    }
+
+    /**
+     * Baixa os mnimos de uma assinatura com o hash de um ID em cada permutao.
+     *
+     * @return {@code true} se algum mnimo mudou.
+     */
+    private static boolean baixar(int[] minimos, int id) {
+        boolean mudou = false;
+        for (int i = 0; i < PERMUTACOES; i++) {
+            long h = (id ^ SEMENTES[i]) * 0xBF58476D1CE4E5B9L;
+            h = (h ^ (h >>> 31)) * 0x94D049BB133111EBL;
+            int valor = (int) (h >>> 33) & (VAZIA - 1); // Nunca igual a VAZIA
+            if (valor < minimos[i]) {
+                minimos[i] = valor;
+                mudou = true;
+            }
+        }
+        return mudou;
+    }
+
+    /** Assinatura MinHash de uma comunidade, alterada pelas threads das operaes. */
+    private static final class Assinatura {
+        private int[] minimos;
+
+        Assinatura() {
+            minimos = new int[PERMUTACOES];
+            Arrays.fill(minimos, VAZIA);
+        }
+
+        synchronized boolean incluir(int id) {
+            return baixar(minimos, id);
+        }
+
+        synchronized void substituir(int[] novos) {
+            minimos = novos;
+        }
+
+        synchronized int[] copiar() {
+            return minimos.clone();
+        }
+    }
+
+    /** Comunidade de uma lista, com a quantidade de posies iguais nas assinaturas. */
+    private record Semelhante(String nome, int iguais) {
+    }
+}
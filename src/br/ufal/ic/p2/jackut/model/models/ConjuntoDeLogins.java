@@ -0,0 +1,398 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Conjunto de logins guardado como IDs inteiros de uma {@link TabelaDeLogins}, em uma tabela de
+ * endereamento aberto de {@code int}, sem um n e uma referncia por elemento como no
+ * {@link java.util.HashSet}. Cada elemento ocupa entre 5 e 11 bytes (a tabela fica entre 3/8 e
+ * 3/4 cheia), contra cerca de 40 de um {@code HashSet}; as consultas calculam o hash do login uma
+ * vez, para obter o ID, e comparam inteiros.
+ *
+ * <p>O conjunto pode manter a ordem de incluso, como um {@link java.util.LinkedHashSet}: os IDs
+ * ficam em um array na ordem em que foram includos, que custa de 4 a 6 bytes a mais por elemento,
+ * e a tabela guarda a posio de cada um. Os removidos deixam um buraco no array, recolhido quando
+ * ele precisa crescer. Sem ordem, a iterao segue a tabela.</p>
+ *
+ * <p>Para listar o conjunto em pginas, os IDs so copiados, na primeira vez, para um
+ * {@link MapaDeBits}, mantido a partir de ento junto com a tabela; cada pgina  lida dele em
+ * ordem de ID, comeando depois do ltimo ID da pgina anterior.</p>
+ *
+ * <p>Os logins s so recuperados ao iterar. O iterador aceita {@code remove()}; incluir
+ * elementos durante a iterao tem resultado indefinido. No aceita elementos nulos.</p>
+ */
+public class ConjuntoDeLogins extends AbstractSet<String> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int CAPACIDADE_INICIAL = 4;
+    /** Posio da tabela nunca usada; encerra a sondagem. */
+    private static final int VAZIA = 0;
+    /** Posio da tabela de um elemento removido; a sondagem continua depois dela. */
+    private static final int REMOVIDA = -1;
+
+    private final boolean ordenado;
+    /** Tabela que d os IDs dos logins: a do sistema a que o conjunto pertence. */
+    private transient TabelaDeLogins tabelaLogins;
+    /**
+     * Tabela de endereamento aberto com sondagem linear. Sem ordem, guarda o prprio ID; com
+     * ordem, a posio dele em {@link #elementos} mais um.
+     */
+    private transient int[] tabela;
+    /** IDs na ordem de incluso (s com ordem); 0 nas posies de elementos removidos. */
+    private transient int[] elementos;
+    /** Posies usadas de {@link #elementos}, incluindo as de elementos removidos. */
+    private transient int fim;
+    private transient int tamanho;
+    /** Posies da tabela no vazias, incluindo as de elementos removidos. */
+    private transient int ocupadas;
+    /** Os mesmos IDs em ordem crescente, criado na primeira paginao; {@code null} antes dela. */
+    private transient MapaDeBits indice;
+
+    /**
+     * Cria um conjunto vazio; as tabelas s so alocadas na primeira incluso.
+     *
+     * @param ordenado Se a iterao deve seguir a ordem de incluso.
+     * @param tabelaLogins Tabela que d os IDs dos logins.
+     */
+    public ConjuntoDeLogins(boolean ordenado, TabelaDeLogins tabelaLogins) {
+        this.ordenado = ordenado;
+        this.tabelaLogins = tabelaLogins;
+    }
+
+    /**
+     * Cria um conjunto com os logins de uma coleo.
+     *
+     * @param ordenado Se a iterao deve seguir a ordem de incluso.
+     * @param logins Logins includos, na ordem da coleo.
+     * @param tabelaLogins Tabela que d os IDs dos logins.
+     */
+    public ConjuntoDeLogins(boolean ordenado, Collection<String> logins, TabelaDeLogins tabelaLogins) {
+        this(ordenado, tabelaLogins);
+        addAll(logins);
+    }
+
+    @Override
+    public int size() {
+        return tamanho;
+    }
+
+    @Override
+    public boolean contains(Object login) {
+        return login instanceof String texto && contemId(tabelaLogins.buscar(texto));
+    }
+
+    @Override
+    public boolean add(String login) {
+        return adicionarId(tabelaLogins.id(login));
+    }
+
+    @Override
+    public boolean remove(Object login) {
+        return login instanceof String texto && removerId(tabelaLogins.buscar(texto));
+    }
+
+    @Override
+    public void clear() {
+        tabela = null;
+        elementos = null;
+        fim = 0;
+        tamanho = 0;
+        ocupadas = 0;
+        indice = null;
+    }
+
+    /**
+     * Verifica se o conjunto contm um ID.
+     *
+     * @param id ID de um login.
+     * @return {@code true} se o ID estiver no conjunto.
+     */
+    public boolean contemId(int id) {
+        return id > 0 && localizar(id) >= 0;
+    }
+
+    /**
+     * Inclui um ID.
+     *
+     * @param id ID de um login, maior que zero.
+     * @return {@code true} se o ID ainda no estava no conjunto.
+     */
+    public boolean adicionarId(int id) {
+        if (localizar(id) >= 0) {
+            return false;
+        }
+        if (tabela == null || (ocupadas + 1) * 4 > tabela.length * 3 || ordenado && fim == elementos.length) {
+            reconstruir(tamanho + 1);
+        }
+        int mascara = tabela.length - 1;
+        int i = espalhar(id) & mascara;
+        while (tabela[i] > 0) {
+            i = (i + 1) & mascara;
+        }
+        if (tabela[i] == VAZIA) {
+            ocupadas++;
+        }
+        if (ordenado) {
+            elementos[fim++] = id;
+            tabela[i] = fim;
+        } else {
+            tabela[i] = id;
+        }
+        tamanho++;
+        if (indice != null) {
+            indice.adicionar(id);
+        }
+        return true;
+    }
+
+    /**
+     * Retira um ID.
+     *
+     * @param id ID de um login.
+     * @return {@code true} se o ID estava no conjunto.
+     */
+    public boolean removerId(int id) {
+        int i = id > 0 ? localizar(id) : -1;
+        if (i < 0) {
+            return false;
+        }
+        if (--tamanho == 0) {
+            clear();
+            return true;
+        }
+        if (ordenado) {
+            elementos[tabela[i] - 1] = 0;
+        }
+        tabela[i] = REMOVIDA;
+        if (indice != null) {
+            indice.remover(id);
+        }
+        return true;
+    }
+
+    /**
+     * Copia, em ordem crescente, os IDs do conjunto maiores que um dado, at encher o destino.
+     *
+     * @param depoisDe ID a partir do qual copiar, exclusive; 0 copia desde o primeiro.
+     * @param destino Recebe os IDs a partir da posio 0.
+     * @return Quantidade de IDs copiados; menor que o tamanho do destino s se no houver mais.
+     * @see MapaDeBits#copiarDepoisDe(int, int[])
+     */
+    public int copiarIdsDepoisDe(int depoisDe, int[] destino) {
+        if (indice == null) {
+            indice = new MapaDeBits();
+            paraCadaId(indice::adicionar);
+        }
+        return indice.copiarDepoisDe(depoisDe, destino);
+    }
+
+    /**
+     * Entrega cada ID do conjunto, na ordem de iterao, sem recuperar os logins.
+     *
+     * @param acao Recebe cada ID.
+     */
+    public void paraCadaId(IntConsumer acao) {
+        for (int i = avancar(0); i >= 0; i = avancar(i + 1)) {
+            acao.accept(ordenado ? elementos[i] : tabela[i]);
+        }
+    }
+
+    /**
+     * Copia os IDs do conjunto, na ordem de iterao.
+     *
+     * @return Array novo com os IDs.
+     */
+    public int[] ids() {
+        int[] ids = new int[tamanho];
+        int posicao = 0;
+        for (int i = avancar(0); i >= 0; i = avancar(i + 1)) {
+            ids[posicao++] = ordenado ? elementos[i] : tabela[i];
+        }
+        return posicao == ids.length ? ids : Arrays.copyOf(ids, posicao);
+    }
+
+    /**
+     * Conta os IDs do conjunto aceitos por um filtro, sem recuperar os logins.
+     *
+     * @param filtro Recebe cada ID.
+     * @return Quantidade de IDs aceitos.
+     */
+    public int contarIds(IntPredicate filtro) {
+        int total = 0;
+        for (int i = avancar(0); i >= 0; i = avancar(i + 1)) {
+            if (filtro.test(ordenado ? elementos[i] : tabela[i])) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Seleciona elementos pelo ID, na ordem de iterao.
+     *
+     * @param filtro Recebe cada ID.
+     * @return Logins dos elementos aceitos pelo filtro.
+     */
+    public List<String> filtrar(IntPredicate filtro) {
+        List<String> aceitos = new ArrayList<>();
+        for (int i = avancar(0); i >= 0; i = avancar(i + 1)) {
+            int id = ordenado ? elementos[i] : tabela[i];
+            if (filtro.test(id)) {
+                aceitos.add(tabelaLogins.login(id));
+            }
+        }
+        return aceitos;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<>() {
+            private int proxima = avancar(0);
+            private int atual;
+
+            @Override
+            public boolean hasNext() {
+                return proxima >= 0;
+            }
+
+            @Override
+            public String next() {
+                if (proxima < 0) {
+                    throw new NoSuchElementException();
+                }
+                atual = ordenado ? elementos[proxima] : tabela[proxima];
+                proxima = avancar(proxima + 1);
+                return tabelaLogins.login(atual);
+            }
+
+            @Override
+            public void remove() {
+                if (atual == 0) {
+                    throw new IllegalStateException();
+                }
+                // S marca a posio como removida; as demais no se movem
+                removerId(atual);
+                atual = 0;
+            }
+        };
+    }
+
+    /**
+     * Prxima posio com elemento a partir de {@code inicio}: em {@link #elementos}, com ordem, ou
+     * na tabela, sem ordem.
+     *
+     * @return A posio, ou -1 se no houver mais elementos.
+     */
+    private int avancar(int inicio) {
+        if (ordenado) {
+            for (int i = inicio; i < fim; i++) {
+                if (elementos[i] != 0) {
+                    return i;
+                }
+            }
+        } else if (tabela != null) {
+            for (int i = inicio; i < tabela.length; i++) {
+                if (tabela[i] > 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** @return Posio do ID na tabela, ou -1 se ele no estiver no conjunto. */
+    private int localizar(int id) {
+        if (tamanho == 0) {
+            return -1;
+        }
+        int mascara = tabela.length - 1;
+        for (int i = espalhar(id) & mascara; ; i = (i + 1) & mascara) {
+            int valor = tabela[i];
+            if (valor == VAZIA) {
+                return -1;
+            }
+            if (valor != REMOVIDA && (ordenado ? elementos[valor - 1] : valor) == id) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Refaz a tabela com capacidade para o dobro de {@code quantidade} elementos, descartando as
+     * posies removidas e, com ordem, os buracos do array de elementos.
+     */
+    private void reconstruir(int quantidade) {
+        int capacidade = CAPACIDADE_INICIAL;
+        while (capacidade < quantidade * 2) {
+            capacidade <<= 1;
+        }
+        int[] anterior = ordenado ? elementos : tabela;
+        tabela = new int[capacidade];
+        ocupadas = tamanho;
+        int mascara = capacidade - 1;
+        if (ordenado) {
+            elementos = new int[Math.max(CAPACIDADE_INICIAL, quantidade + (quantidade >> 1))];
+            int posicao = 0;
+            for (int i = 0; i < fim; i++) {
+                int id = anterior[i];
+                if (id != 0) {
+                    elementos[posicao++] = id;
+                    tabela[livre(id, mascara)] = posicao;
+                }
+            }
+            fim = posicao;
+        } else if (anterior != null) {
+            for (int id : anterior) {
+                if (id > 0) {
+                    tabela[livre(id, mascara)] = id;
+                }
+            }
+        }
+    }
+
+    /** @return Primeira posio vazia da sondagem de um ID em uma tabela sem posies removidas. */
+    private int livre(int id, int mascara) {
+        int i = espalhar(id) & mascara;
+        while (tabela[i] != VAZIA) {
+            i = (i + 1) & mascara;
+        }
+        return i;
+    }
+
+    /** Espalha IDs consecutivos pela tabela (hash de Fibonacci). */
+    private static int espalhar(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Grava a quantidade de elementos seguida dos logins, sem os IDs, que so da tabela do sistema.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(tamanho);
+        for (String login : this) {
+            out.writeObject(login);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        tabelaLogins = TabelaDeLogins.daDesserializacao();
+        int quantidade = in.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            add((String) in.readObject());
+        }
+    }
+}
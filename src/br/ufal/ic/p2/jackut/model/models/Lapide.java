@@ -0,0 +1,137 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+import br.ufal.ic.p2.jackut.model.persistencia.EscritorBinario;
+import br.ufal.ic.p2.jackut.model.persistencia.LeitorBinario;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lpide de uma conta removida. A remoo tira o usurio do sistema na hora, mas as relaes que
+ * outros usurios e comunidades mantm com ele so desfeitas depois, em lotes, pelo expurgo em
+ * segundo plano. A lpide guarda o que ainda falta desfazer: o prprio usurio, cujas relaes
+ * vo sendo consumidas, e as comunidades que ele criou, cujos membros ainda as listam.
+ *
+ * <p>As lpides so gravadas nos snapshots e checkpoints, de modo que o expurgo continua de onde
+ * parou depois de reiniciar o sistema.</p>
+ */
+public class Lapide {
+    private final Usuario usuario;
+    /** Comunidades criadas pela conta, removidas junto com ela, por nome. */
+    private final Map<String, Comunidade> comunidades;
+
+    /**
+     * Relaes de um usurio removido que apontam para outros usurios, na ordem em que o
+     * expurgo as percorre, com a forma de desfazer cada uma no outro lado.
+     */
+    enum Relacao {
+        AMIGOS, CONVITES_ENVIADOS, CONVITES_RECEBIDOS, IDOLOS, FAS, PAQUERAS, PAQUERADO_POR,
+        INIMIGOS, INIMIGO_DE, DESTINATARIOS_RECADOS;
+
+        /**
+         * Remove o usurio removido das relaes de outro usurio.
+         *
+         * @param outro Usurio que ainda referencia o removido.
+         * @param login Login do usurio removido.
+         */
+        void desfazer(Usuario outro, String login) {
+            switch (this) {
+                case AMIGOS, CONVITES_ENVIADOS, CONVITES_RECEBIDOS -> outro.removerAmigo(login);
+                case IDOLOS -> outro.removerFa(login);
+                case FAS -> outro.removerIdolo(login);
+                case PAQUERAS -> outro.getPaqueradoPor().remove(login);
+                case PAQUERADO_POR -> outro.removerPaquera(login);
+                case INIMIGOS -> outro.getInimigoDe().remove(login);
+                case INIMIGO_DE -> outro.removerInimigo(login);
+                case DESTINATARIOS_RECADOS -> outro.removerRecadosDe(login);
+            }
+        }
+    }
+
+    /**
+     * Cria a lpide de uma conta.
+     *
+     * @param usuario Usurio removido.
+     * @param comunidades Comunidades criadas por ele, j retiradas do sistema.
+     */
+    public Lapide(Usuario usuario, Map<String, Comunidade> comunidades) {
+        this.usuario = usuario;
+        this.comunidades = comunidades;
+    }
+
+    /**
+     * Grava a lpide (exceto o login, gravado pelo snapshot como chave) no formato binrio de
+     * snapshot.
+     *
+     * @param out Escritor de destino.
+     */
+    public void escrever(EscritorBinario out) {
+        usuario.escrever(out);
+        out.escreverVarint(comunidades.size());
+        for (Map.Entry<String, Comunidade> entrada : comunidades.entrySet()) {
+            out.escreverTexto(entrada.getKey());
+            entrada.getValue().escrever(out);
+        }
+    }
+
+    /**
+     * L uma lpide gravada por {@link #escrever(EscritorBinario)}.
+     *
+     * @param login Login da conta removida.
+     * @param in Leitor posicionado no incio dos dados da lpide.
+     * @param versao Verso do formato do snapshot.
+     * @param tabelaLogins Tabela de logins do sistema em que a lpide  carregada.
+     * @return A lpide reconstruda.
+     */
+    public static Lapide ler(String login, LeitorBinario in, int versao, TabelaDeLogins tabelaLogins) {
+        Usuario usuario = Usuario.ler(login, in, versao, tabelaLogins);
+        int quantidade = in.lerVarint();
+        Map<String, Comunidade> comunidades = new LinkedHashMap<>();
+        for (int i = 0; i < quantidade; i++) {
+            String nome = in.lerTexto();
+            comunidades.put(nome, Comunidade.ler(nome, in, versao, tabelaLogins));
+        }
+        return new Lapide(usuario, comunidades);
+    }
+
+    /** @return Login da conta removida. */
+    public String getLogin() { return usuario.getLogin(); }
+
+    /** @return Usurio removido, com as relaes que ainda no foram desfeitas. */
+    public Usuario getUsuario() { return usuario; }
+
+    /** @return Comunidades criadas pela conta cujos membros ainda no foram todos atualizados. */
+    public Map<String, Comunidade> getComunidades() { return comunidades; }
+
+    /**
+     * Indica se no resta nada a desfazer: nenhuma relao, recado recebido ou comunidade.
+     *
+     * @return {@code true} se a lpide pode ser descartada.
+     */
+    public boolean isConcluida() {
+        for (Relacao relacao : Relacao.values()) {
+            if (!usuario.relacao(relacao).isEmpty()) {
+                return false;
+            }
+        }
+        return usuario.getRecados().isEmpty() && usuario.getComunidades().isEmpty();
+    }
+
+    /**
+     * Quantidade de relaes que ainda faltam desfazer (os membros de cada comunidade criada
+     * contam uma vez cada).
+     *
+     * @return Relaes pendentes.
+     */
+    public long getRelacoesPendentes() {
+        long pendentes = usuario.getRecados().size() + usuario.getComunidades().size();
+        for (Relacao relacao : Relacao.values()) {
+            pendentes += usuario.relacao(relacao).size();
+        }
+        for (Comunidade comunidade : comunidades.values()) {
+            pendentes += comunidade.membros().size();
+        }
+        return pendentes;
+    }
+
+}
@@ -0,0 +1,518 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Conjunto de inteiros comprimido no estilo do Roaring bitmap. Os valores so divididos em blocos
+ * de 2^16 pelos 16 bits mais altos, e cada bloco com algum valor tem um continer com os 16 bits
+ * mais baixos: um array ordenado de {@code char} (2 bytes por valor) enquanto tiver at
+ * {@value #LIMITE_ARRAY} valores, e um mapa de 2^16 bits (8 KB) acima disso. Um bloco cheio custa
+ * 1 bit por valor.
+ *
+ * <p>Interseo e unio percorrem os blocos dos dois conjuntos em ordem e combinam os contineres
+ * correspondentes: mapa com mapa palavra a palavra, array com mapa testando bits, e array com array
+ * por intercalao (ou busca binria, se um for muito menor). A contagem da interseo no cria
+ * contineres.</p>
+ *
+ * <p>No  seguro para uso concorrente sem sincronizao externa.</p>
+ */
+public class MapaDeBits {
+    /** Acima desta quantidade de valores, um continer passa de array a mapa de bits. */
+    private static final int LIMITE_ARRAY = 4096;
+    /** Palavras de 64 bits de um continer de mapa (2^16 bits). */
+    private static final int PALAVRAS = 1024;
+    /** Razo de tamanhos a partir da qual a interseo de arrays usa busca binria. */
+    private static final int RAZAO_BUSCA = 32;
+    private static final char[] SEM_CHAVES = new char[0];
+    private static final Object[] SEM_CONTEINERES = new Object[0];
+    private static final int[] SEM_CARDINALIDADES = new int[0];
+
+    /** 16 bits mais altos de cada bloco, em ordem crescente. */
+    private char[] chaves = SEM_CHAVES;
+    /** Continer de cada bloco: {@code char[]} ordenado ou {@code long[]} de {@value #PALAVRAS} palavras. */
+    private Object[] conteineres = SEM_CONTEINERES;
+    private int[] cardinalidades = SEM_CARDINALIDADES;
+    private int blocos;
+    private int tamanho;
+
+    /**
+     * Inclui um valor.
+     *
+     * @param valor Valor includo.
+     * @return {@code true} se o valor ainda no estava no conjunto.
+     */
+    public boolean adicionar(int valor) {
+        char chave = (char) (valor >>> 16);
+        char baixo = (char) valor;
+        int i = Arrays.binarySearch(chaves, 0, blocos, chave);
+        if (i < 0) {
+            char[] valores = new char[4];
+            valores[0] = baixo;
+            inserirBloco(-i - 1, chave, valores, 1);
+            tamanho++;
+            return true;
+        }
+        int cardinalidade = cardinalidades[i];
+        if (conteineres[i] instanceof long[] bits) {
+            long antes = bits[baixo >>> 6];
+            bits[baixo >>> 6] = antes | 1L << baixo;
+            if (bits[baixo >>> 6] == antes) {
+                return false;
+            }
+        } else {
+            char[] valores = (char[]) conteineres[i];
+            int posicao = Arrays.binarySearch(valores, 0, cardinalidade, baixo);
+            if (posicao >= 0) {
+                return false;
+            }
+            posicao = -posicao - 1;
+            if (cardinalidade == LIMITE_ARRAY) {
+                long[] bits = paraBits(valores, cardinalidade);
+                bits[baixo >>> 6] |= 1L << baixo;
+                conteineres[i] = bits;
+            } else {
+                if (cardinalidade == valores.length) {
+                    int capacidade = Math.max(4, cardinalidade + (cardinalidade >> 1));
+                    valores = Arrays.copyOf(valores, Math.min(LIMITE_ARRAY, capacidade));
+                    conteineres[i] = valores;
+                }
+                System.arraycopy(valores, posicao, valores, posicao + 1, cardinalidade - posicao);
+                valores[posicao] = baixo;
+            }
+        }
+        cardinalidades[i]++;
+        tamanho++;
+        return true;
+    }
+
+    /**
+     * Retira um valor. Um bloco esvaziado  descartado; um mapa de bits volta a ser array quando
+     * cai para a metade do limite, para no alternar a cada incluso e retirada perto dele.
+     *
+     * @param valor Valor retirado.
+     * @return {@code true} se o valor estava no conjunto.
+     */
+    public boolean remover(int valor) {
+        char chave = (char) (valor >>> 16);
+        char baixo = (char) valor;
+        int i = Arrays.binarySearch(chaves, 0, blocos, chave);
+        if (i < 0) {
+            return false;
+        }
+        int cardinalidade = cardinalidades[i];
+        if (conteineres[i] instanceof long[] bits) {
+            long antes = bits[baixo >>> 6];
+            if ((antes & 1L << baixo) == 0) {
+                return false;
+            }
+            bits[baixo >>> 6] = antes & ~(1L << baixo);
+            if (cardinalidade - 1 <= LIMITE_ARRAY / 2) {
+                conteineres[i] = paraArray(bits, cardinalidade - 1);
+            }
+        } else {
+            char[] valores = (char[]) conteineres[i];
+            int posicao = Arrays.binarySearch(valores, 0, cardinalidade, baixo);
+            if (posicao < 0) {
+                return false;
+            }
+            System.arraycopy(valores, posicao + 1, valores, posicao, cardinalidade - posicao - 1);
+        }
+        tamanho--;
+        if (--cardinalidades[i] == 0) {
+            removerBloco(i);
+        }
+        return true;
+    }
+
+    /**
+     * Verifica se o conjunto contm um valor.
+     *
+     * @param valor Valor procurado.
+     * @return {@code true} se o valor estiver no conjunto.
+     */
+    public boolean contem(int valor) {
+        int i = Arrays.binarySearch(chaves, 0, blocos, (char) (valor >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char baixo = (char) valor;
+        if (conteineres[i] instanceof long[] bits) {
+            return (bits[baixo >>> 6] & 1L << baixo) != 0;
+        }
+        return Arrays.binarySearch((char[]) conteineres[i], 0, cardinalidades[i], baixo) >= 0;
+    }
+
+    /** @return Quantidade de valores no conjunto. */
+    public int cardinalidade() {
+        return tamanho;
+    }
+
+    /** Retira todos os valores e libera os contineres. */
+    public void limpar() {
+        chaves = SEM_CHAVES;
+        conteineres = SEM_CONTEINERES;
+        cardinalidades = SEM_CARDINALIDADES;
+        blocos = 0;
+        tamanho = 0;
+    }
+
+    /**
+     * Conta os valores presentes nos dois conjuntos, sem criar o conjunto da interseo.
+     *
+     * @param outro Outro conjunto.
+     * @return Tamanho da interseo.
+     */
+    public int cardinalidadeE(MapaDeBits outro) {
+        int total = 0;
+        int i = 0;
+        int j = 0;
+        while (i < blocos && j < outro.blocos) {
+            if (chaves[i] < outro.chaves[j]) {
+                i++;
+            } else if (chaves[i] > outro.chaves[j]) {
+                j++;
+            } else {
+                total += contarE(conteineres[i], cardinalidades[i], outro.conteineres[j], outro.cardinalidades[j]);
+                i++;
+                j++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Conta os valores presentes em pelo menos um dos conjuntos, sem criar o conjunto da unio.
+     *
+     * @param outro Outro conjunto.
+     * @return Tamanho da unio.
+     */
+    public int cardinalidadeOu(MapaDeBits outro) {
+        return tamanho + outro.tamanho - cardinalidadeE(outro);
+    }
+
+    /**
+     * Cria o conjunto dos valores presentes nos dois conjuntos.
+     *
+     * @param outro Outro conjunto.
+     * @return A interseo; nenhum dos dois conjuntos  alterado.
+     */
+    public MapaDeBits e(MapaDeBits outro) {
+        MapaDeBits resultado = new MapaDeBits();
+        int i = 0;
+        int j = 0;
+        while (i < blocos && j < outro.blocos) {
+            if (chaves[i] < outro.chaves[j]) {
+                i++;
+            } else if (chaves[i] > outro.chaves[j]) {
+                j++;
+            } else {
+                resultado.acrescentarBloco(chaves[i],
+                        e(conteineres[i], cardinalidades[i], outro.conteineres[j], outro.cardinalidades[j]));
+                i++;
+                j++;
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Cria o conjunto dos valores presentes em pelo menos um dos conjuntos.
+     *
+     * @param outro Outro conjunto.
+     * @return A unio; nenhum dos dois conjuntos  alterado.
+     */
+    public MapaDeBits ou(MapaDeBits outro) {
+        MapaDeBits resultado = new MapaDeBits();
+        int i = 0;
+        int j = 0;
+        while (i < blocos || j < outro.blocos) {
+            if (j == outro.blocos || i < blocos && chaves[i] < outro.chaves[j]) {
+                resultado.acrescentarBloco(chaves[i], copiar(conteineres[i], cardinalidades[i]));
+                i++;
+            } else if (i == blocos || chaves[i] > outro.chaves[j]) {
+                resultado.acrescentarBloco(outro.chaves[j], copiar(outro.conteineres[j], outro.cardinalidades[j]));
+                j++;
+            } else {
+                resultado.acrescentarBloco(chaves[i],
+                        ou(conteineres[i], cardinalidades[i], outro.conteineres[j], outro.cardinalidades[j]));
+                i++;
+                j++;
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Percorre os valores em ordem crescente (sem sinal).
+     *
+     * @param acao Recebe cada valor.
+     */
+    public void paraCada(IntConsumer acao) {
+        for (int i = 0; i < blocos; i++) {
+            int alto = chaves[i] << 16;
+            if (conteineres[i] instanceof long[] bits) {
+                for (int palavra = 0; palavra < PALAVRAS; palavra++) {
+                    for (long resto = bits[palavra]; resto != 0; resto &= resto - 1) {
+                        acao.accept(alto | palavra << 6 | Long.numberOfTrailingZeros(resto));
+                    }
+                }
+            } else {
+                char[] valores = (char[]) conteineres[i];
+                for (int k = 0; k < cardinalidades[i]; k++) {
+                    acao.accept(alto | valores[k]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copia, em ordem crescente (sem sinal), os valores maiores que um dado, at encher o destino.
+     * O bloco inicial  localizado por busca binria, de modo que a cpia custa O(log blocos) mais
+     * o tamanho do destino (e, em um mapa de bits, as palavras vazias percorridas).
+     *
+     * @param depoisDe Valor a partir do qual copiar, exclusive; 0 copia desde o menor valor
+     *                 positivo.
+     * @param destino Recebe os valores a partir da posio 0.
+     * @return Quantidade de valores copiados; menor que o tamanho do destino s se no houver mais.
+     */
+    public int copiarDepoisDe(int depoisDe, int[] destino) {
+        if (depoisDe == -1) { // Maior valor sem sinal
+            return 0;
+        }
+        int inicio = depoisDe + 1;
+        int i = Arrays.binarySearch(chaves, 0, blocos, (char) (inicio >>> 16));
+        char baixo = (char) inicio;
+        if (i < 0) {
+            i = -i - 1;
+            baixo = 0;
+        }
+        int copiados = 0;
+        for (; i < blocos && copiados < destino.length; i++, baixo = 0) {
+            int alto = chaves[i] << 16;
+            if (conteineres[i] instanceof long[] bits) {
+                int palavra = baixo >>> 6;
+                long resto = bits[palavra] & -1L << baixo;
+                while (true) {
+                    for (; resto != 0 && copiados < destino.length; resto &= resto - 1) {
+                        destino[copiados++] = alto | palavra << 6 | Long.numberOfTrailingZeros(resto);
+                    }
+                    if (copiados == destino.length || ++palavra == PALAVRAS) {
+                        break;
+                    }
+                    resto = bits[palavra];
+                }
+            } else {
+                char[] valores = (char[]) conteineres[i];
+                int k = Arrays.binarySearch(valores, 0, cardinalidades[i], baixo);
+                for (k = k < 0 ? -k - 1 : k; k < cardinalidades[i] && copiados < destino.length; k++) {
+                    destino[copiados++] = alto | valores[k];
+                }
+            }
+        }
+        return copiados;
+    }
+
+    // Contineres
+
+    private void inserirBloco(int posicao, char chave, Object conteiner, int cardinalidade) {
+        if (blocos == chaves.length) {
+            int capacidade = Math.max(4, blocos + (blocos >> 1));
+            chaves = Arrays.copyOf(chaves, capacidade);
+            conteineres = Arrays.copyOf(conteineres, capacidade);
+            cardinalidades = Arrays.copyOf(cardinalidades, capacidade);
+        }
+        System.arraycopy(chaves, posicao, chaves, posicao + 1, blocos - posicao);
+        System.arraycopy(conteineres, posicao, conteineres, posicao + 1, blocos - posicao);
+        System.arraycopy(cardinalidades, posicao, cardinalidades, posicao + 1, blocos - posicao);
+        chaves[posicao] = chave;
+        conteineres[posicao] = conteiner;
+        cardinalidades[posicao] = cardinalidade;
+        blocos++;
+    }
+
+    private void removerBloco(int posicao) {
+        System.arraycopy(chaves, posicao + 1, chaves, posicao, blocos - posicao - 1);
+        System.arraycopy(conteineres, posicao + 1, conteineres, posicao, blocos - posicao - 1);
+        System.arraycopy(cardinalidades, posicao + 1, cardinalidades, posicao, blocos - posicao - 1);
+        blocos--;
+        conteineres[blocos] = null;
+    }
+
+    /**
+     * Acrescenta no fim um bloco resultante de uma operao: um {@code char[]} do tamanho exato ou
+     * um mapa de bits, convertidos para a forma certa para a cardinalidade. Blocos vazios so
+     * ignorados.
+     */
+    private void acrescentarBloco(char chave, Object conteiner) {
+        int cardinalidade = conteiner instanceof long[] bits ? contarBits(bits) : ((char[]) conteiner).length;
+        if (cardinalidade == 0) {
+            return;
+        }
+        if (conteiner instanceof long[] bits && cardinalidade <= LIMITE_ARRAY) {
+            conteiner = paraArray(bits, cardinalidade);
+        } else if (conteiner instanceof char[] valores && cardinalidade > LIMITE_ARRAY) {
+            conteiner = paraBits(valores, cardinalidade);
+        }
+        inserirBloco(blocos, chave, conteiner, cardinalidade);
+        tamanho += cardinalidade;
+    }
+
+    private static int contarE(Object a, int tamanhoA, Object b, int tamanhoB) {
+        if (a instanceof long[] bitsA && b instanceof long[] bitsB) {
+            int total = 0;
+            for (int k = 0; k < PALAVRAS; k++) {
+                total += Long.bitCount(bitsA[k] & bitsB[k]);
+            }
+            return total;
+        }
+        if (a instanceof long[] || b instanceof long[]) {
+            long[] bits = (long[]) (a instanceof long[] ? a : b);
+            char[] valores = (char[]) (a instanceof long[] ? b : a);
+            int quantidade = a instanceof long[] ? tamanhoB : tamanhoA;
+            int total = 0;
+            for (int k = 0; k < quantidade; k++) {
+                total += (int) (bits[valores[k] >>> 6] >>> valores[k]) & 1;
+            }
+            return total;
+        }
+        return intersecao((char[]) a, tamanhoA, (char[]) b, tamanhoB, null);
+    }
+
+    private static Object e(Object a, int tamanhoA, Object b, int tamanhoB) {
+        if (a instanceof long[] bitsA && b instanceof long[] bitsB) {
+            long[] bits = new long[PALAVRAS];
+            for (int k = 0; k < PALAVRAS; k++) {
+                bits[k] = bitsA[k] & bitsB[k];
+            }
+            return bits;
+        }
+        if (a instanceof long[] || b instanceof long[]) {
+            long[] bits = (long[]) (a instanceof long[] ? a : b);
+            char[] valores = (char[]) (a instanceof long[] ? b : a);
+            int quantidade = a instanceof long[] ? tamanhoB : tamanhoA;
+            char[] resultado = new char[quantidade];
+            int total = 0;
+            for (int k = 0; k < quantidade; k++) {
+                if ((bits[valores[k] >>> 6] & 1L << valores[k]) != 0) {
+                    resultado[total++] = valores[k];
+                }
+            }
+            return Arrays.copyOf(resultado, total);
+        }
+        char[] resultado = new char[Math.min(tamanhoA, tamanhoB)];
+        return Arrays.copyOf(resultado, intersecao((char[]) a, tamanhoA, (char[]) b, tamanhoB, resultado));
+    }
+
+    private static Object ou(Object a, int tamanhoA, Object b, int tamanhoB) {
+        if (a instanceof long[] || b instanceof long[]) {
+            long[] bits = a instanceof long[] bitsA ? bitsA.clone() : paraBits((char[]) a, tamanhoA);
+            if (b instanceof long[] bitsB) {
+                for (int k = 0; k < PALAVRAS; k++) {
+                    bits[k] |= bitsB[k];
+                }
+            } else {
+                char[] valores = (char[]) b;
+                for (int k = 0; k < tamanhoB; k++) {
+                    bits[valores[k] >>> 6] |= 1L << valores[k];
+                }
+            }
+            return bits;
+        }
+        char[] valoresA = (char[]) a;
+        char[] valoresB = (char[]) b;
+        char[] resultado = new char[tamanhoA + tamanhoB];
+        int i = 0;
+        int j = 0;
+        int total = 0;
+        while (i < tamanhoA || j < tamanhoB) {
+            if (j == tamanhoB || i < tamanhoA && valoresA[i] < valoresB[j]) {
+                resultado[total++] = valoresA[i++];
+            } else if (i == tamanhoA || valoresA[i] > valoresB[j]) {
+                resultado[total++] = valoresB[j++];
+            } else {
+                resultado[total++] = valoresA[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(resultado, total);
+    }
+
+    /**
+     * Interseo de dois arrays ordenados. Se um for muito menor que o outro, cada valor dele 
+     * procurado por busca binria no restante do maior; caso contrrio, os dois so intercalados.
+     *
+     * @param destino Recebe os valores comuns, ou {@code null} para s contar.
+     * @return Quantidade de valores comuns.
+     */
+    private static int intersecao(char[] a, int tamanhoA, char[] b, int tamanhoB, char[] destino) {
+        if (tamanhoA > tamanhoB) {
+            return intersecao(b, tamanhoB, a, tamanhoA, destino);
+        }
+        int total = 0;
+        if (tamanhoA * RAZAO_BUSCA < tamanhoB) {
+            int inicio = 0;
+            for (int i = 0; i < tamanhoA && inicio < tamanhoB; i++) {
+                int posicao = Arrays.binarySearch(b, inicio, tamanhoB, a[i]);
+                if (posicao >= 0) {
+                    if (destino != null) {
+                        destino[total] = a[i];
+                    }
+                    total++;
+                    inicio = posicao + 1;
+                } else {
+                    inicio = -posicao - 1;
+                }
+            }
+            return total;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < tamanhoA && j < tamanhoB) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                if (destino != null) {
+                    destino[total] = a[i];
+                }
+                total++;
+                i++;
+                j++;
+            }
+        }
+        return total;
+    }
+
+    private static Object copiar(Object conteiner, int cardinalidade) {
+        return conteiner instanceof long[] bits ? bits.clone() : Arrays.copyOf((char[]) conteiner, cardinalidade);
+    }
+
+    private static long[] paraBits(char[] valores, int quantidade) {
+        long[] bits = new long[PALAVRAS];
+        for (int k = 0; k < quantidade; k++) {
+            bits[valores[k] >>> 6] |= 1L << valores[k];
+        }
+        return bits;
+    }
+
+    private static char[] paraArray(long[] bits, int cardinalidade) {
+        char[] valores = new char[cardinalidade];
+        int total = 0;
+        for (int palavra = 0; palavra < PALAVRAS; palavra++) {
+            for (long resto = bits[palavra]; resto != 0; resto &= resto - 1) {
+                valores[total++] = (char) (palavra << 6 | Long.numberOfTrailingZeros(resto));
+            }
+        }
+        return valores;
+    }
+
+    private static int contarBits(long[] bits) {
+        int total = 0;
+        for (long palavra : bits) {
+            total += Long.bitCount(palavra);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,217 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntPredicate;
+
+/**
+ * Membros de uma comunidade, guardados pelos IDs de uma {@link TabelaDeLogins} em um
+ * {@link MapaDeBits}, que responde se um usurio  membro e permite cruzar comunidades entre si e
+ * com conjuntos de usurios, e em um array com os IDs na ordem de entrada, que d a ordem da
+ * listagem. Cada membro custa 4 bytes no array e de 1 bit a 2 bytes no mapa, contra cerca de 50
+ * de um {@link java.util.LinkedHashSet}.
+ *
+ * <p>Quem sai continua no array at ele ser compactado, o que acontece quando ele precisaria
+ * crescer com metade das posies ocupada por quem saiu, ou quando quem saiu volta (para que
+ * volte no fim da ordem). A iterao pula essas posies, e o iterador aceita {@code remove()};
+ * incluir elementos durante a iterao tem resultado indefinido. No aceita elementos nulos.</p>
+ */
+public class MembrosDeComunidade extends AbstractSet<String> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int[] SEM_MEMBROS = new int[0];
+
+    /** Tabela que d os IDs dos logins: a do sistema a que a comunidade pertence. */
+    private transient TabelaDeLogins tabelaLogins;
+    private transient MapaDeBits presentes = new MapaDeBits();
+    /** IDs na ordem de entrada, incluindo os de quem j saiu (ausentes de {@link #presentes}). */
+    private transient int[] ordem = SEM_MEMBROS;
+    private transient int fim;
+    /** IDs de quem saiu e ainda ocupa uma posio de {@link #ordem}. */
+    private transient MapaDeBits saidas = new MapaDeBits();
+
+    /**
+     * Cria um conjunto de membros vazio.
+     *
+     * @param tabelaLogins Tabela que d os IDs dos logins.
+     */
+    public MembrosDeComunidade(TabelaDeLogins tabelaLogins) {
+        this.tabelaLogins = tabelaLogins;
+    }
+
+    @Override
+    public int size() {
+        return presentes.cardinalidade();
+    }
+
+    @Override
+    public boolean contains(Object login) {
+        return login instanceof String texto && presentes.contem(tabelaLogins.buscar(texto));
+    }
+
+    @Override
+    public boolean add(String login) {
+        int id = tabelaLogins.id(login);
+        if (presentes.contem(id)) {
+            return false;
+        }
+        if (saidas.contem(id) || fim == ordem.length && saidas.cardinalidade() >= fim / 2) {
+            compactar();
+        }
+        if (fim == ordem.length) {
+            ordem = Arrays.copyOf(ordem, Math.max(4, fim + (fim >> 1)));
+        }
+        presentes.adicionar(id);
+        ordem[fim++] = id;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object login) {
+        return login instanceof String texto && removerId(tabelaLogins.buscar(texto));
+    }
+
+    @Override
+    public void clear() {
+        presentes.limpar();
+        saidas.limpar();
+        ordem = SEM_MEMBROS;
+        fim = 0;
+    }
+
+    private boolean removerId(int id) {
+        if (!presentes.remover(id)) {
+            return false;
+        }
+        if (presentes.cardinalidade() == 0) {
+            clear();
+        } else {
+            saidas.adicionar(id);
+        }
+        return true;
+    }
+
+    /** Retira do array as posies de quem saiu, mantendo a ordem dos demais. */
+    private void compactar() {
+        int posicao = 0;
+        for (int i = 0; i < fim; i++) {
+            if (presentes.contem(ordem[i])) {
+                ordem[posicao++] = ordem[i];
+            }
+        }
+        fim = posicao;
+        saidas.limpar();
+    }
+
+    /**
+     * Retorna o mapa dos IDs dos membros, para cruzar a comunidade com outros conjuntos. No deve
+     * ser alterado.
+     *
+     * @return O prprio mapa de IDs.
+     */
+    MapaDeBits mapa() {
+        return presentes;
+    }
+
+    /**
+     * Copia, em ordem crescente, os IDs dos membros maiores que um dado, at encher o destino, para
+     * listar a comunidade em pginas sem percorrer a ordem de entrada.
+     *
+     * @param depoisDe ID a partir do qual copiar, exclusive; 0 copia desde o primeiro.
+     * @param destino Recebe os IDs a partir da posio 0.
+     * @return Quantidade de IDs copiados; menor que o tamanho do destino s se no houver mais.
+     */
+    public int copiarIdsDepoisDe(int depoisDe, int[] destino) {
+        return presentes.copiarDepoisDe(depoisDe, destino);
+    }
+
+    /**
+     * Seleciona membros pelo ID, na ordem de entrada.
+     *
+     * @param filtro Recebe o ID de cada membro.
+     * @return Logins dos membros aceitos pelo filtro.
+     */
+    public List<String> filtrar(IntPredicate filtro) {
+        List<String> aceitos = new ArrayList<>();
+        for (int i = avancar(0); i >= 0; i = avancar(i + 1)) {
+            if (filtro.test(ordem[i])) {
+                aceitos.add(tabelaLogins.login(ordem[i]));
+            }
+        }
+        return aceitos;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<>() {
+            private int proxima = avancar(0);
+            private int atual;
+
+            @Override
+            public boolean hasNext() {
+                return proxima >= 0;
+            }
+
+            @Override
+            public String next() {
+                if (proxima < 0) {
+                    throw new NoSuchElementException();
+                }
+                atual = ordem[proxima];
+                proxima = avancar(proxima + 1);
+                return tabelaLogins.login(atual);
+            }
+
+            @Override
+            public void remove() {
+                if (atual == 0) {
+                    throw new IllegalStateException();
+                }
+                // No compacta o array, de modo que as posies seguintes no se movem
+                removerId(atual);
+                atual = 0;
+            }
+        };
+    }
+
+    /** @return Prxima posio de {@link #ordem} com um membro a partir de {@code inicio}, ou -1. */
+    private int avancar(int inicio) {
+        boolean houveSaidas = saidas.cardinalidade() > 0;
+        for (int i = inicio; i < fim; i++) {
+            if (!houveSaidas || presentes.contem(ordem[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Grava a quantidade de membros seguida dos logins, sem os IDs, que so da tabela do sistema.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size());
+        for (String login : this) {
+            out.writeObject(login);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        tabelaLogins = TabelaDeLogins.daDesserializacao();
+        presentes = new MapaDeBits();
+        saidas = new MapaDeBits();
+        ordem = SEM_MEMBROS;
+        int quantidade = in.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            add((String) in.readObject());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+import java.io.Serializable;
+
+/**
+ * Mensagem enviada a uma comunidade. O nmero de sequncia  global (o LSN da operao no
+ * dirio), o que permite intercalar as mensagens de vrias comunidades na ordem de envio.
+ */
+public class MensagemComunidade implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Posio da mensagem na ordem global de envio (0 em mensagens gravadas antes de existir) */
+    private final long sequencia;
+    /** Contedo da mensagem */
+    private final String texto;
+
+    /**
+     * Cria uma mensagem.
+     *
+     * @param sequencia Posio da mensagem na ordem global de envio.
+     * @param texto Contedo da mensagem.
+     */
+    public MensagemComunidade(long sequencia, String texto) {
+        this.sequencia = sequencia;
+        this.texto = texto;
+    }
+
+    /**
+     * Retorna a posio da mensagem na ordem global de envio.
+     * @return Nmero de sequncia
+     */
+    public long getSequencia() { return sequencia; }
+
+    /**
+     * Retorna o contedo da mensagem.
+     * @return Texto da mensagem
+     */
+    public String getTexto() { return texto; }
+}
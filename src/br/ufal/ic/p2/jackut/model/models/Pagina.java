@@ -0,0 +1,135 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Uma pgina de uma listagem longa (amigos, fs, membros de uma comunidade...), com o cursor que
+ * leva  pgina seguinte.
+ *
+ * <p>As listagens paginadas seguem a ordem dos IDs da {@link TabelaDeLogins} (a ordem em que os
+ * logins e os nomes de comunidade apareceram pela primeira vez no sistema), e no a ordem de
+ * incluso das listagens completas. O cursor guarda o ltimo ID examinado, e cada pgina comea
+ * logo depois dele: quem est na listagem durante toda a paginao aparece exatamente uma vez,
+ * mesmo que outros elementos entrem ou saiam entre uma pgina e outra, e ler uma pgina custa
+ * O(limite), qualquer que seja o tamanho da listagem.</p>
+ *
+ * <p>O cursor  opaco para quem o recebe. Os IDs so gravados com os snapshots, ento um cursor
+ * continua valendo depois de reiniciar o sistema; ele  recusado se o ID e o login guardados nele
+ * no combinarem mais (ex.: depois de {@code zerarSistema}).</p>
+ */
+public class Pagina {
+    /** IDs lidos de cada vez, no mximo; pginas maiores so lidas em vrias partes. */
+    private static final int LOTE_MAXIMO = 4096;
+
+    private final List<String> itens;
+    private final String cursor;
+
+    private Pagina(List<String> itens, String cursor) {
+        this.itens = Collections.unmodifiableList(itens);
+        this.cursor = cursor;
+    }
+
+    /**
+     * Fornece os IDs de uma listagem em ordem crescente.
+     */
+    @FunctionalInterface
+    interface Fonte {
+        /**
+         * Copia os IDs maiores que um dado, em ordem crescente, at encher o destino.
+         *
+         * @param depoisDe ID a partir do qual copiar, exclusive; 0 copia desde o primeiro.
+         * @param destino Recebe os IDs a partir da posio 0.
+         * @return Quantidade de IDs copiados; menor que o tamanho do destino s se no houver mais.
+         */
+        int copiarIdsDepoisDe(int depoisDe, int[] destino);
+    }
+
+    /**
+     * L uma pgina de uma listagem. Os elementos ocultos so pulados sem contar no limite.
+     *
+     * @param fonte IDs da listagem; deve estar protegida pela trava de quem a possui.
+     * @param cursor Cursor devolvido pela pgina anterior, ou {@code null} (ou vazio) para a
+     *               primeira pgina.
+     * @param limite Quantidade mxima de elementos da pgina.
+     * @param oculto Diz se um elemento no deve aparecer (ex.: conta em remoo).
+     * @param tabelaLogins Tabela que d os logins dos IDs da fonte.
+     * @return A pgina lida.
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido.
+     */
+    static Pagina ler(Fonte fonte, String cursor, int limite, Predicate<String> oculto, TabelaDeLogins tabelaLogins) {
+        if (limite <= 0) {
+            throw new IllegalArgumentException("Limite invlido.");
+        }
+        int posicao = decodificar(cursor, tabelaLogins);
+        List<String> itens = new ArrayList<>(Math.min(limite, LOTE_MAXIMO));
+        // Um ID a mais que o limite, para saber se h outra pgina sem pedir mais uma parte
+        int[] lote = new int[Math.min(limite, LOTE_MAXIMO) + 1];
+        while (true) {
+            int lidos = fonte.copiarIdsDepoisDe(posicao, lote);
+            for (int i = 0; i < lidos; i++) {
+                String item = tabelaLogins.login(lote[i]);
+                if (!oculto.test(item)) {
+                    if (itens.size() == limite) {
+                        return new Pagina(itens, codificar(posicao, tabelaLogins));
+                    }
+                    itens.add(item);
+                }
+                posicao = lote[i];
+            }
+            if (lidos < lote.length) {
+                return new Pagina(itens, null);
+            }
+        }
+    }
+
+    /** @return Elementos da pgina, na ordem da listagem. */
+    public List<String> getItens() { return itens; }
+
+    /** @return Cursor da pgina seguinte, ou {@code null} se esta for a ltima. */
+    public String getCursor() { return cursor; }
+
+    /** @return {@code true} se no houver outra pgina depois desta. */
+    public boolean isUltima() { return cursor == null; }
+
+    /**
+     * Formata os elementos da pgina como as listagens completas.
+     *
+     * @return Os elementos no formato {elemento1,elemento2,...}.
+     */
+    @Override
+    public String toString() {
+        return "{" + String.join(",", itens) + "}";
+    }
+
+    /**
+     * Codifica o ltimo ID examinado junto com o login (ou nome) dele, que confirma, ao voltar,
+     * que o ID ainda  o mesmo.
+     */
+    private static String codificar(int id, TabelaDeLogins tabelaLogins) {
+        byte[] texto = (id + ":" + tabelaLogins.login(id)).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(texto);
+    }
+
+    /** @return O ID guardado no cursor, ou 0 para a primeira pgina. */
+    private static int decodificar(String cursor, TabelaDeLogins tabelaLogins) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+        try {
+            String texto = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separador = texto.indexOf(':');
+            int id = Integer.parseInt(texto.substring(0, separador));
+            if (id > 0 && tabelaLogins.buscar(texto.substring(separador + 1)) == id) {
+                return id;
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // Cursor adulterado; tratado abaixo
+        }
+        throw new IllegalArgumentException("Cursor invlido.");
+    }
+}
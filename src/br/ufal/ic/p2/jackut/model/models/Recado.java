@@ -0,0 +1,39 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+import java.io.Serializable;
+
+/**
+ * Recado recebido por um usurio. Guarda, alm do texto, o login de quem o enviou, para que os
+ * recados de um usurio possam ser apagados quando a conta dele  removida.
+ */
+public class Recado implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Login do remetente (vazio em recados gravados antes de o remetente ser registrado) */
+    private final String remetente;
+    /** Contedo do recado */
+    private final String texto;
+
+    /**
+     * Cria um recado.
+     *
+     * @param remetente Login de quem enviou o recado.
+     * @param texto Contedo do recado.
+     */
+    public Recado(String remetente, String texto) {
+        this.remetente = remetente;
+        this.texto = texto;
+    }
+
+    /**
+     * Retorna o login de quem enviou o recado.
+     * @return Login do remetente
+     */
+    public String getRemetente() { return remetente; }
+
+    /**
+     * Retorna o contedo do recado.
+     * @return Texto do recado
+     */
+    public String getTexto() { return texto; }
+}
@@ -0,0 +1,63 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+/**
+ * Resultado de uma operao em lote do {@link Sistema}: para cada item, na ordem em que foi
+ * informado, indica se ele foi aplicado ou qual erro o impediu. O erro  a mesma exceo que a
+ * operao individual correspondente lanaria.
+ */
+public class ResultadoLote {
+    private final RuntimeException[] erros;
+    private int falhas;
+
+    /**
+     * Cria o resultado de um lote em que, at ser informado o contrrio, todos os itens foram
+     * aplicados.
+     *
+     * @param tamanho Quantidade de itens do lote.
+     */
+    public ResultadoLote(int tamanho) {
+        this.erros = new RuntimeException[tamanho];
+    }
+
+    /**
+     * Registra a falha de um item.
+     *
+     * @param indice Posio do item no lote.
+     * @param erro Exceo que impediu o item de ser aplicado.
+     */
+    void falhar(int indice, RuntimeException erro) {
+        if (erros[indice] == null) {
+            falhas++;
+        }
+        erros[indice] = erro;
+    }
+
+    /** @return Quantidade de itens do lote. */
+    public int getTamanho() { return erros.length; }
+
+    /** @return Quantidade de itens aplicados. */
+    public int getSucessos() { return erros.length - falhas; }
+
+    /** @return Quantidade de itens que falharam. */
+    public int getFalhas() { return falhas; }
+
+    /**
+     * Verifica se um item foi aplicado.
+     *
+     * @param indice Posio do item no lote.
+     * @return {@code true} se o item foi aplicado.
+     */
+    public boolean isSucesso(int indice) {
+        return erros[indice] == null;
+    }
+
+    /**
+     * Retorna o erro que impediu um item de ser aplicado.
+     *
+     * @param indice Posio do item no lote.
+     * @return A exceo, ou {@code null} se o item foi aplicado.
+     */
+    public RuntimeException getErro(int indice) {
+        return erros[indice];
+    }
+}
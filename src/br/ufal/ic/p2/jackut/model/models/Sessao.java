@@ -19,20 +19,57 @@ public class Sessao implements Serializable {
      */
     private Usuario usuario;
 
+    /**
+     * Instante de abertura da sesso, em milissegundos (gravado nos snapshots e no dirio  parte,
+     * j que a serializao Java antiga no o continha).
+     */
+    private transient long abertura;
+
+    /**
+     * Instante do ltimo uso da sesso, em milissegundos.
+     */
+    private transient volatile long ultimoUso;
+
     /**
      * Cria uma nova sesso ativa para um usurio.
      *
-     * @param id Identificador nico gerado para a sesso (normalmente via {@link UUID}).
+     * @param id Identificador nico gerado para a sesso (normalmente pela {@link TabelaDeSessoes}).
      * @param usuario Instncia do usurio autenticado.
      */
     public Sessao(String id, Usuario usuario) {
+        this(id, usuario, System.currentTimeMillis());
+    }
+
+    /**
+     * Cria uma sesso aberta em um instante conhecido.
+     *
+     * @param id Identificador nico da sesso.
+     * @param usuario Instncia do usurio autenticado.
+     * @param abertura Instante de abertura, em milissegundos.
+     */
+    public Sessao(String id, Usuario usuario, long abertura) {
+        this(id, usuario, abertura, abertura);
+    }
+
+    /**
+     * Recria uma sesso gravada, com os instantes de abertura e do ltimo uso conhecidos.
+     *
+     * @param id Identificador nico da sesso.
+     * @param usuario Instncia do usurio autenticado.
+     * @param abertura Instante de abertura, em milissegundos.
+     * @param ultimoUso Instante do ltimo uso, em milissegundos.
+     */
+    public Sessao(String id, Usuario usuario, long abertura, long ultimoUso) {
         this.id = id;
         this.usuario = usuario;
+        this.abertura = abertura;
+        this.ultimoUso = ultimoUso;
     }
 
     /**
      * Retorna o identificador nico desta sesso.
-     * @return String no formato UUID que representa a sesso.
+     * @return String que identifica a sesso (no formato da {@link TabelaDeSessoes}, ou um UUID
+     *         nas sesses abertas por verses anteriores).
      */
     public String getId() { return id; }
 
@@ -41,4 +78,24 @@ public class Sessao implements Serializable {
      * @return Objeto {@link Usuario} contendo dados do usurio autenticado.
      */
     public Usuario getUsuario() { return usuario; }
+
+    /**
+     * Retorna o instante de abertura da sesso.
+     * @return Instante em milissegundos.
+     */
+    public long getAbertura() { return abertura; }
+
+    /**
+     * Retorna o instante do ltimo uso da sesso.
+     * @return Instante em milissegundos.
+     */
+    public long getUltimoUso() { return ultimoUso; }
+
+    /**
+     * Registra um uso da sesso.
+     * @param agora Instante do uso, em milissegundos.
+     */
+    public void registrarUso(long agora) {
+        ultimoUso = agora;
+    }
 }
\ No newline at end of file
@@ -1,85 +1,659 @@
 package br.ufal.ic.p2.jackut.model.models;
 
+import br.ufal.ic.p2.jackut.model.concorrencia.EntregadorDeMensagens;
+import br.ufal.ic.p2.jackut.model.concorrencia.ExpiradorDeSessoes;
+import br.ufal.ic.p2.jackut.model.concorrencia.ExpurgadorDeContas;
+import br.ufal.ic.p2.jackut.model.concorrencia.TravasPorChave;
 import br.ufal.ic.p2.jackut.model.exceptions.*;
+import br.ufal.ic.p2.jackut.model.metricas.EventosJfr;
+import br.ufal.ic.p2.jackut.model.persistencia.ConversorSnapshot;
+import br.ufal.ic.p2.jackut.model.persistencia.Diario;
+import br.ufal.ic.p2.jackut.model.persistencia.GerenciadorCheckpoint;
+import br.ufal.ic.p2.jackut.model.persistencia.ImportadorDeDados;
+import br.ufal.ic.p2.jackut.model.persistencia.MapaPreguicoso;
+import br.ufal.ic.p2.jackut.model.persistencia.Segmento;
+import br.ufal.ic.p2.jackut.model.persistencia.TipoOperacao;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Classe que representa o sistema principal do Jackut. Gerencia usurios, sesses,
  * comunidades e operaes relacionadas a amizades, recados, dolos, paqueras e inimigos.
- * Tambm  responsvel pela persistncia dos dados do sistema.
-
+ * Tambm  responsvel pela persistncia dos dados do sistema: cada operao que altera o estado
+ *  gravada no {@link Diario}; periodicamente, um checkpoint grava apenas os usurios, comunidades
+ * e sesses alterados desde o anterior e descarta o dirio j coberto por ele. O snapshot completo
+ * s  reescrito ao encerrar o sistema.
+ *
+ * <p>O sistema pode ser usado por vrias threads ao mesmo tempo. Cada operao trava apenas os
+ * usurios e comunidades que l ou altera ({@link TravasPorChave}); operaes que percorrem o
+ * sistema inteiro (remover usurio, zerar, salvar e capturar checkpoints) travam-no por completo,
+ * assim como cada lote do expurgo das contas removidas. A operao  registrada no dirio
+ * enquanto as travas esto seguras, mas a espera pelo {@code fsync} acontece depois de liber-las.</p>
+ *
+ * <p>As mensagens de comunidades ficam no registro de cada comunidade e so lidas a partir da
+ * posio de cada membro; com a propriedade {@value EntregadorDeMensagens#PROPRIEDADE_MODO} igual
+ * a {@code envio}, so copiadas para a fila de cada membro pelo {@link EntregadorDeMensagens}.</p>
+ *
+ * <p>Sesses ociosas ou abertas h tempo demais so encerradas em segundo plano pelo
+ * {@link ExpiradorDeSessoes}; o encerramento tambm  registrado no dirio. O instante de
+ * abertura vai para o dirio e para os snapshots, e o do ltimo uso para os snapshots, de modo que
+ * reiniciar o sistema no prolonga as sesses.</p>
+ *
+ * <p>Os caminhos mais frequentes e as fases da gravao e da carga emitem eventos do JDK Flight
+ * Recorder ({@link EventosJfr}).</p>
  */
 public class Sistema implements Serializable {
     private static final long serialVersionUID = 1L;
-    private static final String ARQUIVO_DADOS = "dados.ser";
+    private static final String ARQUIVO_DADOS = "dados.jkt";
+    private static final String ARQUIVO_LEGADO = "dados.ser";
+    private static final String ARQUIVO_DIARIO = "dados.diario";
+    private static final String ARQUIVO_SEGMENTOS = "dados.seg";
+    /** Quanto o ltimo uso de uma sesso pode avanar antes de a sesso ir para o prximo checkpoint. */
+    private static final long INTERVALO_GRAVACAO_USO = 60_000;
 
     /** Mapa de usurios cadastrados, onde a chave  o login do usurio. */
     private Map<String, Usuario> usuarios;
     /** Mapa de sesses ativas, onde a chave  o ID da sesso. */
     private Map<String, Sessao> sessoes;
     /** Mapa de comunidades, onde a chave  o nome da comunidade. */
-    private Map<String, Comunidade> comunidades = new HashMap<>();
+    private Map<String, Comunidade> comunidades = new ConcurrentHashMap<>();
+    /** LSN do ltimo registro do dirio refletido neste estado (gravado junto com o snapshot). */
+    private long lsnAplicado;
+
+    /** Dirio de operaes aberto; nulo enquanto o sistema no estiver ligado a um arquivo. */
+    private transient Diario diario;
+    /** Indica que registros do dirio esto sendo reproduzidos e no devem ser gravados de novo. */
+    private transient boolean reproduzindo;
+    /** LSN do registro do dirio em reproduo. */
+    private transient long lsnEmReproducao;
+    /** ltima sequncia dada s operaes enquanto o sistema no tem dirio. */
+    private transient AtomicLong sequenciaSemDiario;
+    /** Arquivos de snapshot e checkpoints; nulo enquanto o sistema no estiver ligado a um arquivo. */
+    private transient GerenciadorCheckpoint checkpoints;
+    /** Logins dos usurios alterados (ou removidos) desde o ltimo checkpoint. */
+    private transient Set<String> usuariosAlterados = ConcurrentHashMap.newKeySet();
+    /** Nomes das comunidades alteradas (ou removidas) desde o ltimo checkpoint. */
+    private transient Set<String> comunidadesAlteradas = ConcurrentHashMap.newKeySet();
+    /** Comunidades cujo registro de mensagens cresceu o bastante para procurar o que descartar. */
+    private transient Set<String> registrosParaDescartar = ConcurrentHashMap.newKeySet();
+    /** IDs das sesses abertas ou encerradas desde o ltimo checkpoint. */
+    private transient Set<String> sessoesAlteradas = ConcurrentHashMap.newKeySet();
+    /** Indica que o sistema foi zerado depois do ltimo checkpoint. */
+    private transient boolean zeradoDesdeCheckpoint;
+    /** Indica que a gerao atual do dirio atingiu o limite e um checkpoint deve ser feito. */
+    private transient volatile boolean checkpointPendente;
+    /** Travas por usurio e por comunidade. */
+    private transient TravasPorChave travas;
+    /** LSN do ltimo registro enfileirado pela thread e ainda no confirmado como durvel. */
+    private transient ThreadLocal<Long> lsnPendente;
+    /** Lpides das contas removidas cujo expurgo ainda no terminou, por login. */
+    private transient Map<String, Lapide> lapides = new ConcurrentHashMap<>();
+    /** Comunidades removidas junto com a conta do dono e ainda em expurgo: nome para login do dono. */
+    private transient Map<String, String> comunidadesExcluidas = new ConcurrentHashMap<>();
+    /** Logins das lpides criadas, alteradas ou concludas desde o ltimo checkpoint. */
+    private transient Set<String> lapidesAlteradas = ConcurrentHashMap.newKeySet();
+    /** Thread de fundo que desfaz as relaes das contas removidas. */
+    private transient ExpurgadorDeContas expurgador;
+    /** Entrega das mensagens de comunidades no envio; nulo quando elas so lidas dos registros. */
+    private transient EntregadorDeMensagens<MensagemComunidade> entregador;
+    /** Thread de fundo que encerra as sesses expiradas. */
+    private transient ExpiradorDeSessoes expiradorSessoes;
+    /** ndice por posio das sesses, consultado antes do mapa de sesses. */
+    private transient TabelaDeSessoes tabelaSessoes;
+    /** Comunidades semelhantes a cada comunidade, recalculadas em segundo plano */
+    private transient ComunidadesSemelhantes semelhantes;
+    /** IDs dos logins e dos nomes de comunidade, usados pelas relaes e pelas listagens paginadas */
+    private transient TabelaDeLogins tabelaLogins;
 
     /**
      * Construtor padro que inicializa as estruturas de dados do sistema.
      */
     public Sistema() {
-        this.usuarios = new HashMap<>();
-        this.sessoes = new HashMap<>();
-        this.comunidades = new HashMap<>(); // Ou aqui
+        this.usuarios = new ConcurrentHashMap<>();
+        this.sessoes = new ConcurrentHashMap<>();
+        this.comunidades = new ConcurrentHashMap<>(); // Ou aqui
+        this.travas = new TravasPorChave(this::aposOperacao);
+        this.lsnPendente = new ThreadLocal<>();
+        this.expurgador = new ExpurgadorDeContas(this::expurgarLote);
+        this.sequenciaSemDiario = new AtomicLong();
+        this.entregador = EntregadorDeMensagens.isAtivado() ? new EntregadorDeMensagens<>(this::entregarLote) : null;
+        this.expiradorSessoes = new ExpiradorDeSessoes(this::verificarSessao);
+        this.tabelaSessoes = new TabelaDeSessoes();
+        this.semelhantes = new ComunidadesSemelhantes(this::recalcularSemelhanca);
+        this.tabelaLogins = new TabelaDeLogins();
     }
 
     /**
-     * Carrega os dados do sistema a partir do arquivo de persistncia.
+     * Carrega os dados do sistema a partir do snapshot base e dos segmentos de checkpoint e
+     * reproduz, sobre eles, as operaes registradas no dirio desde o ltimo checkpoint.
      *
      * @return Instncia do sistema carregada ou nova instncia se o arquivo no existir.
      * @throws RuntimeException Se ocorrer erro de I/O ou desserializao.
      */
     public static Sistema carregarDados() {
-        File arquivo = new File(ARQUIVO_DADOS);
-        if (!arquivo.exists()) {
-            return new Sistema(); // Retorna um novo sistema se o arquivo no existir
+        EventosJfr.FasePersistencia fase = EventosJfr.FasePersistencia.iniciar("carregarDados", "converterLegado");
+        converterSnapshotLegado();
+        fase.concluir();
+        GerenciadorCheckpoint checkpoints = new GerenciadorCheckpoint(new File("."), ARQUIVO_DADOS, ARQUIVO_SEGMENTOS);
+        Sistema sistema = new Sistema();
+        try {
+            fase = EventosJfr.FasePersistencia.iniciar("carregarDados", "lerSnapshot");
+            Segmento estado = checkpoints.carregar();
+            if (estado != null) {
+                fase.concluir(checkpoints.getBytesEmDisco(), contarObjetos(estado));
+                fase = EventosJfr.FasePersistencia.iniciar("carregarDados", "restaurar");
+                sistema.restaurar(estado);
+                fase.concluir(0, contarObjetos(estado));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao carregar dados: " + e.getMessage(), e);
         }
+        sistema.checkpoints = checkpoints;
+        fase = EventosJfr.FasePersistencia.iniciar("carregarDados", "reproduzirDiario");
+        long lsnSnapshot = sistema.lsnAplicado;
+        sistema.abrirDiario();
+        fase.concluir(0, sistema.lsnAplicado - lsnSnapshot);
+        sistema.expurgador.agendar(); // Retoma o expurgo das contas removidas antes de encerrar
+        return sistema;
+    }
 
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(ARQUIVO_DADOS))) {
-            Sistema sistema = (Sistema) in.readObject();
+    /**
+     * Substitui todo o estado do sistema pelos dados de outra rede, lidos dos arquivos de um
+     * diretrio pelo {@link ImportadorDeDados}, e grava um snapshot completo, descartando o
+     * dirio. Os arquivos so lidos antes de o sistema ser travado; sesses abertas so perdidas.
+     * Se o sistema cair antes de o snapshot ser gravado, volta ao estado anterior  importao.
+     *
+     * @param diretorio Diretrio com os arquivos de importao.
+     * @return O importador, com a contagem de linhas importadas e rejeitadas de cada arquivo.
+     * @throws RuntimeException Se ocorrer erro de I/O na leitura ou na gravao.
+     */
+    public ImportadorDeDados importarDados(File diretorio) {
+        ImportadorDeDados importador = new ImportadorDeDados(diretorio);
+        Segmento estado;
+        try {
+            estado = importador.importar();
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao importar dados: " + e.getMessage(), e);
+        }
+        try (TravasPorChave.Trava trava = travas.travarTudo()) {
+            concluirEntregas();
+            usuarios.clear(); // Libera o snapshot base, se ele tiver sido aberto com carga preguiosa
+            comunidadesExcluidas.clear();
+            tabelaSessoes = new TabelaDeSessoes();
+            long lsn = lsnAplicado;
+            restaurar(estado);
+            lsnAplicado = lsn;
+            limparAlterados();
+            zeradoDesdeCheckpoint = true;
+            salvarDados();
+        }
+        return importador;
+    }
 
-            // Garante que o mapa de comunidades est inicializado
-            if (sistema.comunidades == null) {
-                sistema.comunidades = new HashMap<>();
-            }
+    /**
+     * Converte para o formato binrio um {@code dados.ser} gravado com serializao Java, caso
+     * ainda no exista snapshot no formato novo. Dados antigos que no puderem ser lidos so
+     * preservados no disco e o sistema comea vazio.
+     */
+    private static void converterSnapshotLegado() {
+        File legado = new File(ARQUIVO_LEGADO);
+        File atual = new File(ARQUIVO_DADOS);
+        if (!legado.exists() || atual.exists()) {
+            return;
+        }
+        try {
+            ConversorSnapshot.converter(legado, atual);
+        } catch (IOException e) {
+            System.err.println("Aviso: Dados antigos incompatveis (" + e.getMessage() + "). Criando novo sistema.");
+        }
+    }
 
-            return sistema;
+    /**
+     * Recria o estado do sistema a partir de um segmento completo. Os mapas do segmento passam a
+     * ser os do sistema; cada sesso s  ligada ao seu usurio na primeira vez em que  usada,
+     * para que a carga preguiosa no precise ler do snapshot os usurios com sesso aberta.
+     *
+     * @param estado Estado completo lido do disco.
+     */
+    private void restaurar(Segmento estado) {
+        if (estado.getTabelaLogins() != null) {
+            tabelaLogins = estado.getTabelaLogins(); // A dos objetos lidos, com os IDs gravados
+        }
+        usuarios = estado.getUsuarios() instanceof MapaPreguicoso
+                ? estado.getUsuarios() : new ConcurrentHashMap<>(estado.getUsuarios());
+        comunidades = new ConcurrentHashMap<>(estado.getComunidades());
+        lapides = new ConcurrentHashMap<>(estado.getLapides());
+        for (Lapide lapide : lapides.values()) {
+            for (String nome : lapide.getComunidades().keySet()) {
+                comunidadesExcluidas.put(nome, lapide.getLogin());
+            }
+        }
+        if (!estado.isIndicesReversos()) {
+            reconstruirIndicesReversos();
+        }
+        // Sesses gravadas sem os instantes (verses antigas) contam a partir da carga
+        long carga = System.currentTimeMillis();
+        Map<String, Segmento.Instantes> instantes = estado.getInstantesSessoes();
+        sessoes = new MapaPreguicoso<>(estado.getSessoes(), (id, login) -> {
+            Usuario usuario = buscarUsuario(login);
+            Segmento.Instantes gravados = instantes.get(id);
+            if (usuario == null) {
+                return null;
+            }
+            return gravados == null ? new Sessao(id, usuario, carga)
+                    : new Sessao(id, usuario, gravados.getAbertura(), gravados.getUltimoUso());
+        }, null);
+        for (String id : estado.getSessoes().keySet()) {
+            tabelaSessoes.reservar(id); // Indexada na primeira busca
+            Segmento.Instantes gravados = instantes.get(id);
+            expiradorSessoes.agendar(id, gravados == null ? expiradorSessoes.prazo(carga, carga)
+                    : expiradorSessoes.prazo(gravados.getAbertura(), gravados.getUltimoUso()));
+        }
+        lsnAplicado = estado.getLsn();
+        semelhantes.limpar();
+        semelhantes.recalcularTodas(comunidades.keySet());
+    }
 
-        } catch (InvalidClassException e) {
-            System.err.println("Aviso: Dados antigos incompatveis. Criando novo sistema.");
-            return new Sistema();
-        } catch (IOException | ClassNotFoundException e) {
-            throw new RuntimeException("Erro ao carregar dados: " + e.getMessage(), e);
+    /**
+     * Abre o dirio de operaes e reproduz os registros posteriores ao snapshot carregado.
+     *
+     * @throws RuntimeException Se ocorrer erro de I/O ao ler o dirio.
+     */
+    private void abrirDiario() {
+        reproduzindo = true;
+        try {
+            diario = Diario.abrir(new File("."), ARQUIVO_DIARIO, lsnAplicado, this::aplicar);
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao carregar dirio: " + e.getMessage(), e);
+        } finally {
+            reproduzindo = false;
         }
     }
 
     /**
-     * Salva o estado atual do sistema em arquivo para persistncia.
+     * Salva o estado atual do sistema em arquivo para persistncia (snapshot completo) e descarta
+     * o dirio e os segmentos de checkpoint, cujo contedo passa a estar contido no snapshot.
+     *
+     * <p>O snapshot guarda o LSN aplicado; uma queda antes do dirio ser descartado no faz
+     * nenhuma operao ser repetida.</p>
+     *
+     * <p>Se ainda houver usurios que no foram lidos do snapshot base (carga preguiosa),
+     * reescrev-lo obrigaria a ler todos; nesse caso  gravado apenas um segmento com os objetos
+     * alterados, como em um checkpoint, e o dirio  descartado da mesma forma.</p>
      *
      * @throws RuntimeException Se ocorrer erro de I/O durante o salvamento.
      */
     public void salvarDados() {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(ARQUIVO_DADOS))) {
-            out.writeObject(this);
-        } catch (IOException e) {
-            throw new RuntimeException("Erro ao salvar dados: " + e.getMessage(), e);
+        try (TravasPorChave.Trava trava = travas.travarTudo()) {
+            EventosJfr.FasePersistencia fase = EventosJfr.FasePersistencia.iniciar("salvarDados", "concluirEntregas");
+            concluirEntregas();
+            fase.concluir();
+            if (checkpoints == null) {
+                checkpoints = new GerenciadorCheckpoint(new File("."), ARQUIVO_DADOS, ARQUIVO_SEGMENTOS);
+            }
+            fase = EventosJfr.FasePersistencia.iniciar("salvarDados", "aguardarCheckpoint");
+            checkpoints.aguardar();
+            fase.concluir();
+            fase = EventosJfr.FasePersistencia.iniciar("salvarDados", "rotacionarDiario");
+            long geracao = diario != null ? diario.rotacionar() : -1;
+            if (diario != null) {
+                lsnAplicado = diario.getUltimoLsn();
+            } else {
+                // Sem dirio, as sequncias das mensagens vm da contagem prpria; o prximo
+                // dirio aberto sobre este snapshot precisa continuar dela.
+                lsnAplicado = Math.max(lsnAplicado, sequenciaSemDiario.get());
+            }
+            fase.concluir();
+            fase = EventosJfr.FasePersistencia.iniciar("salvarDados", "capturar");
+            descartarMensagensLidas();
+            if (usuarios instanceof MapaPreguicoso && !((MapaPreguicoso<?, ?>) usuarios).isCarregadoPorCompleto()) {
+                Segmento alterados = capturarAlterados();
+                fase.concluir(0, contarObjetos(alterados));
+                fase = EventosJfr.FasePersistencia.iniciar("salvarDados", "gravarSegmento");
+                int bytes = checkpoints.gravarSegmento(alterados, () -> { });
+                checkpoints.aguardar();
+                checkpoints.verificarFalha(); // Sem o segmento em disco, o dirio no pode ser descartado
+                fase.concluir(bytes, contarObjetos(alterados));
+            } else {
+                Segmento completo = capturarCompleto();
+                limparAlterados();
+                fase.concluir(0, contarObjetos(completo));
+                fase = EventosJfr.FasePersistencia.iniciar("salvarDados", "gravarBase");
+                fase.concluir(checkpoints.gravarBase(completo), contarObjetos(completo));
+            }
+            fase = EventosJfr.FasePersistencia.iniciar("salvarDados", "descartarDiario");
+            if (diario != null) {
+                diario.descartarAte(geracao);
+            }
+            fase.concluir();
+        }
+    }
+
+    /**
+     * Encerra o sistema: interrompe o expurgo de contas removidas, grava o snapshot, fecha o
+     * dirio de operaes e encerra a thread de checkpoint.
+     *
+     * @throws RuntimeException Se ocorrer erro de I/O durante o salvamento.
+     */
+    public void encerrar() {
+        // O expurgo precisa das travas para terminar o lote em andamento; o restante fica nas lpides
+        expurgador.close();
+        expiradorSessoes.close();
+        semelhantes.close();
+        try (TravasPorChave.Trava trava = travas.travarTudo()) {
+            salvarDados();
+            if (diario != null) {
+                try {
+                    diario.close();
+                } catch (IOException e) {
+                    throw new RuntimeException("Erro ao fechar dirio: " + e.getMessage(), e);
+                }
+                diario = null;
+            }
+            checkpoints.close();
+            checkpoints = null;
+        }
+    }
+
+    private static long contarObjetos(Segmento segmento) {
+        return (long) segmento.getUsuarios().size() + segmento.getComunidades().size()
+                + segmento.getSessoes().size() + segmento.getLapides().size();
+    }
+
+    /**
+     * Inicia um checkpoint incremental: fecha a gerao atual do dirio, captura os objetos
+     * alterados desde o checkpoint anterior e entrega-os  thread de fundo, que grava o segmento
+     * e s ento apaga as geraes do dirio cobertas por ele.
+     *
+     * <p>Se um segmento anterior no chegou ao disco, as alteraes dele j saram do
+     * rastreamento; o checkpoint ento captura o estado completo, que as inclui.</p>
+     */
+    private void fazerCheckpoint() {
+        concluirEntregas();
+        long geracao = diario.rotacionar();
+        lsnAplicado = diario.getUltimoLsn();
+        descartarMensagensLidas();
+        Diario diarioAtual = diario;
+        checkpoints.gravarSegmento(capturarAlterados(), () -> diarioAtual.descartarAte(geracao));
+    }
+
+    /**
+     * Descarta, dos registros de mensagens que cresceram desde o ltimo descarte, as mensagens que
+     * todos os membros j leram. Chamado com o sistema travado por completo, antes de capturar um
+     * checkpoint, de modo que a comunidade gravada e as posies de leitura dos membros so do
+     * mesmo instante.
+     */
+    private void descartarMensagensLidas() {
+        for (Iterator<String> iterador = registrosParaDescartar.iterator(); iterador.hasNext(); ) {
+            String nome = iterador.next();
+            iterador.remove();
+            Comunidade comunidade = buscarComunidade(nome);
+            if (comunidade == null) {
+                continue;
+            }
+            int menor = comunidade.getQuantidadeMensagens();
+            for (String membro : comunidade.membros()) {
+                Usuario usuario = buscarUsuario(membro);
+                if (usuario != null) {
+                    menor = Math.min(menor, usuario.getPosicaoLeitura(nome));
+                }
+            }
+            if (comunidade.descartarMensagensAntes(menor)) {
+                comunidadesAlteradas.add(nome);
+            }
+        }
+    }
+
+    /**
+     * Captura todo o estado do sistema em um segmento completo.
+     *
+     * @return Segmento com todos os usurios, comunidades e sesses.
+     */
+    public Segmento capturarCompleto() {
+        Segmento segmento = new Segmento(lsnAplicado, true, usuarios.size());
+        segmento.getUsuarios().putAll(usuarios);
+        segmento.getComunidades().putAll(comunidades);
+        long agora = System.currentTimeMillis();
+        // Sem expirador,  um sistema antigo lido com serializao Java, cujas sesses no guardam
+        // os instantes: so gravadas sem eles e contam a partir da prxima carga
+        boolean legado = expiradorSessoes == null;
+        for (Sessao sessao : sessoes.values()) {
+            if (legado) {
+                segmento.getSessoes().put(sessao.getId(), sessao.getUsuario().getLogin());
+            } else if (!expirou(sessao, agora)) { // Sesses vencidas e ainda no encerradas no so gravadas
+                segmento.getSessoes().put(sessao.getId(), sessao.getUsuario().getLogin());
+                segmento.getInstantesSessoes().put(sessao.getId(),
+                        new Segmento.Instantes(sessao.getAbertura(), sessao.getUltimoUso()));
+            }
+        }
+        if (lapides != null) { // Nulo em um sistema antigo lido com serializao Java
+            segmento.getLapides().putAll(lapides);
+        }
+        if (tabelaLogins != null) { // Idem; a tabela do sistema antigo vem com o segmento lido
+            segmento.registrarIds(tabelaLogins);
+        }
+        return segmento;
+    }
+
+    /**
+     * Captura, em um segmento incremental, apenas os objetos alterados desde o ltimo checkpoint
+     * e reinicia o rastreamento de alteraes. Captura o estado completo se o sistema foi zerado
+     * ou se um segmento anterior no foi gravado.
+     *
+     * @return Segmento com os objetos alterados ({@code null} para os removidos).
+     */
+    private Segmento capturarAlterados() {
+        if (zeradoDesdeCheckpoint || checkpoints.precisaCheckpointCompleto()) {
+            Segmento completo = capturarCompleto();
+            limparAlterados();
+            return completo;
+        }
+        Segmento segmento = new Segmento(lsnAplicado, false, usuariosAlterados.size());
+        for (String login : usuariosAlterados) {
+            segmento.getUsuarios().put(login, buscarUsuario(login));
+        }
+        for (String nome : comunidadesAlteradas) {
+            segmento.getComunidades().put(nome, buscarComunidade(nome));
+        }
+        for (String id : sessoesAlteradas) {
+            Sessao sessao = buscarSessao(id);
+            segmento.getSessoes().put(id, sessao == null ? null : sessao.getUsuario().getLogin());
+            if (sessao != null) {
+                segmento.getInstantesSessoes().put(id, new Segmento.Instantes(sessao.getAbertura(), sessao.getUltimoUso()));
+            }
+        }
+        for (String login : lapidesAlteradas) {
+            segmento.getLapides().put(login, lapides.get(login));
+        }
+        segmento.registrarIds(tabelaLogins);
+        limparAlterados();
+        return segmento;
+    }
+
+    private void limparAlterados() {
+        usuariosAlterados.clear();
+        comunidadesAlteradas.clear();
+        sessoesAlteradas.clear();
+        lapidesAlteradas.clear();
+        zeradoDesdeCheckpoint = false;
+    }
+
+    /**
+     * Enfileira uma operao bem-sucedida no dirio, exceto durante a reproduo. Chamado com as
+     * travas da operao seguras, o que garante que operaes conflitantes aparecem no dirio na
+     * mesma ordem em que foram aplicadas; a durabilidade  aguardada em {@link #aposOperacao()}.
+     *
+     * <p>O LSN devolvido ordena as operaes de todo o sistema e  o mesmo quando a operao 
+     * reproduzida; por isso serve de sequncia para as mensagens de comunidades. Sem dirio, uma
+     * contagem prpria faz esse papel.</p>
+     *
+     * @param tipo Tipo da operao.
+     * @param argumentos Argumentos necessrios para reaplic-la.
+     * @return LSN da operao.
+     */
+    private long registrar(TipoOperacao tipo, String... argumentos) {
+        if (reproduzindo) {
+            return lsnEmReproducao;
+        }
+        if (diario == null) {
+            return sequenciaSemDiario.incrementAndGet();
+        }
+        long lsn = diario.enfileirar(tipo, argumentos);
+        lsnPendente.set(lsn);
+        if (checkpoints != null && checkpoints.deveFazerCheckpoint(diario.getBytesGeracaoAtual())) {
+            checkpointPendente = true;
+        }
+        return lsn;
+    }
+
+    /**
+     * Executado quando a thread libera todas as suas travas: aguarda que a operao registrada
+     * esteja durvel e, se a gerao do dirio atingiu o limite, faz o checkpoint, que precisa do
+     * sistema travado por completo para capturar um estado consistente com o LSN.
+     */
+    private void aposOperacao() {
+        Long lsn = lsnPendente.get();
+        Diario atual = diario;
+        if (lsn != null) {
+            lsnPendente.remove();
+            if (atual != null) {
+                atual.aguardar(lsn);
+            }
+        }
+        if (checkpointPendente) {
+            try (TravasPorChave.Trava trava = travas.travarTudo()) {
+                if (checkpointPendente && diario != null) {
+                    checkpointPendente = false;
+                    fazerCheckpoint();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reaplica uma operao lida do dirio.
+     *
+     * @param registro Registro a ser reaplicado.
+     */
+    private void aplicar(Diario.Registro registro) {
+        lsnEmReproducao = registro.getLsn();
+        switch (registro.getTipo()) {
+            case ZERAR_SISTEMA -> zerarSistema();
+            case CRIAR_USUARIO -> criarUsuario(registro.getArgumento(0), registro.getArgumento(1), registro.getArgumento(2));
+            case ABRIR_SESSAO -> reabrirSessao(registro.getArgumento(0), getUsuario(registro.getArgumento(1)),
+                    System.currentTimeMillis()); // Registro antigo, sem o instante de abertura
+            case ABRIR_SESSAO_EM -> reabrirSessao(registro.getArgumento(0), getUsuario(registro.getArgumento(1)),
+                    Long.parseLong(registro.getArgumento(2)));
+            case EXPIRAR_SESSAO -> encerrarSessao(registro.getArgumento(0));
+            case EDITAR_PERFIL -> editarPerfil(registro.getArgumento(0), registro.getArgumento(1), registro.getArgumento(2));
+            case ADICIONAR_AMIGO -> adicionarAmigo(registro.getArgumento(0), registro.getArgumento(1));
+            case ENVIAR_RECADO -> enviarRecado(registro.getArgumento(0), registro.getArgumento(1), registro.getArgumento(2));
+            case LER_RECADO -> lerRecado(registro.getArgumento(0));
+            case CRIAR_COMUNIDADE -> criarComunidade(registro.getArgumento(0), registro.getArgumento(1), registro.getArgumento(2));
+            case ADICIONAR_MEMBRO_COMUNIDADE -> adicionarMembroComunidade(registro.getArgumento(0), registro.getArgumento(1));
+            case ENVIAR_MENSAGEM_COMUNIDADE -> enviarMensagemComunidade(registro.getArgumento(0), registro.getArgumento(1), registro.getArgumento(2));
+            case LER_MENSAGEM -> lerMensagem(registro.getArgumento(0));
+            case ADICIONAR_IDOLO -> adicionarIdolo(registro.getArgumento(0), registro.getArgumento(1));
+            case ADICIONAR_PAQUERA -> adicionarPaquera(registro.getArgumento(0), registro.getArgumento(1));
+            case ADICIONAR_INIMIGO -> adicionarInimigo(registro.getArgumento(0), registro.getArgumento(1));
+            case REMOVER_USUARIO -> removerUsuario(registro.getArgumento(0));
+            case ADICIONAR_AMIGO_POR_LOGIN -> adicionarAmigoPorLogin(registro.getArgumento(0), registro.getArgumento(1));
+        }
+        lsnAplicado = registro.getLsn();
+    }
+
+    /**
+     * Busca um usurio sem lanar exceo.
+     * @param login Login do usurio (pode ser nulo).
+     * @return O usurio, ou {@code null} se no existir.
+     */
+    private Usuario buscarUsuario(String login) {
+        return login == null ? null : usuarios.get(login);
+    }
+
+    private boolean existeUsuario(String login) {
+        return login != null && usuarios.containsKey(login);
+    }
+
+    /**
+     * Busca uma sesso primeiro no ndice por posio e, se ela no estiver l, no mapa de sesses.
+     * Uma sesso encontrada s no mapa (lida do disco ou do dirio)  indexada para as prximas
+     * buscas.
+     *
+     * @param idSessao ID da sesso (pode ser nulo).
+     * @return A sesso, ou {@code null} se ela no existir.
+     */
+    private Sessao buscarSessao(String idSessao) {
+        if (idSessao == null) {
+            return null;
+        }
+        EventosJfr.ResolucaoSessao evento = EventosJfr.ResolucaoSessao.iniciar();
+        Sessao sessao = tabelaSessoes.buscar(idSessao);
+        if (sessao != null) {
+            evento.concluir("tabela");
+            return sessao;
+        }
+        sessao = sessoes.get(idSessao);
+        if (sessao != null && tabelaSessoes.indexar(sessao) && sessoes.get(idSessao) != sessao) {
+            // Encerrada enquanto era indexada: quem a encerrou pode ter limpado o ndice antes
+            tabelaSessoes.remover(idSessao);
         }
+        evento.concluir(sessao != null ? "mapa" : "ausente");
+        return sessao;
+    }
+
+    private Comunidade buscarComunidade(String nome) {
+        return nome == null ? null : comunidades.get(nome);
+    }
+
+    private boolean existeComunidade(String nome) {
+        return nome != null && comunidades.containsKey(nome);
+    }
+
+    /**
+     * Descobre, antes de travar, o login do dono de uma sesso. A sesso  validada de novo
+     * depois de adquiridas as travas, pois pode ter sido encerrada nesse intervalo.
+     *
+     * @param idSessao ID da sesso.
+     * @return Login do usurio da sesso, ou {@code null} se a sesso no existir.
+     */
+    private String loginDaSessao(String idSessao) {
+        Sessao sessao = buscarSessao(idSessao);
+        return sessao == null ? null : sessao.getUsuario().getLogin();
+    }
+
+    private static String chaveUsuario(String login) {
+        return login == null ? null : "u:" + login;
+    }
+
+    private static String chaveComunidade(String nome) {
+        return nome == null ? null : "c:" + nome;
     }
 
     /**
      * Remove todos os dados do sistema, reiniciando-o para o estado inicial.
      */
     public void zerarSistema() {
-        this.usuarios = new HashMap<>();
-        this.sessoes = new HashMap<>();
-        this.comunidades = new HashMap<>();
+        try (TravasPorChave.Trava trava = travas.travarTudo()) {
+            concluirEntregas(); // Nenhuma entrega pendente pode alcanar um usurio criado depois
+            usuarios.clear(); // Libera o snapshot base, se ele tiver sido aberto com carga preguiosa
+            this.usuarios = new ConcurrentHashMap<>();
+            this.sessoes = new ConcurrentHashMap<>();
+            this.tabelaSessoes = new TabelaDeSessoes();
+            this.comunidades = new ConcurrentHashMap<>();
+            this.tabelaLogins = new TabelaDeLogins(); // Os IDs e os cursores antigos deixam de valer
+            lapides.clear();
+            comunidadesExcluidas.clear();
+            registrosParaDescartar.clear();
+            semelhantes.limpar();
+            limparAlterados();
+            zeradoDesdeCheckpoint = true;
+            registrar(TipoOperacao.ZERAR_SISTEMA);
+        }
     }
 
     /**
@@ -91,16 +665,25 @@ public class Sistema implements Serializable {
      * @throws IllegalArgumentException Se login/senha forem invlidos ou o login j existir.
      */
     public void criarUsuario(String login, String senha, String nome) {
+        concluirExpurgo(login);
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            incluirUsuario(login, senha, nome);
+        }
+    }
+
+    private void incluirUsuario(String login, String senha, String nome) {
         if (login == null || login.isEmpty()) {
             throw new IllegalArgumentException("Login invlido.");
         }
         if (senha == null || senha.isEmpty()) {
             throw new IllegalArgumentException("Senha invlida.");
         }
-        if (usuarios.containsKey(login)) {
+        if (existeUsuario(login)) {
             throw new IllegalArgumentException("Conta com esse nome j existe.");
         }
-        usuarios.put(login, new Usuario(login, senha, nome)); // Adiciona o usurio ao mapa de usurios
+        usuarios.put(login, new Usuario(login, senha, nome, tabelaLogins)); // Adiciona o usurio ao mapa de usurios
+        usuariosAlterados.add(login);
+        registrar(TipoOperacao.CRIAR_USUARIO, login, senha, nome);
     }
 
     /**
@@ -112,13 +695,65 @@ public class Sistema implements Serializable {
      * @throws IllegalArgumentException Se o login ou senha forem invlidos.
      */
     public String abrirSessao(String login, String senha) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null || !usuario.getSenha().equals(senha)) {
-            throw new IllegalArgumentException("Login ou senha invlidos.");
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null || !usuario.getSenha().equals(senha)) {
+                throw new IllegalArgumentException("Login ou senha invlidos.");
+            }
+            Sessao sessao = tabelaSessoes.abrir(id -> new Sessao(id, usuario));
+            adicionarSessao(sessao);
+            registrar(TipoOperacao.ABRIR_SESSAO_EM, sessao.getId(), login, Long.toString(sessao.getAbertura()));
+            return sessao.getId();
+        }
+    }
+
+    /**
+     * Recria uma sesso aberta em um registro do dirio, com o ID e o instante de abertura
+     * gravados nele.
+     */
+    private void reabrirSessao(String idSessao, Usuario usuario, long abertura) {
+        Sessao sessao = new Sessao(idSessao, usuario, abertura);
+        adicionarSessao(sessao);
+        tabelaSessoes.indexar(sessao);
+    }
+
+    private void adicionarSessao(Sessao sessao) {
+        sessoes.put(sessao.getId(), sessao);
+        sessoesAlteradas.add(sessao.getId());
+        expiradorSessoes.agendar(sessao.getId(), expiradorSessoes.prazo(sessao.getAbertura(), sessao.getUltimoUso()));
+    }
+
+    private void encerrarSessao(String idSessao) {
+        sessoes.remove(idSessao);
+        tabelaSessoes.remover(idSessao);
+        sessoesAlteradas.add(idSessao);
+    }
+
+    private boolean expirou(Sessao sessao, long agora) {
+        return expiradorSessoes.prazo(sessao.getAbertura(), sessao.getUltimoUso()) <= agora;
+    }
+
+    /**
+     * Verifica, a pedido do {@link ExpiradorDeSessoes}, uma sesso cujo prazo agendado chegou, e a
+     * encerra se ela no tiver sido usada desde ento.
+     *
+     * @param idSessao ID da sesso.
+     * @return O novo prazo da sesso, {@code 0} se ela foi encerrada ou {@code -1} se ela no existia.
+     */
+    private long verificarSessao(String idSessao) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(loginDaSessao(idSessao)))) {
+            Sessao sessao = buscarSessao(idSessao);
+            if (sessao == null) {
+                return -1;
+            }
+            long prazo = expiradorSessoes.prazo(sessao.getAbertura(), sessao.getUltimoUso());
+            if (prazo > System.currentTimeMillis()) {
+                return prazo;
+            }
+            encerrarSessao(idSessao);
+            registrar(TipoOperacao.EXPIRAR_SESSAO, idSessao);
+            return 0;
         }
-        String idSessao = UUID.randomUUID().toString();
-        sessoes.put(idSessao, new Sessao(idSessao, usuario));
-        return idSessao;
     }
 
 
@@ -131,11 +766,13 @@ public class Sistema implements Serializable {
      * @throws UsuarioNaoCadastradoException Se o usurio no existir.
      */
     public String getAtributoUsuario(String login, String atributo) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null) {
-            throw new UsuarioNaoCadastradoException();
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            return usuario.getAtributo(atributo);
         }
-        return usuario.getAtributo(atributo);
     }
 
     /**
@@ -146,14 +783,18 @@ public class Sistema implements Serializable {
      * @throws IllegalArgumentException Se a sesso for invlida.
      */
     public void editarPerfil(String idSessao, String atributo, String valor) {
-        if (idSessao == null || idSessao.isEmpty()) {
-            throw new UsuarioNaoCadastradoException();
-        }
-        Sessao sessao = sessoes.get(idSessao);
-        if (sessao == null) {
-            throw new IllegalArgumentException("Sesso invlida.");
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(loginDaSessao(idSessao)))) {
+            if (idSessao == null || idSessao.isEmpty()) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            Sessao sessao = usarSessao(idSessao);
+            if (sessao == null) {
+                throw new IllegalArgumentException("Sesso invlida.");
+            }
+            sessao.getUsuario().editarAtributo(atributo, valor);
+            usuariosAlterados.add(sessao.getUsuario().getLogin());
+            registrar(TipoOperacao.EDITAR_PERFIL, idSessao, atributo, valor);
         }
-        sessao.getUsuario().editarAtributo(atributo, valor);
     }
 
     /**
@@ -166,47 +807,49 @@ public class Sistema implements Serializable {
      * @throws IllegalArgumentException Se tentar adicionar a si mesmo ou o amigo for inimigo.
      */
     public void adicionarAmigo(String idSessao, String amigo) {
-        Sessao sessao = getSessao(idSessao);
-        Usuario usuario = sessao.getUsuario();
-        Usuario usuarioAmigo = usuarios.get(amigo);
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(loginDaSessao(idSessao)), chaveUsuario(amigo))) {
+            Sessao sessao = getSessao(idSessao);
+            convidarAmigo(sessao.getUsuario(), amigo);
+            registrar(TipoOperacao.ADICIONAR_AMIGO, idSessao, amigo);
+        }
+    }
+
+    /**
+     * Envia um convite de amizade e, se o outro usurio j tiver convidado o remetente, confirma
+     * a amizade dos dois. Chamado com os dois usurios travados.
+     *
+     * @param usuario Usurio que pede a amizade.
+     * @param amigo Login do amigo a ser adicionado.
+     * @throws UsuarioNaoCadastradoException Se o amigo no existir.
+     * @throws IllegalArgumentException Se for o prprio usurio, o amigo for inimigo ou a amizade j existir.
+     */
+    private void convidarAmigo(Usuario usuario, String amigo) {
+        Usuario usuarioAmigo = buscarUsuario(amigo);
 
         if (usuarioAmigo == null) {
             throw new UsuarioNaoCadastradoException();
         }
 
         // Verifica se o amigo tem o usurio como inimigo
-        if (usuarioAmigo.getInimigos().contains(usuario.getLogin())) {
+        if (usuarioAmigo.ehInimigo(usuario.getLogin())) {
             throw new IllegalArgumentException("Funo invlida: " + usuarioAmigo.getNome() + "  seu inimigo.");
         }
-
-        if (idSessao == null || idSessao.isEmpty()) {
-            throw new UsuarioNaoCadastradoException();
-        }
-
-        if (sessao == null) {
-            throw new UsuarioNaoCadastradoException();
-        }
-        if (!usuarios.containsKey(amigo)) {
-            throw new UsuarioNaoCadastradoException();
-        }
-        if (sessao.getUsuario().getLogin().equals(amigo)) {
+        if (usuario.getLogin().equals(amigo)) {
             throw new IllegalArgumentException("Usurio no pode adicionar a si mesmo como amigo.");
         }
 
-        Usuario usuarioAtual = sessao.getUsuario();
-        Usuario usuarioAlvo = usuarios.get(amigo);
+        EventosJfr.MudancaRelacionamento evento = EventosJfr.MudancaRelacionamento.iniciar();
+        usuario.enviarConvite(amigo);
+        usuarioAmigo.receberConvite(usuario.getLogin());
 
-        try {
-            usuarioAtual.enviarConvite(amigo);
-            usuarioAlvo.receberConvite(usuarioAtual.getLogin());
-
-            if (usuarioAlvo.possuiConvitePara(usuarioAtual.getLogin())) {
-                usuarioAtual.confirmarAmizade(amigo);
-                usuarioAlvo.confirmarAmizade(usuarioAtual.getLogin());
-            }
-        } catch (IllegalArgumentException e) {
-            throw e;
+        boolean confirmada = usuarioAmigo.possuiConvitePara(usuario.getLogin());
+        if (confirmada) {
+            usuario.confirmarAmizade(amigo);
+            usuarioAmigo.confirmarAmizade(usuario.getLogin());
         }
+        usuariosAlterados.add(usuario.getLogin());
+        usuariosAlterados.add(amigo);
+        evento.concluir(confirmada ? "amizade" : "convite", usuario.getLogin(), amigo);
     }
 
     /**
@@ -217,11 +860,13 @@ public class Sistema implements Serializable {
      * @throws IllegalArgumentException Se algum dos usurios no existir.
      */
     public boolean ehAmigo(String login, String amigo) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null || !usuarios.containsKey(amigo)) {
-            throw new UsuarioNaoCadastradoException();
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null || !existeUsuario(amigo)) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            return usuario.ehAmigo(amigo);
         }
-        return usuario.ehAmigo(amigo);
     }
 
     /**
@@ -231,11 +876,13 @@ public class Sistema implements Serializable {
      * @throws IllegalArgumentException Se o usurio no existir.
      */
     public String getAmigos(String login) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null) {
-            throw new UsuarioNaoCadastradoException();
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            return listar(usuario, Usuario.Listagem.AMIGOS, Usuario::getAmigos, lapides.keySet());
         }
-        return usuario.getAmigosString();
     }
 
     /**
@@ -246,30 +893,38 @@ public class Sistema implements Serializable {
      * @throws IllegalArgumentException Se a sesso for invlida, destinatrio no existir ou for o mesmo que o remetente.
      */
     public void enviarRecado(String idSessao, String destinatario, String recado) {
-        Sessao sessao = getSessao(idSessao);
-        Usuario remetente = sessao.getUsuario();
-        Usuario usuarioDestinatario = usuarios.get(destinatario);
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(loginDaSessao(idSessao)), chaveUsuario(destinatario))) {
+            Sessao sessao = getSessao(idSessao);
+            Usuario remetente = sessao.getUsuario();
+            Usuario usuarioDestinatario = buscarUsuario(destinatario);
 
-        if (usuarioDestinatario == null) {
-            throw new UsuarioNaoCadastradoException();
-        }
+            if (usuarioDestinatario == null) {
+                throw new UsuarioNaoCadastradoException();
+            }
 
-        // Verifica se o destinatrio tem o remetente como inimigo
-        if (usuarioDestinatario.getInimigos().contains(remetente.getLogin())) {
-            throw new IllegalArgumentException("Funo invlida: " + usuarioDestinatario.getNome() + "  seu inimigo.");
-        }
+            // Verifica se o destinatrio tem o remetente como inimigo
+            if (usuarioDestinatario.ehInimigo(remetente.getLogin())) {
+                throw new IllegalArgumentException("Funo invlida: " + usuarioDestinatario.getNome() + "  seu inimigo.");
+            }
 
-        // Verifica se o destinatrio existe
-        if (!usuarios.containsKey(destinatario)) {
-            throw new UsuarioNaoCadastradoException();
-        }
+            // Verifica se o destinatrio existe
+            if (!existeUsuario(destinatario)) {
+                throw new UsuarioNaoCadastradoException();
+            }
 
-        // Verifica envio para si mesmo
-        if (remetente.getLogin().equals(destinatario)) {
-            throw new BloqueioAutoRecadoException();
-        }
+            // Verifica envio para si mesmo
+            if (remetente.getLogin().equals(destinatario)) {
+                throw new BloqueioAutoRecadoException();
+            }
 
-        usuarios.get(destinatario).receberRecado(recado);
+            EventosJfr.CaixaDeEntrada evento = EventosJfr.CaixaDeEntrada.iniciar();
+            usuarioDestinatario.receberRecado(remetente.getLogin(), recado);
+            evento.concluir("enfileirar", "recado", destinatario, usuarioDestinatario.getRecados().size());
+            remetente.registrarRecadoEnviado(destinatario);
+            usuariosAlterados.add(remetente.getLogin());
+            usuariosAlterados.add(destinatario);
+            registrar(TipoOperacao.ENVIAR_RECADO, idSessao, destinatario, recado);
+        }
     }
 
     /**
@@ -279,15 +934,57 @@ public class Sistema implements Serializable {
      * @throws IllegalArgumentException Se a sesso for invlida.
      */
     public String lerRecado(String idSessao) {
-        Sessao sessao = getSessao(idSessao);
-        Usuario usuario = sessao.getUsuario();
-        if (!usuarios.containsKey(usuario.getLogin())) {
-            throw new UsuarioNaoCadastradoException();
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(loginDaSessao(idSessao)))) {
+            Sessao sessao = getSessao(idSessao);
+            Usuario usuario = sessao.getUsuario();
+            if (!existeUsuario(usuario.getLogin())) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            if (sessao == null) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            // Recados de contas removidas que o expurgo ainda no apagou so descartados
+            Queue<Recado> recados = usuario.getRecados();
+            while (!recados.isEmpty() && lapides.containsKey(recados.peek().getRemetente())) {
+                recados.poll();
+            }
+            EventosJfr.CaixaDeEntrada evento = EventosJfr.CaixaDeEntrada.iniciar();
+            String recado = usuario.lerRecado();
+            evento.concluir("retirar", "recado", usuario.getLogin(), recados.size());
+            usuariosAlterados.add(usuario.getLogin());
+            registrar(TipoOperacao.LER_RECADO, idSessao);
+            return recado;
         }
-        if (sessao == null) {
-            throw new UsuarioNaoCadastradoException();
+    }
+
+    /**
+     * L a prxima mensagem das comunidades do usurio da sesso atual, na ordem de envio.
+     * @param idSessao ID da sesso.
+     * @return Contedo da mensagem.
+     * @throws UsuarioNaoCadastradoException Se a sesso for invlida.
+     * @throws IllegalStateException Se no houver mensagens.
+     */
+    public String lerMensagem(String idSessao) {
+        // O usurio e todas as suas comunidades so travados juntos, para que nenhuma mensagem
+        // seja acrescentada aos registros durante a escolha da prxima; se ele entrar em outra
+        // comunidade enquanto as travas so adquiridas, a lista  refeita.
+        Set<String> chaves = chavesDoUsuario(loginDaSessao(idSessao));
+        while (true) {
+            try (TravasPorChave.Trava trava = travas.travar(chaves.toArray(new String[0]))) {
+                Sessao sessao = getSessao(idSessao);
+                Usuario usuario = sessao.getUsuario();
+                if (!cobreComunidades(chaves, usuario)) {
+                    chaves = chavesDoUsuario(usuario.getLogin());
+                    continue;
+                }
+                EventosJfr.CaixaDeEntrada evento = EventosJfr.CaixaDeEntrada.iniciar();
+                String mensagem = usuario.lerMensagem(this::buscarMensagensComunidade);
+                evento.concluir("retirar", "mensagem", usuario.getLogin(), usuario.getQuantidadeMensagensEntregues());
+                usuariosAlterados.add(usuario.getLogin());
+                registrar(TipoOperacao.LER_MENSAGEM, idSessao);
+                return mensagem;
+            }
         }
-        return sessao.getUsuario().lerRecado();
     }
     /**
      * Obtm as comunidades de um usurio com base no login fornecido.
@@ -297,11 +994,13 @@ public class Sistema implements Serializable {
      * @throws UsuarioNaoCadastradoException Se o usurio com o login fornecido no estiver cadastrado.
      */
     public String getComunidades(String login) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null) {
-            throw new UsuarioNaoCadastradoException();
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            return comunidadesVisiveis(usuario.getComunidades()).toString();
         }
-        return usuario.getComunidades().toString();
     }
 
     /**
@@ -312,10 +1011,10 @@ public class Sistema implements Serializable {
      * @throws ComunidadeNaoExisteException Se a comunidade com o nome fornecido no existir.
      */
     public String getDescricaoComunidade(String nome) {
-        if (!comunidades.containsKey(nome)) {
+        if (!existeComunidade(nome)) {
             throw new ComunidadeNaoExisteException();
         }
-        return comunidades.get(nome).getDescricao();
+        return buscarComunidade(nome).getDescricao();
     }
 
     /**
@@ -326,7 +1025,7 @@ public class Sistema implements Serializable {
      * @throws ComunidadeNaoExisteException Se a comunidade com o nome fornecido no existir.
      */
     public Comunidade getComunidade(String nome) {
-        Comunidade comunidade = comunidades.get(nome);
+        Comunidade comunidade = buscarComunidade(nome);
         if (comunidade == null) {
             throw new ComunidadeNaoExisteException();
         }
@@ -343,13 +1042,21 @@ public class Sistema implements Serializable {
      */
 
     public void criarComunidade(String nome, String descricao, String dono) {
-        if (comunidades.containsKey(nome)) {
-            throw new ComunidadeExistenteException();
+        concluirExpurgo(nome == null ? null : comunidadesExcluidas.get(nome));
+        try (TravasPorChave.Trava trava = travas.travar(chaveComunidade(nome), chaveUsuario(dono))) {
+            if (existeComunidade(nome)) {
+                throw new ComunidadeExistenteException();
+            }
+            Usuario usuario = getUsuario(dono);
+            Comunidade comunidade = new Comunidade(nome, descricao, dono, tabelaLogins);
+            tabelaLogins.id(nome); // O ID do nome d a ordem das pginas de comunidades: a de criao
+            comunidades.put(nome, comunidade);
+            usuario.adicionarComunidade(comunidade);
+            semelhantes.recalcular(nome); // Pode haver a assinatura de uma comunidade anterior com o nome
+            comunidadesAlteradas.add(nome);
+            usuariosAlterados.add(dono);
+            registrar(TipoOperacao.CRIAR_COMUNIDADE, nome, descricao, dono);
         }
-        Comunidade comunidade = new Comunidade(nome, descricao, dono);
-        comunidades.put(nome, comunidade);
-        Usuario usuario = getUsuario(dono);
-        usuario.adicionarComunidade(nome);
     }
     /**
      * Obtm a sesso de um usurio com base no identificador da sesso fornecido.
@@ -360,12 +1067,36 @@ public class Sistema implements Serializable {
      */
 
     public Sessao getSessao(String idSessao) {
-        Sessao sessao = sessoes.get(idSessao);
+        Sessao sessao = usarSessao(idSessao);
         if (sessao == null) {
             throw new UsuarioNaoCadastradoException();
         }
         return sessao;
     }
+
+    /**
+     * Busca uma sesso para uso em uma operao e registra o uso. Sesses vencidas que o
+     * {@link ExpiradorDeSessoes} ainda no encerrou so tratadas como inexistentes.
+     *
+     * @param idSessao ID da sesso (pode ser nulo).
+     * @return A sesso, ou {@code null} se ela no existir ou estiver vencida.
+     */
+    private Sessao usarSessao(String idSessao) {
+        Sessao sessao = buscarSessao(idSessao);
+        if (sessao != null) {
+            long agora = System.currentTimeMillis();
+            // Na reproduo do dirio o relgio no vale para expirar (as expiraes esto
+            // registradas nele), e o instante do uso no foi gravado: conta como agora
+            if (!reproduzindo && expirou(sessao, agora)) {
+                return null;
+            }
+            if (agora - sessao.getUltimoUso() >= INTERVALO_GRAVACAO_USO) {
+                sessoesAlteradas.add(idSessao);
+            }
+            sessao.registrarUso(agora);
+        }
+        return sessao;
+    }
     /**
      * Obtm o usurio com base no login fornecido.
      *
@@ -374,7 +1105,7 @@ public class Sistema implements Serializable {
      * @throws UsuarioNaoCadastradoException Se o usurio com o login fornecido no existir.
      */
     public Usuario getUsuario(String login) {
-        Usuario usuario = usuarios.get(login);
+        Usuario usuario = buscarUsuario(login);
         if (usuario == null) {
             throw new UsuarioNaoCadastradoException();
         }
@@ -390,12 +1121,21 @@ public class Sistema implements Serializable {
      */
 
     public void adicionarMembroComunidade(String nomeComunidade, String loginUsuario) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveComunidade(nomeComunidade), chaveUsuario(loginUsuario))) {
+            incluirMembro(nomeComunidade, loginUsuario);
+        }
+    }
 
+    private void incluirMembro(String nomeComunidade, String loginUsuario) {
         Comunidade comunidade = getComunidade(nomeComunidade);
         Usuario usuario = getUsuario(loginUsuario);
 
         comunidade.adicionarMembro(loginUsuario);
-        usuario.adicionarComunidade(nomeComunidade);
+        usuario.adicionarComunidade(comunidade);
+        semelhantes.adicionarMembro(nomeComunidade, usuario.getId());
+        comunidadesAlteradas.add(nomeComunidade);
+        usuariosAlterados.add(loginUsuario);
+        registrar(TipoOperacao.ADICIONAR_MEMBRO_COMUNIDADE, nomeComunidade, loginUsuario);
     }
     /**
      * Retorna as comunidades de um usurio com base no login fornecido.
@@ -405,7 +1145,9 @@ public class Sistema implements Serializable {
      */
 
     public Set<String> getComunidadesDoUsuario(String login) {
-        return getUsuario(login).getComunidades();
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            return new LinkedHashSet<>(comunidadesVisiveis(getUsuario(login).getComunidades()));
+        }
     }
     /**
      * Retorna as comunidades de um usurio com base no login fornecido, formatadas como uma string.
@@ -414,10 +1156,10 @@ public class Sistema implements Serializable {
      * @return Uma string representando as comunidades do usurio no formato {comunidade1,comunidade2,...}.
      */
     public String getComunidadesDoUsuarioFormatado(String login) {
-        Usuario usuario = getUsuario(login);
-        List<String> comunidades = new ArrayList<>(usuario.getComunidades());
-
-        return "{" + String.join(",", comunidades) + "}";
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = getUsuario(login);
+            return listar(usuario, Usuario.Listagem.COMUNIDADES, Usuario::getComunidades, comunidadesExcluidas.keySet());
+        }
     }
     /**
      * Retorna os membros de uma comunidade com base no nome fornecido, formatados como uma string.
@@ -427,36 +1169,375 @@ public class Sistema implements Serializable {
      * @throws ComunidadeNaoExisteException Se a comunidade com o nome fornecido no existir.
      */
     public String getMembrosComunidade(String nome) {
-        if (!comunidades.containsKey(nome)) {
-            throw new ComunidadeNaoExisteException();
+        try (TravasPorChave.Trava trava = travas.travar(chaveComunidade(nome))) {
+            if (!existeComunidade(nome)) {
+                throw new ComunidadeNaoExisteException();
+            }
+            Comunidade comunidade = buscarComunidade(nome);
+            if (!lapides.isEmpty()) {
+                // Percorre os prprios membros, sem copi-los; a trava da comunidade os protege
+                return formatarSet(visiveis(comunidade.membros()));
+            }
+            String texto = comunidade.buscarMembrosFormatados();
+            if (texto == null) {
+                texto = formatarSet(comunidade.membros());
+                comunidade.guardarMembrosFormatados(texto);
+            }
+            return texto;
         }
-        List<String> membros = new ArrayList<>(comunidades.get(nome).getMembros());
-
-        return "{" + String.join(",", membros) + "}";
     }
+
     /**
-     * Adiciona o usurio de uma sesso a uma comunidade existente.
-     * @param idSessao ID da sesso do usurio.
-     * @param nomeComunidade Nome da comunidade  qual o usurio ser adicionado.
+     * Retorna as comunidades cujos membros mais se sobrepem aos de uma comunidade ("quem
+     * participa desta tambm participa de..."), segundo a tabela de {@link ComunidadesSemelhantes}.
+     * A tabela  atualizada em segundo plano e pode no refletir as ltimas mudanas de membros.
+     *
+     * @param nome Nome da comunidade.
+     * @return As comunidades no formato {comunidade1,comunidade2,...}, da mais semelhante para a
+     *         menos.
+     * @throws ComunidadeNaoExisteException Se a comunidade no existir.
+     */
+    public String getComunidadesSemelhantes(String nome) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveComunidade(nome))) {
+            getComunidade(nome);
+            List<String> nomes = semelhantes.getSemelhantes(nome);
+            nomes.removeIf(outra -> !existeComunidade(outra));
+            return "{" + String.join(",", nomes) + "}";
+        }
+    }
+
+    /**
+     * Recalcula a assinatura de uma comunidade a partir dos membros, a pedido da thread das
+     * {@link ComunidadesSemelhantes}.
+     *
+     * @param nome Nome da comunidade.
+     */
+    private void recalcularSemelhanca(String nome) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveComunidade(nome))) {
+            Comunidade comunidade = buscarComunidade(nome);
+            if (comunidade == null) {
+                semelhantes.descartarAssinatura(nome);
+            } else {
+                semelhantes.recalcularAssinatura(comunidade);
+            }
+        }
+    }
+
+    /**
+     * Retorna os usurios que so membros de duas comunidades.
+     *
+     * @param comunidade1 Nome da primeira comunidade.
+     * @param comunidade2 Nome da segunda comunidade.
+     * @return Os membros em comum no formato {membro1,membro2,...}, na ordem de entrada na primeira.
+     * @throws ComunidadeNaoExisteException Se alguma das comunidades no existir.
+     */
+    public String getMembrosEmComum(String comunidade1, String comunidade2) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveComunidade(comunidade1), chaveComunidade(comunidade2))) {
+            List<String> membros = getComunidade(comunidade1).getMembrosEmComum(getComunidade(comunidade2));
+            membros.removeIf(lapides::containsKey);
+            return "{" + String.join(",", membros) + "}";
+        }
+    }
+
+    /**
+     * Conta os usurios que so membros de duas comunidades, sem list-los.
+     *
+     * @param comunidade1 Nome da primeira comunidade.
+     * @param comunidade2 Nome da segunda comunidade.
+     * @return Quantidade de membros em comum.
+     * @throws ComunidadeNaoExisteException Se alguma das comunidades no existir.
+     */
+    public int getQuantidadeMembrosEmComum(String comunidade1, String comunidade2) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveComunidade(comunidade1), chaveComunidade(comunidade2))) {
+            Comunidade primeira = getComunidade(comunidade1);
+            Comunidade segunda = getComunidade(comunidade2);
+            if (!lapides.isEmpty()) {
+                // Contas removidas ainda podem constar como membros at o expurgo chegar a elas
+                List<String> membros = primeira.getMembrosEmComum(segunda);
+                membros.removeIf(lapides::containsKey);
+                return membros.size();
+            }
+            return primeira.contarMembrosEmComum(segunda);
+        }
+    }
+
+    /**
+     * Retorna os amigos de um usurio que so membros de uma comunidade.
+     *
+     * @param login Login do usurio.
+     * @param nomeComunidade Nome da comunidade.
+     * @return Os amigos membros no formato {amigo1,amigo2,...}, na ordem dos amigos.
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir.
+     * @throws ComunidadeNaoExisteException Se a comunidade no existir.
+     */
+    public String getAmigosNaComunidade(String login, String nomeComunidade) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login), chaveComunidade(nomeComunidade))) {
+            Usuario usuario = getUsuario(login);
+            List<String> amigos = getComunidade(nomeComunidade).getMembrosEntre(usuario.amigos());
+            amigos.removeIf(lapides::containsKey);
+            return "{" + String.join(",", amigos) + "}";
+        }
+    }
+
+    /**
+     * Retorna os amigos que dois usurios tm em comum.
+     *
+     * @param login1 Login do primeiro usurio.
+     * @param login2 Login do segundo usurio.
+     * @return Os amigos em comum no formato {amigo1,amigo2,...}, na ordem de amizade do primeiro.
+     * @throws UsuarioNaoCadastradoException Se algum dos usurios no existir.
+     */
+    public String getAmigosEmComum(String login1, String login2) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login1), chaveUsuario(login2))) {
+            List<String> amigos = getUsuario(login1).getAmigosEmComum(getUsuario(login2));
+            amigos.removeIf(lapides::containsKey);
+            return "{" + String.join(",", amigos) + "}";
+        }
+    }
+
+    /**
+     * Conta os amigos que dois usurios tm em comum, sem list-los.
+     *
+     * @param login1 Login do primeiro usurio.
+     * @param login2 Login do segundo usurio.
+     * @return Quantidade de amigos em comum.
+     * @throws UsuarioNaoCadastradoException Se algum dos usurios no existir.
+     */
+    public int getQuantidadeAmigosEmComum(String login1, String login2) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login1), chaveUsuario(login2))) {
+            Usuario primeiro = getUsuario(login1);
+            Usuario segundo = getUsuario(login2);
+            if (!lapides.isEmpty()) {
+                // Contas removidas ainda podem constar como amigas at o expurgo chegar a elas
+                List<String> amigos = primeiro.getAmigosEmComum(segundo);
+                amigos.removeIf(lapides::containsKey);
+                return amigos.size();
+            }
+            return primeiro.contarAmigosEmComum(segundo);
+        }
+    }
+
+    /**
+     * Retorna as comunidades de que dois usurios participam.
+     *
+     * @param login1 Login do primeiro usurio.
+     * @param login2 Login do segundo usurio.
+     * @return As comunidades em comum no formato {comunidade1,comunidade2,...}, na ordem de entrada
+     *         do primeiro.
+     * @throws UsuarioNaoCadastradoException Se algum dos usurios no existir.
+     */
+    public String getComunidadesEmComum(String login1, String login2) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login1), chaveUsuario(login2))) {
+            List<String> comunidades = getUsuario(login1).getComunidadesEmComum(getUsuario(login2));
+            comunidades.removeIf(comunidadesExcluidas::containsKey);
+            return "{" + String.join(",", comunidades) + "}";
+        }
+    }
+
+    /**
+     * Conta as comunidades de que dois usurios participam, sem list-las.
+     *
+     * @param login1 Login do primeiro usurio.
+     * @param login2 Login do segundo usurio.
+     * @return Quantidade de comunidades em comum.
+     * @throws UsuarioNaoCadastradoException Se algum dos usurios no existir.
+     */
+    public int getQuantidadeComunidadesEmComum(String login1, String login2) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login1), chaveUsuario(login2))) {
+            Usuario primeiro = getUsuario(login1);
+            Usuario segundo = getUsuario(login2);
+            if (!comunidadesExcluidas.isEmpty()) {
+                // Comunidades removidas com a conta do dono saem dos membros aos poucos
+                List<String> comunidades = primeiro.getComunidadesEmComum(segundo);
+                comunidades.removeIf(comunidadesExcluidas::containsKey);
+                return comunidades.size();
+            }
+            return primeiro.contarComunidadesEmComum(segundo);
+        }
+    }
+
+    /**
+     * Sugere amigos para um usurio ("pessoas que voc talvez conhea"): os amigos dos amigos dele,
+     * ordenados pela quantidade de amigos em comum. Ficam de fora os amigos, quem tem convite
+     * pendente com o usurio em qualquer sentido e quem  inimigo dele, ou de quem ele  inimigo.
+     *
+     * <p>S a trava do usurio  mantida enquanto os amigos e as excluses so copiados; depois,
+     * cada amigo  travado sozinho enquanto os amigos dele so contados, possivelmente em paralelo
+     * (ver {@link SugestoesDeAmigos}). O resultado no , portanto, uma foto atmica da rede.</p>
+     *
+     * @param login Login do usurio.
+     * @param quantidade Quantidade mxima de sugestes.
+     * @return As sugestes no formato {login1,login2,...}, da que tem mais amigos em comum para a
+     *         que tem menos e, no empate, em ordem alfabtica.
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir.
+     */
+    public String getSugestoesDeAmigos(String login, int quantidade) {
+        int[] amigos;
+        MapaDeBits excluidos = new MapaDeBits();
+        TabelaDeLogins tabela;
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            tabela = tabelaLogins; // A dos IDs copiados, mesmo que o sistema seja zerado a seguir
+            Usuario usuario = getUsuario(login);
+            amigos = usuario.amigos().ids();
+            usuario.paraCadaNaoSugerivel(excluidos::adicionar);
+        }
+        List<String> sugestoes = SugestoesDeAmigos.sugerir(amigos,
+                id -> !excluidos.contem(id) && (lapides.isEmpty() || !lapides.containsKey(tabela.login(id))),
+                (id, acao) -> {
+                    String amigo = tabela.login(id);
+                    try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(amigo))) {
+                        Usuario usuario = buscarUsuario(amigo);
+                        if (usuario != null) { // Conta removida depois da cpia dos amigos
+                            usuario.amigos().paraCadaId(acao);
+                        }
+                    }
+                },
+                quantidade, tabela);
+        return "{" + String.join(",", sugestoes) + "}";
+    }
+    /**
+     * Adiciona o usurio de uma sesso a uma comunidade existente.
+     * @param idSessao ID da sesso do usurio.
+     * @param nomeComunidade Nome da comunidade  qual o usurio ser adicionado.
      * @throws UsuarioNaoCadastradoException Se a sesso for invlida.
      * @throws ComunidadeNaoExisteException Se a comunidade no existir.
      */
 
     public void enviarMensagemComunidade(String idSessao, String nomeComunidade, String mensagem) {
-        Sessao sessao = getSessao(idSessao); // Valida a sesso
-        Usuario remetente = sessao.getUsuario();
-        Comunidade comunidade = getComunidade(nomeComunidade); // Busca a comunidade
+        if (entregador != null && !reproduzindo) {
+            enviarMensagemAosMembros(idSessao, nomeComunidade, mensagem);
+            return;
+        }
+        // A mensagem s  acrescentada ao registro da comunidade; cada membro a encontra ao ler,
+        // a partir da prpria posio de leitura. Por isso basta travar a comunidade.
+        try (TravasPorChave.Trava trava = travas.travar(chaveComunidade(nomeComunidade))) {
+            getSessao(idSessao); // Valida a sesso
+            Comunidade comunidade = getComunidade(nomeComunidade); // Busca a comunidade
+            EventosJfr.DistribuicaoComunidade evento = EventosJfr.DistribuicaoComunidade.iniciar();
+            long sequencia = registrar(TipoOperacao.ENVIAR_MENSAGEM_COMUNIDADE, idSessao, nomeComunidade, mensagem);
+            if (entregador == null) {
+                if (comunidade.publicarMensagem(sequencia, mensagem)) {
+                    registrosParaDescartar.add(nomeComunidade);
+                }
+                comunidadesAlteradas.add(nomeComunidade);
+                evento.concluir(nomeComunidade, comunidade.membros().size(), "registro");
+            } else {
+                // Reproduo do dirio com entrega no envio: entrega aqui mesmo, na ordem do dirio
+                MensagemComunidade publicada = new MensagemComunidade(sequencia, mensagem);
+                for (String membro : comunidade.membros()) {
+                    entregarMensagem(membro, publicada);
+                }
+                evento.concluir(nomeComunidade, comunidade.membros().size(), "reproducao");
+            }
+        }
+    }
 
-        // Formata a mensagem com o login do remetente
-        String mensagemCompleta = remetente.getLogin() + ": " + mensagem;
+    /**
+     * Envia uma mensagem copiando-a para a fila de cada membro ({@link EntregadorDeMensagens}).
+     * A operao retorna depois de registrada no dirio; a entrega acontece nas threads de
+     * entrega, exceto para comunidades pequenas, em que ela  aguardada.
+     */
+    private void enviarMensagemAosMembros(String idSessao, String nomeComunidade, String mensagem) {
+        // A vaga  reservada antes das travas, que as threads de entrega precisam para liber-la
+        try (EntregadorDeMensagens.Envio<MensagemComunidade> envio = entregador.reservar()) {
+            try (TravasPorChave.Trava trava = travas.travar(chaveComunidade(nomeComunidade))) {
+                getSessao(idSessao); // Valida a sesso
+                Comunidade comunidade = getComunidade(nomeComunidade); // Busca a comunidade
+                EventosJfr.DistribuicaoComunidade evento = EventosJfr.DistribuicaoComunidade.iniciar();
+                entregador.publicar(envio, comunidade.membros(), () -> new MensagemComunidade(
+                        registrar(TipoOperacao.ENVIAR_MENSAGEM_COMUNIDADE, idSessao, nomeComunidade, mensagem), mensagem));
+                evento.concluir(nomeComunidade, comunidade.membros().size(), "entrega");
+            }
+        }
+    }
 
-        // Envia a mensagem para todos os membros da comunidade
-        for (String membro : comunidade.getMembros()) {
-            Usuario usuario = getUsuario(membro);
+    /**
+     * Executa um lote de entrega nas threads do {@link EntregadorDeMensagens}, com os
+     * destinatrios travados.
+     *
+     * @param lote Lote a entregar.
+     */
+    private void entregarLote(EntregadorDeMensagens.Lote<MensagemComunidade> lote) {
+        String[] destinatarios = lote.getDestinatarios();
+        String[] chaves = new String[destinatarios.length];
+        for (int i = 0; i < destinatarios.length; i++) {
+            chaves[i] = chaveUsuario(destinatarios[i]);
+        }
+        try (TravasPorChave.Trava trava = travas.travar(chaves)) {
+            EventosJfr.DistribuicaoComunidade evento = EventosJfr.DistribuicaoComunidade.iniciar();
+            lote.entregar(this::entregarMensagem);
+            evento.concluir(null, destinatarios.length, "lote");
+        }
+    }
+
+    private void entregarMensagem(String login, MensagemComunidade mensagem) {
+        Usuario usuario = buscarUsuario(login);
+        if (usuario != null) {
+            EventosJfr.CaixaDeEntrada evento = EventosJfr.CaixaDeEntrada.iniciar();
             usuario.receberMensagemComunidade(mensagem);
+            evento.concluir("enfileirar", "mensagem", login, usuario.getQuantidadeMensagensEntregues());
+            usuariosAlterados.add(login);
+        }
+    }
+
+    /**
+     * Conclui, na thread atual, as entregas de mensagens ainda pendentes. Chamado com o sistema
+     * travado por completo antes de capturar um checkpoint, cujo LSN j cobre essas mensagens.
+     */
+    private void concluirEntregas() {
+        if (entregador != null) {
+            entregador.concluirPendentes(this::entregarMensagem);
+        }
+    }
+
+    /**
+     * Busca o registro de mensagens de uma comunidade, inclusive de uma comunidade removida junto
+     * com a conta do dono cujos membros o expurgo ainda no alcanou.
+     *
+     * @param nome Nome da comunidade.
+     * @return A comunidade, ou {@code null} se ela no existir mais.
+     */
+    private Comunidade buscarMensagensComunidade(String nome) {
+        Comunidade comunidade = buscarComunidade(nome);
+        if (comunidade == null && !comunidadesExcluidas.isEmpty()) {
+            String dono = comunidadesExcluidas.get(nome);
+            Lapide lapide = dono == null ? null : lapides.get(dono);
+            comunidade = lapide == null ? null : lapide.getComunidades().get(nome);
+        }
+        return comunidade;
+    }
+
+    /**
+     * Lista as chaves de trava de um usurio e de todas as suas comunidades.
+     *
+     * @param login Login do usurio (pode ser nulo).
+     * @return Chave do usurio seguida das chaves das comunidades.
+     */
+    private Set<String> chavesDoUsuario(String login) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = buscarUsuario(login);
+            Set<String> nomes = usuario == null ? Collections.emptySet() : usuario.getComunidades();
+            Set<String> chaves = new LinkedHashSet<>(nomes.size() * 4 / 3 + 2);
+            chaves.add(chaveUsuario(login));
+            for (String nome : nomes) {
+                chaves.add(chaveComunidade(nome));
+            }
+            return chaves;
         }
     }
 
+    private boolean cobreComunidades(Set<String> chaves, Usuario usuario) {
+        if (!chaves.contains(chaveUsuario(usuario.getLogin()))) {
+            return false;
+        }
+        for (String nome : usuario.getComunidades()) {
+            if (!chaves.contains(chaveComunidade(nome))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Adiciona um usurio como dolo. Gera relao mtua de f/dolo.
      *
@@ -466,42 +1547,49 @@ public class Sistema implements Serializable {
      * @throws IllegalArgumentException Se o usurio for o prprio dolo ou j for f.
      */
     public void adicionarIdolo(String idSessao, String idolo) {
-        Sessao sessao = getSessao(idSessao);
-        Usuario usuario = sessao.getUsuario();
-        Usuario usuarioIdolo = usuarios.get(idolo);
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(loginDaSessao(idSessao)), chaveUsuario(idolo))) {
+            Sessao sessao = getSessao(idSessao);
+            Usuario usuario = sessao.getUsuario();
+            Usuario usuarioIdolo = buscarUsuario(idolo);
 
-        if (usuarioIdolo == null) {
-            throw new UsuarioNaoCadastradoException();
-        }
+            if (usuarioIdolo == null) {
+                throw new UsuarioNaoCadastradoException();
+            }
 
-        // Verifica se o dolo tem o usurio como inimigo
-        if (usuarioIdolo.getInimigos().contains(usuario.getLogin())) {
-            throw new IllegalArgumentException("Funo invlida: " + usuarioIdolo.getNome() + "  seu inimigo.");
-        }
+            // Verifica se o dolo tem o usurio como inimigo
+            if (usuarioIdolo.ehInimigo(usuario.getLogin())) {
+                throw new IllegalArgumentException("Funo invlida: " + usuarioIdolo.getNome() + "  seu inimigo.");
+            }
 
-        // Agora voc pode acessar o atributo 'fas' do Usuario corretamente
-        if (usuario.getFas().contains(idolo)) {
-            throw new JaEhFaException();
-        }
+            // Agora voc pode acessar o atributo 'fas' do Usuario corretamente
+            if (usuario.temFa(idolo)) {
+                throw new JaEhFaException();
+            }
 
-        // Impedir que o usurio adicione a si mesmo como dolo
-        if (usuario.getLogin().equals(idolo)) {
-            throw new BloqueioAutoIdolException();
-        }
+            // Impedir que o usurio adicione a si mesmo como dolo
+            if (usuario.getLogin().equals(idolo)) {
+                throw new BloqueioAutoIdolException();
+            }
 
-        // Impede adicionar um dolo repetido
-        if (usuario.ehFa(idolo)) {
-            throw new UsuarioAddIdolException();
-        }
-        // Verificar se o dolo existe
-        if (!usuarios.containsKey(idolo)) {
-            throw new UsuarioNaoCadastradoException();
-        }
+            // Impede adicionar um dolo repetido
+            if (usuario.ehFa(idolo)) {
+                throw new UsuarioAddIdolException();
+            }
+            // Verificar se o dolo existe
+            if (!existeUsuario(idolo)) {
+                throw new UsuarioNaoCadastradoException();
+            }
 
-        // Adiciona o dolo
-        usuario.adicionarIdolo(idolo);
-        Usuario idoloUsuario = usuarios.get(idolo);
-        idoloUsuario.adicionarFa(usuario.getLogin());
+            // Adiciona o dolo
+            EventosJfr.MudancaRelacionamento evento = EventosJfr.MudancaRelacionamento.iniciar();
+            usuario.adicionarIdolo(idolo);
+            Usuario idoloUsuario = buscarUsuario(idolo);
+            idoloUsuario.adicionarFa(usuario.getLogin());
+            usuariosAlterados.add(usuario.getLogin());
+            usuariosAlterados.add(idolo);
+            evento.concluir("idolo", usuario.getLogin(), idolo);
+            registrar(TipoOperacao.ADICIONAR_IDOLO, idSessao, idolo);
+        }
     }
 
     /**
@@ -513,38 +1601,48 @@ public class Sistema implements Serializable {
      * @throws IllegalArgumentException Se for auto-adicionamento ou paquera repetida.
      */
     public void adicionarPaquera(String idSessao, String paquera) {
-        Sessao sessao = getSessao(idSessao);
-        Usuario usuario = sessao.getUsuario();
-        Usuario usuarioPaquera = usuarios.get(paquera);
-
-        if (usuarioPaquera == null) {
-            throw new UsuarioNaoCadastradoException();
-        }
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(loginDaSessao(idSessao)), chaveUsuario(paquera))) {
+            Sessao sessao = getSessao(idSessao);
+            Usuario usuario = sessao.getUsuario();
+            Usuario usuarioPaquera = buscarUsuario(paquera);
 
-        // Verifica se a paquera tem o usurio como inimigo
-        if (usuarioPaquera.getInimigos().contains(usuario.getLogin())) {
-            throw new IllegalArgumentException("Funo invlida: " + usuarioPaquera.getNome() + "  seu inimigo.");
-        }
-        if (!usuarios.containsKey(paquera)) {
-            throw new UsuarioNaoCadastradoException();
-        }
+            if (usuarioPaquera == null) {
+                throw new UsuarioNaoCadastradoException();
+            }
 
-        // Impede adicionar a si mesmo como paquera
-        if (usuario.getLogin().equals(paquera)) {
-            throw new BloqueioAutoPaqueraException();
-        }
+            // Verifica se a paquera tem o usurio como inimigo
+            if (usuarioPaquera.ehInimigo(usuario.getLogin())) {
+                throw new IllegalArgumentException("Funo invlida: " + usuarioPaquera.getNome() + "  seu inimigo.");
+            }
+            if (!existeUsuario(paquera)) {
+                throw new UsuarioNaoCadastradoException();
+            }
 
-        // Verifica se o usurio j  paquera
-        if (usuario.ehPaquera(paquera)) {
-            throw new UsuarioAddPaqueraException();
-        }
+            // Impede adicionar a si mesmo como paquera
+            if (usuario.getLogin().equals(paquera)) {
+                throw new BloqueioAutoPaqueraException();
+            }
 
-        usuario.adicionarPaquera(paquera);
+            // Verifica se o usurio j  paquera
+            if (usuario.ehPaquera(paquera)) {
+                throw new UsuarioAddPaqueraException();
+            }
 
-        // Se ambos se adicionarem mutuamente, envia recado
-        if (usuarioPaquera.ehPaquera(usuario.getLogin())) {
-            usuario.receberRecado(usuarioPaquera.getNome() + "  seu paquera - Recado do Jackut.");
-            usuarioPaquera.receberRecado(usuario.getNome() + "  seu paquera - Recado do Jackut.");
+            EventosJfr.MudancaRelacionamento evento = EventosJfr.MudancaRelacionamento.iniciar();
+            usuario.adicionarPaquera(paquera);
+            usuarioPaquera.getPaqueradoPor().add(usuario.getLogin());
+            usuariosAlterados.add(usuario.getLogin());
+            usuariosAlterados.add(paquera);
+            evento.concluir("paquera", usuario.getLogin(), paquera);
+
+            // Se ambos se adicionarem mutuamente, envia recado (em nome de cada um para o outro)
+            if (usuarioPaquera.ehPaquera(usuario.getLogin())) {
+                usuario.receberRecado(paquera, usuarioPaquera.getNome() + "  seu paquera - Recado do Jackut.");
+                usuarioPaquera.registrarRecadoEnviado(usuario.getLogin());
+                usuarioPaquera.receberRecado(usuario.getLogin(), usuario.getNome() + "  seu paquera - Recado do Jackut.");
+                usuario.registrarRecadoEnviado(paquera);
+            }
+            registrar(TipoOperacao.ADICIONAR_PAQUERA, idSessao, paquera);
         }
     }
     /**
@@ -556,11 +1654,13 @@ public class Sistema implements Serializable {
      * @throws UsuarioNaoCadastradoException Se o usurio ou o dolo no existirem no sistema.
      */
     public boolean ehFa(String login, String idolo) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null || !usuarios.containsKey(idolo)) {
-            throw new UsuarioNaoCadastradoException();
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null || !existeUsuario(idolo)) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            return usuario.ehFa(idolo);
         }
-        return usuario.ehFa(idolo);
     }
     /**
      * Formata um conjunto de strings em uma string no formato {elemento1,elemento2,...}.
@@ -571,6 +1671,30 @@ public class Sistema implements Serializable {
     private String formatarSet(Set<String> conjunto) {
         return conjunto.isEmpty() ? "{}" : "{" + String.join(",", conjunto) + "}";
     }
+
+    /**
+     * Formata uma relao do usurio no formato {elemento1,elemento2,...}, reaproveitando o texto
+     * guardado no usurio enquanto a relao no mudar. Enquanto houver elementos a esconder
+     * (contas ou comunidades ainda em expurgo), o texto  filtrado e no  guardado.
+     *
+     * @param usuario Usurio, travado.
+     * @param listagem Listagem guardada no usurio.
+     * @param relacao Obtm o conjunto da relao.
+     * @param excluidos Elementos que no devem aparecer.
+     * @return A relao formatada.
+     */
+    private String listar(Usuario usuario, Usuario.Listagem listagem, Function<Usuario, Set<String>> relacao,
+                          Set<String> excluidos) {
+        if (!excluidos.isEmpty()) {
+            return formatarSet(filtrar(relacao.apply(usuario), excluidos));
+        }
+        String texto = usuario.buscarListagem(listagem);
+        if (texto == null) {
+            texto = formatarSet(relacao.apply(usuario));
+            usuario.guardarListagem(listagem, texto);
+        }
+        return texto;
+    }
     /**
      * Retorna os fs de um usurio com base no login fornecido, formatados como uma string.
      *
@@ -579,11 +1703,13 @@ public class Sistema implements Serializable {
      * @throws UsuarioNaoCadastradoException Se o usurio com o login fornecido no existir.
      */
     public String getFas(String login) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null) {
-            throw new UsuarioNaoCadastradoException();
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            return listar(usuario, Usuario.Listagem.FAS, Usuario::getFas, lapides.keySet());
         }
-        return formatarSet(usuario.getFas());
     }
     /**
      * Verifica se o usurio com o login fornecido est paquerando a pessoa especificada.
@@ -594,11 +1720,13 @@ public class Sistema implements Serializable {
      * @throws UsuarioNaoCadastradoException Se o usurio ou a pessoa no existirem no sistema.
      */
     public boolean ehPaquera(String login, String paquera) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null || !usuarios.containsKey(paquera)) {
-            throw new UsuarioNaoCadastradoException();
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null || !existeUsuario(paquera)) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            return usuario.ehPaquera(paquera);
         }
-        return usuario.ehPaquera(paquera);
     }
     /**
      * Retorna as pessoas que o usurio est paquerando, formatadas como uma string.
@@ -608,11 +1736,13 @@ public class Sistema implements Serializable {
      * @throws UsuarioNaoCadastradoException Se o usurio com o login fornecido no existir.
      */
     public String getPaqueras(String login) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null) {
-            throw new UsuarioNaoCadastradoException();
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            return listar(usuario, Usuario.Listagem.PAQUERAS, Usuario::getPaqueras, lapides.keySet());
         }
-        return formatarSet(usuario.getPaqueras());
     }
     /**
      * Retorna os inimigos de um usurio com base no login fornecido, formatados como uma string.
@@ -622,11 +1752,133 @@ public class Sistema implements Serializable {
      * @throws UsuarioNaoCadastradoException Se o usurio com o login fornecido no existir.
      */
     public String getInimigos(String login) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null) {
-            throw new UsuarioNaoCadastradoException();
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            return listar(usuario, Usuario.Listagem.INIMIGOS, Usuario::getInimigos, lapides.keySet());
+        }
+    }
+
+    /**
+     * Lista uma pgina dos amigos de um usurio. As pginas seguem a ordem dos IDs dos logins, e
+     * no a ordem de {@link #getAmigos}; ver {@link Pagina}.
+     *
+     * @param login Login do usurio.
+     * @param cursor Cursor da pgina anterior, ou {@code null} para a primeira pgina.
+     * @param limite Quantidade mxima de amigos da pgina.
+     * @return A pgina, com o cursor da seguinte.
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir.
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido.
+     */
+    public Pagina getAmigosPaginados(String login, String cursor, int limite) {
+        return paginar(login, Usuario.Paginavel.AMIGOS, cursor, limite);
+    }
+
+    /**
+     * Lista uma pgina dos fs de um usurio, em ordem de ID; ver {@link Pagina}.
+     *
+     * @param login Login do usurio.
+     * @param cursor Cursor da pgina anterior, ou {@code null} para a primeira pgina.
+     * @param limite Quantidade mxima de fs da pgina.
+     * @return A pgina, com o cursor da seguinte.
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir.
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido.
+     */
+    public Pagina getFasPaginados(String login, String cursor, int limite) {
+        return paginar(login, Usuario.Paginavel.FAS, cursor, limite);
+    }
+
+    /**
+     * Lista uma pgina dos dolos de um usurio, em ordem de ID; ver {@link Pagina}.
+     *
+     * @param login Login do usurio.
+     * @param cursor Cursor da pgina anterior, ou {@code null} para a primeira pgina.
+     * @param limite Quantidade mxima de dolos da pgina.
+     * @return A pgina, com o cursor da seguinte.
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir.
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido.
+     */
+    public Pagina getIdolosPaginados(String login, String cursor, int limite) {
+        return paginar(login, Usuario.Paginavel.IDOLOS, cursor, limite);
+    }
+
+    /**
+     * Lista uma pgina das paqueras de um usurio, em ordem de ID; ver {@link Pagina}.
+     *
+     * @param login Login do usurio.
+     * @param cursor Cursor da pgina anterior, ou {@code null} para a primeira pgina.
+     * @param limite Quantidade mxima de paqueras da pgina.
+     * @return A pgina, com o cursor da seguinte.
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir.
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido.
+     */
+    public Pagina getPaquerasPaginadas(String login, String cursor, int limite) {
+        return paginar(login, Usuario.Paginavel.PAQUERAS, cursor, limite);
+    }
+
+    /**
+     * Lista uma pgina dos inimigos de um usurio, em ordem de ID; ver {@link Pagina}.
+     *
+     * @param login Login do usurio.
+     * @param cursor Cursor da pgina anterior, ou {@code null} para a primeira pgina.
+     * @param limite Quantidade mxima de inimigos da pgina.
+     * @return A pgina, com o cursor da seguinte.
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir.
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido.
+     */
+    public Pagina getInimigosPaginados(String login, String cursor, int limite) {
+        return paginar(login, Usuario.Paginavel.INIMIGOS, cursor, limite);
+    }
+
+    /**
+     * Lista uma pgina das comunidades de um usurio, na ordem dos IDs dos nomes (em geral, a de
+     * criao das comunidades); ver {@link Pagina}.
+     *
+     * @param login Login do usurio.
+     * @param cursor Cursor da pgina anterior, ou {@code null} para a primeira pgina.
+     * @param limite Quantidade mxima de comunidades da pgina.
+     * @return A pgina, com o cursor da seguinte.
+     * @throws UsuarioNaoCadastradoException Se o usurio no existir.
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido.
+     */
+    public Pagina getComunidadesPaginadas(String login, String cursor, int limite) {
+        return paginar(login, Usuario.Paginavel.COMUNIDADES, cursor, limite);
+    }
+
+    /**
+     * Lista uma pgina dos membros de uma comunidade, em ordem de ID, e no na ordem de entrada de
+     * {@link #getMembrosComunidade}; ver {@link Pagina}.
+     *
+     * @param nome Nome da comunidade.
+     * @param cursor Cursor da pgina anterior, ou {@code null} para a primeira pgina.
+     * @param limite Quantidade mxima de membros da pgina.
+     * @return A pgina, com o cursor da seguinte.
+     * @throws ComunidadeNaoExisteException Se a comunidade no existir.
+     * @throws IllegalArgumentException Se o limite no for positivo ou o cursor for invlido.
+     */
+    public Pagina getMembrosComunidadePaginados(String nome, String cursor, int limite) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveComunidade(nome))) {
+            if (!existeComunidade(nome)) {
+                throw new ComunidadeNaoExisteException();
+            }
+            MembrosDeComunidade membros = buscarComunidade(nome).membros();
+            return Pagina.ler(membros::copiarIdsDepoisDe, cursor, limite, lapides::containsKey, tabelaLogins);
+        }
+    }
+
+    /**
+     * L uma pgina de uma relao de um usurio, sob a trava dele, sem as contas em remoo (ou,
+     * nas comunidades, sem as comunidades removidas).
+     */
+    private Pagina paginar(String login, Usuario.Paginavel relacao, String cursor, int limite) {
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(login))) {
+            Usuario usuario = getUsuario(login);
+            Map<String, ?> ocultos = relacao == Usuario.Paginavel.COMUNIDADES ? comunidadesExcluidas : lapides;
+            return Pagina.ler((depoisDe, destino) -> usuario.copiarIdsDepoisDe(relacao, depoisDe, destino),
+                    cursor, limite, ocultos::containsKey, tabelaLogins);
         }
-        return formatarSet(usuario.getInimigos());
     }
     /**
      * Adiciona um inimigo  lista de inimigos do usurio, com base no ID da sesso.
@@ -638,69 +1890,383 @@ public class Sistema implements Serializable {
      * @throws BloqueioInimigoDeSiException Se o usurio tentar adicionar a si mesmo como inimigo.
      */
     public void adicionarInimigo(String idSessao, String inimigo) {
-        Sessao sessao = getSessao(idSessao);
-        Usuario usuario = sessao.getUsuario();
-        String inimigoNormalizado = inimigo.toLowerCase(); // Normaliza para minsculas
-
-        if (!usuarios.containsKey(inimigoNormalizado)) {
-            throw new UsuarioNaoCadastradoException();
-        }
-        if (usuario.getInimigos().contains(inimigoNormalizado)) {
-            throw new JaInimigoException();
+        String chaveInimigo = chaveUsuario(inimigo == null ? null : inimigo.toLowerCase());
+        try (TravasPorChave.Trava trava = travas.travar(chaveUsuario(loginDaSessao(idSessao)), chaveInimigo)) {
+            Sessao sessao = getSessao(idSessao);
+            Usuario usuario = sessao.getUsuario();
+            String inimigoNormalizado = inimigo.toLowerCase(); // Normaliza para minsculas
+
+            if (!existeUsuario(inimigoNormalizado)) {
+                throw new UsuarioNaoCadastradoException();
+            }
+            if (usuario.ehInimigo(inimigoNormalizado)) {
+                throw new JaInimigoException();
+            }
+            if (usuario.getLogin().equals(inimigoNormalizado)) {
+                throw new BloqueioInimigoDeSiException();
+            }
+            EventosJfr.MudancaRelacionamento evento = EventosJfr.MudancaRelacionamento.iniciar();
+            usuario.adicionarInimigo(inimigoNormalizado);
+            getUsuario(inimigoNormalizado).getInimigoDe().add(usuario.getLogin());
+            usuariosAlterados.add(usuario.getLogin());
+            usuariosAlterados.add(inimigoNormalizado);
+            evento.concluir("inimigo", usuario.getLogin(), inimigoNormalizado);
+            registrar(TipoOperacao.ADICIONAR_INIMIGO, idSessao, inimigo);
         }
-        if (usuario.getLogin().equals(inimigoNormalizado)) {
-            throw new BloqueioInimigoDeSiException();
+    }
+    /**
+     * Cria vrios usurios de uma vez. Equivale a chamar {@link #criarUsuario} para cada item, na
+     * ordem, mas o sistema  travado uma nica vez e a durabilidade do dirio  aguardada uma
+     * nica vez, ao fim do lote.
+     *
+     * <p>As operaes em lote travam o sistema por completo enquanto so aplicadas: lotes muito
+     * grandes devem ser divididos para no atrasar as demais operaes.</p>
+     *
+     * @param usuarios Itens no formato {@code {login, senha, nome}}.
+     * @return Resultado de cada item; um item invlido no impede os seguintes.
+     */
+    public ResultadoLote criarUsuarios(String[][] usuarios) {
+        return aplicarLote(usuarios, 3, item -> {
+            concluirExpurgo(item[0]);
+            incluirUsuario(item[0], item[1], item[2]);
+        });
+    }
+
+    /**
+     * Pede vrias amizades de uma vez, pelo login de quem pede, sem sesso aberta. Cada item
+     * equivale a {@link #adicionarAmigo} feito pela sesso do primeiro usurio: envia o convite ou,
+     * se o outro j tiver convidado, confirma a amizade. Por isso um par informado nos dois
+     * sentidos no mesmo lote termina em amizade.
+     *
+     * @param pares Itens no formato {@code {login, amigo}}.
+     * @return Resultado de cada item; um item invlido no impede os seguintes.
+     * @see #criarUsuarios(String[][])
+     */
+    public ResultadoLote adicionarAmigos(String[][] pares) {
+        return aplicarLote(pares, 2, item -> adicionarAmigoPorLogin(item[0], item[1]));
+    }
+
+    /**
+     * Adiciona vrios membros a comunidades de uma vez. Cada item equivale a
+     * {@link #adicionarMembroComunidade}.
+     *
+     * @param membros Itens no formato {@code {login, comunidade}}.
+     * @return Resultado de cada item; um item invlido no impede os seguintes.
+     * @see #criarUsuarios(String[][])
+     */
+    public ResultadoLote adicionarMembrosComunidades(String[][] membros) {
+        return aplicarLote(membros, 2, item -> incluirMembro(item[1], item[0]));
+    }
+
+    /**
+     * Aplica uma operao a cada item de um lote com o sistema travado por completo. As
+     * operaes so registradas no dirio uma a uma, mas a espera pelo {@code fsync} acontece s
+     * quando a trava  liberada, uma vez para o lote inteiro.
+     *
+     * @param itens Argumentos de cada item.
+     * @param argumentos Quantidade de argumentos de cada item.
+     * @param operacao Operao aplicada a cada item; lana a mesma exceo que a operao individual.
+     * @return Resultado de cada item.
+     */
+    private ResultadoLote aplicarLote(String[][] itens, int argumentos, Consumer<String[]> operacao) {
+        ResultadoLote resultado = new ResultadoLote(itens.length);
+        try (TravasPorChave.Trava trava = travas.travarTudo()) {
+            for (int i = 0; i < itens.length; i++) {
+                try {
+                    if (itens[i] == null || itens[i].length != argumentos) {
+                        throw new IllegalArgumentException("Item de lote invlido.");
+                    }
+                    operacao.accept(itens[i]);
+                } catch (RuntimeException e) {
+                    resultado.falhar(i, e);
+                }
+            }
         }
-        usuario.adicionarInimigo(inimigoNormalizado);
+        return resultado;
+    }
+
+    /**
+     * Pede uma amizade pelo login de quem pede. Chamado com o sistema travado por completo (em um
+     * lote) ou na reproduo do dirio.
+     */
+    private void adicionarAmigoPorLogin(String login, String amigo) {
+        convidarAmigo(getUsuario(login), amigo);
+        registrar(TipoOperacao.ADICIONAR_AMIGO_POR_LOGIN, login, amigo);
     }
+
     /**
-     * Remove completamente um usurio do sistema, incluindo relaes e comunidades.
+     * Remove um usurio do sistema. A conta deixa de existir na hora: o usurio sai do mapa de
+     * usurios, as comunidades que ele criou deixam de existir e as consultas passam a ignorar as
+     * referncias a ele que ainda restarem. As relaes, os recados que ele enviou e a
+     * participao nas comunidades so desfeitos depois, em lotes, pelo {@link ExpurgadorDeContas},
+     * a partir da {@link Lapide} da conta; assim a remoo no depende de quantos fs, amigos ou
+     * membros ela tem.
      *
      * @param idSessao ID da sesso do usurio a ser removido.
      * @throws UsuarioNaoCadastradoException Se a sesso for invlida.
      */
     public void removerUsuario(String idSessao) {
-        Sessao sessao = sessoes.get(idSessao);
-        if (sessao == null) {
-            throw new UsuarioNaoCadastradoException();
-        }
-        Usuario usuario = sessao.getUsuario();
-        String login = usuario.getLogin();
-
-        // Remover o usurio do mapa de usurios
-        usuarios.remove(login);
-
-        // Ajustar as comunidades
-        Iterator<Map.Entry<String, Comunidade>> iterator = comunidades.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Comunidade comunidade = iterator.next().getValue();
-            if (comunidade.getDono().equals(login)) {
-                // Remover a comunidade do conjunto de comunidades de todos os membros
-                for (String membro : comunidade.getMembros()) {
-                    Usuario membroUsuario = usuarios.get(membro);
-                    if (membroUsuario != null) {
-                        membroUsuario.getComunidades().remove(comunidade.getNome());
+        try (TravasPorChave.Trava trava = travas.travarTudo()) {
+            Sessao sessao = getSessao(idSessao);
+            Usuario usuario = sessao.getUsuario();
+            String login = usuario.getLogin();
+            concluirEntregas(); // Nenhuma entrega pendente pode alcanar uma conta recriada com o login
+
+            if (usuarios.remove(login) != null) {
+                // As comunidades que ele criou deixam de existir junto com a conta
+                Map<String, Comunidade> criadas = new LinkedHashMap<>();
+                for (String nomeComunidade : usuario.getComunidades()) {
+                    Comunidade comunidade = buscarComunidade(nomeComunidade);
+                    if (comunidade != null && comunidade.getDono().equals(login)) {
+                        comunidades.remove(nomeComunidade);
+                        criadas.put(nomeComunidade, comunidade);
+                        comunidadesExcluidas.put(nomeComunidade, login);
+                        comunidadesAlteradas.add(nomeComunidade);
+                        semelhantes.recalcular(nomeComunidade);
                     }
                 }
-                iterator.remove(); // Remove a comunidade do mapa
-            } else {
+                lapides.put(login, new Lapide(usuario, criadas));
+                lapidesAlteradas.add(login);
+                usuariosAlterados.add(login);
+                expurgador.agendar();
+            }
+
+            // Remover a sesso ativa
+            encerrarSessao(idSessao);
+            registrar(TipoOperacao.REMOVER_USUARIO, idSessao);
+        }
+    }
+
+    /**
+     * Executa um lote do expurgo em segundo plano: desfaz at {@code limite} relaes da primeira
+     * conta removida pendente. O sistema fica travado por completo s durante o lote.
+     *
+     * @param limite Quantidade mxima de relaes a desfazer.
+     * @return Relaes desfeitas, ou {@code -1} se no houver contas pendentes.
+     */
+    private int expurgarLote(int limite) {
+        try (TravasPorChave.Trava trava = travas.travarTudo()) {
+            Iterator<Lapide> pendentes = lapides.values().iterator();
+            return pendentes.hasNext() ? expurgar(pendentes.next(), limite) : -1;
+        }
+    }
+
+    /**
+     * Conclui na hora o expurgo de uma conta removida antes de o seu login, ou o nome de uma
+     * comunidade criada por ela, ser usado de novo; caso contrrio, o novo objeto herdaria as
+     * relaes que ainda apontam para o antigo.
+     *
+     * @param login Login da conta removida (pode ser nulo).
+     */
+    private void concluirExpurgo(String login) {
+        if (login == null || !lapides.containsKey(login)) {
+            return;
+        }
+        try (TravasPorChave.Trava trava = travas.travarTudo()) {
+            Lapide lapide = lapides.get(login);
+            if (lapide != null) {
+                expurgar(lapide, Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Desfaz at {@code limite} relaes de uma conta removida, retirando-as da lpide  medida
+     * que avana, e descarta a lpide quando no restar nenhuma. Chamado com o sistema travado
+     * por completo.
+     *
+     * @param lapide Lpide da conta.
+     * @param limite Quantidade mxima de relaes a desfazer.
+     * @return Quantidade de relaes desfeitas.
+     */
+    private int expurgar(Lapide lapide, int limite) {
+        String login = lapide.getLogin();
+        Usuario removido = lapide.getUsuario();
+        int desfeitas = 0;
+
+        // Remover o usurio dos relacionamentos de quem aponta para ele, lado a lado
+        for (Lapide.Relacao relacao : Lapide.Relacao.values()) {
+            Iterator<String> outros = removido.relacao(relacao).iterator();
+            while (desfeitas < limite && outros.hasNext()) {
+                String outro = outros.next();
+                outros.remove();
+                alterarUsuario(outro, outroUsuario -> relacao.desfazer(outroUsuario, login));
+                desfeitas++;
+            }
+        }
+
+        // Quem enviou recados a ele deixa de t-lo entre os destinatrios
+        Queue<Recado> recados = removido.getRecados();
+        while (desfeitas < limite && !recados.isEmpty()) {
+            alterarUsuario(recados.poll().getRemetente(), outro -> outro.getDestinatariosRecados().remove(login));
+            desfeitas++;
+        }
+
+        Iterator<String> nomes = removido.getComunidades().iterator();
+        while (desfeitas < limite && nomes.hasNext()) {
+            String nomeComunidade = nomes.next();
+            Comunidade criada = lapide.getComunidades().get(nomeComunidade);
+            if (criada == null) {
                 // Se o usurio for apenas membro, remov-lo da comunidade
-                comunidade.removerMembro(login);
+                Comunidade comunidade = buscarComunidade(nomeComunidade);
+                if (comunidade != null) {
+                    comunidade.removerMembro(login);
+                    comunidadesAlteradas.add(nomeComunidade);
+                    semelhantes.recalcular(nomeComunidade);
+                }
+                nomes.remove();
+                desfeitas++;
+                continue;
+            }
+            // Remover a comunidade criada por ele do conjunto de comunidades de todos os membros
+            Iterator<String> membros = criada.membros().iterator();
+            while (desfeitas < limite && membros.hasNext()) {
+                String membro = membros.next();
+                membros.remove();
+                if (!membro.equals(login)) {
+                    alterarUsuario(membro, membroUsuario -> membroUsuario.sairDaComunidade(criada));
+                }
+                desfeitas++;
+            }
+            if (criada.membros().isEmpty()) {
+                lapide.getComunidades().remove(nomeComunidade);
+                comunidadesExcluidas.remove(nomeComunidade);
+                nomes.remove();
             }
         }
 
-        // Remover o usurio dos relacionamentos de outros usurios e limpar recados
-        for (Usuario outroUsuario : usuarios.values()) {
-            outroUsuario.removerAmigo(login);
-            outroUsuario.removerIdolo(login);
-            outroUsuario.removerFa(login);
-            outroUsuario.removerPaquera(login);
-            outroUsuario.removerInimigo(login);
-            outroUsuario.getRecados().clear(); // Limpa os recados
+        lapidesAlteradas.add(login);
+        if (lapide.isConcluida()) {
+            lapides.remove(login);
         }
+        return desfeitas;
+    }
 
-        // Remover a sesso ativa
-        sessoes.remove(idSessao);
+    /**
+     * Retira de um conjunto de logins as contas removidas cujo expurgo ainda no chegou a ele,
+     * para que as consultas as tratem como inexistentes.
+     *
+     * @param logins Conjunto de logins.
+     * @return O prprio conjunto, se no houver contas em expurgo, ou uma cpia filtrada.
+     */
+    private Set<String> visiveis(Set<String> logins) {
+        return filtrar(logins, lapides.keySet());
+    }
+
+    /**
+     * Retira de um conjunto de nomes as comunidades removidas junto com a conta do dono.
+     *
+     * @param nomes Conjunto de nomes de comunidades.
+     * @return O prprio conjunto, se no houver comunidades em expurgo, ou uma cpia filtrada.
+     */
+    private Set<String> comunidadesVisiveis(Set<String> nomes) {
+        return filtrar(nomes, comunidadesExcluidas.keySet());
+    }
+
+    private static Set<String> filtrar(Set<String> conjunto, Set<String> excluidos) {
+        if (excluidos.isEmpty()) {
+            return conjunto;
+        }
+        Set<String> filtrado = new LinkedHashSet<>();
+        for (String elemento : conjunto) {
+            if (!excluidos.contains(elemento)) {
+                filtrado.add(elemento);
+            }
+        }
+        return filtrado;
+    }
+
+    /**
+     * @return Quantidade de contas removidas cujo expurgo ainda no terminou.
+     */
+    public int getContasEmExpurgo() {
+        return lapides.size();
+    }
+
+    /**
+     * @return Quantidade de relaes das contas removidas que ainda faltam desfazer.
+     */
+    public long getRelacoesPendentesExpurgo() {
+        try (TravasPorChave.Trava trava = travas.travar()) {
+            long pendentes = 0;
+            for (Lapide lapide : lapides.values()) {
+                pendentes += lapide.getRelacoesPendentes();
+            }
+            return pendentes;
+        }
+    }
+
+    /**
+     * @return Expurgador das contas removidas, com os contadores de progresso.
+     */
+    public ExpurgadorDeContas getExpurgador() {
+        return expurgador;
+    }
+
+    /**
+     * @return Entregador das mensagens de comunidades, com os contadores de entrega, ou
+     *         {@code null} se as mensagens forem lidas dos registros das comunidades.
+     */
+    public EntregadorDeMensagens<MensagemComunidade> getEntregador() {
+        return entregador;
+    }
+
+    /**
+     * @return Tabela das comunidades semelhantes, com os contadores da thread de fundo.
+     */
+    public ComunidadesSemelhantes getComunidadesSemelhantes() {
+        return semelhantes;
+    }
+
+    /**
+     * @return Quantidade de sesses abertas (inclui as vencidas que ainda no foram encerradas).
+     */
+    public int getSessoesAtivas() {
+        return sessoes.size();
+    }
+
+    /**
+     * @return Expirador das sesses, com a contagem de sesses expiradas.
+     */
+    public ExpiradorDeSessoes getExpiradorSessoes() {
+        return expiradorSessoes;
+    }
+
+    /**
+     * Aplica uma alterao a um usurio, se ele existir, e marca-o como alterado.
+     *
+     * @param login Login do usurio.
+     * @param alteracao Alterao a aplicar.
+     */
+    private void alterarUsuario(String login, Consumer<Usuario> alteracao) {
+        Usuario usuario = buscarUsuario(login);
+        if (usuario != null) {
+            alteracao.accept(usuario);
+            usuariosAlterados.add(login);
+        }
+    }
+
+    /**
+     * Reconstri os ndices reversos de todos os usurios a partir das relaes gravadas de um
+     * lado s (paqueras, inimigos e recados). Usado ao carregar dados de verses que no os
+     * gravavam; recados antigos, sem remetente registrado, ficam fora do ndice.
+     */
+    private void reconstruirIndicesReversos() {
+        for (Usuario usuario : usuarios.values()) {
+            usuario.limparIndicesReversos();
+        }
+        for (Usuario usuario : usuarios.values()) {
+            String login = usuario.getLogin();
+            for (String paquera : usuario.getPaqueras()) {
+                alterarUsuario(paquera, outro -> outro.getPaqueradoPor().add(login));
+            }
+            for (String inimigo : usuario.getInimigos()) {
+                alterarUsuario(inimigo, outro -> outro.getInimigoDe().add(login));
+            }
+            for (Recado recado : usuario.getRecados()) {
+                alterarUsuario(recado.getRemetente(), outro -> outro.registrarRecadoEnviado(login));
+            }
+        }
     }
 
     /**
@@ -711,7 +2277,7 @@ public class Sistema implements Serializable {
      * @throws ComunidadeNaoExisteException Se a comunidade com o nome fornecido no existir.
      */
     public String getDonoComunidade(String nome) {
-        if (!comunidades.containsKey(nome)) {
+        if (!existeComunidade(nome)) {
             throw new ComunidadeNaoExisteException();
         }
         return getComunidade(nome).getDono();
@@ -0,0 +1,253 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Calcula sugestes de amizade ("pessoas que voc talvez conhea"): os amigos dos amigos de um
+ * usurio, ordenados pela quantidade de amigos em comum com ele.
+ *
+ * <p>A contagem usa tabelas de espalhamento de {@code int} para {@code int}, com os IDs da
+ * {@link TabelaDeLogins} como chave, em vez de mapas de objetos: cada amigo de amigo custa um
+ * incremento, e as tabelas crescem com os IDs tocados, de modo que uma consulta custa, em tempo e
+ * em memria, O(soma dos graus dos amigos), e no O(usurios). Cada parte da consulta escolhe os
+ * melhores candidatos em um heap limitado  quantidade pedida, e os heaps so combinados no
+ * fim.</p>
+ *
+ * <p>Para usurios com muitos amigos (a partir de {@code jackut.sugestoes.limiar}, 256 por
+ * padro), os amigos so divididos em fatias percorridas em paralelo no pool comum de fork/join.
+ * Cada fatia conta em tabelas prprias, uma por parte dos IDs ({@code id % partes}); na seleo,
+ * cada parte soma as tabelas dela de todas as fatias, sem que duas threads escrevam na mesma
+ * tabela.</p>
+ */
+public final class SugestoesDeAmigos {
+    private static final int LIMIAR = Integer.getInteger("jackut.sugestoes.limiar", 256);
+    /** Menor quantidade de amigos de cada fatia, para que a diviso compense. */
+    private static final int AMIGOS_POR_FATIA = 64;
+    /** Melhor candidato primeiro: mais amigos em comum e, no empate, menor login. */
+    private static final Comparator<Candidato> MELHOR_PRIMEIRO = Comparator
+            .comparingInt((Candidato candidato) -> -candidato.emComum)
+            .thenComparing(Candidato::login);
+
+    private SugestoesDeAmigos() {
+    }
+
+    /**
+     * Percorre as amizades de outro usurio.
+     */
+    @FunctionalInterface
+    public interface Adjacencia {
+        /**
+         * Entrega os IDs dos amigos de um usurio.
+         *
+         * @param id ID do usurio.
+         * @param acao Recebe o ID de cada amigo.
+         */
+        void paraCadaAmigo(int id, IntConsumer acao);
+    }
+
+    /**
+     * Sugere amigos para um usurio.
+     *
+     * @param amigos IDs dos amigos do usurio.
+     * @param sugerivel Diz se um ID pode ser sugerido (no deve aceitar o prprio usurio nem os
+     *                  amigos dele).
+     * @param adjacencia Fornece os amigos de cada amigo; pode ser chamada de vrias threads.
+     * @param quantidade Quantidade mxima de sugestes.
+     * @param tabelaLogins Tabela que d os logins dos IDs.
+     * @return Logins sugeridos, do que tem mais amigos em comum para o que tem menos; no empate, em
+     *         ordem alfabtica.
+     */
+    public static List<String> sugerir(int[] amigos, IntPredicate sugerivel, Adjacencia adjacencia, int quantidade,
+                                       TabelaDeLogins tabelaLogins) {
+        if (amigos.length == 0 || quantidade <= 0) {
+            return new ArrayList<>();
+        }
+        Fatia[] fatias = dividir(amigos);
+        executar(fatias, fatia -> fatia.contar(amigos, adjacencia, fatias.length));
+        // A fatia de ndice i seleciona entre os IDs da parte i, tocados por qualquer fatia
+        for (int i = 0; i < fatias.length; i++) {
+            fatias[i].parte = i;
+        }
+        executar(fatias, fatia -> fatia.selecionar(fatias, sugerivel, quantidade, tabelaLogins));
+
+        PriorityQueue<Candidato> melhores = new PriorityQueue<>(MELHOR_PRIMEIRO.reversed());
+        for (Fatia fatia : fatias) {
+            for (Candidato candidato : fatia.melhores) {
+                manter(melhores, candidato, quantidade);
+            }
+        }
+        Candidato[] ordenados = melhores.toArray(new Candidato[0]);
+        Arrays.sort(ordenados, MELHOR_PRIMEIRO);
+        List<String> sugestoes = new ArrayList<>(ordenados.length);
+        for (Candidato candidato : ordenados) {
+            sugestoes.add(candidato.login);
+        }
+        return sugestoes;
+    }
+
+    /** Divide os amigos em fatias, uma s se eles no passarem do limiar. */
+    private static Fatia[] dividir(int[] amigos) {
+        int partes = 1;
+        if (amigos.length >= LIMIAR) {
+            int paralelismo = ForkJoinPool.getCommonPoolParallelism();
+            partes = Math.max(1, Math.min(paralelismo * 4, amigos.length / AMIGOS_POR_FATIA));
+        }
+        Fatia[] fatias = new Fatia[partes];
+        for (int i = 0; i < partes; i++) {
+            fatias[i] = new Fatia((int) ((long) amigos.length * i / partes),
+                    (int) ((long) amigos.length * (i + 1) / partes));
+        }
+        return fatias;
+    }
+
+    /** Executa uma fase em todas as fatias, em paralelo se houver mais de uma. */
+    private static void executar(Fatia[] fatias, Consumer<Fatia> fase) {
+        if (fatias.length == 1) {
+            fase.accept(fatias[0]);
+            return;
+        }
+        List<ForkJoinTask<?>> tarefas = new ArrayList<>(fatias.length);
+        for (Fatia fatia : fatias) {
+            tarefas.add(ForkJoinTask.adapt(() -> fase.accept(fatia)));
+        }
+        ForkJoinTask.invokeAll(tarefas);
+    }
+
+    /** Inclui um candidato em um heap com o pior na raiz, mantendo s os {@code limite} melhores. */
+    private static void manter(PriorityQueue<Candidato> heap, Candidato candidato, int limite) {
+        if (heap.size() < limite) {
+            heap.add(candidato);
+        } else if (MELHOR_PRIMEIRO.compare(candidato, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(candidato);
+        }
+    }
+
+    /** Candidato com o login j resolvido, usado no desempate. */
+    private record Candidato(int id, int emComum, String login) {
+    }
+
+    /** Parte dos amigos do usurio, com as contagens dos IDs que ela tocou e os melhores candidatos. */
+    private static final class Fatia {
+        private final int inicio;
+        private final int fim;
+        /** Contagens desta fatia, uma tabela por parte dos IDs. */
+        private Contagem[] contagens;
+        /** Parte dos IDs que esta fatia seleciona. */
+        private int parte;
+        private final PriorityQueue<Candidato> melhores = new PriorityQueue<>(MELHOR_PRIMEIRO.reversed());
+
+        Fatia(int inicio, int fim) {
+            this.inicio = inicio;
+            this.fim = fim;
+        }
+
+        void contar(int[] amigos, Adjacencia adjacencia, int partes) {
+            contagens = new Contagem[partes];
+            for (int i = 0; i < partes; i++) {
+                contagens[i] = new Contagem();
+            }
+            IntConsumer acao = partes == 1 ? contagens[0]::incrementar : id -> contagens[id % partes].incrementar(id);
+            for (int i = inicio; i < fim; i++) {
+                adjacencia.paraCadaAmigo(amigos[i], acao);
+            }
+        }
+
+        void selecionar(Fatia[] fatias, IntPredicate sugerivel, int quantidade, TabelaDeLogins tabelaLogins) {
+            // Soma na maior tabela da parte, para crescer o mnimo possvel
+            Contagem soma = fatias[0].contagens[parte];
+            for (Fatia fatia : fatias) {
+                if (fatia.contagens[parte].quantidade > soma.quantidade) {
+                    soma = fatia.contagens[parte];
+                }
+            }
+            for (Fatia fatia : fatias) {
+                if (fatia.contagens[parte] != soma) {
+                    fatia.contagens[parte].somarEm(soma);
+                }
+            }
+            int[] ids = soma.ids;
+            int[] valores = soma.valores;
+            for (int i = 0; i < ids.length; i++) {
+                int id = ids[i];
+                if (id == 0) {
+                    continue;
+                }
+                int emComum = valores[i];
+                boolean cheio = melhores.size() == quantidade;
+                if ((!cheio || emComum >= melhores.peek().emComum) && sugerivel.test(id)) {
+                    manter(melhores, new Candidato(id, emComum, tabelaLogins.login(id)), quantidade);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tabela de espalhamento aberta de IDs para contagens, usada por uma thread de cada vez. O ID 0
+     * (nunca atribudo pela {@link TabelaDeLogins}) marca as posies vazias.
+     */
+    private static final class Contagem {
+        /** Constante de Fibonacci de 32 bits, que espalha IDs consecutivos pela tabela. */
+        private static final int ESPALHAMENTO = 0x9E3779B9;
+
+        private int[] ids = new int[16];
+        private int[] valores = new int[16];
+        private int quantidade;
+        /** 32 menos o logaritmo da capacidade: os bits altos do espalhamento do a posio. */
+        private int deslocamento = 28;
+
+        void incrementar(int id) {
+            somar(id, 1);
+        }
+
+        void somar(int id, int valor) {
+            int mascara = ids.length - 1;
+            int posicao = (id * ESPALHAMENTO) >>> deslocamento;
+            while (ids[posicao] != 0) {
+                if (ids[posicao] == id) {
+                    valores[posicao] += valor;
+                    return;
+                }
+                posicao = (posicao + 1) & mascara;
+            }
+            ids[posicao] = id;
+            valores[posicao] = valor;
+            // Cresce ao passar de metade da capacidade, para manter as sondagens curtas
+            if (++quantidade > ids.length >> 1) {
+                crescer();
+            }
+        }
+
+        /** Soma as contagens desta tabela nas de outra. */
+        void somarEm(Contagem destino) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != 0) {
+                    destino.somar(ids[i], valores[i]);
+                }
+            }
+        }
+
+        private void crescer() {
+            int[] antigosIds = ids;
+            int[] antigosValores = valores;
+            ids = new int[antigosIds.length * 2];
+            valores = new int[antigosIds.length * 2];
+            deslocamento--;
+            quantidade = 0;
+            for (int i = 0; i < antigosIds.length; i++) {
+                if (antigosIds[i] != 0) {
+                    somar(antigosIds[i], antigosValores[i]);
+                }
+            }
+        }
+    }
+}
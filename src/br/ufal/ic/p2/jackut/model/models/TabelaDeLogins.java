@@ -0,0 +1,172 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Associa cada login a um ID inteiro denso, atribudo na primeira vez em que o login aparece (em
+ * geral, ao criar o usurio). As relaes entre usurios guardam esses IDs em vez de referncias
+ * aos textos, e os logins s so recuperados ao listar as relaes. Os nomes das comunidades tambm
+ * recebem IDs desta tabela, usados para listar as comunidades de um usurio em pginas.
+ *
+ * <p>Cada {@link Sistema} tem a sua tabela, e os conjuntos que guardam IDs recebem a tabela do
+ * sistema a que pertencem. Durante a execuo a tabela s cresce: um ID nunca  reusado, nem
+ * depois da remoo da conta, para que uma relao antiga nunca passe a apontar para outro login.
+ * {@code zerarSistema} e a importao de dados comeam uma tabela nova.</p>
+ *
+ * <p>Os snapshots e os checkpoints gravam o ID de cada usurio, comunidade e lpide que contm, e
+ * a carga devolve a eles os mesmos IDs (ver {@link #restaurar(String, int)}), de modo que a ordem
+ * das listagens paginadas e os cursores continuam valendo depois de reiniciar. Os logins que no
+ * esto mais no sistema no so gravados: depois de uma carga, a tabela tem s os do estado
+ * carregado, mais os que aparecerem a partir de ento, e os IDs deles ficam vagos at o prximo
+ * {@code zerarSistema}.</p>
+ *
+ * <p>Buscar o ID de um login consulta um mapa concorrente; buscar o login de um ID  ler um array,
+ * sem trava nenhuma.</p>
+ */
+public final class TabelaDeLogins {
+    private static final int BITS_BLOCO = 16;
+    private static final int TAMANHO_BLOCO = 1 << BITS_BLOCO;
+    /** Blocos suficientes para todos os IDs positivos. */
+    private static final int MAXIMO_BLOCOS = 1 << (31 - BITS_BLOCO);
+
+    /** Tabela dos objetos lidos com serializao Java na thread atual; ver {@link #usarNaDesserializacao}. */
+    private static final ThreadLocal<TabelaDeLogins> DESSERIALIZACAO = new ThreadLocal<>();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    /** Logins por ID, em blocos criados quando o primeiro ID do bloco  atribudo. */
+    private final AtomicReferenceArray<String[]> blocos = new AtomicReferenceArray<>(MAXIMO_BLOCOS);
+    /** Prximo ID a atribuir; o 0 fica reservado para indicar ausncia. */
+    private final AtomicInteger proximo = new AtomicInteger(1);
+
+    /**
+     * Retorna o ID de um login, atribuindo um novo se for a primeira vez que ele aparece.
+     *
+     * @param login Login (no nulo).
+     * @return ID do login, maior que zero.
+     * @throws IllegalStateException Se todos os IDs j tiverem sido atribudos.
+     */
+    public int id(String login) {
+        Integer id = ids.get(login);
+        if (id == null) {
+            id = ids.computeIfAbsent(login, this::atribuir);
+        }
+        return id;
+    }
+
+    /**
+     * Retorna o ID de um login sem atribuir um novo.
+     *
+     * @param login Login.
+     * @return ID do login, ou 0 se ele nunca apareceu.
+     */
+    public int buscar(String login) {
+        Integer id = ids.get(login);
+        return id == null ? 0 : id;
+    }
+
+    /**
+     * Retorna o login de um ID atribudo por {@link #id(String)} ou {@link #restaurar(String, int)}.
+     *
+     * @param id ID do login.
+     * @return O login.
+     */
+    public String login(int id) {
+        return blocos.get(id >>> BITS_BLOCO)[id & (TAMANHO_BLOCO - 1)];
+    }
+
+    /** @return Quantidade de logins com ID. */
+    public int getQuantidade() {
+        return ids.size();
+    }
+
+    /** @return O ID que o prximo login novo vai receber. */
+    public int getProximo() {
+        return proximo.get();
+    }
+
+    /**
+     * Devolve a um login o ID gravado em disco. Usado s na carga, antes de qualquer ID ser
+     * atribudo por {@link #id(String)}.
+     *
+     * @param login Login (ou nome de comunidade).
+     * @param id ID gravado, maior que zero e ainda no usado por outro login.
+     * @throws IllegalStateException Se o login ou o ID j estiverem na tabela com outro par.
+     */
+    public void restaurar(String login, int id) {
+        Integer anterior = ids.get(login);
+        String ocupante = id > 0 ? loginSeExistir(id) : null;
+        if (id <= 0 || anterior != null && anterior != id || ocupante != null && !ocupante.equals(login)) {
+            throw new IllegalStateException("ID " + id + " de " + login + " em conflito na tabela de logins.");
+        }
+        guardar(id, login);
+        ids.put(login, id);
+        proximo.accumulateAndGet(id + 1, Math::max);
+    }
+
+    /**
+     * Garante que os prximos IDs atribudos no sejam menores que um dado, para que no repitam
+     * IDs j usados por logins que no esto mais na tabela.
+     *
+     * @param minimo Menor ID que o prximo login novo pode receber.
+     */
+    public void reservarAte(int minimo) {
+        proximo.accumulateAndGet(minimo, Math::max);
+    }
+
+    /**
+     * Define a tabela usada pelos objetos lidos com serializao Java na thread atual, que no tm
+     * como receb-la de outra forma. S os {@code dados.ser} antigos so lidos assim.
+     *
+     * @param tabela Tabela a usar, ou {@code null} ao terminar a leitura.
+     */
+    public static void usarNaDesserializacao(TabelaDeLogins tabela) {
+        if (tabela == null) {
+            DESSERIALIZACAO.remove();
+        } else {
+            DESSERIALIZACAO.set(tabela);
+        }
+    }
+
+    /**
+     * @return A tabela definida por {@link #usarNaDesserializacao} para a thread atual.
+     * @throws IllegalStateException Se nenhuma tiver sido definida.
+     */
+    static TabelaDeLogins daDesserializacao() {
+        TabelaDeLogins tabela = DESSERIALIZACAO.get();
+        if (tabela == null) {
+            throw new IllegalStateException("Leitura com serializao Java sem tabela de logins.");
+        }
+        return tabela;
+    }
+
+    /**
+     * Atribui o prximo ID e guarda o login na posio dele antes de o ID ser publicado no mapa,
+     * de modo que quem obtm o ID sempre encontra o login.
+     */
+    private Integer atribuir(String login) {
+        int id = proximo.getAndIncrement();
+        if (id <= 0) {
+            proximo.set(0); // Passou de Integer.MAX_VALUE
+            throw new IllegalStateException("Limite de logins atingido.");
+        }
+        guardar(id, login);
+        return id;
+    }
+
+    private void guardar(int id, String login) {
+        String[] bloco = blocos.get(id >>> BITS_BLOCO);
+        if (bloco == null) {
+            blocos.compareAndSet(id >>> BITS_BLOCO, null, new String[TAMANHO_BLOCO]);
+            bloco = blocos.get(id >>> BITS_BLOCO);
+        }
+        bloco[id & (TAMANHO_BLOCO - 1)] = login;
+    }
+
+    /** @return O login de um ID, ou {@code null} se a posio dele estiver vaga. */
+    private String loginSeExistir(int id) {
+        String[] bloco = blocos.get(id >>> BITS_BLOCO);
+        return bloco == null ? null : bloco[id & (TAMANHO_BLOCO - 1)];
+    }
+}
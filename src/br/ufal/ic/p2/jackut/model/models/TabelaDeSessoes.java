@@ -0,0 +1,238 @@
+package br.ufal.ic.p2.jackut.model.models;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * ndice das sesses abertas por posio. O ID de cada sesso aberta pela tabela carrega a
+ * posio em que ela est guardada e um segredo aleatrio de 128 bits:
+ *
+ * <pre>pppppppp-ssssssssssssssssssssssssssssssss</pre>
+ *
+ * (posio e segredo em hexadecimal). Buscar uma sesso  ler a posio do ID, acessar o array e
+ * comparar o segredo em tempo constante, sem calcular hash do ID. Uma posio liberada  reusada
+ * com um segredo novo, de modo que IDs antigos dela deixam de valer.
+ *
+ * <p>Os segredos vm de um gerador por thread e as posies so reservadas com operaes
+ * atmicas; abrir, buscar e encerrar sesses no tomam trava nenhuma. A tabela no guarda as
+ * sesses para persistncia: ela  s um ndice na frente do mapa de sesses do {@link Sistema},
+ * que continua sendo consultado para IDs em outro formato (como os UUIDs de verses anteriores).</p>
+ */
+public class TabelaDeSessoes {
+    private static final int BITS_BLOCO = 12;
+    private static final int TAMANHO_BLOCO = 1 << BITS_BLOCO;
+    private static final int MAXIMO_BLOCOS = 1 << 12;
+    /** Comprimento de um ID gerado pela tabela: 8 dgitos, o separador e 32 dgitos. */
+    private static final int TAMANHO_ID = 41;
+
+    private static final ThreadLocal<SecureRandom> GERADORES = ThreadLocal.withInitial(TabelaDeSessoes::novoGerador);
+
+    /** Blocos de posies, criados quando a primeira posio do bloco  usada. */
+    private final AtomicReferenceArray<AtomicReferenceArray<Entrada>> blocos = new AtomicReferenceArray<>(MAXIMO_BLOCOS);
+    /** Primeira posio ainda nunca usada. */
+    private final AtomicInteger proximaPosicao = new AtomicInteger();
+    /** Posies liberadas, reusadas antes das novas. */
+    private final ConcurrentLinkedQueue<Integer> livres = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Abre uma sesso em uma posio livre, gerando o seu ID.
+     *
+     * @param fabrica Cria a sesso com o ID gerado.
+     * @return A sesso criada, j indexada. Se a tabela estiver cheia, a sesso recebe um UUID e no
+     *          indexada.
+     */
+    public Sessao abrir(Function<String, Sessao> fabrica) {
+        SecureRandom gerador = GERADORES.get();
+        while (true) {
+            Integer livre = livres.poll();
+            int posicao = livre != null ? livre : proximaPosicao.getAndIncrement();
+            if (posicao < 0 || posicao >= MAXIMO_BLOCOS * TAMANHO_BLOCO) {
+                proximaPosicao.set(MAXIMO_BLOCOS * TAMANHO_BLOCO);
+                return fabrica.apply(UUID.randomUUID().toString());
+            }
+            AtomicReferenceArray<Entrada> bloco = bloco(posicao);
+            int indice = posicao & (TAMANHO_BLOCO - 1);
+            if (bloco.get(indice) != null) {
+                continue; // Ocupada por uma sesso indexada depois de ser liberada
+            }
+            long alto = gerador.nextLong();
+            long baixo = gerador.nextLong();
+            Sessao sessao = fabrica.apply(formatar(posicao, alto, baixo));
+            if (bloco.compareAndSet(indice, null, new Entrada(sessao, alto, baixo))) {
+                return sessao;
+            }
+        }
+    }
+
+    /**
+     * Busca uma sesso pelo ID.
+     *
+     * @param id ID da sesso.
+     * @return A sesso, ou {@code null} se o ID no estiver no formato da tabela, no estiver
+     *         indexado ou no corresponder  sesso que ocupa a sua posio.
+     */
+    public Sessao buscar(String id) {
+        int posicao = posicao(id);
+        if (posicao < 0) {
+            return null;
+        }
+        AtomicReferenceArray<Entrada> bloco = blocos.get(posicao >>> BITS_BLOCO);
+        Entrada entrada = bloco == null ? null : bloco.get(posicao & (TAMANHO_BLOCO - 1));
+        if (entrada == null) {
+            return null;
+        }
+        long alto = hexadecimal(id, 9);
+        long baixo = hexadecimal(id, 25);
+        // Compara os dois segredos por inteiro, sem sair no primeiro que diferir
+        return ((entrada.alto ^ alto) | (entrada.baixo ^ baixo)) == 0 ? entrada.sessao : null;
+    }
+
+    /**
+     * Indexa uma sesso aberta fora da tabela (lida do disco ou do dirio) na posio indicada pelo
+     * seu ID, se ela estiver livre. Enquanto no for indexada, a sesso s  encontrada pelo mapa.
+     *
+     * @param sessao Sesso a indexar.
+     * @return {@code true} se a sesso foi indexada.
+     */
+    public boolean indexar(Sessao sessao) {
+        String id = sessao.getId();
+        int posicao = posicao(id);
+        if (posicao < 0) {
+            return false;
+        }
+        reservar(id);
+        Entrada entrada = new Entrada(sessao, hexadecimal(id, 9), hexadecimal(id, 25));
+        return bloco(posicao).compareAndSet(posicao & (TAMANHO_BLOCO - 1), null, entrada);
+    }
+
+    /**
+     * Garante que a posio de um ID gerado antes (por outra instncia da tabela) no seja
+     * entregue a sesses novas antes de ser liberada, para que o ID possa ser indexado depois.
+     *
+     * @param id ID de uma sesso existente.
+     */
+    public void reservar(String id) {
+        int posicao = posicao(id);
+        if (posicao >= 0) {
+            proximaPosicao.accumulateAndGet(posicao + 1, Math::max);
+        }
+    }
+
+    /**
+     * Retira uma sesso do ndice e libera a sua posio. IDs que no ocupam a posio indicada
+     * so ignorados.
+     *
+     * @param id ID da sesso.
+     */
+    public void remover(String id) {
+        int posicao = posicao(id);
+        if (posicao < 0) {
+            return;
+        }
+        AtomicReferenceArray<Entrada> bloco = blocos.get(posicao >>> BITS_BLOCO);
+        if (bloco == null) {
+            return;
+        }
+        int indice = posicao & (TAMANHO_BLOCO - 1);
+        Entrada entrada = bloco.get(indice);
+        if (entrada != null && entrada.sessao.getId().equals(id) && bloco.compareAndSet(indice, entrada, null)) {
+            livres.offer(posicao);
+        }
+    }
+
+    private AtomicReferenceArray<Entrada> bloco(int posicao) {
+        int numero = posicao >>> BITS_BLOCO;
+        AtomicReferenceArray<Entrada> bloco = blocos.get(numero);
+        if (bloco == null) {
+            blocos.compareAndSet(numero, null, new AtomicReferenceArray<>(TAMANHO_BLOCO));
+            bloco = blocos.get(numero);
+        }
+        return bloco;
+    }
+
+    /**
+     * @return A posio codificada no ID, ou {@code -1} se o ID no estiver no formato da tabela
+     *         ou a posio estiver fora dela. S aceita os dgitos em que a tabela escreve os IDs
+     *         ({@code 0-9} e {@code a-f}), para que cada sesso tenha um nico ID vlido: os mapas
+     *         e as remoes comparam o texto do ID, e uma grafia alternativa aceita aqui chegaria 
+     *         sesso sem passar por eles.
+     */
+    private static int posicao(String id) {
+        if (id == null || id.length() != TAMANHO_ID || id.charAt(8) != '-') {
+            return -1;
+        }
+        for (int i = 0; i < TAMANHO_ID; i++) {
+            if (i != 8 && digito(id.charAt(i)) < 0) {
+                return -1;
+            }
+        }
+        long posicao = hexadecimal(id, 0, 8);
+        return posicao < (long) MAXIMO_BLOCOS * TAMANHO_BLOCO ? (int) posicao : -1;
+    }
+
+    private static long hexadecimal(String id, int inicio) {
+        return hexadecimal(id, inicio, 16);
+    }
+
+    /** @return Valor dos dgitos hexadecimais (j validados por {@link #posicao(String)}). */
+    private static long hexadecimal(String texto, int inicio, int digitos) {
+        long valor = 0;
+        for (int i = inicio; i < inicio + digitos; i++) {
+            valor = (valor << 4) | digito(texto.charAt(i));
+        }
+        return valor;
+    }
+
+    /** @return Valor de um dgito hexadecimal minsculo, ou {@code -1} para qualquer outro caractere. */
+    private static int digito(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        return c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+    }
+
+    private static String formatar(int posicao, long alto, long baixo) {
+        char[] id = new char[TAMANHO_ID];
+        escrever(id, 0, posicao, 8);
+        id[8] = '-';
+        escrever(id, 9, alto, 16);
+        escrever(id, 25, baixo, 16);
+        return new String(id);
+    }
+
+    private static void escrever(char[] destino, int inicio, long valor, int digitos) {
+        for (int i = inicio + digitos - 1; i >= inicio; i--) {
+            destino[i] = Character.forDigit((int) (valor & 0xF), 16);
+            valor >>>= 4;
+        }
+    }
+
+    /**
+     * Cria o gerador de uma thread. O DRBG tem estado prprio por instncia, enquanto o gerador
+     * padro do sistema pode ser compartilhado entre as instncias.
+     */
+    private static SecureRandom novoGerador() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    private static final class Entrada {
+        private final Sessao sessao;
+        private final long alto;
+        private final long baixo;
+
+        private Entrada(Sessao sessao, long alto, long baixo) {
+            this.sessao = sessao;
+            this.alto = alto;
+            this.baixo = baixo;
+        }
+    }
+}
@@ -1,18 +1,35 @@
 package br.ufal.ic.p2.jackut.model.models;
 
 import br.ufal.ic.p2.jackut.model.exceptions.*;
+import br.ufal.ic.p2.jackut.model.persistencia.EscritorBinario;
+import br.ufal.ic.p2.jackut.model.persistencia.LeitorBinario;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 
 /**
  * Representa um usurio do sistema Jackut, armazenando informaes pessoais,
  * relacionamentos (amigos, dolos, paqueras, inimigos), comunidades e mensagens.
  * Gerencia operaes como edio de perfil, envio de recados, e interaes sociais.
+ *
+ * <p>As relaes com outros usurios so {@link ConjuntoDeLogins}, que guardam os IDs inteiros
+ * dos logins; os logins s so recuperados ao list-las.</p>
  */
 public class Usuario implements Serializable {
+    /** Mesmo valor calculado pela JVM para a classe original, para ler os {@code dados.ser} antigos */
+    private static final long serialVersionUID = -3211272096831238756L;
+
     /** Login nico do usurio (chave primria no sistema) */
     private String login;
 
+    /** ID do login na {@link TabelaDeLogins}, atribudo na criao */
+    private transient int id;
+    /** Tabela de logins do sistema a que o usurio pertence, que d os IDs das relaes */
+    private transient TabelaDeLogins tabelaLogins;
+
     /** Senha de autenticao do usurio */
     private String senha;
 
@@ -32,19 +49,61 @@ public class Usuario implements Serializable {
     private Set<String> convitesRecebidos;
 
     /** Fila de recados recebidos de outros usurios */
-    private Queue<String> recados;
-    /** Fila de mensagens recebidas de comunidades */
-    private Queue<String> mensagensComunidade = new LinkedList<>();
+    private Queue<Recado> recados;
+    /**
+     * Mensagens de comunidades entregues fora dos registros das comunidades (no envio, gravadas
+     * antes de eles existirem ou vindas de comunidades j removidas), em ordem de envio
+     */
+    private Queue<MensagemComunidade> mensagensComunidade = new CaixaDeEntrada<>();
+    /**
+     * Posio de leitura no registro de mensagens de cada comunidade de que o usurio participa,
+     * absoluta (ver {@link Comunidade#getPrimeiraPosicao()})
+     */
+    private Map<String, Integer> cursores = new HashMap<>();
     /** Usurios que este usurio admira (relao unidirecional) */
-    private Set<String> idolos = new HashSet<>();
+    private Set<String> idolos;
     /** Usurios que admiram este usurio */
-    private Set<String> fas = new HashSet<>();
+    private Set<String> fas;
     /** Paqueras adicionadas pelo usurio */
-    private Set<String> paqueras = new HashSet<>();
+    private Set<String> paqueras;
     /** Inimigos declarados pelo usurio */
-    private Set<String> inimigos = new HashSet<>();
+    private Set<String> inimigos;
     /** Comunidades das quais o usurio  membro */
     private Set<String> comunidades = new LinkedHashSet<>();
+
+    // ndices reversos: quem referencia este usurio nas relaes que s so gravadas de um lado.
+    // Permitem remover a conta tocando apenas nos registros que de fato apontam para ela.
+
+    /** Usurios que adicionaram este usurio como paquera */
+    private Set<String> paqueradoPor;
+    /** Usurios que declararam este usurio como inimigo */
+    private Set<String> inimigoDe;
+    /** Usurios para os quais este usurio enviou recados (inclui recados j lidos) */
+    private Set<String> destinatariosRecados;
+
+    /** Muda a cada alterao dos amigos, fs, paqueras, inimigos ou comunidades */
+    private transient int versao;
+    /** Listagens j formatadas, por {@link Listagem} */
+    private transient String[] listagens;
+    /** Verso em que cada listagem de {@link #listagens} foi formatada */
+    private transient int[] versoesListagens;
+
+    /** Relaes cuja listagem formatada o usurio guarda at que elas mudem. */
+    enum Listagem {
+        AMIGOS, FAS, PAQUERAS, INIMIGOS, COMUNIDADES
+    }
+
+    /**
+     * IDs das comunidades do usurio na {@link TabelaDeLogins}, em ordem crescente, para list-las
+     * em pginas; criado na primeira paginao e mantido por {@link #adicionarComunidade} e
+     * {@link #sairDaComunidade}.
+     */
+    private transient MapaDeBits idsComunidades;
+
+    /** Relaes que podem ser listadas em pginas, em ordem de ID. */
+    enum Paginavel {
+        AMIGOS, FAS, IDOLOS, PAQUERAS, INIMIGOS, COMUNIDADES
+    }
     // Construtor
     /**
      * Cria um novo usurio com dados bsicos e inicializa estruturas internas.
@@ -52,16 +111,169 @@ public class Usuario implements Serializable {
      * @param login Identificador nico (no pode ser nulo ou vazio)
      * @param senha Senha de autenticao (no pode ser nula ou vazia)
      * @param nome Nome pblico para exibio
+     * @param tabelaLogins Tabela de logins do sistema a que o usurio pertence
      */
-    public Usuario(String login, String senha, String nome) {
+    public Usuario(String login, String senha, String nome, TabelaDeLogins tabelaLogins) {
         this.login = login;
+        this.tabelaLogins = tabelaLogins;
+        this.id = tabelaLogins.id(login);
         this.senha = senha;
         this.nome = nome;
         this.perfil = new HashMap<>();
-        this.amigos = new LinkedHashSet<>();
-        this.convitesEnviados = new HashSet<>();
-        this.convitesRecebidos = new HashSet<>();
-        this.recados = new LinkedList<>();
+        this.amigos = new ConjuntoDeLogins(true, tabelaLogins);
+        this.convitesEnviados = new ConjuntoDeLogins(false, tabelaLogins);
+        this.convitesRecebidos = new ConjuntoDeLogins(false, tabelaLogins);
+        this.recados = new CaixaDeEntrada<>();
+        this.idolos = new ConjuntoDeLogins(false, tabelaLogins);
+        this.fas = new ConjuntoDeLogins(false, tabelaLogins);
+        this.paqueras = new ConjuntoDeLogins(false, tabelaLogins);
+        this.inimigos = new ConjuntoDeLogins(false, tabelaLogins);
+        this.paqueradoPor = new ConjuntoDeLogins(false, tabelaLogins);
+        this.inimigoDe = new ConjuntoDeLogins(false, tabelaLogins);
+        this.destinatariosRecados = new ConjuntoDeLogins(false, tabelaLogins);
+    }
+
+    // Formato binrio de snapshot
+
+    /**
+     * Grava os dados do usurio (exceto o login, gravado pelo snapshot como chave) no formato
+     * binrio de snapshot. A ordem dos campos faz parte do formato em disco.
+     *
+     * @param out Escritor de destino.
+     */
+    public void escrever(EscritorBinario out) {
+        out.escreverTexto(senha);
+        out.escreverTexto(nome);
+        out.escreverMapa(perfil);
+        out.escreverTextos(amigos);
+        out.escreverTextos(convitesEnviados);
+        out.escreverTextos(convitesRecebidos);
+        out.escreverTextos(idolos);
+        out.escreverTextos(fas);
+        out.escreverTextos(paqueras);
+        out.escreverTextos(inimigos);
+        out.escreverTextos(comunidades);
+        out.escreverVarint(recados.size());
+        for (Recado recado : recados) {
+            out.escreverTexto(recado.getRemetente());
+            out.escreverTexto(recado.getTexto());
+        }
+        out.escreverVarint(mensagensComunidade.size());
+        for (MensagemComunidade mensagem : mensagensComunidade) {
+            out.escreverLong(mensagem.getSequencia());
+            out.escreverTexto(mensagem.getTexto());
+        }
+        out.escreverTextos(paqueradoPor);
+        out.escreverTextos(inimigoDe);
+        out.escreverTextos(destinatariosRecados);
+        out.escreverVarint(cursores.size());
+        for (Map.Entry<String, Integer> cursor : cursores.entrySet()) {
+            out.escreverTexto(cursor.getKey());
+            out.escreverVarint(cursor.getValue());
+        }
+    }
+
+    /**
+     * L um usurio gravado por {@link #escrever(EscritorBinario)}.
+     *
+     * Registros de verses do formato anteriores  3 no tm o remetente dos recados nem os
+     * ndices reversos, que precisam ser reconstrudos depois da carga. Antes da 5, as mensagens
+     * de comunidades eram copiadas para cada membro e no havia posies de leitura.
+     *
+     * @param login Login do usurio (chave do registro no snapshot).
+     * @param in Leitor posicionado no incio dos dados do usurio.
+     * @param versao Verso do formato do snapshot.
+     * @param tabelaLogins Tabela de logins do sistema em que o usurio  carregado.
+     * @return O usurio reconstrudo.
+     */
+    public static Usuario ler(String login, LeitorBinario in, int versao, TabelaDeLogins tabelaLogins) {
+        Usuario usuario = new Usuario(login, in.lerTexto(), in.lerTexto(), tabelaLogins);
+        in.lerMapa(usuario.perfil);
+        in.lerTextos(usuario.amigos);
+        in.lerTextos(usuario.convitesEnviados);
+        in.lerTextos(usuario.convitesRecebidos);
+        in.lerTextos(usuario.idolos);
+        in.lerTextos(usuario.fas);
+        in.lerTextos(usuario.paqueras);
+        in.lerTextos(usuario.inimigos);
+        in.lerTextos(usuario.comunidades);
+        if (versao < 3) {
+            for (String texto : in.lerTextos(new ArrayList<>())) {
+                usuario.recados.add(new Recado("", texto));
+            }
+            lerMensagensAntigas(usuario, in);
+            return usuario;
+        }
+        int quantidadeRecados = in.lerVarint();
+        for (int i = 0; i < quantidadeRecados; i++) {
+            usuario.recados.add(new Recado(in.lerTexto(), in.lerTexto()));
+        }
+        if (versao < 5) {
+            lerMensagensAntigas(usuario, in);
+        } else {
+            int quantidadeMensagens = in.lerVarint();
+            for (int i = 0; i < quantidadeMensagens; i++) {
+                usuario.mensagensComunidade.add(new MensagemComunidade(in.lerLong(), in.lerTexto()));
+            }
+        }
+        in.lerTextos(usuario.paqueradoPor);
+        in.lerTextos(usuario.inimigoDe);
+        in.lerTextos(usuario.destinatariosRecados);
+        if (versao >= 5) {
+            int quantidadeCursores = in.lerVarint();
+            for (int i = 0; i < quantidadeCursores; i++) {
+                usuario.cursores.put(in.lerTexto(), in.lerVarint());
+            }
+        }
+        return usuario;
+    }
+
+    /**
+     * L as mensagens de comunidades copiadas para o usurio em verses antigas; como so
+     * anteriores a qualquer registro de comunidade, recebem a sequncia 0.
+     */
+    private static void lerMensagensAntigas(Usuario usuario, LeitorBinario in) {
+        for (String texto : in.lerTextos(new ArrayList<>())) {
+            usuario.mensagensComunidade.add(new MensagemComunidade(0, texto));
+        }
+    }
+
+    /**
+     * Completa um usurio lido de um {@code dados.ser} antigo: os recados eram guardados s como
+     * texto, os ndices reversos e as posies de leitura das comunidades ainda no existiam e as
+     * relaes eram conjuntos de logins comuns.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        tabelaLogins = TabelaDeLogins.daDesserializacao();
+        id = tabelaLogins.id(login);
+        amigos = new ConjuntoDeLogins(true, amigos, tabelaLogins);
+        convitesEnviados = new ConjuntoDeLogins(false, convitesEnviados, tabelaLogins);
+        convitesRecebidos = new ConjuntoDeLogins(false, convitesRecebidos, tabelaLogins);
+        idolos = new ConjuntoDeLogins(false, idolos, tabelaLogins);
+        fas = new ConjuntoDeLogins(false, fas, tabelaLogins);
+        paqueras = new ConjuntoDeLogins(false, paqueras, tabelaLogins);
+        inimigos = new ConjuntoDeLogins(false, inimigos, tabelaLogins);
+        Queue<Recado> convertidos = new CaixaDeEntrada<>();
+        for (Object recado : (Queue<?>) recados) {
+            convertidos.add(recado instanceof Recado ? (Recado) recado : new Recado("", String.valueOf(recado)));
+        }
+        recados = convertidos;
+        Queue<MensagemComunidade> mensagens = new CaixaDeEntrada<>();
+        for (Object mensagem : (Queue<?>) mensagensComunidade) {
+            mensagens.add(mensagem instanceof MensagemComunidade
+                    ? (MensagemComunidade) mensagem : new MensagemComunidade(0, String.valueOf(mensagem)));
+        }
+        mensagensComunidade = mensagens;
+        if (cursores == null) {
+            cursores = new HashMap<>();
+        }
+        paqueradoPor = paqueradoPor == null ? new ConjuntoDeLogins(false, tabelaLogins)
+                : new ConjuntoDeLogins(false, paqueradoPor, tabelaLogins);
+        inimigoDe = inimigoDe == null ? new ConjuntoDeLogins(false, tabelaLogins)
+                : new ConjuntoDeLogins(false, inimigoDe, tabelaLogins);
+        destinatariosRecados = destinatariosRecados == null ? new ConjuntoDeLogins(false, tabelaLogins)
+                : new ConjuntoDeLogins(false, destinatariosRecados, tabelaLogins);
     }
 
     // Getters bsicos
@@ -71,6 +283,12 @@ public class Usuario implements Serializable {
      */
     public String getLogin() { return login; }
 
+    /**
+     * Retorna o ID do login na {@link TabelaDeLogins}.
+     * @return ID do usurio, mantido pelos snapshots de uma execuo para outra
+     */
+    public int getId() { return id; }
+
     /**
      * Retorna a senha do usurio.
      * @return Senha do usurio
@@ -120,6 +338,19 @@ public class Usuario implements Serializable {
         convitesRecebidos.remove(amigo);
         amigos.add(amigo);
         convitesEnviados.remove(amigo);
+        versao++;
+    }
+
+    /**
+     * Torna dois usurios amigos sem passar por convite, descartando convites pendentes entre
+     * eles (usado na importao de dados, em que o pedido dos dois lados j  conhecido).
+     * @param amigo Login do usurio que ser adicionado como amigo
+     */
+    public void adicionarAmigo(String amigo) {
+        convitesEnviados.remove(amigo);
+        convitesRecebidos.remove(amigo);
+        amigos.add(amigo);
+        versao++;
     }
 
     /**
@@ -179,10 +410,27 @@ public class Usuario implements Serializable {
 
     /**
      * Adiciona um novo recado  fila do usurio.
+     * @param remetente Login de quem enviou o recado
      * @param mensagem Contedo do recado
      */
-    public void receberRecado(String mensagem) {
-        recados.add(mensagem);
+    public void receberRecado(String remetente, String mensagem) {
+        recados.add(new Recado(remetente, mensagem));
+    }
+
+    /**
+     * Apaga da fila todos os recados enviados por um usurio.
+     * @param remetente Login do remetente
+     */
+    public void removerRecadosDe(String remetente) {
+        recados.removeIf(recado -> recado.getRemetente().equals(remetente));
+    }
+
+    /**
+     * Registra que este usurio enviou um recado a outro (ndice reverso dos recados).
+     * @param destinatario Login do destinatrio
+     */
+    public void registrarRecadoEnviado(String destinatario) {
+        destinatariosRecados.add(destinatario);
     }
 
     /**
@@ -194,19 +442,61 @@ public class Usuario implements Serializable {
         if (recados.isEmpty()) {
             throw new IllegalStateException("No h recados.");
         }
-        return recados.poll();  // Retorna e remove o recado da fila
+        return recados.poll().getTexto();  // Retorna e remove o recado da fila
     }
     /**
-     * L e remove uma mensagem da fila de mensagens da comunidade.
-     *
-     * @return A mensagem removida da fila de mensagens da comunidade.
-     * @throws IllegalStateException Se no houver mensagens na fila.
+     * Adiciona  fila uma mensagem de comunidade entregue no envio. As mensagens chegam a cada
+     * usurio na ordem de envio.
+     * @param mensagem Mensagem entregue
      */
-    public String lerMensagem() {
-        if (mensagensComunidade.isEmpty()) { // Nova fila para mensagens de comunidades
+    public void receberMensagemComunidade(MensagemComunidade mensagem) {
+        mensagensComunidade.add(mensagem);
+    }
+
+    /**
+     * L a prxima mensagem de comunidade, na ordem global de envio: entre a fila de mensagens j
+     * entregues e a prxima mensagem no lida de cada comunidade do usurio, fica a de menor
+     * sequncia, e a posio de leitura correspondente avana.
+     *
+     * @param registros Busca a comunidade (com o registro de mensagens) pelo nome; pode devolver
+     *                  {@code null} para comunidades que no existem mais.
+     * @return A mensagem lida.
+     * @throws IllegalStateException Se no houver mensagens.
+     */
+    public String lerMensagem(Function<String, Comunidade> registros) {
+        MensagemComunidade proxima = mensagensComunidade.peek();
+        String origem = null;
+        for (String nomeComunidade : comunidades) {
+            Comunidade comunidade = registros.apply(nomeComunidade);
+            int cursor = cursores.getOrDefault(nomeComunidade, 0);
+            if (comunidade == null || cursor >= comunidade.getQuantidadeMensagens()) {
+                continue;
+            }
+            MensagemComunidade candidata = comunidade.getMensagem(cursor);
+            if (proxima == null || candidata.getSequencia() < proxima.getSequencia()) {
+                proxima = candidata;
+                origem = nomeComunidade;
+            }
+        }
+        if (proxima == null) {
             throw new IllegalStateException("No h mensagens.");
         }
-        return mensagensComunidade.poll();
+        if (origem == null) {
+            mensagensComunidade.poll();
+        } else {
+            cursores.merge(origem, 1, Integer::sum);
+        }
+        return proxima.getTexto();
+    }
+
+    /**
+     * Retorna at onde o usurio j leu o registro de mensagens de uma comunidade, para saber
+     * quais mensagens todos os membros j leram.
+     * @param nomeComunidade Nome da comunidade.
+     * @return Posio absoluta da prxima mensagem a ler (0 se no houver posio guardada).
+     */
+    int getPosicaoLeitura(String nomeComunidade) {
+        return cursores.getOrDefault(nomeComunidade, 0);
     }
 
     /**
@@ -219,11 +509,40 @@ public class Usuario implements Serializable {
     }
     // Gesto de comunidades
     /**
-     * Adiciona o usurio a uma comunidade.
-     * @param nomeComunidade Nome da comunidade (ex: "Programadores Java")
+     * Adiciona o usurio a uma comunidade. S as mensagens enviadas a partir de agora sero lidas.
+     * @param comunidade Comunidade (ex: "Programadores Java")
      */
-    public void adicionarComunidade(String nomeComunidade) {
-        comunidades.add(nomeComunidade);
+    public void adicionarComunidade(Comunidade comunidade) {
+        comunidades.add(comunidade.getNome());
+        if (idsComunidades != null) {
+            idsComunidades.adicionar(tabelaLogins.id(comunidade.getNome()));
+        }
+        cursores.put(comunidade.getNome(), comunidade.getQuantidadeMensagens());
+        versao++;
+    }
+
+    /**
+     * Retira o usurio de uma comunidade que deixou de existir. As mensagens dela ainda no lidas
+     * passam para a fila de mensagens entregues, mantida em ordem de envio.
+     * @param comunidade Comunidade removida
+     */
+    public void sairDaComunidade(Comunidade comunidade) {
+        comunidades.remove(comunidade.getNome());
+        if (idsComunidades != null) {
+            idsComunidades.remover(tabelaLogins.buscar(comunidade.getNome()));
+        }
+        versao++;
+        Integer cursor = cursores.remove(comunidade.getNome());
+        if (cursor == null || cursor >= comunidade.getQuantidadeMensagens()) {
+            return;
+        }
+        List<MensagemComunidade> pendentes = new ArrayList<>();
+        for (int i = cursor; i < comunidade.getQuantidadeMensagens(); i++) {
+            pendentes.add(comunidade.getMensagem(i));
+        }
+        pendentes.addAll(mensagensComunidade);
+        pendentes.sort(Comparator.comparingLong(MensagemComunidade::getSequencia));
+        mensagensComunidade = new CaixaDeEntrada<>(pendentes);
     }
 
     /**
@@ -234,23 +553,81 @@ public class Usuario implements Serializable {
     public Set<String> getComunidades() {
         return comunidades; // Deve ser o Set<String> original
     }
+    /**
+     * Conta os amigos que este usurio tem em comum com outro, percorrendo o menor dos dois
+     * conjuntos e consultando o outro pelos IDs, sem copiar nenhum deles.
+     *
+     * @param outro Outro usurio.
+     * @return Quantidade de amigos em comum.
+     */
+    public int contarAmigosEmComum(Usuario outro) {
+        ConjuntoDeLogins meus = amigos();
+        ConjuntoDeLogins deles = outro.amigos();
+        return meus.size() <= deles.size() ? meus.contarIds(deles::contemId) : deles.contarIds(meus::contemId);
+    }
+
+    /**
+     * Retorna os amigos que este usurio tem em comum com outro.
+     *
+     * @param outro Outro usurio.
+     * @return Logins dos amigos em comum, na ordem de amizade deste usurio.
+     */
+    public List<String> getAmigosEmComum(Usuario outro) {
+        return amigos().filtrar(outro.amigos()::contemId);
+    }
+
+    /**
+     * Conta as comunidades de que este usurio e outro participam, percorrendo o menor dos dois
+     * conjuntos.
+     *
+     * @param outro Outro usurio.
+     * @return Quantidade de comunidades em comum.
+     */
+    public int contarComunidadesEmComum(Usuario outro) {
+        Set<String> menor = comunidades.size() <= outro.comunidades.size() ? comunidades : outro.comunidades;
+        Set<String> maior = menor == comunidades ? outro.comunidades : comunidades;
+        int total = 0;
+        for (String comunidade : menor) {
+            if (maior.contains(comunidade)) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Retorna as comunidades de que este usurio e outro participam.
+     *
+     * @param outro Outro usurio.
+     * @return Nomes das comunidades em comum, na ordem de entrada deste usurio.
+     */
+    public List<String> getComunidadesEmComum(Usuario outro) {
+        List<String> emComum = new ArrayList<>();
+        for (String comunidade : comunidades) {
+            if (outro.comunidades.contains(comunidade)) {
+                emComum.add(comunidade);
+            }
+        }
+        return emComum;
+    }
     /**
      * Retorna a fila de recados do usurio.
      *
      * @return Uma {@code Queue} contendo os recados do usurio.
      */
-    public Queue<String> getRecados() {
+    public Queue<Recado> getRecados() {
         return recados;
     }
+
     /**
-     * Recebe uma mensagem e a armazena na fila especfica de mensagens da comunidade.
+     * Retorna quantas mensagens de comunidade entregues no envio aguardam leitura (sem contar as
+     * lidas direto do registro das comunidades).
      *
-     * @param mensagem A mensagem a ser armazenada na fila de mensagens da comunidade.
+     * @return Tamanho da fila de mensagens entregues.
      */
-    public void receberMensagemComunidade(String mensagem) {
-        mensagensComunidade.add(mensagem); // Armazena na fila especfica
+    public int getQuantidadeMensagensEntregues() {
+        return mensagensComunidade.size();
     }
-
     //////////////////////////////////////////////////////////////////////////////////////////////////////
     // Mtodos para dolos/fs:
 
@@ -287,6 +664,14 @@ public class Usuario implements Serializable {
     public Set<String> getFas() {
         return new HashSet<>(fas);
     }
+    /**
+     * Verifica se outro usurio  f deste, sem copiar o conjunto de fs.
+     * @param fa Login do outro usurio
+     * @return true se o outro for f deste usurio
+     */
+    public boolean temFa(String fa) {
+        return fas.contains(fa);
+    }
     /**
      * Adiciona um novo f  lista de fs do usurio.
      *
@@ -298,6 +683,7 @@ public class Usuario implements Serializable {
             throw new IllegalArgumentException("Usurio no pode ser f de si mesmo.");
         }
         fas.add(fa);
+        versao++;
     }
 
     /**
@@ -313,6 +699,7 @@ public class Usuario implements Serializable {
             throw new IllegalArgumentException("Usurio no pode ser paquera de si mesmo.");
         }
         paqueras.add(paquera); // Adiciona a paquera
+        versao++;
     }
 
     /**
@@ -340,6 +727,7 @@ public class Usuario implements Serializable {
      */
     public void adicionarInimigo(String inimigo) {
         inimigos.add(inimigo);
+        versao++;
     }
     /**
      * Retorna um conjunto de todos os inimigos do usurio.
@@ -349,6 +737,178 @@ public class Usuario implements Serializable {
     public Set<String> getInimigos() {
         return new HashSet<>(inimigos);
     }
+    /**
+     * Verifica se o usurio declarou outro como inimigo, sem copiar o conjunto de inimigos.
+     * @param inimigo Login do outro usurio
+     * @return true se o outro for inimigo deste usurio
+     */
+    public boolean ehInimigo(String inimigo) {
+        return inimigos.contains(inimigo);
+    }
+    /**
+     * Retorna os amigos confirmados do usurio.
+     * @return Cpia do conjunto de amigos
+     */
+    public Set<String> getAmigos() {
+        return new LinkedHashSet<>(amigos);
+    }
+
+    /**
+     * Retorna os usurios com convite de amizade pendente, enviado ou recebido.
+     * @return Conjunto com os logins dos convites pendentes
+     */
+    public Set<String> getConvitesPendentes() {
+        Set<String> pendentes = new HashSet<>(convitesEnviados);
+        pendentes.addAll(convitesRecebidos);
+        return pendentes;
+    }
+
+    /**
+     * Retorna os dolos do usurio.
+     * @return Cpia do conjunto de dolos
+     */
+    public Set<String> getIdolos() {
+        return new HashSet<>(idolos);
+    }
+
+    /**
+     * Retorna os usurios que adicionaram este usurio como paquera.
+     * @return Conjunto (mantido pelo sistema) com os logins
+     */
+    public Set<String> getPaqueradoPor() {
+        return paqueradoPor;
+    }
+
+    /**
+     * Retorna os usurios que declararam este usurio como inimigo.
+     * @return Conjunto (mantido pelo sistema) com os logins
+     */
+    public Set<String> getInimigoDe() {
+        return inimigoDe;
+    }
+
+    /**
+     * Retorna os usurios para os quais este usurio j enviou recados.
+     * @return Conjunto (mantido pelo sistema) com os logins
+     */
+    public Set<String> getDestinatariosRecados() {
+        return destinatariosRecados;
+    }
+
+    /**
+     * Retorna o prprio conjunto (no uma cpia) de uma relao, para que o expurgo de uma conta
+     * removida possa consumi-lo aos poucos.
+     *
+     * @param relacao Relao desejada.
+     * @return Conjunto de logins da relao.
+     */
+    Set<String> relacao(Lapide.Relacao relacao) {
+        versao++; // Quem recebe o conjunto pode alter-lo
+        return switch (relacao) {
+            case AMIGOS -> amigos;
+            case CONVITES_ENVIADOS -> convitesEnviados;
+            case CONVITES_RECEBIDOS -> convitesRecebidos;
+            case IDOLOS -> idolos;
+            case FAS -> fas;
+            case PAQUERAS -> paqueras;
+            case PAQUERADO_POR -> paqueradoPor;
+            case INIMIGOS -> inimigos;
+            case INIMIGO_DE -> inimigoDe;
+            case DESTINATARIOS_RECADOS -> destinatariosRecados;
+        };
+    }
+
+    /**
+     * Retorna o prprio conjunto de amigos (no uma cpia), para cruz-lo pelos IDs com outros
+     * conjuntos.
+     *
+     * @return Conjunto de amigos.
+     */
+    ConjuntoDeLogins amigos() {
+        return (ConjuntoDeLogins) amigos; // Sempre um ConjuntoDeLogins; ver readObject
+    }
+
+    /**
+     * Entrega os IDs de quem no deve ser sugerido como amigo deste usurio: ele prprio, os
+     * amigos, os convites pendentes nos dois sentidos e os inimigos, tambm nos dois sentidos.
+     *
+     * @param acao Recebe cada ID (pode receber o mesmo ID mais de uma vez).
+     */
+    void paraCadaNaoSugerivel(IntConsumer acao) {
+        acao.accept(id);
+        amigos().paraCadaId(acao);
+        ((ConjuntoDeLogins) convitesEnviados).paraCadaId(acao);
+        ((ConjuntoDeLogins) convitesRecebidos).paraCadaId(acao);
+        ((ConjuntoDeLogins) inimigos).paraCadaId(acao);
+        ((ConjuntoDeLogins) inimigoDe).paraCadaId(acao);
+    }
+
+    /**
+     * Copia, em ordem crescente, os IDs de uma relao maiores que um dado, at encher o destino.
+     * Os nomes das comunidades tambm recebem IDs da {@link TabelaDeLogins}.
+     *
+     * @param relacao Relao paginada.
+     * @param depoisDe ID a partir do qual copiar, exclusive; 0 copia desde o primeiro.
+     * @param destino Recebe os IDs a partir da posio 0.
+     * @return Quantidade de IDs copiados; menor que o tamanho do destino s se no houver mais.
+     */
+    int copiarIdsDepoisDe(Paginavel relacao, int depoisDe, int[] destino) {
+        Set<String> logins = switch (relacao) {
+            case AMIGOS -> amigos;
+            case FAS -> fas;
+            case IDOLOS -> idolos;
+            case PAQUERAS -> paqueras;
+            case INIMIGOS -> inimigos;
+            case COMUNIDADES -> null;
+        };
+        if (logins != null) {
+            return ((ConjuntoDeLogins) logins).copiarIdsDepoisDe(depoisDe, destino);
+        }
+        if (idsComunidades == null) {
+            idsComunidades = new MapaDeBits();
+            for (String nome : comunidades) {
+                idsComunidades.adicionar(tabelaLogins.id(nome));
+            }
+        }
+        return idsComunidades.copiarDepoisDe(depoisDe, destino);
+    }
+
+    /**
+     * Retorna uma listagem formatada guardada por {@link #guardarListagem}, se nenhuma das
+     * relaes listadas mudou desde ento.
+     *
+     * @param listagem Listagem desejada.
+     * @return O texto guardado, ou {@code null} se no houver um vlido.
+     */
+    String buscarListagem(Listagem listagem) {
+        int i = listagem.ordinal();
+        return listagens != null && versoesListagens[i] == versao ? listagens[i] : null;
+    }
+
+    /**
+     * Guarda a listagem formatada de uma relao, vlida at a prxima alterao das relaes.
+     *
+     * @param listagem Listagem formatada.
+     * @param texto Texto da listagem.
+     */
+    void guardarListagem(Listagem listagem, String texto) {
+        if (listagens == null) {
+            listagens = new String[Listagem.values().length];
+            versoesListagens = new int[listagens.length];
+        }
+        listagens[listagem.ordinal()] = texto;
+        versoesListagens[listagem.ordinal()] = versao;
+    }
+
+    /**
+     * Descarta os ndices reversos, antes de reconstru-los a partir das relaes dos usurios.
+     */
+    public void limparIndicesReversos() {
+        paqueradoPor.clear();
+        inimigoDe.clear();
+        destinatariosRecados.clear();
+    }
+
     /**
      * Remove um amigo da lista de amigos e tambm os convites enviados e recebidos.
      *
@@ -358,6 +918,7 @@ public class Usuario implements Serializable {
         amigos.remove(amigo);
         convitesEnviados.remove(amigo);
         convitesRecebidos.remove(amigo);
+        versao++;
     }
     /**
      * Remove um dolo da lista de dolos do usurio.
@@ -374,6 +935,7 @@ public class Usuario implements Serializable {
      */
     public void removerFa(String fa) {
         fas.remove(fa);
+        versao++;
     }
     /**
      * Remove uma pessoa da lista de paqueras do usurio.
@@ -382,6 +944,7 @@ public class Usuario implements Serializable {
      */
     public void removerPaquera(String paquera) {
         paqueras.remove(paquera);
+        versao++;
     }
     /**
      * Remove um inimigo da lista de inimigos do usurio.
@@ -390,5 +953,6 @@ public class Usuario implements Serializable {
      */
     public void removerInimigo(String inimigo) {
         inimigos.remove(inimigo);
+        versao++;
     }
 }
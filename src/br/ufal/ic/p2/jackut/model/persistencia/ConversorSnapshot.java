@@ -0,0 +1,54 @@
+package br.ufal.ic.p2.jackut.model.persistencia;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Converte snapshots antigos ({@code dados.ser}, gravados com serializao Java) para o formato
+ * binrio de {@link FormatoSnapshot}. A converso  feita automaticamente na primeira carga do
+ * sistema, mas tambm pode ser executada manualmente:
+ *
+ * <pre>java br.ufal.ic.p2.jackut.model.persistencia.ConversorSnapshot dados.ser dados.jkt</pre>
+ */
+public final class ConversorSnapshot {
+
+    private ConversorSnapshot() {
+    }
+
+    /**
+     * Converte um snapshot antigo para o formato binrio. O arquivo antigo  preservado com o
+     * sufixo {@code .convertido}, para que no seja convertido de novo.
+     *
+     * @param antigo Snapshot em serializao Java.
+     * @param novo Arquivo de destino no formato binrio.
+     * @throws IOException Se o arquivo antigo no puder ser lido ou o novo no puder ser gravado.
+     */
+    public static void converter(File antigo, File novo) throws IOException {
+        Segmento estado = FormatoSnapshot.lerLegado(antigo);
+        EscritorBinario bytes = FormatoSnapshot.escrever(estado);
+        File temporario = new File(novo.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temporario)) {
+            out.write(bytes.getDados(), 0, bytes.getTamanho());
+            out.getFD().sync();
+        }
+        Files.move(temporario.toPath(), novo.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(antigo.toPath(), new File(antigo.getPath() + ".convertido").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Ponto de entrada para converso manual.
+     * @param args Arquivo antigo e arquivo novo (padro: {@code dados.ser} e {@code dados.jkt}).
+     * @throws IOException Se a converso falhar.
+     */
+    public static void main(String[] args) throws IOException {
+        File antigo = new File(args.length > 0 ? args[0] : "dados.ser");
+        File novo = new File(args.length > 1 ? args[1] : "dados.jkt");
+        converter(antigo, novo);
+        System.out.println("Convertido " + antigo + " -> " + novo + " (" + novo.length() + " bytes)");
+    }
+}
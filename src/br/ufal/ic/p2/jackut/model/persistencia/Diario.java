@@ -0,0 +1,490 @@
+package br.ufal.ic.p2.jackut.model.persistencia;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Dirio de operaes (write-ahead log) do Jackut. Cada operao que altera o estado do sistema
+ *  gravada como um registro binrio compacto, apenas anexado ao final do arquivo, e reproduzida
+ * sobre o ltimo snapshot ao carregar os dados.
+ *
+ * <p>Formato de cada registro: {@code [int tamanho][int crc32][long lsn][byte tipo][argumentos]},
+ * onde cada argumento  um comprimento em varint seguido dos bytes UTF-8 do texto (um argumento
+ * nulo  gravado s com o comprimento -1, para ser reproduzido como nulo). O CRC cobre
+ * o LSN e o corpo; um registro incompleto ou corrompido no final do arquivo (queda durante a
+ * escrita) encerra a reproduo e  descartado.</p>
+ *
+ * <p>A durabilidade usa <i>group commit</i>: cada chamada a {@link #registrar} s retorna depois
+ * que seu registro foi forado ao disco, mas chamadas concorrentes compartilham o mesmo
+ * {@code fsync}: quem chega primeiro grava e sincroniza tudo o que estiver pendente.</p>
+ *
+ * <p>Um erro de escrita deixa o dirio inutilizvel: o lote que falhou  retirado do arquivo (se
+ * possvel) e nunca  regravado, de modo que quem aguarda qualquer registro ainda no durvel, e
+ * toda chamada posterior, recebe o erro, em vez de o dirio seguir gravando registros novos depois
+ * de uma lacuna. Na abertura, uma lacuna na sequncia de LSNs tambm  tratada como erro.</p>
+ *
+ * <p>O dirio  dividido em geraes ({@code dados.diario.000001}, {@code dados.diario.000002}, ...).
+ * {@link #rotacionar()} fecha a gerao atual e passa a escrever na prxima, permitindo que o
+ * checkpoint descarte as geraes antigas sem interromper quem est gravando.</p>
+ */
+public class Diario implements Closeable {
+    /** Propriedade de sistema que desliga o {@code fsync} (apenas descarrega para o SO). */
+    public static final String PROPRIEDADE_FSYNC = "jackut.diario.fsync";
+
+    private static final int TAMANHO_CABECALHO = 4 + 4 + 8;
+    private static final int TAMANHO_MAXIMO_REGISTRO = 64 * 1024 * 1024;
+
+    private final File diretorio;
+    private final String nomeBase;
+    private final boolean fsync;
+
+    /** Gerao em escrita e seu canal; trocados apenas por quem detm {@code monitorSync}. */
+    private FileChannel canal;
+    private long geracao;
+
+    /** Registros j serializados aguardando escrita; protegido por {@code this}. */
+    private ByteArrayOutputStream pendentes = new ByteArrayOutputStream(4096);
+    private long proximoLsn;
+    private long ultimoEnfileirado;
+    private long bytesGeracao;
+
+    /** Controle do group commit; protegido por {@code monitorSync}. */
+    private final Object monitorSync = new Object();
+    private long ultimoDuravel;
+    private boolean sincronizando;
+    /** Erro da escrita que falhou; a partir dele, o dirio recusa registros e esperas. */
+    private volatile IOException falha;
+
+    /**
+     * Um registro lido do dirio.
+     */
+    public static final class Registro {
+        private final long lsn;
+        private final TipoOperacao tipo;
+        private final String[] argumentos;
+        private final int tamanhoEmDisco;
+
+        Registro(long lsn, TipoOperacao tipo, String[] argumentos, int tamanhoEmDisco) {
+            this.lsn = lsn;
+            this.tipo = tipo;
+            this.argumentos = argumentos;
+            this.tamanhoEmDisco = tamanhoEmDisco;
+        }
+
+        /** @return Nmero de sequncia do registro. */
+        public long getLsn() { return lsn; }
+
+        /** @return Tipo da operao registrada. */
+        public TipoOperacao getTipo() { return tipo; }
+
+        /**
+         * Retorna um argumento da operao.
+         * @param indice Posio do argumento.
+         * @return Texto do argumento (pode ser nulo).
+         */
+        public String getArgumento(int indice) { return argumentos[indice]; }
+    }
+
+    private Diario(File diretorio, String nomeBase, long geracao, FileChannel canal, long proximoLsn, boolean fsync)
+            throws IOException {
+        this.diretorio = diretorio;
+        this.nomeBase = nomeBase;
+        this.geracao = geracao;
+        this.canal = canal;
+        this.bytesGeracao = canal.size();
+        this.proximoLsn = proximoLsn;
+        this.ultimoEnfileirado = proximoLsn - 1;
+        this.ultimoDuravel = proximoLsn - 1;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Abre (ou cria) o dirio, reproduzindo em ordem todas as geraes existentes. Apenas os
+     * registros posteriores ao snapshot so entregues ao reprodutor; um final de arquivo
+     * incompleto ou corrompido na ltima gerao  truncado antes de novas escritas.
+     *
+     * @param diretorio Diretrio onde ficam os arquivos do dirio.
+     * @param nomeBase Nome base dos arquivos (ex.: {@code "dados.diario"}).
+     * @param lsnSnapshot LSN do ltimo registro j contido no snapshot carregado.
+     * @param reprodutor Recebe, em ordem, cada registro com LSN maior que {@code lsnSnapshot}.
+     * @return O dirio pronto para receber novos registros.
+     * @throws IOException Se ocorrer erro de leitura ou escrita no arquivo, ou se faltar algum
+     *                     registro entre o snapshot e o ltimo registro do dirio.
+     */
+    public static Diario abrir(File diretorio, String nomeBase, long lsnSnapshot, Consumer<Registro> reprodutor)
+            throws IOException {
+        File legado = new File(diretorio, nomeBase);
+        if (legado.exists()) {
+            // Dirio anterior  diviso em geraes: passa a ser a gerao zero.
+            legado.renameTo(arquivoGeracao(diretorio, nomeBase, 0));
+        }
+        List<Long> geracoes = listarGeracoes(diretorio, nomeBase);
+        long ultimoLsn = lsnSnapshot;
+        long posicaoValida = 0;
+        for (long g : geracoes) {
+            posicaoValida = 0;
+            File arquivo = arquivoGeracao(diretorio, nomeBase, g);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivo), 1 << 16))) {
+                while (true) {
+                    Registro registro = lerRegistro(in);
+                    if (registro == null) {
+                        break;
+                    }
+                    posicaoValida += registro.tamanhoEmDisco;
+                    if (registro.lsn > ultimoLsn) {
+                        if (registro.lsn != ultimoLsn + 1) {
+                            throw new IOException("Dirio incompleto: falta o registro " + (ultimoLsn + 1)
+                                    + " (encontrado " + registro.lsn + " em " + arquivo.getName() + ").");
+                        }
+                        reprodutor.accept(registro);
+                        ultimoLsn = registro.lsn;
+                    }
+                }
+            }
+        }
+        long atual = geracoes.isEmpty() ? 1 : geracoes.get(geracoes.size() - 1);
+        FileChannel canal = FileChannel.open(arquivoGeracao(diretorio, nomeBase, atual).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (canal.size() > posicaoValida) {
+            canal.truncate(posicaoValida);
+        }
+        canal.position(posicaoValida);
+        boolean fsync = Boolean.parseBoolean(System.getProperty(PROPRIEDADE_FSYNC, "true"));
+        return new Diario(diretorio, nomeBase, atual, canal, ultimoLsn + 1, fsync);
+    }
+
+    /**
+     * Grava uma operao no dirio e aguarda at que ela esteja durvel.
+     *
+     * @param tipo Tipo da operao.
+     * @param argumentos Argumentos textuais (na quantidade definida pelo tipo).
+     * @return O LSN atribudo ao registro.
+     * @throws UncheckedIOException Se ocorrer erro de escrita.
+     */
+    public long registrar(TipoOperacao tipo, String... argumentos) {
+        long lsn = enfileirar(tipo, argumentos);
+        aguardar(lsn);
+        return lsn;
+    }
+
+    /**
+     * Serializa o registro no buffer de pendentes, atribuindo-lhe o prximo LSN, sem aguardar a
+     * gravao. Permite registrar a operao enquanto as travas do sistema esto seguras e s
+     * aguardar a durabilidade (com {@link #aguardar(long)}) depois de liber-las.
+     *
+     * @param tipo Tipo da operao.
+     * @param argumentos Argumentos textuais (na quantidade definida pelo tipo).
+     * @return O LSN atribudo ao registro.
+     * @throws UncheckedIOException Se uma escrita anterior tiver falhado.
+     */
+    public synchronized long enfileirar(TipoOperacao tipo, String... argumentos) {
+        if (argumentos.length != tipo.getArgumentos()) {
+            throw new IllegalArgumentException("Quantidade de argumentos invlida para " + tipo);
+        }
+        verificarFalha();
+        long lsn = proximoLsn++;
+        ByteArrayOutputStream corpo = new ByteArrayOutputStream(64);
+        corpo.write(tipo.getCodigo());
+        for (String argumento : argumentos) {
+            if (argumento == null) {
+                escreverVarint(corpo, -1);
+                continue;
+            }
+            byte[] bytes = argumento.getBytes(StandardCharsets.UTF_8);
+            escreverVarint(corpo, bytes.length);
+            corpo.write(bytes, 0, bytes.length);
+        }
+        byte[] bytesCorpo = corpo.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(0, lsn).array());
+        crc.update(bytesCorpo);
+
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+        cabecalho.putInt(bytesCorpo.length).putInt((int) crc.getValue()).putLong(lsn);
+        pendentes.write(cabecalho.array(), 0, TAMANHO_CABECALHO);
+        pendentes.write(bytesCorpo, 0, bytesCorpo.length);
+        bytesGeracao += TAMANHO_CABECALHO + bytesCorpo.length;
+        ultimoEnfileirado = lsn;
+        return lsn;
+    }
+
+    /**
+     * Bloqueia at que o registro {@code lsn} tenha sido gravado (e sincronizado, se configurado).
+     * A primeira thread a encontrar o dirio ocioso torna-se lder e grava o lote inteiro.
+     *
+     * @param lsn LSN devolvido por {@link #enfileirar}.
+     * @throws UncheckedIOException Se ocorrer erro de escrita, nesta ou em uma gravao anterior,
+     *                              antes de o registro ficar durvel.
+     */
+    public void aguardar(long lsn) {
+        synchronized (monitorSync) {
+            while (ultimoDuravel < lsn) {
+                verificarFalha();
+                if (!sincronizando) {
+                    sincronizando = true;
+                    break;
+                }
+                try {
+                    monitorSync.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrompido aguardando o dirio.", e);
+                }
+            }
+            if (ultimoDuravel >= lsn) {
+                return;
+            }
+        }
+        long gravadoAte = ultimoDuravel;
+        try {
+            gravadoAte = descarregar();
+        } finally {
+            synchronized (monitorSync) {
+                ultimoDuravel = Math.max(ultimoDuravel, gravadoAte);
+                sincronizando = false;
+                monitorSync.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Grava no canal todos os registros pendentes e, se configurado, fora-os ao disco.
+     * S  chamado pelo lder do group commit. Se a escrita falhar, o trecho gravado em parte 
+     * retirado do arquivo (para no deixar um registro incompleto antes dos prximos) e o dirio
+     * passa a recusar registros e esperas.
+     *
+     * @return LSN do ltimo registro gravado.
+     */
+    private long descarregar() {
+        ByteArrayOutputStream lote;
+        long ate;
+        synchronized (this) {
+            verificarFalha();
+            lote = pendentes;
+            ate = ultimoEnfileirado;
+            pendentes = new ByteArrayOutputStream(Math.max(4096, lote.size()));
+        }
+        long inicio = -1;
+        try {
+            inicio = canal.position();
+            ByteBuffer buffer = ByteBuffer.wrap(lote.toByteArray());
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            if (fsync) {
+                canal.force(false);
+            }
+        } catch (IOException e) {
+            falha = e;
+            if (inicio >= 0) {
+                try {
+                    canal.truncate(inicio);
+                    canal.position(inicio);
+                } catch (IOException ignorada) {
+                    e.addSuppressed(ignorada); // A abertura descarta o final incompleto
+                }
+            }
+            throw new UncheckedIOException("Erro ao gravar o dirio: " + e.getMessage(), e);
+        }
+        return ate;
+    }
+
+    /**
+     * Lana o erro de uma escrita que j falhou, se houver.
+     *
+     * @throws UncheckedIOException Se o dirio estiver inutilizvel.
+     */
+    private void verificarFalha() {
+        IOException erro = falha;
+        if (erro != null) {
+            throw new UncheckedIOException("Dirio indisponvel aps erro de gravao: " + erro.getMessage(), erro);
+        }
+    }
+
+    /**
+     * Fecha a gerao atual e passa a gravar na prxima. Todos os registros enfileirados at a
+     * chamada ficam durveis em geraes menores ou iguais  retornada.
+     *
+     * @return Nmero da gerao que acabou de ser fechada.
+     * @throws UncheckedIOException Se ocorrer erro de escrita.
+     */
+    public long rotacionar() {
+        synchronized (monitorSync) {
+            try {
+                while (sincronizando) {
+                    monitorSync.wait();
+                }
+                verificarFalha();
+                long ate = descarregar();
+                ultimoDuravel = Math.max(ultimoDuravel, ate);
+                long fechada = geracao;
+                FileChannel novo = FileChannel.open(arquivoGeracao(diretorio, nomeBase, fechada + 1).toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                canal.close();
+                synchronized (this) {
+                    canal = novo;
+                    geracao = fechada + 1;
+                    bytesGeracao = 0;
+                }
+                return fechada;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Erro ao rotacionar o dirio: " + e.getMessage(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrompido aguardando o dirio.", e);
+            }
+        }
+    }
+
+    /**
+     * Apaga as geraes j fechadas at {@code geracaoMaxima}, inclusive. Deve ser chamado apenas
+     * depois que um snapshot contendo todos os seus registros foi gravado com sucesso.
+     *
+     * @param geracaoMaxima ltima gerao a ser apagada.
+     */
+    public void descartarAte(long geracaoMaxima) {
+        long atual;
+        synchronized (this) {
+            atual = geracao;
+        }
+        for (long g : listarGeracoes(diretorio, nomeBase)) {
+            if (g <= geracaoMaxima && g < atual) {
+                arquivoGeracao(diretorio, nomeBase, g).delete();
+            }
+        }
+    }
+
+    /**
+     * Descarta todo o contedo do dirio. Deve ser chamado apenas depois que um snapshot contendo
+     * todos os registros at o momento foi gravado com sucesso.
+     *
+     * @throws UncheckedIOException Se ocorrer erro de escrita.
+     */
+    public void truncar() {
+        descartarAte(rotacionar());
+    }
+
+    /**
+     * Retorna quantos bytes j foram gravados (ou enfileirados) na gerao atual.
+     * @return Tamanho da gerao atual em bytes.
+     */
+    public synchronized long getBytesGeracaoAtual() {
+        return bytesGeracao;
+    }
+
+    /**
+     * Retorna o LSN do ltimo registro atribudo.
+     * @return LSN mais recente (ou o do snapshot, se nada foi registrado).
+     */
+    public synchronized long getUltimoLsn() {
+        return proximoLsn - 1;
+    }
+
+    /**
+     * Fecha o dirio, gravando qualquer registro pendente. O arquivo  fechado mesmo se a
+     * gravao falhar.
+     *
+     * @throws IOException Se ocorrer erro ao fechar o arquivo.
+     * @throws UncheckedIOException Se os registros pendentes no puderem ser gravados.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            aguardar(getUltimoLsn());
+        } finally {
+            canal.close();
+        }
+    }
+
+    private static File arquivoGeracao(File diretorio, String nomeBase, long geracao) {
+        return new File(diretorio, String.format("%s.%06d", nomeBase, geracao));
+    }
+
+    private static List<Long> listarGeracoes(File diretorio, String nomeBase) {
+        List<Long> geracoes = new ArrayList<>();
+        String[] nomes = diretorio.list();
+        if (nomes != null) {
+            for (String nome : nomes) {
+                if (nome.startsWith(nomeBase + ".")) {
+                    try {
+                        geracoes.add(Long.parseLong(nome.substring(nomeBase.length() + 1)));
+                    } catch (NumberFormatException e) {
+                        // Arquivo que no pertence ao dirio.
+                    }
+                }
+            }
+        }
+        Collections.sort(geracoes);
+        return geracoes;
+    }
+
+    private static Registro lerRegistro(DataInputStream in) throws IOException {
+        int tamanho;
+        try {
+            tamanho = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (tamanho <= 0 || tamanho > TAMANHO_MAXIMO_REGISTRO) {
+            return null;
+        }
+        try {
+            int crcEsperado = in.readInt();
+            long lsn = in.readLong();
+            byte[] corpo = new byte[tamanho];
+            in.readFully(corpo);
+
+            CRC32 crc = new CRC32();
+            crc.update(ByteBuffer.allocate(8).putLong(0, lsn).array());
+            crc.update(corpo);
+            if ((int) crc.getValue() != crcEsperado) {
+                return null;
+            }
+            TipoOperacao tipo = TipoOperacao.porCodigo(corpo[0] & 0xFF);
+            if (tipo == null) {
+                return null;
+            }
+            String[] argumentos = new String[tipo.getArgumentos()];
+            int[] posicao = {1};
+            for (int i = 0; i < argumentos.length; i++) {
+                int comprimento = lerVarint(corpo, posicao);
+                if (comprimento == -1) {
+                    continue; // Argumento nulo
+                }
+                argumentos[i] = new String(corpo, posicao[0], comprimento, StandardCharsets.UTF_8);
+                posicao[0] += comprimento;
+            }
+            return new Registro(lsn, tipo, argumentos, TAMANHO_CABECALHO + tamanho);
+        } catch (EOFException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static void escreverVarint(ByteArrayOutputStream out, int valor) {
+        while ((valor & ~0x7F) != 0) {
+            out.write((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        out.write(valor);
+    }
+
+    private static int lerVarint(byte[] dados, int[] posicao) {
+        int valor = 0;
+        for (int deslocamento = 0; deslocamento < 32; deslocamento += 7) {
+            byte b = dados[posicao[0]++];
+            valor |= (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IndexOutOfBoundsException("Varint invlido.");
+    }
+}
@@ -0,0 +1,144 @@
+package br.ufal.ic.p2.jackut.model.persistencia;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Buffer de escrita do formato binrio de snapshot do Jackut. Inteiros pequenos (tamanhos e
+ * contagens) so gravados como varint e textos como varint do comprimento seguido dos bytes UTF-8;
+ * um texto nulo  gravado s com o comprimento -1.
+ *
+ * @see LeitorBinario
+ */
+public class EscritorBinario {
+    private byte[] dados;
+    private int tamanho;
+
+    /**
+     * Cria um escritor com a capacidade inicial informada.
+     * @param capacidade Capacidade inicial em bytes.
+     */
+    public EscritorBinario(int capacidade) {
+        this.dados = new byte[Math.max(16, capacidade)];
+    }
+
+    /**
+     * Grava um byte.
+     * @param valor Valor (apenas os 8 bits menos significativos so usados).
+     */
+    public void escreverByte(int valor) {
+        garantir(1);
+        dados[tamanho++] = (byte) valor;
+    }
+
+    /**
+     * Grava um inteiro de 4 bytes (big-endian).
+     * @param valor Valor a gravar.
+     */
+    public void escreverInt(int valor) {
+        garantir(4);
+        dados[tamanho++] = (byte) (valor >>> 24);
+        dados[tamanho++] = (byte) (valor >>> 16);
+        dados[tamanho++] = (byte) (valor >>> 8);
+        dados[tamanho++] = (byte) valor;
+    }
+
+    /**
+     * Grava um inteiro de 8 bytes (big-endian).
+     * @param valor Valor a gravar.
+     */
+    public void escreverLong(long valor) {
+        escreverInt((int) (valor >>> 32));
+        escreverInt((int) valor);
+    }
+
+    /**
+     * Grava um inteiro no negativo em formato varint (1 a 5 bytes).
+     * @param valor Valor no negativo.
+     */
+    public void escreverVarint(int valor) {
+        garantir(5);
+        while ((valor & ~0x7F) != 0) {
+            dados[tamanho++] = (byte) ((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        dados[tamanho++] = (byte) valor;
+    }
+
+    /**
+     * Grava um texto; um texto nulo  lido de volta como nulo, e no como texto vazio.
+     * @param texto Texto a gravar (pode ser nulo).
+     */
+    public void escreverTexto(String texto) {
+        if (texto == null) {
+            escreverVarint(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        escreverVarint(bytes.length);
+        escreverBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Grava uma coleo de textos, precedida da quantidade, na ordem de iterao.
+     * @param textos Coleo a gravar.
+     */
+    public void escreverTextos(Collection<String> textos) {
+        escreverVarint(textos.size());
+        for (String texto : textos) {
+            escreverTexto(texto);
+        }
+    }
+
+    /**
+     * Grava um mapa de textos, precedido da quantidade de entradas.
+     * @param mapa Mapa a gravar.
+     */
+    public void escreverMapa(Map<String, String> mapa) {
+        escreverVarint(mapa.size());
+        for (Map.Entry<String, String> entrada : mapa.entrySet()) {
+            escreverTexto(entrada.getKey());
+            escreverTexto(entrada.getValue());
+        }
+    }
+
+    /**
+     * Grava um trecho de bytes sem prefixo de tamanho.
+     * @param bytes Origem.
+     * @param inicio Posio inicial na origem.
+     * @param quantidade Quantidade de bytes.
+     */
+    public void escreverBytes(byte[] bytes, int inicio, int quantidade) {
+        garantir(quantidade);
+        System.arraycopy(bytes, inicio, dados, tamanho, quantidade);
+        tamanho += quantidade;
+    }
+
+    /**
+     * Grava o contedo de outro escritor precedido do seu tamanho (registro de tamanho prefixado).
+     * @param registro Escritor com o contedo do registro.
+     */
+    public void escreverRegistro(EscritorBinario registro) {
+        escreverInt(registro.tamanho);
+        escreverBytes(registro.dados, 0, registro.tamanho);
+    }
+
+    /** @return Quantidade de bytes gravados. */
+    public int getTamanho() { return tamanho; }
+
+    /** @return Buffer interno (vlido at {@link #getTamanho()}). */
+    public byte[] getDados() { return dados; }
+
+    /** Descarta o contedo, mantendo a capacidade alocada. */
+    public void limpar() {
+        tamanho = 0;
+    }
+
+    private void garantir(int adicional) {
+        if (tamanho + adicional > dados.length) {
+            dados = Arrays.copyOf(dados, Math.max(dados.length * 2, tamanho + adicional));
+        }
+    }
+}
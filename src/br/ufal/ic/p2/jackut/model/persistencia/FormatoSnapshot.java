@@ -0,0 +1,559 @@
+package br.ufal.ic.p2.jackut.model.persistencia;
+
+import br.ufal.ic.p2.jackut.model.models.Comunidade;
+import br.ufal.ic.p2.jackut.model.models.Lapide;
+import br.ufal.ic.p2.jackut.model.models.Sistema;
+import br.ufal.ic.p2.jackut.model.models.TabelaDeLogins;
+import br.ufal.ic.p2.jackut.model.models.Usuario;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Formato binrio, versionado e com registros de tamanho prefixado, usado pelo snapshot base e
+ * pelos segmentos de checkpoint. Substitui a serializao Java: no grava descritores de classe,
+ * no usa reflexo na leitura e  lido diretamente de um arquivo mapeado em memria.
+ *
+ * <pre>
+ * cabealho  : int MAGICO, short verso, byte completo, long lsn
+ * usurios   : {int tamanho, int crc32, [dados do usurio]}*
+ * metadados  : IDs        : int prximo ID, int quantidade, {varint id, texto login}*
+ *              comunidades: int quantidade, {int tamanho, texto nome, byte presente, [dados da comunidade]}*
+ *              sesses    : int quantidade, {texto id, byte presente, [texto login, long abertura, long ltimo uso]}*
+ *              ndice     : int quantidade, {texto login, byte presente, [long posio do usurio]}*
+ *              lpides    : int quantidade, {int tamanho, texto login, byte presente, [dados da lpide]}*
+ * rodap     : long posio dos metadados, int crc32 do cabealho, dos metadados e do rodap
+ * </pre>
+ *
+ * <p>Como cada usurio tem o prprio CRC e o ndice aponta para a posio do registro, o snapshot
+ * pode ser aberto lendo apenas os metadados: {@link #abrir(File)} devolve um segmento cujos
+ * usurios so materializados do arquivo na primeira consulta (ver {@link MapaPreguicoso}).</p>
+ *
+ * <p>A verso 3 acrescentou aos usurios o remetente de cada recado e os ndices reversos das
+ * relaes; ao ler verses anteriores, o segmento  marcado para que esses ndices sejam
+ * reconstrudos (ver {@link Segmento#isIndicesReversos()}), e a carga deixa de ser preguiosa.</p>
+ *
+ * <p>A verso 4 acrescentou as lpides das contas removidas cujo expurgo ainda no terminou; nas
+ * verses anteriores elas no existiam.</p>
+ *
+ * <p>A verso 5 acrescentou o registro de mensagens das comunidades e as posies de leitura dos
+ * usurios; nas verses anteriores as mensagens eram copiadas para a fila de cada membro, e essas
+ * filas continuam sendo lidas como mensagens j entregues.</p>
+ *
+ * <p>A verso 6 acrescentou s comunidades a posio da primeira mensagem guardada, j que as
+ * mensagens lidas por todos os membros passaram a ser descartadas; nas verses anteriores o
+ * registro comeava sempre na posio 0.</p>
+ *
+ * <p>A verso 7 acrescentou s sesses os instantes de abertura e do ltimo uso, para que a carga
+ * no reinicie os prazos delas; nas verses anteriores (e com instante 0, desconhecido) a sesso
+ * conta a partir da carga.</p>
+ *
+ * <p>A verso 8 acrescentou os IDs da {@link TabelaDeLogins} dos usurios, comunidades e lpides
+ * do segmento, lidos antes de qualquer objeto para que eles recebam os mesmos IDs da execuo que
+ * os gravou; nas verses anteriores os IDs eram atribudos na ordem de leitura.</p>
+ *
+ * <p>Textos nulos (ex.: o nome de um usurio criado sem nome) so gravados com o comprimento -1
+ * e lidos de volta como nulos; arquivos gravados antes disso simplesmente no os contm.</p>
+ *
+ * <p>Arquivos da verso 1 (CRC nico ao final, usurios sem ndice) e no formato antigo
+ * (serializao Java) continuam sendo lidos, sempre por completo; os antigos podem ser
+ * convertidos com {@link ConversorSnapshot}.</p>
+ */
+public final class FormatoSnapshot {
+    /** Bytes "JKUT" no incio de todo snapshot binrio. */
+    public static final int MAGICO = 0x4A4B5554;
+    /** Verso atual do formato. */
+    public static final short VERSAO = 8;
+
+    private static final int MAGICO_SERIALIZACAO_JAVA = 0xACED;
+    private static final int TAMANHO_CABECALHO = 4 + 2 + 1 + 8;
+    private static final int TAMANHO_RODAPE = 8 + 4;
+
+    private FormatoSnapshot() {
+    }
+
+    /**
+     * Codifica um segmento no formato binrio.
+     *
+     * @param segmento Segmento a codificar.
+     * @return Escritor contendo o arquivo completo, incluindo o rodap.
+     */
+    public static EscritorBinario escrever(Segmento segmento) {
+        EscritorBinario out = new EscritorBinario(64 + segmento.getUsuarios().size() * 128);
+        EscritorBinario registro = new EscritorBinario(1024);
+        CRC32 crc = new CRC32();
+        out.escreverInt(MAGICO);
+        out.escreverByte(VERSAO >>> 8);
+        out.escreverByte(VERSAO);
+        out.escreverByte(segmento.isCompleto() ? 1 : 0);
+        out.escreverLong(segmento.getLsn());
+
+        Map<String, Long> indice = new LinkedHashMap<>(segmento.getUsuarios().size() * 4 / 3 + 1);
+        for (Map.Entry<String, Usuario> entrada : segmento.getUsuarios().entrySet()) {
+            if (entrada.getValue() == null) {
+                indice.put(entrada.getKey(), null);
+                continue;
+            }
+            registro.limpar();
+            entrada.getValue().escrever(registro);
+            crc.reset();
+            crc.update(registro.getDados(), 0, registro.getTamanho());
+            indice.put(entrada.getKey(), (long) out.getTamanho());
+            out.escreverInt(registro.getTamanho());
+            out.escreverInt((int) crc.getValue());
+            out.escreverBytes(registro.getDados(), 0, registro.getTamanho());
+        }
+
+        long metadados = out.getTamanho();
+        out.escreverInt(segmento.getProximoId());
+        out.escreverInt(segmento.getIds().size());
+        for (Map.Entry<String, Integer> entrada : segmento.getIds().entrySet()) {
+            out.escreverVarint(entrada.getValue());
+            out.escreverTexto(entrada.getKey());
+        }
+
+        out.escreverInt(segmento.getComunidades().size());
+        for (Map.Entry<String, Comunidade> entrada : segmento.getComunidades().entrySet()) {
+            registro.limpar();
+            registro.escreverTexto(entrada.getKey());
+            registro.escreverByte(entrada.getValue() == null ? 0 : 1);
+            if (entrada.getValue() != null) {
+                entrada.getValue().escrever(registro);
+            }
+            out.escreverRegistro(registro);
+        }
+
+        out.escreverInt(segmento.getSessoes().size());
+        for (Map.Entry<String, String> entrada : segmento.getSessoes().entrySet()) {
+            out.escreverTexto(entrada.getKey());
+            out.escreverByte(entrada.getValue() == null ? 0 : 1);
+            if (entrada.getValue() != null) {
+                Segmento.Instantes instantes = segmento.getInstantesSessoes().get(entrada.getKey());
+                out.escreverTexto(entrada.getValue());
+                out.escreverLong(instantes == null ? 0 : instantes.getAbertura());
+                out.escreverLong(instantes == null ? 0 : instantes.getUltimoUso());
+            }
+        }
+
+        out.escreverInt(indice.size());
+        for (Map.Entry<String, Long> entrada : indice.entrySet()) {
+            out.escreverTexto(entrada.getKey());
+            out.escreverByte(entrada.getValue() == null ? 0 : 1);
+            if (entrada.getValue() != null) {
+                out.escreverLong(entrada.getValue());
+            }
+        }
+
+        out.escreverInt(segmento.getLapides().size());
+        for (Map.Entry<String, Lapide> entrada : segmento.getLapides().entrySet()) {
+            registro.limpar();
+            registro.escreverTexto(entrada.getKey());
+            registro.escreverByte(entrada.getValue() == null ? 0 : 1);
+            if (entrada.getValue() != null) {
+                entrada.getValue().escrever(registro);
+            }
+            out.escreverRegistro(registro);
+        }
+
+        out.escreverLong(metadados);
+        crc.reset();
+        crc.update(out.getDados(), 0, TAMANHO_CABECALHO);
+        crc.update(out.getDados(), (int) metadados, out.getTamanho() - (int) metadados);
+        out.escreverInt((int) crc.getValue());
+        return out;
+    }
+
+    /**
+     * L um snapshot por completo, em qualquer verso do formato binrio ou no formato antigo de
+     * serializao Java, com uma tabela de logins nova que recebe os IDs gravados no arquivo.
+     *
+     * @param arquivo Arquivo do snapshot.
+     * @return O segmento lido.
+     * @throws IOException Se o arquivo estiver corrompido, em verso desconhecida ou ilegvel.
+     */
+    public static Segmento ler(File arquivo) throws IOException {
+        return ler(arquivo, false, null);
+    }
+
+    /**
+     * L um snapshot por completo com uma tabela de logins j montada, em que os IDs gravados no
+     * arquivo no so restaurados (ver {@link #lerIds(File)}).
+     *
+     * @param arquivo Arquivo do snapshot.
+     * @param tabelaLogins Tabela dos objetos lidos.
+     * @return O segmento lido.
+     * @throws IOException Se o arquivo estiver corrompido, em verso desconhecida ou ilegvel.
+     */
+    public static Segmento ler(File arquivo, TabelaDeLogins tabelaLogins) throws IOException {
+        return ler(arquivo, false, tabelaLogins);
+    }
+
+    /**
+     * Abre um snapshot lendo apenas o cabealho, as comunidades, as sesses e o ndice de
+     * usurios. Os usurios do segmento devolvido so lidos do arquivo mapeado na primeira vez em
+     * que forem consultados; o arquivo fica aberto at que todos tenham sido lidos, substitudos
+     * ou removidos. Snapshots em verses anteriores so lidos por completo.
+     *
+     * @param arquivo Arquivo do snapshot.
+     * @return O segmento, com os usurios ainda no materializados.
+     * @throws IOException Se os metadados estiverem corrompidos, em verso desconhecida ou ilegveis.
+     */
+    public static Segmento abrir(File arquivo) throws IOException {
+        return ler(arquivo, true, null);
+    }
+
+    /**
+     * Abre um snapshot como {@link #abrir(File)}, com uma tabela de logins j montada.
+     *
+     * @param arquivo Arquivo do snapshot.
+     * @param tabelaLogins Tabela dos objetos lidos, como em {@link #ler(File, TabelaDeLogins)}.
+     * @return O segmento, com os usurios ainda no materializados.
+     * @throws IOException Se os metadados estiverem corrompidos, em verso desconhecida ou ilegveis.
+     */
+    public static Segmento abrir(File arquivo, TabelaDeLogins tabelaLogins) throws IOException {
+        return ler(arquivo, true, tabelaLogins);
+    }
+
+    /**
+     * L de um snapshot apenas o cabealho e os IDs dos logins, sem ler nenhum objeto. Com eles, a
+     * carga monta a tabela de logins antes de ler os arquivos. Arquivos anteriores  verso 8 no
+     * tm IDs, e os no formato antigo de serializao Java so lidos por completo.
+     *
+     * @param arquivo Arquivo do snapshot.
+     * @return Segmento sem objetos, s com o LSN, os IDs e o prximo ID.
+     * @throws IOException Se o arquivo estiver corrompido, em verso desconhecida ou ilegvel.
+     */
+    public static Segmento lerIds(File arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+            if (canal.size() >= 2 && lerCabecalho(canal) == MAGICO_SERIALIZACAO_JAVA) {
+                return lerLegado(arquivo);
+            }
+            LeitorBinario in = new LeitorBinario(canal);
+            in.garantir(TAMANHO_CABECALHO);
+            if (in.lerInt() != MAGICO) {
+                throw new IOException("Arquivo " + arquivo + " no  um snapshot do Jackut.");
+            }
+            int versao = (in.lerByte() << 8) | in.lerByte();
+            if (versao < 1 || versao > VERSAO) {
+                throw new IOException("Verso " + versao + " do snapshot " + arquivo + " no  suportada.");
+            }
+            boolean completo = in.lerByte() == 1;
+            Segmento segmento = new Segmento(in.lerLong(), completo, 0);
+            if (versao >= 8) {
+                long metadados = verificarMetadados(canal, arquivo);
+                in.posicionar(metadados);
+                in.garantir((int) Math.min(Integer.MAX_VALUE, canal.size() - metadados));
+                lerIds(in, segmento);
+            }
+            return segmento;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            throw new IOException("Snapshot " + arquivo + " corrompido: " + e, e);
+        }
+    }
+
+    private static void lerIds(LeitorBinario in, Segmento segmento) {
+        segmento.setProximoId(in.lerInt());
+        int quantidade = in.lerInt();
+        for (int i = 0; i < quantidade; i++) {
+            int id = in.lerVarint();
+            segmento.getIds().put(in.lerTexto(), id);
+        }
+    }
+
+    private static Segmento ler(File arquivo, boolean preguicoso, TabelaDeLogins tabelaLogins) throws IOException {
+        FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ);
+        boolean manterAberto = false;
+        try {
+            if (canal.size() >= 2 && lerCabecalho(canal) == MAGICO_SERIALIZACAO_JAVA) {
+                return lerLegado(arquivo, tabelaLogins == null ? new TabelaDeLogins() : tabelaLogins);
+            }
+            LeitorBinario in = new LeitorBinario(canal);
+            in.garantir(TAMANHO_CABECALHO);
+            if (in.lerInt() != MAGICO) {
+                throw new IOException("Arquivo " + arquivo + " no  um snapshot do Jackut.");
+            }
+            int versao = (in.lerByte() << 8) | in.lerByte();
+            if (versao == 1) {
+                return lerVersao1(canal, arquivo, tabelaLogins == null ? new TabelaDeLogins() : tabelaLogins);
+            }
+            if (versao < 2 || versao > VERSAO) {
+                throw new IOException("Verso " + versao + " do snapshot " + arquivo + " no  suportada.");
+            }
+            boolean completo = in.lerByte() == 1;
+            long lsn = in.lerLong();
+
+            long metadados = verificarMetadados(canal, arquivo);
+            in.posicionar(metadados);
+            in.garantir((int) Math.min(Integer.MAX_VALUE, canal.size() - metadados));
+            Segmento ids = new Segmento(lsn, completo, 0);
+            if (versao >= 8) {
+                lerIds(in, ids);
+            }
+            TabelaDeLogins tabela = tabelaLogins == null ? ids.criarTabelaLogins() : tabelaLogins;
+            Map<String, Comunidade> comunidades = new HashMap<>();
+            int quantidadeComunidades = in.lerInt();
+            for (int i = 0; i < quantidadeComunidades; i++) {
+                in.lerInt();
+                String nome = in.lerTexto();
+                comunidades.put(nome, in.lerByte() == 1 ? Comunidade.ler(nome, in, versao, tabela) : null);
+            }
+            Map<String, String> sessoes = new HashMap<>();
+            Map<String, Segmento.Instantes> instantesSessoes = new HashMap<>();
+            int quantidadeSessoes = in.lerInt();
+            for (int i = 0; i < quantidadeSessoes; i++) {
+                String id = in.lerTexto();
+                sessoes.put(id, in.lerByte() == 1 ? in.lerTexto() : null);
+                if (sessoes.get(id) != null && versao >= 7) {
+                    long abertura = in.lerLong();
+                    long ultimoUso = in.lerLong();
+                    if (abertura != 0) {
+                        instantesSessoes.put(id, new Segmento.Instantes(abertura, ultimoUso));
+                    }
+                }
+            }
+            int quantidadeUsuarios = in.lerInt();
+            Map<String, Long> indice = new HashMap<>(Math.max(16, quantidadeUsuarios * 4 / 3 + 1));
+            Map<String, Usuario> removidos = new HashMap<>();
+            for (int i = 0; i < quantidadeUsuarios; i++) {
+                String login = in.lerTexto();
+                if (in.lerByte() == 1) {
+                    indice.put(login, in.lerLong());
+                } else {
+                    removidos.put(login, null);
+                }
+            }
+            Map<String, Lapide> lapides = new HashMap<>();
+            if (versao >= 4) {
+                int quantidadeLapides = in.lerInt();
+                for (int i = 0; i < quantidadeLapides; i++) {
+                    in.lerInt();
+                    String login = in.lerTexto();
+                    lapides.put(login, in.lerByte() == 1 ? Lapide.ler(login, in, versao, tabela) : null);
+                }
+            }
+
+            ArquivoAberto aberto = new ArquivoAberto(arquivo, canal, in, versao, tabela);
+            Map<String, Usuario> usuarios;
+            if (preguicoso && versao >= 3 && !indice.isEmpty()) {
+                usuarios = new MapaPreguicoso<>(indice, aberto::lerUsuario, aberto);
+                manterAberto = true;
+            } else {
+                usuarios = new HashMap<>(Math.max(16, quantidadeUsuarios * 4 / 3 + 1));
+                for (Map.Entry<String, Long> entrada : ordenarPorPosicao(indice)) {
+                    usuarios.put(entrada.getKey(), aberto.lerUsuario(entrada.getKey(), entrada.getValue()));
+                }
+            }
+            usuarios.putAll(removidos);
+            Segmento segmento = new Segmento(lsn, completo, usuarios);
+            segmento.setIndicesReversos(versao >= 3);
+            segmento.getComunidades().putAll(comunidades);
+            segmento.getSessoes().putAll(sessoes);
+            segmento.getInstantesSessoes().putAll(instantesSessoes);
+            segmento.getLapides().putAll(lapides);
+            segmento.getIds().putAll(ids.getIds());
+            segmento.setProximoId(ids.getProximoId());
+            segmento.setTabelaLogins(tabela);
+            return segmento;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            throw new IOException("Snapshot " + arquivo + " corrompido: " + e, e);
+        } finally {
+            if (!manterAberto) {
+                canal.close();
+            }
+        }
+    }
+
+    /**
+     * L um snapshot da verso 1, em que os registros de usurio trazem o login e um nico CRC
+     * cobre o arquivo inteiro.
+     */
+    private static Segmento lerVersao1(FileChannel canal, File arquivo, TabelaDeLogins tabela) throws IOException {
+        verificarCrc(canal, arquivo);
+        LeitorBinario in = new LeitorBinario(canal);
+        in.garantir(TAMANHO_CABECALHO);
+        in.posicionar(4 + 2);
+        boolean completo = in.lerByte() == 1;
+        long lsn = in.lerLong();
+
+        in.garantir(4);
+        int quantidadeUsuarios = in.lerInt();
+        Segmento segmento = new Segmento(lsn, completo, quantidadeUsuarios);
+        segmento.setIndicesReversos(false);
+        for (int i = 0; i < quantidadeUsuarios; i++) {
+            in.garantir(4);
+            in.garantir(in.lerInt());
+            String login = in.lerTexto();
+            segmento.getUsuarios().put(login, in.lerByte() == 1 ? Usuario.ler(login, in, 1, tabela) : null);
+        }
+
+        in.garantir(4);
+        int quantidadeComunidades = in.lerInt();
+        for (int i = 0; i < quantidadeComunidades; i++) {
+            in.garantir(4);
+            in.garantir(in.lerInt());
+            String nome = in.lerTexto();
+            segmento.getComunidades().put(nome, in.lerByte() == 1 ? Comunidade.ler(nome, in, 1, tabela) : null);
+        }
+
+        in.garantir(4);
+        int quantidadeSessoes = in.lerInt();
+        in.garantir((int) Math.min(Integer.MAX_VALUE, in.getRestante()));
+        for (int i = 0; i < quantidadeSessoes; i++) {
+            String id = in.lerTexto();
+            segmento.getSessoes().put(id, in.lerByte() == 1 ? in.lerTexto() : null);
+        }
+        segmento.setTabelaLogins(tabela);
+        return segmento;
+    }
+
+    /**
+     * L um snapshot gravado com serializao Java: um {@link Segmento} ou, no formato mais
+     * antigo, o prprio {@link Sistema}.
+     *
+     * @param arquivo Arquivo do snapshot antigo.
+     * @return O estado completo contido no arquivo.
+     * @throws IOException Se o arquivo no puder ser lido ou no contiver um estado conhecido.
+     */
+    public static Segmento lerLegado(File arquivo) throws IOException {
+        return lerLegado(arquivo, new TabelaDeLogins());
+    }
+
+    private static Segmento lerLegado(File arquivo, TabelaDeLogins tabela) throws IOException {
+        TabelaDeLogins.usarNaDesserializacao(tabela);
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(arquivo), 1 << 16))) {
+            Object lido = in.readObject();
+            Segmento segmento;
+            if (lido instanceof Sistema) {
+                segmento = ((Sistema) lido).capturarCompleto();
+                segmento.setIndicesReversos(false);
+            } else if (lido instanceof Segmento) {
+                segmento = (Segmento) lido;
+            } else {
+                throw new IOException("Arquivo " + arquivo + " no contm dados do Jackut.");
+            }
+            segmento.setTabelaLogins(tabela);
+            return segmento;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Arquivo " + arquivo + " contm classes desconhecidas: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            // Objetos de uma verso antiga com estado inesperado; tratados como dados incompatveis
+            throw new IOException("Arquivo " + arquivo + " no pde ser convertido: " + e, e);
+        } finally {
+            TabelaDeLogins.usarNaDesserializacao(null);
+        }
+    }
+
+    private static int lerCabecalho(FileChannel canal) throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(2);
+        canal.read(cabecalho, 0);
+        cabecalho.flip();
+        return cabecalho.getShort() & 0xFFFF;
+    }
+
+    private static void verificarCrc(FileChannel canal, File arquivo) throws IOException {
+        long tamanho = canal.size();
+        if (tamanho < 4 + 2 + 1 + 8 + 4) {
+            throw new IOException("Snapshot " + arquivo + " truncado.");
+        }
+        CRC32 crc = new CRC32();
+        long janela = 1L << 30;
+        for (long posicao = 0; posicao < tamanho - 4; posicao += janela) {
+            crc.update(canal.map(FileChannel.MapMode.READ_ONLY, posicao, Math.min(janela, tamanho - 4 - posicao)));
+        }
+        ByteBuffer rodape = ByteBuffer.allocate(4);
+        canal.read(rodape, tamanho - 4);
+        rodape.flip();
+        if (rodape.getInt() != (int) crc.getValue()) {
+            throw new IOException("Snapshot " + arquivo + " corrompido (CRC invlido).");
+        }
+    }
+
+    /**
+     * Confere o CRC do rodap (cabealho, metadados e rodap) de um snapshot da verso atual.
+     *
+     * @return Posio dos metadados.
+     */
+    private static long verificarMetadados(FileChannel canal, File arquivo) throws IOException {
+        long tamanho = canal.size();
+        if (tamanho < TAMANHO_CABECALHO + TAMANHO_RODAPE) {
+            throw new IOException("Snapshot " + arquivo + " truncado.");
+        }
+        ByteBuffer rodape = ByteBuffer.allocate(TAMANHO_RODAPE);
+        canal.read(rodape, tamanho - TAMANHO_RODAPE);
+        rodape.flip();
+        long metadados = rodape.getLong();
+        if (metadados < TAMANHO_CABECALHO || metadados > tamanho - TAMANHO_RODAPE) {
+            throw new IOException("Snapshot " + arquivo + " corrompido (rodap invlido).");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(canal.map(FileChannel.MapMode.READ_ONLY, 0, TAMANHO_CABECALHO));
+        long janela = 1L << 30;
+        for (long posicao = metadados; posicao < tamanho - 4; posicao += janela) {
+            crc.update(canal.map(FileChannel.MapMode.READ_ONLY, posicao, Math.min(janela, tamanho - 4 - posicao)));
+        }
+        if (rodape.getInt() != (int) crc.getValue()) {
+            throw new IOException("Snapshot " + arquivo + " corrompido (CRC invlido).");
+        }
+        return metadados;
+    }
+
+    private static List<Map.Entry<String, Long>> ordenarPorPosicao(Map<String, Long> indice) {
+        List<Map.Entry<String, Long>> entradas = new ArrayList<>(indice.entrySet());
+        entradas.sort(Map.Entry.comparingByValue());
+        return entradas;
+    }
+
+    /**
+     * Snapshot aberto do qual os usurios so lidos sob demanda, cada um conferido pelo prprio CRC.
+     */
+    private static final class ArquivoAberto implements Closeable {
+        private final File arquivo;
+        private final FileChannel canal;
+        private final LeitorBinario in;
+        private final int versao;
+        private final TabelaDeLogins tabelaLogins;
+        private final CRC32 crc = new CRC32();
+
+        ArquivoAberto(File arquivo, FileChannel canal, LeitorBinario in, int versao, TabelaDeLogins tabelaLogins) {
+            this.arquivo = arquivo;
+            this.canal = canal;
+            this.in = in;
+            this.versao = versao;
+            this.tabelaLogins = tabelaLogins;
+        }
+
+        synchronized Usuario lerUsuario(String login, long posicao) {
+            try {
+                in.posicionar(posicao);
+                in.garantir(8);
+                int tamanho = in.lerInt();
+                int esperado = in.lerInt();
+                ByteBuffer registro = in.fatia(tamanho);
+                crc.reset();
+                crc.update(registro.duplicate());
+                if ((int) crc.getValue() != esperado) {
+                    throw new IOException("Usurio " + login + " corrompido no snapshot " + arquivo + " (CRC invlido).");
+                }
+                return Usuario.ler(login, new LeitorBinario(registro), versao, tabelaLogins);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            canal.close();
+        }
+    }
+}
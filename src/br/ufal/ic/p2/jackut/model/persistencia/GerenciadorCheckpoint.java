@@ -0,0 +1,317 @@
+package br.ufal.ic.p2.jackut.model.persistencia;
+
+import br.ufal.ic.p2.jackut.model.models.TabelaDeLogins;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Responsvel pelos arquivos de snapshot do Jackut: o snapshot base ({@code dados.jkt}) e os
+ * segmentos incrementais ({@code dados.seg.000001}, ...) gravados pelos checkpoints, todos no
+ * formato binrio de {@link FormatoSnapshot}.
+ *
+ * <p>Cada checkpoint grava apenas os objetos alterados desde o anterior. O estado  serializado
+ * em memria na thread que pede o checkpoint (custo proporcional ao que mudou) e a escrita em
+ * disco acontece em uma thread de fundo, sem bloquear as chamadas da fachada. Quando o nmero de
+ * segmentos passa do limite configurado, a mesma thread os funde no snapshot base.</p>
+ *
+ * <p>Se a gravao de um segmento falhar, as geraes do dirio que ele cobriria so mantidas e
+ * o erro  avisado, sem ficar pendente para as chamadas seguintes; como os objetos capturados j
+ * saram do rastreamento de alteraes, {@link #precisaCheckpointCompleto()} passa a indicar que
+ * o prximo checkpoint deve gravar o estado completo, e s assim o dirio volta a ser descartado
+ * sem perder o que o segmento perdido continha.</p>
+ */
+public class GerenciadorCheckpoint implements Closeable {
+    /** Tamanho da gerao do dirio (em bytes) que dispara um checkpoint. */
+    public static final String PROPRIEDADE_LIMITE_DIARIO = "jackut.checkpoint.bytes";
+    /** Quantidade de segmentos incrementais que dispara a fuso com o snapshot base. */
+    public static final String PROPRIEDADE_MAXIMO_SEGMENTOS = "jackut.checkpoint.segmentos";
+    /** Se {@code true}, o snapshot base  aberto sem ler os usurios, que so lidos sob demanda. */
+    public static final String PROPRIEDADE_CARGA_PREGUICOSA = "jackut.carga.preguicosa";
+
+    private final File diretorio;
+    private final String arquivoBase;
+    private final String nomeSegmentos;
+    private final long limiteDiario;
+    private final int maximoSegmentos;
+    private final boolean preguicoso;
+    private final ExecutorService executor;
+
+    private long proximoSegmento;
+    private volatile Future<?> emAndamento;
+    /** Erro do ltimo segmento perdido, at que um estado completo seja gravado; ou {@code null}. */
+    private volatile Exception falha;
+
+    /**
+     * Cria o gerenciador para os arquivos de um diretrio.
+     *
+     * @param diretorio Diretrio dos arquivos de dados.
+     * @param arquivoBase Nome do snapshot base (ex.: {@code "dados.jkt"}).
+     * @param nomeSegmentos Nome base dos segmentos (ex.: {@code "dados.seg"}).
+     */
+    public GerenciadorCheckpoint(File diretorio, String arquivoBase, String nomeSegmentos) {
+        this.diretorio = diretorio;
+        this.arquivoBase = arquivoBase;
+        this.nomeSegmentos = nomeSegmentos;
+        this.limiteDiario = Long.getLong(PROPRIEDADE_LIMITE_DIARIO, 4L * 1024 * 1024);
+        this.maximoSegmentos = Integer.getInteger(PROPRIEDADE_MAXIMO_SEGMENTOS, 8);
+        this.preguicoso = Boolean.getBoolean(PROPRIEDADE_CARGA_PREGUICOSA);
+        List<Long> existentes = listarSegmentos();
+        this.proximoSegmento = existentes.isEmpty() ? 1 : existentes.get(existentes.size() - 1) + 1;
+        this.executor = Executors.newSingleThreadExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "jackut-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * L o snapshot base e aplica sobre ele todos os segmentos posteriores. Com a carga
+     * preguiosa ativada, os usurios do snapshot base no so lidos aqui: o mapa de usurios do
+     * estado devolvido  um {@link MapaPreguicoso} que os l do arquivo na primeira consulta.
+     *
+     * <p>Os IDs dos logins de todos os arquivos so lidos e combinados antes dos objetos, que so
+     * lidos com uma s tabela de logins, devolvida com o estado: um ID gravado por um segmento que
+     * substitui o estado anterior (depois de {@code zerarSistema}) nunca colide com os dos
+     * arquivos anteriores.</p>
+     *
+     * @return O estado completo mais recente em disco, ou {@code null} se no houver snapshot.
+     * @throws IOException Se ocorrer erro de leitura ou algum arquivo estiver corrompido.
+     */
+    public Segmento carregar() throws IOException {
+        return carregar(preguicoso);
+    }
+
+    private Segmento carregar(boolean preguicoso) throws IOException {
+        File base = new File(diretorio, arquivoBase);
+        List<Long> segmentos = listarSegmentos();
+        Segmento ids = null;
+        if (base.exists()) {
+            ids = FormatoSnapshot.lerIds(base);
+        }
+        for (long numero : segmentos) {
+            ids = sobrepor(ids, FormatoSnapshot.lerIds(arquivoSegmento(numero)));
+        }
+        if (ids == null) {
+            return null;
+        }
+        TabelaDeLogins tabela = ids.criarTabelaLogins();
+
+        Segmento estado = null;
+        if (base.exists()) {
+            estado = preguicoso ? FormatoSnapshot.abrir(base, tabela) : FormatoSnapshot.ler(base, tabela);
+        }
+        for (long numero : segmentos) {
+            estado = sobrepor(estado, FormatoSnapshot.ler(arquivoSegmento(numero), tabela));
+        }
+        estado.setTabelaLogins(tabela);
+        return estado;
+    }
+
+    /** Aplica um segmento sobre o estado lido at aqui, se ele ainda no estiver refletido. */
+    private static Segmento sobrepor(Segmento estado, Segmento segmento) {
+        if (estado == null) {
+            estado = new Segmento(0, true, segmento.getUsuarios().size());
+        }
+        if (segmento.getLsn() > estado.getLsn() || segmento.isCompleto()) {
+            estado.sobrepor(segmento);
+        }
+        return estado;
+    }
+
+    /**
+     * Indica se a gerao atual do dirio j cresceu o suficiente para justificar um checkpoint
+     * e se no h outro checkpoint em andamento.
+     *
+     * @param bytesDiario Tamanho da gerao atual do dirio.
+     * @return {@code true} se um novo checkpoint deve ser iniciado.
+     */
+    public boolean deveFazerCheckpoint(long bytesDiario) {
+        Future<?> atual = emAndamento;
+        return bytesDiario >= limiteDiario && (atual == null || atual.isDone());
+    }
+
+    /**
+     * Indica se algum segmento deixou de ser gravado desde o ltimo estado completo em disco. Nesse
+     * caso os segmentos seguintes precisam ser completos, pois as alteraes do segmento perdido
+     * no esto mais no rastreamento de quem os captura. Deve ser consultado com o checkpoint
+     * anterior concludo.
+     *
+     * @return {@code true} se o prximo checkpoint deve gravar o estado completo.
+     */
+    public boolean precisaCheckpointCompleto() {
+        return falha != null;
+    }
+
+    /**
+     * Grava um segmento em segundo plano. O segmento  serializado imediatamente, de modo que
+     * alteraes posteriores nos objetos no o afetam. Se a gravao falhar, {@code aposGravar}
+     * no  executada e o erro  registrado para {@link #precisaCheckpointCompleto()} e
+     * {@link #verificarFalha()}.
+     *
+     * @param segmento Segmento com os objetos alterados, ou com o estado completo.
+     * @param aposGravar Ao executada depois que o segmento est durvel (ex.: descartar o dirio).
+     * @return Tamanho do segmento serializado, em bytes.
+     */
+    public int gravarSegmento(Segmento segmento, Runnable aposGravar) {
+        EscritorBinario bytes = FormatoSnapshot.escrever(segmento);
+        boolean completo = segmento.isCompleto();
+        long numero = proximoSegmento++;
+        emAndamento = executor.submit(() -> {
+            try {
+                gravarAtomicamente(arquivoSegmento(numero), bytes);
+            } catch (IOException | RuntimeException e) {
+                falha = e;
+                System.err.println("Aviso: falha ao gravar o checkpoint " + numero + " (" + e.getMessage()
+                        + "); o dirio ser mantido e o prximo checkpoint ser completo.");
+                return;
+            }
+            if (completo) {
+                falha = null;
+            }
+            aposGravar.run();
+            if (listarSegmentos().size() >= maximoSegmentos) {
+                try {
+                    compactar();
+                } catch (IOException | RuntimeException e) {
+                    // A base e os segmentos continuam vlidos; a fuso  tentada no prximo checkpoint
+                    System.err.println("Aviso: falha ao fundir os segmentos no snapshot base: " + e);
+                }
+            }
+        });
+        return bytes.getTamanho();
+    }
+
+    /**
+     * Lana o erro do ltimo segmento perdido, se nenhum estado completo tiver sido gravado depois
+     * dele. Usado por quem precisa saber se o que pediu para gravar est em disco.
+     *
+     * @throws RuntimeException Se houver um segmento perdido.
+     */
+    public void verificarFalha() {
+        Exception atual = falha;
+        if (atual != null) {
+            throw new RuntimeException("Erro ao gravar checkpoint: " + atual.getMessage(), atual);
+        }
+    }
+
+    /**
+     * Grava um snapshot base completo e apaga todos os segmentos, aguardando a concluso.
+     *
+     * @param completo Estado completo do sistema.
+     * @return Tamanho do snapshot gravado, em bytes.
+     */
+    public int gravarBase(Segmento completo) {
+        EscritorBinario bytes = FormatoSnapshot.escrever(completo);
+        aguardar(executor.submit(() -> {
+            gravarAtomicamente(new File(diretorio, arquivoBase), bytes);
+            apagarSegmentos(Long.MAX_VALUE);
+            falha = null;
+            return null;
+        }));
+        return bytes.getTamanho();
+    }
+
+    /**
+     * Retorna o tamanho em disco do snapshot base e dos segmentos, isto , quanto uma carga l.
+     *
+     * @return Soma dos tamanhos dos arquivos, em bytes.
+     */
+    public long getBytesEmDisco() {
+        long total = new File(diretorio, arquivoBase).length();
+        for (long numero : listarSegmentos()) {
+            total += arquivoSegmento(numero).length();
+        }
+        return total;
+    }
+
+    /**
+     * Aguarda o trmino do checkpoint em andamento, se houver. No lana a falha de um segmento,
+     * que  consultada com {@link #precisaCheckpointCompleto()} e {@link #verificarFalha()}.
+     */
+    public void aguardar() {
+        Future<?> atual = emAndamento;
+        if (atual != null) {
+            aguardar(atual);
+        }
+    }
+
+    /**
+     * Aguarda os checkpoints pendentes e encerra a thread de fundo.
+     */
+    @Override
+    public void close() {
+        aguardar();
+        executor.shutdown();
+    }
+
+    /**
+     * Funde o snapshot base com os segmentos existentes, gerando um novo snapshot base.
+     * Roda apenas na thread de fundo e l tudo do disco, sem tocar no estado em memria.
+     */
+    private void compactar() throws IOException {
+        List<Long> segmentos = listarSegmentos();
+        Segmento estado = carregar(false);
+        if (estado == null || segmentos.isEmpty()) {
+            return;
+        }
+        estado.registrarIds(estado.getTabelaLogins()); // S os IDs dos objetos que continuam no estado
+        gravarAtomicamente(new File(diretorio, arquivoBase), FormatoSnapshot.escrever(estado));
+        apagarSegmentos(segmentos.get(segmentos.size() - 1));
+    }
+
+    private void gravarAtomicamente(File destino, EscritorBinario bytes) throws IOException {
+        File temporario = new File(destino.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temporario)) {
+            out.write(bytes.getDados(), 0, bytes.getTamanho());
+            out.getFD().sync();
+        }
+        Files.move(temporario.toPath(), destino.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void apagarSegmentos(long ate) {
+        for (long numero : listarSegmentos()) {
+            if (numero <= ate) {
+                arquivoSegmento(numero).delete();
+            }
+        }
+    }
+
+    private File arquivoSegmento(long numero) {
+        return new File(diretorio, String.format("%s.%06d", nomeSegmentos, numero));
+    }
+
+    private List<Long> listarSegmentos() {
+        List<Long> numeros = new ArrayList<>();
+        String[] nomes = diretorio.list();
+        if (nomes != null) {
+            for (String nome : nomes) {
+                if (nome.startsWith(nomeSegmentos + ".")) {
+                    try {
+                        numeros.add(Long.parseLong(nome.substring(nomeSegmentos.length() + 1)));
+                    } catch (NumberFormatException e) {
+                        // Arquivo temporrio ou que no pertence aos segmentos.
+                    }
+                }
+            }
+        }
+        Collections.sort(numeros);
+        return numeros;
+    }
+
+    private static void aguardar(Future<?> tarefa) {
+        try {
+            tarefa.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrompido aguardando o checkpoint.", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Erro ao gravar checkpoint: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package br.ufal.ic.p2.jackut.model.persistencia;
+
+import br.ufal.ic.p2.jackut.model.exceptions.UsuarioJaMembroException;
+import br.ufal.ic.p2.jackut.model.models.Comunidade;
+import br.ufal.ic.p2.jackut.model.models.TabelaDeLogins;
+import br.ufal.ic.p2.jackut.model.models.Usuario;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Importa para um segmento completo os dados de outra rede, lidos de arquivos de texto com um
+ * registro por linha e campos separados por tabulao (UTF-8). Cada tipo de dado tem um arquivo
+ * prprio no diretrio informado; arquivos ausentes so ignorados. Os arquivos so lidos na ordem
+ * de {@link Arquivo}, para que usurios e comunidades existam antes das relaes que os citam.
+ * Linhas vazias ou iniciadas por {@code #} so ignoradas.
+ *
+ * <p>A leitura  um pipeline: a thread que importa l as linhas em blocos e os entrega a threads
+ * de anlise ({@value #PROPRIEDADE_THREADS}), que separam e validam os campos; os blocos
+ * analisados so aplicados ao segmento na ordem do arquivo. No mximo dois blocos por thread
+ * ficam em memria ao mesmo tempo, de modo que o consumo no depende do tamanho dos arquivos, s
+ * do estado importado. O mapa de usurios  dimensionado pela contagem prvia das linhas do
+ * arquivo de usurios.</p>
+ *
+ * <p>Cada linha segue as regras da operao correspondente do sistema (usurios existentes, sem
+ * repetio, sem relao consigo mesmo, sem amizade, dolo ou paquera com quem o declarou
+ * inimigo); linhas que as violam so contadas como rejeitadas e no interrompem a importao. Um
+ * pedido de amizade presente nos dois sentidos vira amizade direto, sem passar por convite; em um
+ * s sentido, fica como convite pendente. Paqueras recprocas no geram recados.</p>
+ */
+public class ImportadorDeDados {
+    /** Quantidade de threads que analisam as linhas. */
+    public static final String PROPRIEDADE_THREADS = "jackut.importacao.threads";
+
+    private static final int LINHAS_POR_BLOCO = 4096;
+
+    /**
+     * Arquivos lidos pelo importador, na ordem de leitura, com os campos de cada linha.
+     */
+    public enum Arquivo {
+        /** {@code login, senha, nome} */
+        USUARIOS("usuarios.tsv", 3),
+        /** {@code login, atributo, valor} */
+        PERFIS("perfis.tsv", 3),
+        /** {@code nome, dono, descrio} */
+        COMUNIDADES("comunidades.tsv", 3),
+        /** {@code login, inimigo} */
+        INIMIGOS("inimigos.tsv", 2),
+        /** {@code login, amigo} */
+        AMIZADES("amizades.tsv", 2),
+        /** {@code f, dolo} */
+        IDOLOS("idolos.tsv", 2),
+        /** {@code login, paquera} */
+        PAQUERAS("paqueras.tsv", 2),
+        /** {@code comunidade, login} */
+        MEMBROS("membros.tsv", 2);
+
+        private final String nome;
+        private final int campos;
+
+        Arquivo(String nome, int campos) {
+            this.nome = nome;
+            this.campos = campos;
+        }
+
+        /** @return Nome do arquivo no diretrio de importao. */
+        public String getNome() { return nome; }
+    }
+
+    private final File diretorio;
+    private final int threads;
+    private final long[] importadas = new long[Arquivo.values().length];
+    private final long[] rejeitadas = new long[Arquivo.values().length];
+
+    /**
+     * Cria um importador para os arquivos de um diretrio.
+     *
+     * @param diretorio Diretrio com os arquivos de {@link Arquivo}.
+     */
+    public ImportadorDeDados(File diretorio) {
+        this.diretorio = diretorio;
+        this.threads = Math.max(1, Integer.getInteger(PROPRIEDADE_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * L todos os arquivos e monta o estado importado.
+     *
+     * @return Segmento completo com os usurios e comunidades importados, sem sesses, e a tabela
+     *         de logins nova em que eles receberam os IDs.
+     * @throws IOException Se ocorrer erro ao ler algum arquivo.
+     */
+    public Segmento importar() throws IOException {
+        File arquivoUsuarios = new File(diretorio, Arquivo.USUARIOS.getNome());
+        long usuarios = arquivoUsuarios.isFile() ? contarLinhas(arquivoUsuarios) : 0;
+        Segmento estado = new Segmento(0, true, (int) Math.min(usuarios, Integer.MAX_VALUE / 2));
+        estado.setTabelaLogins(new TabelaDeLogins());
+        AtomicInteger numero = new AtomicInteger();
+        ExecutorService analisadores = Executors.newFixedThreadPool(threads, tarefa -> {
+            Thread thread = new Thread(tarefa, "jackut-importacao-" + numero.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (Arquivo arquivo : Arquivo.values()) {
+                File origem = new File(diretorio, arquivo.getNome());
+                if (origem.isFile()) {
+                    importar(origem, arquivo, estado, analisadores);
+                }
+            }
+        } finally {
+            analisadores.shutdownNow();
+        }
+        return estado;
+    }
+
+    /**
+     * @param arquivo Arquivo de importao.
+     * @return Linhas aplicadas ao estado importado.
+     */
+    public long getImportadas(Arquivo arquivo) {
+        return importadas[arquivo.ordinal()];
+    }
+
+    /**
+     * @param arquivo Arquivo de importao.
+     * @return Linhas malformadas ou que violam as regras do sistema.
+     */
+    public long getRejeitadas(Arquivo arquivo) {
+        return rejeitadas[arquivo.ordinal()];
+    }
+
+    /**
+     * L um arquivo em blocos, entrega cada bloco  anlise e aplica os blocos analisados na ordem
+     * de leitura, mantendo no mximo {@code 2 * threads} blocos em andamento.
+     */
+    private void importar(File origem, Arquivo arquivo, Segmento estado, ExecutorService analisadores) throws IOException {
+        ArrayDeque<Future<String[][]>> emAnalise = new ArrayDeque<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(origem), StandardCharsets.UTF_8), 1 << 16)) {
+            List<String> bloco = new ArrayList<>(LINHAS_POR_BLOCO);
+            String linha;
+            while ((linha = in.readLine()) != null) {
+                bloco.add(linha);
+                if (bloco.size() == LINHAS_POR_BLOCO) {
+                    List<String> linhas = bloco;
+                    emAnalise.add(analisadores.submit(() -> analisar(linhas, arquivo.campos)));
+                    bloco = new ArrayList<>(LINHAS_POR_BLOCO);
+                    if (emAnalise.size() >= 2 * threads) {
+                        aplicar(aguardar(emAnalise.poll()), arquivo, estado);
+                    }
+                }
+            }
+            if (!bloco.isEmpty()) {
+                List<String> linhas = bloco;
+                emAnalise.add(analisadores.submit(() -> analisar(linhas, arquivo.campos)));
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Future<String[][]> pendente : emAnalise) {
+                pendente.cancel(true);
+            }
+            throw e;
+        }
+        while (!emAnalise.isEmpty()) {
+            aplicar(aguardar(emAnalise.poll()), arquivo, estado);
+        }
+    }
+
+    /**
+     * Separa os campos das linhas de um bloco. Linhas ignoradas ficam fora do resultado; linhas
+     * malformadas viram {@code null}.
+     */
+    private static String[][] analisar(List<String> linhas, int campos) {
+        String[][] registros = new String[linhas.size()][];
+        int quantidade = 0;
+        for (String linha : linhas) {
+            if (linha.isEmpty() || linha.charAt(0) == '#') {
+                continue;
+            }
+            if (linha.charAt(linha.length() - 1) == '\r') {
+                linha = linha.substring(0, linha.length() - 1);
+            }
+            String[] registro = linha.split("\t", campos); // O ltimo campo fica com o resto da linha
+            registros[quantidade++] = registro.length == campos ? registro : null;
+        }
+        return quantidade == registros.length ? registros : Arrays.copyOf(registros, quantidade);
+    }
+
+    private void aplicar(String[][] registros, Arquivo arquivo, Segmento estado) {
+        Map<String, Usuario> usuarios = estado.getUsuarios();
+        Map<String, Comunidade> comunidades = estado.getComunidades();
+        TabelaDeLogins tabela = estado.getTabelaLogins();
+        for (String[] registro : registros) {
+            boolean aplicado = registro != null && switch (arquivo) {
+                case USUARIOS -> criarUsuario(usuarios, registro[0], registro[1], registro[2], tabela);
+                case PERFIS -> editarPerfil(usuarios.get(registro[0]), registro[1], registro[2]);
+                case COMUNIDADES -> criarComunidade(usuarios, comunidades, registro[0], registro[1], registro[2], tabela);
+                case INIMIGOS -> adicionarInimigo(usuarios, registro[0], registro[1].toLowerCase());
+                case AMIZADES -> adicionarAmigo(usuarios, registro[0], registro[1]);
+                case IDOLOS -> adicionarIdolo(usuarios, registro[0], registro[1]);
+                case PAQUERAS -> adicionarPaquera(usuarios, registro[0], registro[1]);
+                case MEMBROS -> adicionarMembro(usuarios, comunidades.get(registro[0]), registro[1]);
+            };
+            if (aplicado) {
+                importadas[arquivo.ordinal()]++;
+            } else {
+                rejeitadas[arquivo.ordinal()]++;
+            }
+        }
+    }
+
+    private static boolean criarUsuario(Map<String, Usuario> usuarios, String login, String senha, String nome,
+                                        TabelaDeLogins tabela) {
+        if (login.isEmpty() || senha.isEmpty() || usuarios.containsKey(login)) {
+            return false;
+        }
+        usuarios.put(login, new Usuario(login, senha, nome, tabela));
+        return true;
+    }
+
+    private static boolean editarPerfil(Usuario usuario, String atributo, String valor) {
+        if (usuario == null) {
+            return false;
+        }
+        usuario.editarAtributo(atributo, valor);
+        return true;
+    }
+
+    private static boolean criarComunidade(Map<String, Usuario> usuarios, Map<String, Comunidade> comunidades,
+                                           String nome, String dono, String descricao, TabelaDeLogins tabela) {
+        Usuario usuario = usuarios.get(dono);
+        if (usuario == null || comunidades.containsKey(nome)) {
+            return false;
+        }
+        Comunidade comunidade = new Comunidade(nome, descricao, dono, tabela);
+        comunidades.put(nome, comunidade);
+        usuario.adicionarComunidade(comunidade);
+        return true;
+    }
+
+    private static boolean adicionarInimigo(Map<String, Usuario> usuarios, String login, String inimigo) {
+        Usuario usuario = usuarios.get(login);
+        Usuario outro = usuarios.get(inimigo);
+        if (usuario == null || outro == null || usuario == outro || usuario.ehInimigo(inimigo)) {
+            return false;
+        }
+        usuario.adicionarInimigo(inimigo);
+        outro.getInimigoDe().add(login);
+        return true;
+    }
+
+    /**
+     * Registra um pedido de amizade. Se o outro j tiver pedido a amizade deste, os dois viram
+     * amigos direto; seno, o pedido fica como convite pendente.
+     */
+    private static boolean adicionarAmigo(Map<String, Usuario> usuarios, String login, String amigo) {
+        Usuario usuario = usuarios.get(login);
+        Usuario outro = usuarios.get(amigo);
+        if (usuario == null || outro == null || usuario == outro || outro.ehInimigo(login)
+                || usuario.ehAmigo(amigo) || usuario.possuiConvitePara(amigo)) {
+            return false;
+        }
+        if (outro.possuiConvitePara(login)) {
+            usuario.adicionarAmigo(amigo);
+            outro.adicionarAmigo(login);
+        } else {
+            usuario.enviarConvite(amigo);
+            outro.receberConvite(login);
+        }
+        return true;
+    }
+
+    private static boolean adicionarIdolo(Map<String, Usuario> usuarios, String login, String idolo) {
+        Usuario usuario = usuarios.get(login);
+        Usuario outro = usuarios.get(idolo);
+        if (usuario == null || outro == null || usuario == outro || outro.ehInimigo(login) || usuario.ehFa(idolo)) {
+            return false;
+        }
+        usuario.adicionarIdolo(idolo);
+        outro.adicionarFa(login);
+        return true;
+    }
+
+    private static boolean adicionarPaquera(Map<String, Usuario> usuarios, String login, String paquera) {
+        Usuario usuario = usuarios.get(login);
+        Usuario outro = usuarios.get(paquera);
+        if (usuario == null || outro == null || usuario == outro || outro.ehInimigo(login) || usuario.ehPaquera(paquera)) {
+            return false;
+        }
+        usuario.adicionarPaquera(paquera);
+        outro.getPaqueradoPor().add(login);
+        return true;
+    }
+
+    private static boolean adicionarMembro(Map<String, Usuario> usuarios, Comunidade comunidade, String login) {
+        Usuario usuario = usuarios.get(login);
+        if (usuario == null || comunidade == null) {
+            return false;
+        }
+        try {
+            comunidade.adicionarMembro(login);
+        } catch (UsuarioJaMembroException e) {
+            return false;
+        }
+        usuario.adicionarComunidade(comunidade);
+        return true;
+    }
+
+    /**
+     * Conta as linhas de um arquivo sem decodific-lo, para dimensionar os mapas.
+     */
+    private static long contarLinhas(File arquivo) throws IOException {
+        long linhas = 0;
+        byte[] buffer = new byte[1 << 16];
+        int ultimo = '\n';
+        try (InputStream in = new FileInputStream(arquivo)) {
+            int lidos;
+            while ((lidos = in.read(buffer)) > 0) {
+                for (int i = 0; i < lidos; i++) {
+                    if (buffer[i] == '\n') {
+                        linhas++;
+                    }
+                }
+                ultimo = buffer[lidos - 1];
+            }
+        }
+        return ultimo == '\n' ? linhas : linhas + 1;
+    }
+
+    private static String[][] aguardar(Future<String[][]> bloco) throws IOException {
+        try {
+            return bloco.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrompido durante a importao.");
+        } catch (ExecutionException e) {
+            throw new IOException("Erro ao analisar linhas: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
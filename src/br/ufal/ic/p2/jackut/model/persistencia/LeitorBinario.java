@@ -0,0 +1,193 @@
+package br.ufal.ic.p2.jackut.model.persistencia;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Leitor do formato binrio de snapshot do Jackut sobre um arquivo mapeado em memria
+ * ({@link java.nio.MappedByteBuffer}). Arquivos maiores que a janela de mapeamento so lidos em
+ * janelas sucessivas: antes de cada registro, {@link #garantir(int)} remapeia o arquivo a partir
+ * da posio atual se o registro no couber no trecho mapeado.
+ *
+ * @see EscritorBinario
+ */
+public class LeitorBinario {
+    private static final long JANELA = 1L << 30;
+
+    private final FileChannel canal;
+    private final long tamanhoArquivo;
+    private long inicioJanela;
+    private ByteBuffer buffer;
+    private byte[] temporario = new byte[256];
+
+    /**
+     * Cria um leitor sobre um arquivo aberto para leitura.
+     *
+     * @param canal Canal do arquivo.
+     * @throws IOException Se ocorrer erro ao mapear o arquivo.
+     */
+    public LeitorBinario(FileChannel canal) throws IOException {
+        this.canal = canal;
+        this.tamanhoArquivo = canal.size();
+        mapear(0);
+    }
+
+    /**
+     * Cria um leitor sobre um buffer j carregado.
+     * @param buffer Buffer posicionado no incio dos dados.
+     */
+    public LeitorBinario(ByteBuffer buffer) {
+        this.canal = null;
+        this.tamanhoArquivo = buffer.remaining();
+        this.buffer = buffer;
+    }
+
+    /**
+     * Garante que os prximos {@code bytes} bytes esto acessveis na janela mapeada.
+     *
+     * @param bytes Quantidade de bytes que ser lida em seguida.
+     * @throws IOException Se o arquivo terminar antes ou ocorrer erro ao remapear.
+     */
+    public void garantir(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        long posicao = getPosicao();
+        if (canal == null || posicao + bytes > tamanhoArquivo) {
+            throw new IOException("Snapshot truncado na posio " + posicao + ".");
+        }
+        mapear(posicao);
+    }
+
+    /** @return Posio absoluta de leitura no arquivo. */
+    public long getPosicao() {
+        return inicioJanela + buffer.position();
+    }
+
+    /** @return Quantidade de bytes ainda no lidos no arquivo. */
+    public long getRestante() {
+        return tamanhoArquivo - getPosicao();
+    }
+
+    /**
+     * Move a leitura para uma posio absoluta do arquivo.
+     *
+     * @param posicao Nova posio.
+     * @throws IOException Se ocorrer erro ao remapear.
+     */
+    public void posicionar(long posicao) throws IOException {
+        if (posicao >= inicioJanela && posicao <= inicioJanela + buffer.limit()) {
+            buffer.position((int) (posicao - inicioJanela));
+        } else {
+            mapear(posicao);
+        }
+    }
+
+    /** @return Prximo byte, sem sinal. */
+    public int lerByte() {
+        return buffer.get() & 0xFF;
+    }
+
+    /** @return Prximo inteiro de 4 bytes. */
+    public int lerInt() {
+        return buffer.getInt();
+    }
+
+    /** @return Prximo inteiro de 8 bytes. */
+    public long lerLong() {
+        return buffer.getLong();
+    }
+
+    /** @return Prximo inteiro em formato varint. */
+    public int lerVarint() {
+        int valor = 0;
+        for (int deslocamento = 0; deslocamento < 35; deslocamento += 7) {
+            byte b = buffer.get();
+            valor |= (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new BufferUnderflowException();
+    }
+
+    /** @return Prximo texto, ou {@code null} se um texto nulo tiver sido gravado. */
+    public String lerTexto() {
+        int comprimento = lerVarint();
+        if (comprimento == 0) {
+            return "";
+        }
+        if (comprimento < 0) {
+            if (comprimento == -1) {
+                return null;
+            }
+            throw new BufferUnderflowException(); // Comprimento invlido: registro corrompido
+        }
+        if (buffer.hasArray()) {
+            int inicio = buffer.arrayOffset() + buffer.position();
+            buffer.position(buffer.position() + comprimento);
+            return new String(buffer.array(), inicio, comprimento, StandardCharsets.UTF_8);
+        }
+        if (temporario.length < comprimento) {
+            temporario = new byte[Math.max(comprimento, temporario.length * 2)];
+        }
+        buffer.get(temporario, 0, comprimento);
+        return new String(temporario, 0, comprimento, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * L uma coleo de textos gravada por {@link EscritorBinario#escreverTextos}.
+     *
+     * @param destino Coleo que recebe os textos, na ordem gravada.
+     * @param <C> Tipo da coleo.
+     * @return A prpria coleo de destino.
+     */
+    public <C extends Collection<String>> C lerTextos(C destino) {
+        int quantidade = lerVarint();
+        for (int i = 0; i < quantidade; i++) {
+            destino.add(lerTexto());
+        }
+        return destino;
+    }
+
+    /**
+     * L um mapa de textos gravado por {@link EscritorBinario#escreverMapa}.
+     *
+     * @param destino Mapa que recebe as entradas.
+     * @param <M> Tipo do mapa.
+     * @return O prprio mapa de destino.
+     */
+    public <M extends Map<String, String>> M lerMapa(M destino) {
+        int quantidade = lerVarint();
+        for (int i = 0; i < quantidade; i++) {
+            destino.put(lerTexto(), lerTexto());
+        }
+        return destino;
+    }
+
+    /**
+     * Retorna uma viso (sem cpia) dos prximos {@code bytes} bytes e avana a leitura.
+     *
+     * @param bytes Quantidade de bytes.
+     * @return Buffer somente leitura com o trecho.
+     * @throws IOException Se ocorrer erro ao remapear.
+     */
+    public ByteBuffer fatia(int bytes) throws IOException {
+        garantir(bytes);
+        ByteBuffer fatia = buffer.slice();
+        fatia.limit(bytes);
+        buffer.position(buffer.position() + bytes);
+        return fatia;
+    }
+
+    private void mapear(long posicao) throws IOException {
+        long tamanho = Math.min(JANELA, tamanhoArquivo - posicao);
+        inicioJanela = posicao;
+        buffer = canal.map(FileChannel.MapMode.READ_ONLY, posicao, tamanho);
+    }
+}
@@ -0,0 +1,137 @@
+package br.ufal.ic.p2.jackut.model.persistencia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Mapa cujos valores so materializados sob demanda. Cada chave comea associada a uma referncia
+ * pendente (por exemplo, a posio do registro no snapshot) e s  convertida no valor real na
+ * primeira vez que  consultada com {@link #get(Object)}.
+ *
+ * <p>{@link #containsKey(Object)}, {@link #size()}, {@link #put} e {@link #remove(Object)} no
+ * materializam nada; percorrer o mapa ({@link #entrySet()}, {@code values()}, {@code keySet()})
+ * materializa todas as entradas pendentes. Quando no resta nenhuma pendente, a origem dos dados
+ * (o arquivo mapeado)  fechada.</p>
+ *
+ * <p>O mapa pode ser usado por vrias threads: cada chave  materializada uma nica vez, mesmo
+ * que seja consultada ao mesmo tempo por mais de uma. Chaves nulas no so aceitas.</p>
+ *
+ * @param <P> Tipo da referncia pendente.
+ * @param <V> Tipo dos valores.
+ */
+public class MapaPreguicoso<P, V> extends AbstractMap<String, V> {
+    private final Map<String, V> carregados;
+    private final Map<String, P> pendentes;
+    private final BiFunction<String, P, V> hidratador;
+    private Closeable origem;
+    private volatile boolean carregadoPorCompleto;
+
+    /**
+     * Cria o mapa a partir das referncias pendentes.
+     *
+     * @param pendentes Referncia pendente de cada chave (copiada para um mapa concorrente).
+     * @param hidratador Funo que materializa o valor de uma chave; pode retornar {@code null}
+     *                   se a referncia no levar a nenhum valor.
+     * @param origem Recurso fechado quando todas as chaves forem materializadas (pode ser nulo).
+     */
+    public MapaPreguicoso(Map<String, P> pendentes, BiFunction<String, P, V> hidratador, Closeable origem) {
+        this.carregados = new ConcurrentHashMap<>(Math.max(16, pendentes.size() / 4));
+        this.pendentes = new ConcurrentHashMap<>(pendentes);
+        this.hidratador = hidratador;
+        this.origem = origem;
+        liberarSeCompleto();
+    }
+
+    /**
+     * @return {@code true} se nenhuma entrada depende mais da origem (todas foram materializadas,
+     * substitudas ou removidas).
+     */
+    public boolean isCarregadoPorCompleto() {
+        return carregadoPorCompleto;
+    }
+
+    /** @return Quantidade de entradas ainda no materializadas. */
+    public int getQuantidadePendente() {
+        return pendentes.size();
+    }
+
+    @Override
+    public V get(Object chave) {
+        V valor = carregados.get(chave);
+        if (valor != null || pendentes.isEmpty()) {
+            return valor;
+        }
+        valor = carregados.computeIfAbsent((String) chave, k -> {
+            P pendente = pendentes.get(k);
+            return pendente == null ? null : hidratador.apply(k, pendente);
+        });
+        if (pendentes.remove(chave) != null) {
+            liberarSeCompleto();
+        }
+        return valor;
+    }
+
+    @Override
+    public boolean containsKey(Object chave) {
+        return carregados.containsKey(chave) || pendentes.containsKey(chave);
+    }
+
+    @Override
+    public V put(String chave, V valor) {
+        if (pendentes.remove(chave) != null) {
+            liberarSeCompleto();
+        }
+        return carregados.put(chave, valor);
+    }
+
+    @Override
+    public V remove(Object chave) {
+        if (pendentes.remove(chave) != null) {
+            liberarSeCompleto();
+        }
+        return carregados.remove(chave);
+    }
+
+    @Override
+    public int size() {
+        return carregados.size() + pendentes.size();
+    }
+
+    @Override
+    public void clear() {
+        carregados.clear();
+        pendentes.clear();
+        liberarSeCompleto();
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        if (!pendentes.isEmpty()) {
+            for (String chave : new ArrayList<>(pendentes.keySet())) {
+                get(chave);
+            }
+        }
+        return carregados.entrySet();
+    }
+
+    private synchronized void liberarSeCompleto() {
+        if (!pendentes.isEmpty()) {
+            return;
+        }
+        carregadoPorCompleto = true;
+        if (origem != null) {
+            try {
+                origem.close();
+            } catch (IOException e) {
+                throw new RuntimeException("Erro ao fechar snapshot: " + e.getMessage(), e);
+            }
+            origem = null;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package br.ufal.ic.p2.jackut.model.persistencia;
+
+import br.ufal.ic.p2.jackut.model.models.Comunidade;
+import br.ufal.ic.p2.jackut.model.models.Lapide;
+import br.ufal.ic.p2.jackut.model.models.TabelaDeLogins;
+import br.ufal.ic.p2.jackut.model.models.Usuario;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fatia do estado do sistema gravada em disco por um checkpoint.
+ *
+ * <p>Um segmento <i>completo</i> contm todo o estado ( o snapshot base); um segmento
+ * incremental contm apenas os usurios, comunidades, sesses e lpides alterados desde o checkpoint
+ * anterior. Nos segmentos incrementais, uma chave associada a {@code null} indica que o
+ * objeto foi removido.</p>
+ */
+public class Segmento implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** LSN do ltimo registro do dirio refletido neste segmento. */
+    private long lsn;
+    /** Indica que o segmento substitui todo o estado anterior em vez de complement-lo. */
+    private boolean completo;
+    private Map<String, Usuario> usuarios;
+    private Map<String, Comunidade> comunidades;
+    /** Sesses ativas: ID da sesso para login do usurio. */
+    private Map<String, String> sessoes;
+    /**
+     * Indica que os usurios trazem os ndices reversos das relaes. Falso em dados gravados por
+     * verses antigas, cujos ndices precisam ser reconstrudos depois da carga.
+     */
+    private boolean indicesReversos = true;
+    /** Lpides das contas removidas cujo expurgo no terminou, por login. */
+    private transient Map<String, Lapide> lapides;
+    /** Instantes das sesses de {@link #sessoes}, por ID; ausentes nos dados antigos. */
+    private transient Map<String, Instantes> instantesSessoes;
+    /**
+     * IDs da {@link TabelaDeLogins} dos usurios, comunidades e lpides do segmento, para que a
+     * ordem das listagens paginadas e os cursores sobrevivam  carga; vazio nos dados antigos.
+     */
+    private transient Map<String, Integer> ids;
+    /** Prximo ID que a tabela atribuiria quando o segmento foi capturado. */
+    private transient int proximoId;
+    /** Tabela com que os objetos do segmento foram lidos; nula nos segmentos capturados. */
+    private transient TabelaDeLogins tabelaLogins;
+
+    /**
+     * Cria um segmento vazio.
+     *
+     * @param lsn LSN do ltimo registro refletido no segmento.
+     * @param completo {@code true} se o segmento contm todo o estado do sistema.
+     * @param capacidade Quantidade esperada de usurios, usada para dimensionar os mapas.
+     */
+    public Segmento(long lsn, boolean completo, int capacidade) {
+        this.lsn = lsn;
+        this.completo = completo;
+        this.usuarios = new HashMap<>(Math.max(16, capacidade * 4 / 3 + 1));
+        this.comunidades = new HashMap<>();
+        this.sessoes = new HashMap<>();
+    }
+
+    /**
+     * Cria um segmento sobre um mapa de usurios j montado (por exemplo, um {@link MapaPreguicoso}).
+     *
+     * @param lsn LSN do ltimo registro refletido no segmento.
+     * @param completo {@code true} se o segmento contm todo o estado do sistema.
+     * @param usuarios Usurios do segmento por login.
+     */
+    public Segmento(long lsn, boolean completo, Map<String, Usuario> usuarios) {
+        this.lsn = lsn;
+        this.completo = completo;
+        this.usuarios = usuarios;
+        this.comunidades = new HashMap<>();
+        this.sessoes = new HashMap<>();
+    }
+
+    /** @return LSN do ltimo registro refletido no segmento. */
+    public long getLsn() { return lsn; }
+
+    /** @return {@code true} se o segmento contm todo o estado do sistema. */
+    public boolean isCompleto() { return completo; }
+
+    /** @return Usurios do segmento por login ({@code null} indica remoo). */
+    public Map<String, Usuario> getUsuarios() { return usuarios; }
+
+    /** @return Comunidades do segmento por nome ({@code null} indica remoo). */
+    public Map<String, Comunidade> getComunidades() { return comunidades; }
+
+    /** @return Sesses do segmento: ID para login ({@code null} indica sesso encerrada). */
+    public Map<String, String> getSessoes() { return sessoes; }
+
+    /**
+     * Retorna os instantes de abertura e de ltimo uso das sesses do segmento. Uma sesso sem
+     * instantes (gravada antes de eles existirem) conta a partir da carga.
+     *
+     * @return Instantes por ID da sesso.
+     */
+    public Map<String, Instantes> getInstantesSessoes() {
+        if (instantesSessoes == null) {
+            instantesSessoes = new HashMap<>();
+        }
+        return instantesSessoes;
+    }
+
+    /** @return Lpides do segmento por login ({@code null} indica expurgo concludo). */
+    public Map<String, Lapide> getLapides() {
+        if (lapides == null) {
+            lapides = new HashMap<>();
+        }
+        return lapides;
+    }
+
+    /** @return IDs dos logins e nomes de comunidade do segmento. */
+    public Map<String, Integer> getIds() {
+        if (ids == null) {
+            ids = new HashMap<>();
+        }
+        return ids;
+    }
+
+    /** @return Prximo ID que a tabela atribuiria quando o segmento foi capturado. */
+    public int getProximoId() { return proximoId; }
+
+    /** @param proximoId Prximo ID que a tabela atribuiria. */
+    public void setProximoId(int proximoId) { this.proximoId = proximoId; }
+
+    /** @return Tabela com que os objetos do segmento foram lidos, ou {@code null}. */
+    public TabelaDeLogins getTabelaLogins() { return tabelaLogins; }
+
+    /** @param tabelaLogins Tabela com que os objetos do segmento foram lidos. */
+    public void setTabelaLogins(TabelaDeLogins tabelaLogins) { this.tabelaLogins = tabelaLogins; }
+
+    /**
+     * Guarda os IDs atuais dos usurios, comunidades e lpides presentes no segmento (os
+     * removidos no precisam de ID) e o prximo ID da tabela.
+     *
+     * @param tabela Tabela de logins do sistema capturado.
+     */
+    public void registrarIds(TabelaDeLogins tabela) {
+        getIds().clear();
+        for (Map.Entry<String, Usuario> entrada : usuarios.entrySet()) {
+            if (entrada.getValue() != null) {
+                registrarId(tabela, entrada.getKey());
+            }
+        }
+        for (Map.Entry<String, Comunidade> entrada : comunidades.entrySet()) {
+            if (entrada.getValue() != null) {
+                registrarId(tabela, entrada.getKey());
+            }
+        }
+        for (Map.Entry<String, Lapide> entrada : getLapides().entrySet()) {
+            if (entrada.getValue() != null) {
+                registrarId(tabela, entrada.getKey());
+                for (String nome : entrada.getValue().getComunidades().keySet()) {
+                    registrarId(tabela, nome);
+                }
+            }
+        }
+        proximoId = tabela.getProximo();
+    }
+
+    /**
+     * Cria uma tabela de logins com os IDs do segmento, em que os logins novos recebem IDs a
+     * partir do prximo ID gravado.
+     *
+     * @return A tabela criada.
+     */
+    public TabelaDeLogins criarTabelaLogins() {
+        TabelaDeLogins tabela = new TabelaDeLogins();
+        for (Map.Entry<String, Integer> entrada : getIds().entrySet()) {
+            try {
+                tabela.restaurar(entrada.getKey(), entrada.getValue());
+            } catch (IllegalStateException e) {
+                // ID repetido em arquivos inconsistentes: o login recebe um ID novo na leitura, e s
+                // os cursores que apontavam para ele deixam de valer
+            }
+        }
+        tabela.reservarAte(proximoId);
+        return tabela;
+    }
+
+    private void registrarId(TabelaDeLogins tabela, String login) {
+        int id = tabela.buscar(login);
+        if (id > 0) {
+            ids.put(login, id);
+        }
+    }
+
+    /** @return {@code true} se os ndices reversos dos usurios esto completos. */
+    public boolean isIndicesReversos() { return indicesReversos; }
+
+    /** @param indicesReversos Se os usurios trazem os ndices reversos das relaes. */
+    public void setIndicesReversos(boolean indicesReversos) { this.indicesReversos = indicesReversos; }
+
+    /**
+     * Aplica sobre este segmento um segmento posterior, que passa a prevalecer.
+     * O resultado continua completo se este segmento era completo.
+     *
+     * @param posterior Segmento gravado depois deste.
+     */
+    public void sobrepor(Segmento posterior) {
+        if (posterior.completo) {
+            usuarios.clear();
+            comunidades.clear();
+            sessoes.clear();
+            getInstantesSessoes().clear();
+            getLapides().clear();
+            getIds().clear();
+            proximoId = 0;
+            indicesReversos = true;
+        }
+        getIds().putAll(posterior.getIds());
+        proximoId = Math.max(proximoId, posterior.proximoId);
+        indicesReversos &= posterior.indicesReversos;
+        sobreporMapa(usuarios, posterior.usuarios);
+        sobreporMapa(comunidades, posterior.comunidades);
+        sobreporMapa(sessoes, posterior.sessoes);
+        for (String id : posterior.sessoes.keySet()) {
+            Instantes instantes = posterior.getInstantesSessoes().get(id);
+            if (instantes == null) {
+                getInstantesSessoes().remove(id);
+            } else {
+                getInstantesSessoes().put(id, instantes);
+            }
+        }
+        sobreporMapa(getLapides(), posterior.getLapides());
+        lsn = posterior.lsn;
+    }
+
+    /**
+     * Instantes de abertura e do ltimo uso de uma sesso gravada, em milissegundos.
+     */
+    public static final class Instantes {
+        private final long abertura;
+        private final long ultimoUso;
+
+        /**
+         * @param abertura Instante de abertura da sesso.
+         * @param ultimoUso Instante do ltimo uso registrado.
+         */
+        public Instantes(long abertura, long ultimoUso) {
+            this.abertura = abertura;
+            this.ultimoUso = ultimoUso;
+        }
+
+        /** @return Instante de abertura da sesso. */
+        public long getAbertura() { return abertura; }
+
+        /** @return Instante do ltimo uso registrado. */
+        public long getUltimoUso() { return ultimoUso; }
+    }
+
+    private <V> void sobreporMapa(Map<String, V> destino, Map<String, V> origem) {
+        for (Map.Entry<String, V> entrada : origem.entrySet()) {
+            if (entrada.getValue() == null && completo) {
+                destino.remove(entrada.getKey());
+            } else {
+                destino.put(entrada.getKey(), entrada.getValue());
+            }
+        }
+    }
+}
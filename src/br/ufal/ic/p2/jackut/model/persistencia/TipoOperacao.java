@@ -0,0 +1,72 @@
+package br.ufal.ic.p2.jackut.model.persistencia;
+
+/**
+ * Tipos de operao registrados no dirio de operaes do Jackut.
+ * Cada tipo possui um cdigo de um byte (gravado em disco) e a quantidade de argumentos
+ * textuais que acompanham o registro.
+ *
+ * <p>Os cdigos fazem parte do formato em disco: nunca devem ser reaproveitados ou alterados.</p>
+ */
+public enum TipoOperacao {
+    ZERAR_SISTEMA(1, 0),
+    CRIAR_USUARIO(2, 3),
+    ABRIR_SESSAO(3, 2),
+    EDITAR_PERFIL(4, 3),
+    ADICIONAR_AMIGO(5, 2),
+    ENVIAR_RECADO(6, 3),
+    LER_RECADO(7, 1),
+    CRIAR_COMUNIDADE(8, 3),
+    ADICIONAR_MEMBRO_COMUNIDADE(9, 2),
+    ENVIAR_MENSAGEM_COMUNIDADE(10, 3),
+    LER_MENSAGEM(11, 1),
+    ADICIONAR_IDOLO(12, 2),
+    ADICIONAR_PAQUERA(13, 2),
+    ADICIONAR_INIMIGO(14, 2),
+    REMOVER_USUARIO(15, 1),
+    EXPIRAR_SESSAO(16, 1),
+    /** Amizade pedida por login, sem sesso (operaes em lote). */
+    ADICIONAR_AMIGO_POR_LOGIN(17, 2),
+    /**
+     * Abertura de sesso com o instante de abertura (ID, login, milissegundos), para que o prazo
+     * da sesso no recomece na reproduo; substitui {@link #ABRIR_SESSAO}, ainda lido.
+     */
+    ABRIR_SESSAO_EM(18, 3);
+
+    private static final TipoOperacao[] POR_CODIGO = new TipoOperacao[256];
+
+    static {
+        for (TipoOperacao tipo : values()) {
+            POR_CODIGO[tipo.codigo] = tipo;
+        }
+    }
+
+    private final int codigo;
+    private final int argumentos;
+
+    TipoOperacao(int codigo, int argumentos) {
+        this.codigo = codigo;
+        this.argumentos = argumentos;
+    }
+
+    /**
+     * Retorna o cdigo gravado em disco para este tipo.
+     * @return Cdigo de um byte (1 a 255).
+     */
+    public int getCodigo() { return codigo; }
+
+    /**
+     * Retorna a quantidade de argumentos esperada para este tipo.
+     * @return Nmero de argumentos textuais do registro.
+     */
+    public int getArgumentos() { return argumentos; }
+
+    /**
+     * Obtm o tipo correspondente a um cdigo lido do disco.
+     *
+     * @param codigo Cdigo de um byte.
+     * @return O tipo correspondente, ou {@code null} se o cdigo for desconhecido.
+     */
+    public static TipoOperacao porCodigo(int codigo) {
+        return codigo < 0 || codigo >= POR_CODIGO.length ? null : POR_CODIGO[codigo];
+    }
+}